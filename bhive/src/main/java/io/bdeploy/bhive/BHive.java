@@ -34,6 +34,7 @@ import io.bdeploy.bhive.objects.ObjectManager;
 import io.bdeploy.bhive.remote.RemoteBHive;
 import io.bdeploy.common.ActivityReporter;
 import io.bdeploy.common.ActivityReporter.Activity;
+import io.bdeploy.common.audit.AsyncAuditor;
 import io.bdeploy.common.audit.AuditRecord;
 import io.bdeploy.common.audit.AuditRecord.Severity;
 import io.bdeploy.common.audit.Auditor;
@@ -67,6 +68,8 @@ public class BHive implements AutoCloseable, BHiveExecution {
     private final ManifestDatabase manifests;
     private final ActivityReporter reporter;
     private final Auditor auditor;
+    /** Audits operations in the background, so that auditing does not slow down operations */
+    private final AsyncAuditor operationAuditor;
     private int parallelism = 4;
     private boolean auditSlowOps = true;
 
@@ -115,6 +118,7 @@ public class BHive implements AutoCloseable, BHiveExecution {
         }
 
         this.auditor = auditor == null ? new NullAuditor() : auditor;
+        this.operationAuditor = new AsyncAuditor(this.auditor);
         this.transactions = new BHiveTransactions(this, markerTmp, reporter);
         this.objects = new ObjectDatabase(objRoot, objTmp, reporter, transactions);
         this.manifests = new ManifestDatabase(relRoot.resolve("manifests"));
@@ -140,9 +144,10 @@ public class BHive implements AutoCloseable, BHiveExecution {
     }
 
     /**
-     * Retrieve the auditor for testing.
+     * Retrieve the auditor for testing. All audits of previously executed operations have been written once this returns.
      */
     public Auditor getAuditor() {
+        operationAuditor.flush();
         return auditor;
     }
 
@@ -207,7 +212,7 @@ public class BHive implements AutoCloseable, BHiveExecution {
     private final <T> T doExecute(Operation<T> op, int attempt) {
         try (Timer.Context timer = Metrics.getMetric(MetricGroup.HIVE).timer(op.getClass().getSimpleName()).time()) {
             if (op.getClass().getAnnotation(ReadOnlyOperation.class) == null) {
-                auditor.audit(AuditRecord.Builder.fromSystem().setWhat(op.getClass().getSimpleName())
+                operationAuditor.audit(AuditRecord.Builder.fromSystem().setWhat(op.getClass().getSimpleName())
                         .addParameters(new AuditParameterExtractor().extract(op)).build());
             }
 
@@ -217,7 +222,7 @@ public class BHive implements AutoCloseable, BHiveExecution {
             } finally {
                 long timing = System.currentTimeMillis() - start;
                 if (timing > 250 && auditSlowOps) {
-                    auditor.audit(AuditRecord.Builder.fromSystem().setWhat(op.getClass().getSimpleName())
+                    operationAuditor.audit(AuditRecord.Builder.fromSystem().setWhat(op.getClass().getSimpleName())
                             .addParameters(new AuditParameterExtractor().extract(op)).setMessage("Long running: " + timing + "ms")
                             .build());
                 }
@@ -235,8 +240,9 @@ public class BHive implements AutoCloseable, BHiveExecution {
     /** Audits the retry of the operation and delays the next retry. */
     private <T> void onOperationRetry(Operation<T> op, int attempt, Exception ex) {
         String retryString = (attempt + 1) + " / " + op.retryCount;
-        auditor.audit(AuditRecord.Builder.fromSystem().setWhat(op.getClass().getSimpleName()).setSeverity(Severity.NORMAL)
-                .setMessage("Retrying operation due to previous failure. Attempt " + retryString).build());
+        operationAuditor.audit(AuditRecord.Builder.fromSystem().setWhat(op.getClass().getSimpleName())
+                .setSeverity(Severity.NORMAL).setMessage("Retrying operation due to previous failure. Attempt " + retryString)
+                .build());
 
         log.warn("Operation failed. Attempt {}", retryString, ex);
         try (Activity activity = reporter.start("Operation failed (" + retryString + "). Waiting before next retry...",
@@ -250,7 +256,7 @@ public class BHive implements AutoCloseable, BHiveExecution {
 
     /** Audits the failed operation. */
     private <T> void onOperationFailed(Operation<T> op, Exception e) {
-        auditor.audit(AuditRecord.Builder.fromSystem().setWhat(op.getClass().getSimpleName()).setSeverity(Severity.ERROR)
+        operationAuditor.audit(AuditRecord.Builder.fromSystem().setWhat(op.getClass().getSimpleName()).setSeverity(Severity.ERROR)
                 .addParameters(new AuditParameterExtractor().extract(op))
                 .setMessage(ExceptionHelper.mapExceptionCausesToReason(e)).build());
     }
@@ -274,7 +280,7 @@ public class BHive implements AutoCloseable, BHiveExecution {
             PathHelper.deleteRecursiveRetry(objTmp);
         }
         manifests.close();
-        auditor.close();
+        operationAuditor.close(); // writes pending audits and closes the auditor.
     }
 
     /**
@@ -343,7 +349,7 @@ public class BHive implements AutoCloseable, BHiveExecution {
          * @return the {@link Auditor} associated with the current {@link BHive}.
          */
         protected Auditor getAuditor() {
-            return hive.auditor;
+            return hive.getAuditor();
         }
 
         /**
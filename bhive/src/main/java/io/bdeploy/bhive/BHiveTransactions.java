@@ -1,8 +1,11 @@
 package io.bdeploy.bhive;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +34,10 @@ public class BHiveTransactions {
 
     private static final Logger log = LoggerFactory.getLogger(BHiveTransactions.class);
     private static final String TX_PID_FILE = "tx.pid";
+    private static final String RESUME_PREFIX = "resume-";
+
+    /** The time objects of an interrupted transfer are kept, allowing the transfer to resume without sending them again */
+    public static final Duration RESUME_TIMEOUT = Duration.ofHours(24);
 
     private final InheritableThreadLocal<Stack<String>> transactions = new InheritableThreadLocal<>();
     private final Map<String, MarkerDatabase> dbs = new ConcurrentHashMap<>();
@@ -144,6 +151,75 @@ public class BHiveTransactions {
         };
     }
 
+    /**
+     * Keeps the given objects for {@link #RESUME_TIMEOUT} even if no manifest references them. This is used for objects received
+     * by an interrupted transfer, so that a retry only needs to transfer the remaining objects.
+     * <p>
+     * Must be called while the transaction which inserted the objects is still active, so they cannot be pruned in between.
+     */
+    public void keepForResume(Collection<ObjectId> objects) {
+        if (objects.isEmpty()) {
+            return;
+        }
+
+        MarkerDatabase mdb = new MarkerDatabase(markerRoot.resolve(RESUME_PREFIX + UuidHelper.randomId()), reporter);
+        objects.forEach(mdb::addMarker);
+    }
+
+    /**
+     * @return whether any markers created by {@link #keepForResume(Collection)} exist.
+     */
+    public boolean hasResumeMarkers() {
+        try (DirectoryStream<Path> resumeDbs = Files.newDirectoryStream(markerRoot, RESUME_PREFIX + "*")) {
+            return resumeDbs.iterator().hasNext();
+        } catch (IOException e) {
+            log.warn("Cannot list resume markers", e);
+            return false;
+        }
+    }
+
+    /**
+     * Removes the given objects from all markers created by {@link #keepForResume(Collection)}. This is used once the objects are
+     * referenced by a manifest and need not be kept any longer.
+     */
+    public void releaseForResume(Collection<ObjectId> objects) {
+        if (objects.isEmpty()) {
+            return;
+        }
+
+        try (DirectoryStream<Path> resumeDbs = Files.newDirectoryStream(markerRoot, RESUME_PREFIX + "*")) {
+            for (Path resumeDb : resumeDbs) {
+                if (Files.isDirectory(resumeDb)) {
+                    MarkerDatabase mdb = new MarkerDatabase(resumeDb, reporter);
+                    objects.forEach(mdb::removeMarker);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot release resume markers", e);
+        }
+    }
+
+    /**
+     * Removes markers created by {@link #keepForResume(Collection)} which are older than {@link #RESUME_TIMEOUT}.
+     *
+     * @return the amount of expired marker databases removed.
+     */
+    public long cleanExpiredResumeMarkers() {
+        long expired = System.currentTimeMillis() - RESUME_TIMEOUT.toMillis();
+        long amount = 0;
+        try (DirectoryStream<Path> resumeDbs = Files.newDirectoryStream(markerRoot, RESUME_PREFIX + "*")) {
+            for (Path resumeDb : resumeDbs) {
+                if (Files.isDirectory(resumeDb) && Files.getLastModifiedTime(resumeDb).toMillis() < expired) {
+                    PathHelper.deleteRecursiveRetry(resumeDb);
+                    amount++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot clean expired resume markers", e);
+        }
+        return amount;
+    }
+
     /**
      * This method can be used to detect and clean stale transactions which may keep (potentially damaged) objects alive.
      *
@@ -77,6 +77,15 @@ public class AuditParameterExtractor {
         }
     }
 
+    /** The fields to audit per {@link Operation} class, which are determined only once per class */
+    private static final ClassValue<List<AuditedField>> auditedFields = new ClassValue<>() {
+
+        @Override
+        protected List<AuditedField> computeValue(Class<?> type) {
+            return findAuditedFields(type);
+        }
+    };
+
     /**
      * @param op The {@link Operation} to extract parameters from. Audit parameters are extracted from the {@link Operation}s
      *            fields
@@ -86,9 +95,25 @@ public class AuditParameterExtractor {
      * @see NoAudit
      */
     public Map<String, String> extract(BHive.Operation<?> op) {
-        Class<?> clazz = op.getClass();
         Map<String, String> result = new TreeMap<>();
 
+        for (AuditedField audited : auditedFields.get(op.getClass())) {
+            try {
+                Object fieldValue = audited.field.get(op);
+                if (fieldValue != null) {
+                    result.put(audited.field.getName(), audited.converter.apply(fieldValue));
+                }
+            } catch (IllegalArgumentException | IllegalAccessException e) {
+                log.debug("Cannot read value of {}", audited.field, e);
+            }
+        }
+
+        return result;
+    }
+
+    private static List<AuditedField> findAuditedFields(Class<?> clazz) {
+        List<AuditedField> result = new ArrayList<>();
+
         for (Field field : clazz.getDeclaredFields()) {
             AuditParameterExtractor.NoAudit na = field.getAnnotation(AuditParameterExtractor.NoAudit.class);
             if (na != null || Modifier.isStatic(field.getModifiers())) {
@@ -98,29 +123,33 @@ public class AuditParameterExtractor {
                 continue;
             }
 
-            Function<Object, String> converter = null;
             AuditParameterExtractor.AuditStrategy strategy = AuditStrategy.TO_STRING;
             AuditParameterExtractor.AuditWith with = field.getAnnotation(AuditParameterExtractor.AuditWith.class);
             if (with != null) {
                 strategy = with.value();
             }
 
-            if (converter == null) {
-                converter = strategy.converter;
-            }
-
-            field.setAccessible(true);
             try {
-                Object fieldValue = field.get(op);
-                if (fieldValue != null) {
-                    result.put(field.getName(), converter.apply(fieldValue));
-                }
-            } catch (IllegalArgumentException | IllegalAccessException e) {
-                log.debug("Cannot read value of {}", field, e);
+                field.setAccessible(true);
+            } catch (RuntimeException e) {
+                log.debug("Cannot access {}", field, e);
+                continue;
             }
+            result.add(new AuditedField(field, strategy.converter));
         }
 
         return result;
     }
 
+    private static final class AuditedField {
+
+        private final Field field;
+        private final Function<Object, String> converter;
+
+        private AuditedField(Field field, Function<Object, String> converter) {
+            this.field = field;
+            this.converter = converter;
+        }
+    }
+
 }
\ No newline at end of file
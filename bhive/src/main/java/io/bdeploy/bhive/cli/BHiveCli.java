@@ -24,6 +24,7 @@ public class BHiveCli extends ToolBase {
         register(ManifestTool.class);
         register(FsckTool.class);
         register(PruneTool.class);
+        register(RepackTool.class);
         register(TokenTool.class);
         register(TreeTool.class);
         register(DiscUsageTool.class);
@@ -6,6 +6,7 @@ import java.nio.file.Paths;
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.cli.ExportTool.ExportConfig;
 import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.objects.ExportMode;
 import io.bdeploy.bhive.op.ExportOperation;
 import io.bdeploy.common.cfg.Configuration.EnvironmentFallback;
 import io.bdeploy.common.cfg.Configuration.Help;
@@ -42,6 +43,10 @@ public class ExportTool extends ConfiguredCliTool<ExportConfig> {
 
         @Help("Parallelism - how many threads to use to export. Default: 4")
         int jobs() default 4;
+
+        @Help("How to create files: COPY (default, verifies objects), CLONE (file system copy) or LINK (hard links, "
+                + "exported files must never be modified)")
+        ExportMode mode() default ExportMode.COPY;
     }
 
     public ExportTool() {
@@ -60,7 +65,7 @@ public class ExportTool extends ConfiguredCliTool<ExportConfig> {
             hive.setParallelism(config.jobs());
 
             ExportOperation export = new ExportOperation().setManifest(Manifest.Key.parse(config.manifest()))
-                    .setTarget(targetPath);
+                    .setTarget(targetPath).setExportMode(config.mode());
             hive.execute(export);
         }
 
@@ -45,6 +45,12 @@ public class FetchTool extends RemoteServiceTool<FetchConfig> {
 
         @Help("Manifest(s) to push. May appear multiple times. Format is 'name:tag'")
         String[] manifest() default {};
+
+        @Help(value = "Receive large changed files as delta to their previous version if it exists locally", arg = false)
+        boolean delta() default false;
+
+        @Help("Maximum amount of concurrent streams used to fetch objects, limited by what the remote accepts. Default: 4")
+        int streams() default 4;
     }
 
     public FetchTool() {
@@ -59,7 +65,8 @@ public class FetchTool extends RemoteServiceTool<FetchConfig> {
 
         try (BHive hive = new BHive(path.toUri(), getAuditorFactory().apply(path), getActivityReporter());
                 Transaction t = hive.getTransactions().begin()) {
-            FetchOperation op = new FetchOperation().setRemote(svc).setHiveName(config.source());
+            FetchOperation op = new FetchOperation().setRemote(svc).setHiveName(config.source()).setDeltas(config.delta())
+                    .setStreams(config.streams());
 
             for (String m : config.manifest()) {
                 Manifest.Key key = Manifest.Key.parse(m);
@@ -2,6 +2,7 @@ package io.bdeploy.bhive.cli;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.SortedMap;
 import java.util.stream.Collectors;
 
@@ -39,6 +40,13 @@ public class PruneTool extends ConfiguredCliTool<PruneConfig> {
 
         @Help(value = "List details about removed objects", arg = false)
         boolean verbose() default false;
+
+        @Help(value = "Prune shard by shard in short time slices, allowing concurrent transactions. Resumes a previously stopped incremental prune.",
+              arg = false)
+        boolean incremental() default false;
+
+        @Help("The maximum time in seconds to spend pruning incrementally, unlimited by default")
+        long maxTime() default -1;
     }
 
     public PruneTool() {
@@ -52,7 +60,11 @@ public class PruneTool extends ConfiguredCliTool<PruneConfig> {
         Path path = Paths.get(config.hive());
 
         try (BHive hive = new BHive(path.toUri(), getAuditorFactory().apply(path), getActivityReporter())) {
-            SortedMap<ObjectId, Long> result = hive.execute(new PruneOperation());
+            PruneOperation prune = new PruneOperation().setIncremental(config.incremental());
+            if (config.maxTime() > 0) {
+                prune.setMaxTime(Duration.ofSeconds(config.maxTime()));
+            }
+            SortedMap<ObjectId, Long> result = hive.execute(prune);
 
             DataResult r = createSuccess();
             if (config.verbose()) {
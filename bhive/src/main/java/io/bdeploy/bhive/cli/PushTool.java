@@ -47,6 +47,12 @@ public class PushTool extends RemoteServiceTool<PushConfig> {
 
         @Help("Manifest(s) to push. May appear multiple times. Format is 'name:tag'")
         String[] manifest() default {};
+
+        @Help(value = "Send large changed files as delta to their previous version if the remote has it", arg = false)
+        boolean delta() default false;
+
+        @Help("Maximum amount of concurrent streams used to push objects, limited by what the remote accepts. Default: 4")
+        int streams() default 4;
     }
 
     public PushTool() {
@@ -60,7 +66,8 @@ public class PushTool extends RemoteServiceTool<PushConfig> {
 
         Path path = Paths.get(config.hive());
         try (BHive hive = new BHive(path.toUri(), getAuditorFactory().apply(path), getActivityReporter())) {
-            PushOperation op = new PushOperation().setRemote(svc).setHiveName(config.target());
+            PushOperation op = new PushOperation().setRemote(svc).setHiveName(config.target()).setDeltas(config.delta())
+                    .setStreams(config.streams());
 
             for (String m : config.manifest()) {
                 Manifest.Key key = Manifest.Key.parse(m);
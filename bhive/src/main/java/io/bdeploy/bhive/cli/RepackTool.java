@@ -0,0 +1,58 @@
+package io.bdeploy.bhive.cli;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.cli.RepackTool.RepackConfig;
+import io.bdeploy.bhive.op.RepackOperation;
+import io.bdeploy.common.cfg.Configuration.EnvironmentFallback;
+import io.bdeploy.common.cfg.Configuration.Help;
+import io.bdeploy.common.cfg.Configuration.Validator;
+import io.bdeploy.common.cfg.ExistingPathValidator;
+import io.bdeploy.common.cfg.PathOwnershipValidator;
+import io.bdeploy.common.cli.ToolBase.CliTool.CliName;
+import io.bdeploy.common.cli.ToolBase.ConfiguredCliTool;
+import io.bdeploy.common.cli.ToolCategory;
+import io.bdeploy.common.cli.data.DataResult;
+import io.bdeploy.common.cli.data.RenderableResult;
+
+/**
+ * A tool to move loose objects of a hive into pack files, reducing the amount of files on disc.
+ */
+@Help("Move loose objects of the given BHive into pack files. Enables packed storage on the BHive.")
+@ToolCategory(BHiveCli.MAINTENANCE_TOOLS)
+@CliName("repack")
+public class RepackTool extends ConfiguredCliTool<RepackConfig> {
+
+    public @interface RepackConfig {
+
+        @Help("The BHive to use")
+        @EnvironmentFallback("BHIVE")
+        @Validator({ ExistingPathValidator.class, PathOwnershipValidator.class })
+        String hive();
+
+        @Help("Maximum size in bytes of objects to move into packs, larger objects are kept as loose files.")
+        long maxObjectSize() default RepackOperation.DEFAULT_MAX_OBJECT_SIZE;
+    }
+
+    public RepackTool() {
+        super(RepackConfig.class);
+    }
+
+    @Override
+    protected RenderableResult run(RepackConfig config) {
+        helpAndFailIfMissing(config.hive(), "Missing --hive");
+
+        Path path = Paths.get(config.hive());
+
+        try (BHive hive = new BHive(path.toUri(), getAuditorFactory().apply(path), getActivityReporter())) {
+            Long packed = hive.execute(new RepackOperation().setMaxObjectSize(config.maxObjectSize()));
+
+            DataResult r = createSuccess();
+            r.addField("Sum Objects Packed", Long.toString(packed));
+            return r;
+        }
+    }
+
+}
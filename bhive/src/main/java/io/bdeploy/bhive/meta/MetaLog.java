@@ -0,0 +1,516 @@
+package io.bdeploy.bhive.meta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.bdeploy.bhive.BHiveExecution;
+import io.bdeploy.bhive.BHiveTransactions.Transaction;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.Tree;
+import io.bdeploy.bhive.model.Tree.EntryType;
+import io.bdeploy.bhive.op.ImportObjectOperation;
+import io.bdeploy.bhive.op.InsertArtificialTreeOperation;
+import io.bdeploy.bhive.op.InsertManifestOperation;
+import io.bdeploy.bhive.op.ManifestDeleteOldByIdOperation;
+import io.bdeploy.bhive.op.ManifestLoadOperation;
+import io.bdeploy.bhive.op.ManifestMaxIdOperation;
+import io.bdeploy.bhive.op.ObjectLoadOperation;
+import io.bdeploy.bhive.op.TreeLoadOperation;
+import io.bdeploy.bhive.util.StorageHelper;
+
+/**
+ * An append-only log of records associated with a given {@link Manifest}. The log is persisted in the same meta manifest a
+ * {@link MetaManifest} of the same {@link Class} would use, so it is transferred and cleaned up along with all other metadata.
+ * <p>
+ * Records are stored in segments, each being a separate blob holding a sequence of records. Appending a record only rewrites
+ * the newest (small) segment, all other segments are re-used by the new version of the meta manifest as is. Once enough small
+ * segments exist, they are compacted into a single large segment, which keeps the tree of the meta manifest small. The name of
+ * each segment contains the range of timestamps of its records, so ranges of time can be queried without loading all segments.
+ * <p>
+ * Metadata which has previously been written using a {@link MetaManifest} can be read as the oldest part of the log using a
+ * {@link #setLegacyReader(Function) legacy reader}.
+ *
+ * @param <T> the type of records in the log. Must be serializable by the {@link StorageHelper}.
+ */
+public class MetaLog<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaLog.class);
+
+    /** the maximum amount of records in the segment which is appended to */
+    static final int SEGMENT_RECORDS = 100;
+
+    /** the amount of small segments which are compacted into a single large segment */
+    static final int COMPACT_SEGMENTS = 10;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SEGMENT_SEPARATOR = "-";
+
+    private final Manifest.Key parent;
+    private final String metaName;
+    private final String legacyFileName;
+    private final String segmentPrefix;
+    private final Class<T> recordClazz;
+    private final ToLongFunction<T> timestamp;
+
+    private Function<InputStream, List<T>> legacyReader;
+
+    /**
+     * Create a {@link MetaLog} for the given {@link Manifest.Key}.
+     *
+     * @param parent the parent {@link Manifest}s {@link Manifest.Key}.
+     * @param useParentTag whether the log is tag specific, see {@link MetaManifest#MetaManifest(Manifest.Key, boolean, Class)}.
+     * @param metaClazz the {@link Class} which determines the name of the meta manifest. This is the {@link Class} of the legacy
+     *            metadata, if any.
+     * @param recordClazz the {@link Class} of the records in the log.
+     * @param timestamp calculates the timestamp of a given record.
+     */
+    public MetaLog(Manifest.Key parent, boolean useParentTag, Class<?> metaClazz, Class<T> recordClazz,
+            ToLongFunction<T> timestamp) {
+        this.parent = parent;
+        this.metaName = MetaManifest.getMetaName(parent, useParentTag, metaClazz);
+        this.legacyFileName = MetaManifest.getMetaFileName(metaClazz);
+        this.segmentPrefix = metaClazz.getSimpleName() + SEGMENT_SEPARATOR;
+        this.recordClazz = recordClazz;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @param reader reads all records from metadata previously written by a {@link MetaManifest}.
+     * @return this for chaining.
+     */
+    public MetaLog<T> setLegacyReader(Function<InputStream, List<T>> reader) {
+        this.legacyReader = reader;
+        return this;
+    }
+
+    /**
+     * Appends a single record to the log.
+     *
+     * @param target the target {@link BHiveExecution}
+     * @param rec the record to append.
+     * @return the {@link Manifest.Key} of the current meta manifest.
+     */
+    public Manifest.Key append(BHiveExecution target, T rec) {
+        synchronized (target.getSynchronizationObject(metaName)) {
+            String targetTag = "1";
+            Optional<Long> id = target.execute(new ManifestMaxIdOperation().setManifestName(metaName));
+            Tree oldTree = null;
+
+            if (id.isPresent()) {
+                targetTag = Long.toString(id.get() + 1);
+                oldTree = loadTree(target, new Manifest.Key(metaName, id.get().toString()));
+            }
+
+            Manifest.Key targetKey = new Manifest.Key(metaName, targetTag);
+            Tree.Builder newTree = new Tree.Builder();
+            List<Segment> segments = new ArrayList<>();
+
+            if (oldTree != null) {
+                for (Map.Entry<Tree.Key, ObjectId> entry : oldTree.getChildren().entrySet()) {
+                    Segment segment = Segment.parse(segmentPrefix, entry.getKey(), entry.getValue());
+                    if (segment != null) {
+                        segments.add(segment);
+                    } else {
+                        // legacy metadata and anything else is kept as is.
+                        newTree.add(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            segments.sort(Comparator.comparingLong(s -> s.sequence));
+
+            try (Transaction t = target.getTransactions().begin()) {
+                long ts = timestamp.applyAsLong(rec);
+                byte[] data = StorageHelper.toRawBytes(rec);
+
+                Segment open = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+                if (open != null && open.count < SEGMENT_RECORDS) {
+                    segments.remove(segments.size() - 1);
+                    segments.add(write(target, open.sequence, open.count + 1, Math.min(open.first, ts), Math.max(open.last, ts),
+                            concat(loadSegment(target, open), data)));
+                } else {
+                    long sequence = open == null ? 1 : open.sequence + 1;
+                    segments.add(write(target, sequence, 1, ts, ts, data));
+                }
+
+                for (Segment segment : compact(target, segments)) {
+                    newTree.add(segment.key, segment.id);
+                }
+
+                ObjectId newTreeId = target.execute(new InsertArtificialTreeOperation().setTree(newTree));
+                Manifest.Builder newMf = new Manifest.Builder(targetKey).setRoot(newTreeId);
+                target.execute(new InsertManifestOperation().addManifest(newMf.build(target)));
+            }
+
+            target.execute(
+                    new ManifestDeleteOldByIdOperation().setAmountToKeep(MetaManifest.META_HIST_SIZE).setToDelete(metaName));
+
+            return targetKey;
+        }
+    }
+
+    /**
+     * @param source the source {@link BHiveExecution}
+     * @return all records in the log in the order they have been appended.
+     */
+    public List<T> read(BHiveExecution source) {
+        return read(source, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param source the source {@link BHiveExecution}
+     * @param from the lowest timestamp to include.
+     * @param to the highest timestamp to include.
+     * @return all records in the given range of time in the order they have been appended. Only segments which contain records
+     *         in the given range are loaded.
+     */
+    public List<T> read(BHiveExecution source, long from, long to) {
+        List<T> result = new ArrayList<>();
+        Tree tree = loadCurrentTree(source);
+        if (tree == null) {
+            return result;
+        }
+
+        for (T rec : readLegacy(source, tree)) {
+            addIfInRange(result, rec, from, to);
+        }
+        for (Segment segment : getSegments(tree)) {
+            if (segment.last < from || segment.first > to) {
+                continue;
+            }
+            for (T rec : readSegment(source, segment)) {
+                addIfInRange(result, rec, from, to);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads a single page of records, newest first. Records with the same timestamp are ordered by their position in the log,
+     * so no record is skipped or returned twice when paging, even if many records share a timestamp. Segments are loaded only
+     * until the page is full.
+     *
+     * @param source the source {@link BHiveExecution}
+     * @param before only records before this position are included. Use {@link Cursor#NEWEST} for the first page, and the
+     *            {@link Page#next} cursor of the previous page for all following pages.
+     * @param max the maximum amount of records to return.
+     * @return the newest records which are older than the given cursor.
+     */
+    public Page<T> readPage(BHiveExecution source, Cursor before, int max) {
+        Tree tree = loadCurrentTree(source);
+        if (tree == null || max <= 0) {
+            return new Page<>(Collections.emptyList(), null);
+        }
+
+        // one more than requested, to know whether there is a next page.
+        int limit = max + 1;
+        List<Positioned<T>> result = new ArrayList<>();
+        List<Segment> segments = getSegments(tree);
+        long[] positions = new long[segments.size()];
+        long position = 0;
+        for (int i = 0; i < segments.size(); ++i) {
+            positions[i] = position;
+            position += segments.get(i).count;
+        }
+
+        for (int i = segments.size() - 1; i >= 0; --i) {
+            Segment segment = segments.get(i);
+            if (segment.first > before.timestamp) {
+                continue;
+            }
+            if (result.size() >= limit && segment.last < result.get(result.size() - 1).timestamp) {
+                continue; // cannot contain any record newer than the current page.
+            }
+            List<T> records = readSegment(source, segment);
+            for (int j = 0; j < records.size(); ++j) {
+                addIfBefore(result, records.get(j), positions[i] + j, before);
+            }
+            result.sort(Positioned.NEWEST_FIRST);
+            trim(result, limit);
+        }
+
+        if (result.size() < limit) {
+            // legacy records are older than all records in segments, so they get negative positions.
+            List<T> legacy = readLegacy(source, tree);
+            for (int j = 0; j < legacy.size(); ++j) {
+                addIfBefore(result, legacy.get(j), (long) j - legacy.size(), before);
+            }
+            result.sort(Positioned.NEWEST_FIRST);
+            trim(result, limit);
+        }
+
+        Cursor next = null;
+        if (result.size() > max) {
+            Positioned<T> last = result.get(max - 1);
+            next = new Cursor(last.timestamp, last.position);
+            trim(result, max);
+        }
+        return new Page<>(result.stream().map(p -> p.rec).collect(Collectors.toList()), next);
+    }
+
+    /**
+     * @return the name of the meta manifest holding the log.
+     */
+    public String getMetaName() {
+        return metaName;
+    }
+
+    private void addIfInRange(List<T> target, T rec, long from, long to) {
+        long ts = timestamp.applyAsLong(rec);
+        if (ts >= from && ts <= to) {
+            target.add(rec);
+        }
+    }
+
+    private void addIfBefore(List<Positioned<T>> target, T rec, long position, Cursor before) {
+        long ts = timestamp.applyAsLong(rec);
+        if (ts < before.timestamp || (ts == before.timestamp && position < before.position)) {
+            target.add(new Positioned<>(rec, ts, position));
+        }
+    }
+
+    private static <X> void trim(List<X> list, int max) {
+        if (list.size() > max) {
+            list.subList(max, list.size()).clear();
+        }
+    }
+
+    /**
+     * Compacts all small segments into a single large segment if there are enough of them. Small segments are always the newest
+     * ones, since all small segments are compacted at once.
+     */
+    private List<Segment> compact(BHiveExecution target, List<Segment> segments) {
+        List<Segment> small = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.count <= SEGMENT_RECORDS) {
+                small.add(segment);
+            }
+        }
+
+        // the open segment is never compacted, it may still grow.
+        Segment open = segments.get(segments.size() - 1);
+        small.remove(open);
+        if (small.size() < COMPACT_SEGMENTS) {
+            return segments;
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int count = 0;
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (Segment segment : small) {
+            data.writeBytes(loadSegment(target, segment));
+            count += segment.count;
+            first = Math.min(first, segment.first);
+            last = Math.max(last, segment.last);
+        }
+
+        List<Segment> result = new ArrayList<>(segments);
+        result.removeAll(small);
+        result.add(write(target, small.get(0).sequence, count, first, last, data.toByteArray()));
+        result.sort(Comparator.comparingLong(s -> s.sequence));
+        return result;
+    }
+
+    private Segment write(BHiveExecution target, long sequence, int count, long first, long last, byte[] data) {
+        ObjectId id = target.execute(new ImportObjectOperation().setData(data));
+        String name = segmentPrefix + String.format("%010d", sequence) + SEGMENT_SEPARATOR + count + SEGMENT_SEPARATOR + first
+                + SEGMENT_SEPARATOR + last + SEGMENT_SUFFIX;
+        return new Segment(new Tree.Key(name, EntryType.BLOB), id, sequence, count, first, last);
+    }
+
+    private List<Segment> getSegments(Tree tree) {
+        List<Segment> result = new ArrayList<>();
+        for (Map.Entry<Tree.Key, ObjectId> entry : tree.getChildren().entrySet()) {
+            Segment segment = Segment.parse(segmentPrefix, entry.getKey(), entry.getValue());
+            if (segment != null) {
+                result.add(segment);
+            }
+        }
+        result.sort(Comparator.comparingLong(s -> s.sequence));
+        return result;
+    }
+
+    private List<T> readSegment(BHiveExecution source, Segment segment) {
+        try (InputStream is = source.execute(new ObjectLoadOperation().setObject(segment.id))) {
+            return StorageHelper.fromStreamSequence(is, recordClazz);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read " + segment.key.getName() + " for " + parent, e);
+        }
+    }
+
+    private static byte[] loadSegment(BHiveExecution source, Segment segment) {
+        try (InputStream is = source.execute(new ObjectLoadOperation().setObject(segment.id))) {
+            return is.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot load " + segment.key.getName(), e);
+        }
+    }
+
+    private List<T> readLegacy(BHiveExecution source, Tree tree) {
+        Map.Entry<Tree.Key, ObjectId> entry = tree.getNamedEntry(legacyFileName);
+        if (legacyReader == null || entry == null) {
+            return Collections.emptyList();
+        }
+
+        try (InputStream is = source.execute(new ObjectLoadOperation().setObject(entry.getValue()))) {
+            List<T> records = legacyReader.apply(is);
+            return records == null ? Collections.emptyList() : records;
+        } catch (Exception e) {
+            log.warn("Cannot read legacy {} for {}", legacyFileName, parent, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private Tree loadCurrentTree(BHiveExecution source) {
+        Manifest mf = null;
+        int retries = 0;
+
+        while (mf == null && retries++ < 10) {
+            Optional<Long> id = source.execute(new ManifestMaxIdOperation().setManifestName(metaName));
+            if (!id.isPresent()) {
+                return null;
+            }
+
+            Manifest.Key key = new Manifest.Key(metaName, id.get().toString());
+            mf = source.execute(new ManifestLoadOperation().setManifest(key).setNullOnError(true));
+        }
+
+        if (mf == null) {
+            throw new IllegalStateException("Could not load " + metaName + ", retries exceeded");
+        }
+        return source.execute(new TreeLoadOperation().setTree(mf.getRoot()));
+    }
+
+    private static Tree loadTree(BHiveExecution source, Manifest.Key key) {
+        Manifest mf = source.execute(new ManifestLoadOperation().setManifest(key));
+        return source.execute(new TreeLoadOperation().setTree(mf.getRoot()));
+    }
+
+    /**
+     * The position of a record in the log, ordered by timestamp first and by the order of appending second.
+     */
+    public static final class Cursor {
+
+        /** The cursor to read the newest page of records */
+        public static final Cursor NEWEST = new Cursor(Long.MAX_VALUE, Long.MAX_VALUE);
+
+        /** The timestamp of the record */
+        public final long timestamp;
+
+        /** The position of the record in the log, counting all records appended before it */
+        public final long position;
+
+        @JsonCreator
+        public Cursor(@JsonProperty("timestamp") long timestamp, @JsonProperty("position") long position) {
+            this.timestamp = timestamp;
+            this.position = position;
+        }
+    }
+
+    /**
+     * A page of records read from the log, newest first.
+     *
+     * @param <T> the type of records.
+     */
+    public static final class Page<T> {
+
+        /** The records on this page, newest first */
+        public final List<T> records;
+
+        /** The cursor to read the next page, or <code>null</code> if there are no older records */
+        public final Cursor next;
+
+        Page(List<T> records, Cursor next) {
+            this.records = records;
+            this.next = next;
+        }
+    }
+
+    private static final class Positioned<T> {
+
+        private static final Comparator<Positioned<?>> NEWEST_FIRST = Comparator.<Positioned<?>> comparingLong(p -> p.timestamp)
+                .thenComparingLong(p -> p.position).reversed();
+
+        private final T rec;
+        private final long timestamp;
+        private final long position;
+
+        Positioned(T rec, long timestamp, long position) {
+            this.rec = rec;
+            this.timestamp = timestamp;
+            this.position = position;
+        }
+    }
+
+    private static final class Segment {
+
+        private final Tree.Key key;
+        private final ObjectId id;
+        private final long sequence;
+        private final int count;
+        private final long first;
+        private final long last;
+
+        Segment(Tree.Key key, ObjectId id, long sequence, int count, long first, long last) {
+            this.key = key;
+            this.id = id;
+            this.sequence = sequence;
+            this.count = count;
+            this.first = first;
+            this.last = last;
+        }
+
+        /**
+         * @return the segment described by the given tree entry, or <code>null</code> if the entry is not a segment.
+         */
+        static Segment parse(String prefix, Tree.Key key, ObjectId id) {
+            String name = key.getName();
+            if (key.getType() != EntryType.BLOB || !name.startsWith(prefix) || !name.endsWith(SEGMENT_SUFFIX)) {
+                return null;
+            }
+
+            // timestamps may be negative, so limit the split to the known amount of fields.
+            String[] parts = name.substring(prefix.length(), name.length() - SEGMENT_SUFFIX.length()).split(SEGMENT_SEPARATOR, 3);
+            if (parts.length != 3) {
+                return null;
+            }
+            int rangeSeparator = parts[2].indexOf(SEGMENT_SEPARATOR, 1);
+            if (rangeSeparator < 0) {
+                return null;
+            }
+
+            try {
+                long first = Long.parseLong(parts[2].substring(0, rangeSeparator));
+                long last = Long.parseLong(parts[2].substring(rangeSeparator + 1));
+                return new Segment(key, id, Long.parseLong(parts[0]), Integer.parseInt(parts[1]), first, last);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+}
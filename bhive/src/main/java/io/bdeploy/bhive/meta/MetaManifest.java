@@ -59,11 +59,18 @@ public class MetaManifest<T> {
      */
     public MetaManifest(Manifest.Key parent, boolean useParentTag, Class<T> metaClazz) {
         this.parent = parent;
-        this.metaName = META_PREFIX + parent.getName() + "/" + metaClazz.getSimpleName()
-                + (useParentTag ? ("/" + parent.getTag()) : META_DEFTAG);
+        this.metaName = getMetaName(parent, useParentTag, metaClazz);
         this.metaClazz = metaClazz;
     }
 
+    /**
+     * @return the name of the meta manifest holding metadata of the given {@link Class} for the given parent.
+     */
+    static String getMetaName(Manifest.Key parent, boolean useParentTag, Class<?> metaClazz) {
+        return META_PREFIX + parent.getName() + "/" + metaClazz.getSimpleName()
+                + (useParentTag ? ("/" + parent.getTag()) : META_DEFTAG);
+    }
+
     public static boolean isMetaManifest(Manifest.Key meta) {
         return meta.getName().startsWith(META_PREFIX);
     }
@@ -202,6 +209,13 @@ public class MetaManifest<T> {
     }
 
     private String metaFileName() {
+        return getMetaFileName(metaClazz);
+    }
+
+    /**
+     * @return the name of the blob holding metadata of the given {@link Class} in the tree of the meta manifest.
+     */
+    static String getMetaFileName(Class<?> metaClazz) {
         return metaClazz.getSimpleName() + ".json";
     }
 
@@ -0,0 +1,46 @@
+package io.bdeploy.bhive.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.bdeploy.bhive.BHive;
+
+/**
+ * Describes the {@link Manifest}s added to and removed from a {@link BHive} since a given position (cursor) in its change
+ * journal. Adding and later removing the same {@link Manifest} is reported as removal only, and vice versa.
+ */
+public class ManifestChanges {
+
+    /**
+     * Identifies the journal. A cursor is only valid for the journal it was obtained from. <code>null</code> if the {@link BHive}
+     * does not keep a journal.
+     */
+    public String journal;
+
+    /**
+     * The position in the journal after the reported changes, to be passed when querying the next changes.
+     */
+    public long cursor;
+
+    /**
+     * Whether the changes since the given cursor could be determined. If not, the caller needs to fall back to comparing all
+     * {@link Manifest}s, and can continue with the returned {@link #cursor} afterwards.
+     */
+    public boolean complete;
+
+    /**
+     * Whether more changes are available after {@link #cursor}.
+     */
+    public boolean more;
+
+    /**
+     * {@link Manifest}s added since the given cursor.
+     */
+    public List<Manifest.Key> added = new ArrayList<>();
+
+    /**
+     * {@link Manifest}s removed since the given cursor.
+     */
+    public List<Manifest.Key> removed = new ArrayList<>();
+
+}
@@ -12,39 +12,68 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.regex.Pattern;
-
-import javax.annotation.Generated;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-import io.bdeploy.common.util.Hex;
-
 /**
  * Uniquely identifies a certain object. That is (typically) the content of an
  * arbitrary file which has been imported into the hive or a {@link Tree}.
+ * <p>
+ * The 20 byte SHA-1 checksum is kept in binary form to keep large sets of {@link ObjectId}s small. The {@link String}
+ * representation (40 lower case hexadecimal characters) is used for serialization and storage.
  */
 public class ObjectId implements Serializable, Comparable<ObjectId> {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     private static final int BUFFER_SIZE = 8192;
-    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{40}");
 
-    private final String id;
+    /** Length of an {@link ObjectId} in binary form */
+    public static final int BYTES = 20;
+    private static final int HEX_LENGTH = BYTES * 2;
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
 
-    /**
-     * Create an {@link ObjectId} from a pre-existing ID (e.g. stored on disc).
-     */
-    private ObjectId(String id) {
-        this.id = id;
+    // package-private for ObjectIdSet, which stores the binary form directly.
+    @JsonIgnore
+    final long high;
+
+    @JsonIgnore
+    final long middle;
+
+    @JsonIgnore
+    final int low;
+
+    ObjectId(long high, long middle, int low) {
+        this.high = high;
+        this.middle = middle;
+        this.low = low;
     }
 
     /**
      * @return the {@link String} representation of this ID.
      */
+    @JsonProperty("id")
     public String getId() {
-        return id;
+        char[] chars = new char[HEX_LENGTH];
+        appendHex(chars, 0, high, 16);
+        appendHex(chars, 16, middle, 16);
+        appendHex(chars, 32, low, 8);
+        return new String(chars);
+    }
+
+    private static void appendHex(char[] target, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; --i) {
+            target[offset + i] = HEX_CHARS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    /**
+     * @return the binary representation of this ID.
+     */
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(BYTES).putLong(high).putLong(middle).putInt(low).array();
     }
 
     /**
@@ -57,11 +86,49 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
     @JsonCreator
     public static ObjectId parse(@JsonProperty("id") String id) {
         // sanity check if id is a valid ObjectId.
-        if (ID_PATTERN.matcher(id).matches()) {
-            return new ObjectId(id);
+        if (id.length() != HEX_LENGTH) {
+            return null;
+        }
+
+        long high = 0;
+        long middle = 0;
+        long low = 0;
+        for (int i = 0; i < HEX_LENGTH; ++i) {
+            int digit = digit(id.charAt(i));
+            if (digit < 0) {
+                return null;
+            }
+
+            if (i < 16) {
+                high = (high << 4) | digit;
+            } else if (i < 32) {
+                middle = (middle << 4) | digit;
+            } else {
+                low = (low << 4) | digit;
+            }
         }
 
-        return null;
+        return new ObjectId(high, middle, (int) low);
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Create an {@link ObjectId} from its binary representation, see {@link #toBytes()}.
+     */
+    public static ObjectId fromBytes(byte[] raw) {
+        if (raw.length != BYTES) {
+            throw new IllegalArgumentException("Invalid ObjectId length: " + raw.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        return new ObjectId(buffer.getLong(), buffer.getLong(), buffer.getInt());
     }
 
     /**
@@ -70,7 +137,7 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
     public static ObjectId create(byte[] data, int offset, int len) {
         MessageDigest digest = createDigest();
         digest.update(data, offset, len);
-        return new ObjectId(Hex.bytesToHex(digest.digest()));
+        return fromBytes(digest.digest());
     }
 
     /**
@@ -95,7 +162,7 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
             // here. We can later on detect problems easily as long as the meta-data
             // is written sync (manifests, etc.).
         }
-        return new ObjectId(Hex.bytesToHex(digest.digest()));
+        return fromBytes(digest.digest());
     }
 
     /**
@@ -114,7 +181,7 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
             while ((read = source.read(buf)) > 0) {
                 digest.update(buf, 0, read);
             }
-            return new ObjectId(Hex.bytesToHex(digest.digest()));
+            return fromBytes(digest.digest());
         } catch (IOException e) {
             throw new IllegalStateException("Cannot calculate checksum of object from stream", e);
         }
@@ -122,7 +189,7 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
 
     @Override
     public String toString() {
-        return id;
+        return getId();
     }
 
     private static MessageDigest createDigest() {
@@ -133,41 +200,37 @@ public class ObjectId implements Serializable, Comparable<ObjectId> {
         }
     }
 
+    /**
+     * Compares the binary representation unsigned, which is the same order as comparing the {@link String} representation.
+     */
     @Override
     public int compareTo(ObjectId o) {
-        return id.compareTo(o.id);
+        int result = Long.compareUnsigned(high, o.high);
+        if (result == 0) {
+            result = Long.compareUnsigned(middle, o.middle);
+        }
+        if (result == 0) {
+            result = Integer.compareUnsigned(low, o.low);
+        }
+        return result;
     }
 
-    @Generated("Eclipse")
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((id == null) ? 0 : id.hashCode());
-        return result;
+        // the checksum is evenly distributed, any part of it is a good hash.
+        return (int) (high ^ (high >>> 32));
     }
 
-    @Generated("Eclipse")
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
             return true;
         }
-        if (obj == null) {
-            return false;
-        }
-        if (getClass() != obj.getClass()) {
+        if (obj == null || getClass() != obj.getClass()) {
             return false;
         }
         ObjectId other = (ObjectId) obj;
-        if (id == null) {
-            if (other.id != null) {
-                return false;
-            }
-        } else if (!id.equals(other.id)) {
-            return false;
-        }
-        return true;
+        return high == other.high && middle == other.middle && low == other.low;
     }
 
 }
@@ -0,0 +1,281 @@
+package io.bdeploy.bhive.model;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A memory efficient {@link Set} of {@link ObjectId}s which preserves insertion order.
+ * <p>
+ * Instead of one {@link ObjectId} and one entry object per element (as in {@link java.util.LinkedHashSet} or
+ * {@link java.util.TreeSet}), the binary ids are stored in primitive arrays and looked up through an open addressing hash
+ * table. This requires less than half of the memory per element, and creates no garbage except for the {@link ObjectId}s
+ * handed out by the {@link #iterator()}.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class ObjectIdSet extends AbstractSet<ObjectId> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /** marks a free slot in the hash table */
+    private static final int FREE = 0;
+
+    /** marks a slot in the hash table whose element has been removed */
+    private static final int REMOVED = -1;
+
+    // the elements in insertion order.
+    private long[] highs;
+    private long[] middles;
+    private int[] lows;
+    private final BitSet deleted = new BitSet();
+    private int count;
+
+    // slots point to the element index + 1, or are FREE or REMOVED.
+    private int[] table;
+    private int removedSlots;
+
+    private int size;
+    private int modCount;
+
+    public ObjectIdSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the amount of elements to reserve space for.
+     */
+    public ObjectIdSet(int expectedSize) {
+        allocate(Math.max(MIN_CAPACITY, expectedSize));
+    }
+
+    /**
+     * @param ids the initial content of the set.
+     */
+    public ObjectIdSet(Collection<? extends ObjectId> ids) {
+        this(ids.size());
+        addAll(ids);
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        middles = new long[capacity];
+        lows = new int[capacity];
+        table = new int[tableSizeFor(capacity)];
+    }
+
+    /**
+     * @return a power of two table size which keeps the load factor of the hash table below 2/3.
+     */
+    private static int tableSizeFor(int capacity) {
+        int min = capacity + (capacity >> 1) + 1;
+        return Integer.highestOneBit(min - 1) << 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof ObjectId)) {
+            return false;
+        }
+        return findSlot((ObjectId) o) >= 0;
+    }
+
+    @Override
+    public boolean add(ObjectId id) {
+        if (findSlot(id) >= 0) {
+            return false;
+        }
+
+        if (count == highs.length) {
+            grow();
+        }
+        if ((count + removedSlots + 1) * 3 > table.length * 2) {
+            rehash(table.length);
+        }
+
+        int index = count++;
+        highs[index] = id.high;
+        middles[index] = id.middle;
+        lows[index] = id.low;
+
+        int slot = firstUsableSlot(id.high);
+        if (table[slot] == REMOVED) {
+            removedSlots--;
+        }
+        table[slot] = index + 1;
+
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof ObjectId)) {
+            return false;
+        }
+
+        int slot = findSlot((ObjectId) o);
+        if (slot < 0) {
+            return false;
+        }
+
+        removeAt(slot);
+        return true;
+    }
+
+    private void removeAt(int slot) {
+        deleted.set(table[slot] - 1);
+        table[slot] = REMOVED;
+        removedSlots++;
+        size--;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        deleted.clear();
+        count = 0;
+        removedSlots = 0;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Iterator<ObjectId> iterator() {
+        return new Iterator<>() {
+
+            private int next = nextIndex(0);
+            private int last = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public ObjectId next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= count) {
+                    throw new NoSuchElementException();
+                }
+
+                last = next;
+                next = nextIndex(next + 1);
+                return get(last);
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+
+                removeAt(findSlot(get(last)));
+                last = -1;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    private int nextIndex(int from) {
+        int index = deleted.nextClearBit(from);
+        return Math.min(index, count);
+    }
+
+    private ObjectId get(int index) {
+        return new ObjectId(highs[index], middles[index], lows[index]);
+    }
+
+    /**
+     * @return the slot holding the given {@link ObjectId}, or -1 if not contained.
+     */
+    private int findSlot(ObjectId id) {
+        int mask = table.length - 1;
+        int slot = hash(id.high) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == FREE) {
+                return -1;
+            }
+            if (entry != REMOVED) {
+                int index = entry - 1;
+                if (highs[index] == id.high && middles[index] == id.middle && lows[index] == id.low) {
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int firstUsableSlot(long high) {
+        int mask = table.length - 1;
+        int slot = hash(high) & mask;
+        while (table[slot] != FREE && table[slot] != REMOVED) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long high) {
+        // the ids are checksums, so any part of them is evenly distributed already.
+        return (int) (high ^ (high >>> 32));
+    }
+
+    /**
+     * Makes room for more elements. If many elements have been removed, the existing storage is compacted instead.
+     */
+    private void grow() {
+        if (deleted.cardinality() > count / 2) {
+            rehash(table.length);
+            return;
+        }
+
+        int capacity = count + (count >> 1);
+        highs = Arrays.copyOf(highs, capacity);
+        middles = Arrays.copyOf(middles, capacity);
+        lows = Arrays.copyOf(lows, capacity);
+        rehash(tableSizeFor(capacity));
+    }
+
+    /**
+     * Re-creates the hash table with the given size, dropping all removed elements.
+     */
+    private void rehash(int tableSize) {
+        if (!deleted.isEmpty()) {
+            int target = 0;
+            for (int index = nextIndex(0); index < count; index = nextIndex(index + 1)) {
+                highs[target] = highs[index];
+                middles[target] = middles[index];
+                lows[target] = lows[index];
+                target++;
+            }
+            count = target;
+            deleted.clear();
+        }
+
+        table = new int[tableSize];
+        removedSlots = 0;
+        for (int index = 0; index < count; ++index) {
+            table[firstUsableSlot(highs[index])] = index + 1;
+        }
+    }
+
+}
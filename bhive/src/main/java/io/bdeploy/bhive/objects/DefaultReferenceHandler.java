@@ -11,14 +11,20 @@ import io.bdeploy.bhive.model.Tree.Key;
 public class DefaultReferenceHandler implements ReferenceHandler {
 
     private final ObjectManager om;
+    private final ExportMode mode;
 
     public DefaultReferenceHandler(ObjectManager om) {
+        this(om, ExportMode.COPY);
+    }
+
+    public DefaultReferenceHandler(ObjectManager om, ExportMode mode) {
         this.om = om;
+        this.mode = mode;
     }
 
     @Override
     public void onReference(Path location, Key key, Manifest referenced) {
-        om.exportTree(referenced.getRoot(), location.resolve(key.getName()), this);
+        om.exportTree(referenced.getRoot(), location.resolve(key.getName()), this, mode);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package io.bdeploy.bhive.objects;
+
+/**
+ * Determines how files are created when exporting a tree from the {@link ObjectDatabase}.
+ * <p>
+ * Regardless of the mode, each file is copied as in {@link #COPY} if the requested mode is not possible, e.g. because the
+ * object database and the target reside on different file systems.
+ * <p>
+ * {@link #CLONE} and {@link #LINK} do not stream the content, so the object file is hashed once instead when it is first
+ * exported by an {@link ObjectManager}. A corrupt object fails the export just like in {@link #COPY}, but an object file
+ * corrupted after it has been verified is not noticed by later exports of the same {@link ObjectManager}.
+ */
+public enum ExportMode {
+
+    /**
+     * Streams each object out of the {@link ObjectDatabase}, verifying its checksum on the way. This is the default, and
+     * works with any kind of database and target.
+     */
+    COPY,
+
+    /**
+     * Copies each object file using the file system, which allows the operating system to use the most efficient way to copy,
+     * e.g. copy-on-write clones on file systems which support them.
+     */
+    CLONE,
+
+    /**
+     * Creates hard links to the object files. This is the fastest mode and requires no additional disc space, but the
+     * exported files <b>must never be modified</b>, as this would corrupt the object database. Files whose executable
+     * permission would differ from the object file's are copied instead.
+     */
+    LINK,
+
+}
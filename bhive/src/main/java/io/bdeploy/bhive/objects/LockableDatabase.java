@@ -6,14 +6,47 @@ import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.file.Path;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import io.bdeploy.bhive.model.ObjectId;
 
 /**
  * Base class for a database which requires locked modifications for
  * parallel-safety (JVM overarching).
+ * <p>
+ * Modifications of shared state (e.g. indices) lock the whole database. Modifications which only concern a single object lock
+ * one of {@link #STRIPES} stripes, determined by the prefix of the {@link ObjectId}. Each stripe uses its own lock file, so
+ * different stripes can be modified concurrently, even by different processes. While any stripe is locked, this process holds a
+ * shared lock on the database lock file, which keeps other processes from locking the whole database.
+ * <p>
+ * Locks are re-entrant per thread: a thread holding the whole database may lock any stripe, and a thread holding a stripe may
+ * lock the same (or another) stripe again without touching the lock files again. A thread holding only stripes can not lock
+ * the whole database, as upgrading the shared database lock would deadlock with other threads doing the same.
+ * <p>
+ * An additional {@link #JOURNAL_STRIPE journal stripe} serializes appends to shared journals (see
+ * {@link #lockedJournal(LockedOperation)}), which thus do not require locking the whole database.
  */
 public abstract class LockableDatabase {
 
+    /** The number of independently lockable stripes */
+    static final int STRIPES = 64;
+
+    /** The stripe used for appending to shared journals, which is not used by any {@link ObjectId} */
+    static final int JOURNAL_STRIPE = STRIPES;
+
     private final File lockFile;
+    private final File[] stripeFiles = new File[STRIPES + 1];
+
+    /** Exclusive for locking the whole database, shared for locking a stripe (within this process) */
+    private final ReentrantReadWriteLock databaseLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripeLocks = new ReentrantLock[STRIPES + 1];
+
+    /** The shared lock on the database lock file, held as long as any stripe is locked by this process */
+    private final Object sharedLock = new Object();
+    private int sharedCount;
+    private RandomAccessFile sharedFile;
+    private FileLock sharedFileLock;
 
     /**
      * @param root the root directory of the database. If the underlying filesystem
@@ -21,12 +54,18 @@ public abstract class LockableDatabase {
      *            there is no locking capability.
      */
     protected LockableDatabase(Path root) {
-        this.lockFile = determineLockFile(root);
+        this.lockFile = determineLockFile(root, ".dblock");
+        for (int i = 0; i < STRIPES; ++i) {
+            stripeLocks[i] = new ReentrantLock();
+            stripeFiles[i] = determineLockFile(root, String.format(".dblock-%02x", i));
+        }
+        stripeLocks[JOURNAL_STRIPE] = new ReentrantLock();
+        stripeFiles[JOURNAL_STRIPE] = determineLockFile(root, ".dblock-journal");
     }
 
-    private static File determineLockFile(Path root) {
+    private static File determineLockFile(Path root, String name) {
         try {
-            return root.resolve(".dblock").toFile();
+            return root.resolve(name).toFile();
         } catch (UnsupportedOperationException e) {
             // in case of zip file, ... toFile not supported, no locking.
             // the assumption is that not multiple VMs access the same ZIP file concurrently.
@@ -37,18 +76,130 @@ public abstract class LockableDatabase {
     /**
      * @param toLock a database-modifying operation (insertion, deletion, ...).
      */
-    protected synchronized void locked(LockedOperation toLock) {
+    protected void locked(LockedOperation toLock) {
+        if (databaseLock.isWriteLockedByCurrentThread()) {
+            // the file lock is held already.
+            lockFileAndRun(null, toLock);
+            return;
+        }
+
+        if (databaseLock.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Cannot lock the whole database while holding a stripe lock");
+        }
+
+        databaseLock.writeLock().lock();
+        try {
+            lockFileAndRun(lockFile, toLock);
+        } finally {
+            databaseLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id the object which is modified. Only other modifications of objects in the same stripe are blocked.
+     * @param toLock a modification which only concerns the given object.
+     */
+    protected void locked(ObjectId id, LockedOperation toLock) {
+        lockedStripe((id.toBytes()[0] & 0xFF) % STRIPES, toLock);
+    }
+
+    /**
+     * @param toLock an append to a shared journal. Appends are serialized, but run concurrently to modifications of stripes.
+     *            The whole database is locked while changing the journal in other ways, e.g. when replacing it.
+     */
+    protected void lockedJournal(LockedOperation toLock) {
+        lockedStripe(JOURNAL_STRIPE, toLock);
+    }
+
+    private void lockedStripe(int stripe, LockedOperation toLock) {
+        ReentrantLock stripeLock = stripeLocks[stripe];
+        if (databaseLock.isWriteLockedByCurrentThread() || stripeLock.isHeldByCurrentThread()) {
+            // the whole database or this stripe is locked by this thread already, including the lock file.
+            lockFileAndRun(null, toLock);
+            return;
+        }
+
+        databaseLock.readLock().lock();
+        try {
+            acquireShared();
+            try {
+                stripeLock.lock();
+                try {
+                    lockFileAndRun(stripeFiles[stripe], toLock);
+                } finally {
+                    stripeLock.unlock();
+                }
+            } finally {
+                releaseShared();
+            }
+        } finally {
+            databaseLock.readLock().unlock();
+        }
+    }
+
+    private void acquireShared() {
+        if (lockFile == null) {
+            return;
+        }
+
+        synchronized (sharedLock) {
+            if (sharedCount == 0) {
+                try {
+                    sharedFile = new RandomAccessFile(lockFile, "rw");
+                    sharedFileLock = sharedFile.getChannel().lock(0, Long.MAX_VALUE, true);
+                } catch (IOException e) {
+                    closeShared();
+                    throw new IllegalStateException("Cannot lock " + lockFile, e);
+                }
+            }
+            sharedCount++;
+        }
+    }
+
+    private void releaseShared() {
+        if (lockFile == null) {
+            return;
+        }
+
+        synchronized (sharedLock) {
+            if (--sharedCount == 0) {
+                closeShared();
+            }
+        }
+    }
+
+    private void closeShared() {
+        try {
+            if (sharedFileLock != null) {
+                sharedFileLock.release();
+            }
+            if (sharedFile != null) {
+                sharedFile.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot release lock on " + lockFile, e);
+        } finally {
+            sharedFileLock = null;
+            sharedFile = null;
+        }
+    }
+
+    /**
+     * Runs the operation while holding an exclusive lock on the given file. The caller must make sure that no other thread of
+     * this process locks the same file concurrently, and that the current thread does not hold a lock on the file already.
+     * Without a file, the operation is run without further locking.
+     */
+    private static void lockFileAndRun(File file, LockedOperation toLock) {
         try {
             // happens for ZIP files and others (?) which don't support Path.toFile().
-            if (lockFile == null) {
+            if (file == null) {
                 toLock.run();
                 return;
             }
 
+            long xctpCount = 0;
             do {
-                long xctpCount = 0;
-
-                try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
                         FileChannel channel = raf.getChannel();
                         FileLock lock = channel.lock()) {
                     toLock.run();
@@ -60,7 +211,7 @@ public abstract class LockableDatabase {
                     // especially not if we do not want to dramatically increase lock contention in the whole process. This means
                     // we go for a quick'n'dirty approach and simply retry in this case.
                     if ("Resource deadlock avoided".equals(ioe.getMessage()) && xctpCount++ <= 10) {
-                        wait(5);
+                        Thread.sleep(5);
                         continue;
                     }
                     throw ioe;
@@ -6,15 +6,20 @@ package io.bdeploy.bhive.objects;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
@@ -33,6 +38,8 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.bdeploy.bhive.ManifestSpawnListener;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
+import io.bdeploy.bhive.model.ManifestChanges;
+import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.util.StorageHelper;
 import io.bdeploy.common.util.NamedDaemonThreadFactory;
 import io.bdeploy.common.util.PathHelper;
@@ -41,13 +48,24 @@ import io.bdeploy.common.util.PathHelper;
  * Stores and manages {@link Manifest}s. Storage happens in files distributed in
  * a database based on name and tag of each {@link Manifest}. This allows
  * concurrent updates to the database even from different processes.
+ * <p>
+ * All manifests are tracked in a {@link ManifestIndex} if available, so that listing manifests does not need to walk the
+ * database. The index is created for new databases, and built once for existing ones on first use. It can be re-built from the
+ * actual files using {@link #rebuildIndex()}.
  */
 public class ManifestDatabase extends LockableDatabase implements AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(ManifestDatabase.class);
 
+    private static final String INDEX_FILE = ".index";
+
+    /** The maximum amount of index records read at once when querying changes, roughly 10K records */
+    private static final int MAX_CHANGES_BYTES = 1024 * 1024;
+
     private final Path root;
     private final Path tmp;
+    private final ManifestIndex index;
+    private volatile boolean indexFailed;
 
     private final List<ManifestSpawnListener> listeners = new ArrayList<>();
 
@@ -74,13 +92,25 @@ public class ManifestDatabase extends LockableDatabase implements AutoCloseable
         this.root = root;
         this.tmp = root.resolve(".tmp");
 
+        boolean created = false;
         if (!PathHelper.exists(root)) {
             PathHelper.mkdirs(root);
+            created = true;
         }
 
         if (!PathHelper.exists(tmp)) {
             PathHelper.mkdirs(tmp);
         }
+
+        // no index for ZIP and other file systems which are typically short lived.
+        if (root.getFileSystem() == FileSystems.getDefault()) {
+            this.index = new ManifestIndex(root.resolve(INDEX_FILE), tmp);
+            if (created) {
+                locked(() -> index.rebuild(Collections.emptyMap()));
+            }
+        } else {
+            this.index = null;
+        }
     }
 
     @Override
@@ -181,6 +211,9 @@ public class ManifestDatabase extends LockableDatabase implements AutoCloseable
                     throw t;
                 }
             }
+            if (index != null) {
+                index.add(manifest.getKey(), manifest.getRoot());
+            }
             manifestCache.put(manifest.getKey(), manifest);
             manifestListCache.invalidateAll();
             scheduleNotify(manifest.getKey());
@@ -197,19 +230,86 @@ public class ManifestDatabase extends LockableDatabase implements AutoCloseable
     public void removeManifest(Manifest.Key key) {
         locked(() -> {
             PathHelper.deleteIfExistsRetry(getPathForKey(key));
+            if (index != null) {
+                index.remove(key);
+            }
             manifestCache.invalidate(key);
             manifestListCache.invalidateAll();
         });
     }
 
+    /**
+     * @param journal the journal identifier of previously returned {@link ManifestChanges}, or <code>null</code>.
+     * @param cursor the cursor of previously returned {@link ManifestChanges}.
+     * @return the {@link Manifest}s added and removed since the given cursor, based on the records in the {@link ManifestIndex}.
+     *         <code>null</code> if there is no index to read from.
+     */
+    public ManifestChanges getChanges(String journal, long cursor) {
+        if (!isIndexAvailable()) {
+            return null;
+        }
+
+        try {
+            return index.getChanges(journal, cursor, MAX_CHANGES_BYTES);
+        } catch (IOException e) {
+            log.warn("Cannot read changes from manifest index {}", root, e);
+            return null;
+        }
+    }
+
     /**
      * @return all {@link Key}s found in the database's filesystem.
      */
     public Set<Manifest.Key> getAllManifests() {
+        if (isIndexAvailable()) {
+            return index.getAll();
+        }
+
         // structure is dir:root/dir:name/dir:name/file:tag
         return collectManifestsCached(root);
     }
 
+    /**
+     * @return whether the {@link ManifestIndex} can be used. Builds the index if it does not exist yet.
+     */
+    private boolean isIndexAvailable() {
+        if (index == null || indexFailed) {
+            return false;
+        }
+        if (index.isAvailable()) {
+            return true;
+        }
+
+        try {
+            rebuildIndex();
+            return index.isAvailable();
+        } catch (Exception e) {
+            // don't try again until explicitly re-built, e.g. by a consistency check.
+            log.warn("Cannot build manifest index for {}", root, e);
+            indexFailed = true;
+            return false;
+        }
+    }
+
+    /**
+     * (Re-)builds the {@link ManifestIndex} from the manifests currently present on disc. Fails if any manifest cannot be
+     * read, as the index must not miss any manifest.
+     */
+    public void rebuildIndex() {
+        if (index == null) {
+            return;
+        }
+
+        locked(() -> {
+            Map<Manifest.Key, ObjectId> manifests = new TreeMap<>();
+            for (Manifest.Key key : collectManifests(root)) {
+                manifests.put(key, getManifest(key).getRoot());
+            }
+            index.rebuild(manifests);
+        });
+        indexFailed = false;
+    }
+
     private Set<Manifest.Key> collectManifestsCached(Path r) {
         try {
             return manifestListCache.get(r, () -> collectManifests(r));
@@ -277,6 +377,9 @@ public class ManifestDatabase extends LockableDatabase implements AutoCloseable
             }
             return result;
         }
+        if (isIndexAvailable()) {
+            return index.getAllForName(name);
+        }
         Path namedRoot = root.resolve(name);
         return collectManifestsCached(namedRoot);
     }
@@ -302,6 +405,36 @@ public class ManifestDatabase extends LockableDatabase implements AutoCloseable
         }
     }
 
+    /**
+     * @param name the name to inspect, see {@link #getAllForName(String)}.
+     * @return the highest tag of all manifests with the given name, if all of them use numeric tags.
+     */
+    public Optional<Long> getMaxId(String name) {
+        if (!name.contains(":") && isIndexAvailable()) {
+            return index.getMaxId(name);
+        }
+
+        try {
+            return getAllForName(name).stream().map(Manifest.Key::getTag).map(Long::parseLong).max(Long::compare);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param key the key of the manifest
+     * @return the root tree of the {@link Manifest}, looked up in the {@link ManifestIndex} if possible.
+     */
+    public ObjectId getManifestRoot(Manifest.Key key) {
+        if (index != null && index.isAvailable()) {
+            ObjectId indexed = index.getRoot(key);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+        return getManifest(key).getRoot();
+    }
+
     /**
      * Invalidates all cached data.
      */
@@ -0,0 +1,476 @@
+package io.bdeploy.bhive.objects;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ManifestChanges;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.util.PathHelper;
+
+/**
+ * Persistent index of all {@link Manifest}s (name, tag and root tree) in a {@link ManifestDatabase}, which allows listing
+ * manifests without walking the database directory.
+ * <p>
+ * The index is a single append-only text file. The first line holds a random generation identifier, each following line
+ * records a manifest being added (<code>+ name tag root</code>) or removed (<code>- name tag</code>), separated by tabs.
+ * Readers only ever consume complete lines, and catch up with records appended by other processes by reading the tail of the
+ * file. Once the file contains many more records than manifests, it is rewritten with a new generation and replaced
+ * atomically.
+ * <p>
+ * Writers must hold the lock of the owning {@link ManifestDatabase}. The index is not available (and must not be trusted) as
+ * long as the file does not exist, see {@link ManifestDatabase#rebuildIndex()}.
+ */
+class ManifestIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ManifestIndex.class);
+
+    private static final String HEADER_PREFIX = "BHMI1 ";
+    private static final int HEADER_LENGTH = HEADER_PREFIX.length() + 36 + 1;
+
+    private static final char RECORD_ADD = '+';
+    private static final char RECORD_REMOVE = '-';
+    private static final char SEPARATOR = '\t';
+
+    /** minimum amount of records before compacting the file at all */
+    private static final long COMPACT_THRESHOLD = 10_000;
+
+    private final Path file;
+    private final Path tmp;
+
+    private final NavigableMap<Manifest.Key, ObjectId> entries = new TreeMap<>();
+    private final NavigableMap<String, TagInfo> tags = new TreeMap<>();
+    private String generation;
+    private long offset;
+    private long records;
+
+    /**
+     * @param file the file holding the index.
+     * @param tmp directory for temporary files, must be on the same file system as the index.
+     */
+    ManifestIndex(Path file, Path tmp) {
+        this.file = file;
+        this.tmp = tmp;
+    }
+
+    /**
+     * @return whether the index exists and can be used to answer queries. Catches up with changes done by other processes.
+     */
+    synchronized boolean isAvailable() {
+        try {
+            refresh();
+        } catch (IOException e) {
+            log.debug("Cannot refresh manifest index {}", file, e);
+            generation = null;
+        }
+        return generation != null;
+    }
+
+    /**
+     * @return all {@link Manifest.Key}s in the index. Only valid if {@link #isAvailable()} returned <code>true</code> before.
+     */
+    synchronized SortedSet<Manifest.Key> getAll() {
+        return new TreeSet<>(entries.keySet());
+    }
+
+    /**
+     * @param name complete name segments of the manifests to find, e.g. 'my/manifest' matches 'my/manifest' and
+     *            'my/manifest/name', but not 'my/manifestname'.
+     * @return all {@link Manifest.Key}s with the given name (prefix). Only valid if {@link #isAvailable()} returned
+     *         <code>true</code> before.
+     */
+    synchronized SortedSet<Manifest.Key> getAllForName(String name) {
+        SortedSet<Manifest.Key> result = new TreeSet<>();
+        if (name.isEmpty()) {
+            result.addAll(entries.keySet());
+            return result;
+        }
+
+        // all names which start with the given one are in this range, but also some which only share a prefix.
+        Manifest.Key from = new Manifest.Key(name, "");
+        Manifest.Key to = new Manifest.Key(name + (char) ('/' + 1), "");
+        for (Manifest.Key key : entries.subMap(from, true, to, false).keySet()) {
+            if (key.getName().length() == name.length() || key.getName().charAt(name.length()) == '/') {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param key the manifest to look up.
+     * @return the root tree of the given manifest, or <code>null</code> if it is not in the index. Only valid if
+     *         {@link #isAvailable()} returned <code>true</code> before.
+     */
+    synchronized ObjectId getRoot(Manifest.Key key) {
+        return entries.get(key);
+    }
+
+    /**
+     * @param name complete name segments of the manifests to inspect, see {@link #getAllForName(String)}.
+     * @return the highest tag of all matching manifests, if all of them use numeric tags. Only valid if {@link #isAvailable()}
+     *         returned <code>true</code> before.
+     */
+    synchronized Optional<Long> getMaxId(String name) {
+        Long max = null;
+        for (Map.Entry<String, TagInfo> entry : tags.subMap(name, true, name + (char) ('/' + 1), false).entrySet()) {
+            String current = entry.getKey();
+            if (current.length() != name.length() && current.charAt(name.length()) != '/') {
+                continue;
+            }
+
+            TagInfo info = entry.getValue();
+            if (info.nonNumeric > 0) {
+                return Optional.empty();
+            }
+            if (max == null || info.max > max) {
+                max = info.max;
+            }
+        }
+        return Optional.ofNullable(max);
+    }
+
+    /**
+     * Reads the records appended to the index after the given position, which turns the index into a change journal. The
+     * generation identifies the journal, and the position in the file serves as cursor. Compacting the index starts a new
+     * journal, invalidating all previous cursors.
+     *
+     * @param journal the generation the cursor was obtained for.
+     * @param cursor the position in the index file to continue reading at.
+     * @param maxBytes the maximum amount of bytes to read at once.
+     * @return the changes since the cursor, or <code>null</code> if the index is not available.
+     */
+    synchronized ManifestChanges getChanges(String journal, long cursor, int maxBytes) throws IOException {
+        refresh();
+        if (generation == null) {
+            return null;
+        }
+
+        ManifestChanges result = new ManifestChanges();
+        result.journal = generation;
+        result.cursor = offset;
+        if (!generation.equals(journal) || cursor < HEADER_LENGTH || cursor > offset) {
+            return result;
+        }
+
+        result.complete = true;
+        if (cursor == offset) {
+            return result;
+        }
+
+        ByteBuffer buffer;
+        int end;
+        int length = (int) Math.min(offset - cursor, maxBytes);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (true) {
+                buffer = ByteBuffer.allocate(length);
+                readFully(channel, buffer, cursor);
+                end = getRecordsEnd(buffer);
+                if (end > 0 || length >= offset - cursor) {
+                    break;
+                }
+
+                // a single record exceeds the limit, but at least one record must be returned to make progress.
+                length = (int) Math.min(offset - cursor, length * 2l);
+            }
+        }
+
+        if (end == 0) {
+            log.warn("No complete record in manifest index {} at {}, journal needs to be read again", file, cursor);
+            result.complete = false;
+            return result;
+        }
+
+        // only the last record for each manifest is relevant.
+        Map<Manifest.Key, Boolean> changes = new LinkedHashMap<>();
+        byte[] data = buffer.array();
+        int start = 0;
+        for (int i = 0; i < end; ++i) {
+            if (data[i] == '\n') {
+                Record record = parse(new String(data, start, i - start, StandardCharsets.UTF_8));
+                if (record != null) {
+                    changes.remove(record.key);
+                    changes.put(record.key, record.root != null);
+                }
+                start = i + 1;
+            }
+        }
+
+        changes.forEach((k, v) -> (Boolean.TRUE.equals(v) ? result.added : result.removed).add(k));
+        result.cursor = cursor + end;
+        result.more = result.cursor < offset;
+        return result;
+    }
+
+    /**
+     * @return the amount of bytes in the buffer up to and including the last complete record.
+     */
+    private static int getRecordsEnd(ByteBuffer buffer) {
+        byte[] data = buffer.array();
+        for (int i = buffer.position() - 1; i >= 0; --i) {
+            if (data[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Records the given manifest as present. The caller must hold the lock of the {@link ManifestDatabase}.
+     */
+    synchronized void add(Manifest.Key key, ObjectId root) throws IOException {
+        append(addRecord(key, root));
+    }
+
+    /**
+     * Records the given manifest as removed. The caller must hold the lock of the {@link ManifestDatabase}.
+     */
+    synchronized void remove(Manifest.Key key) throws IOException {
+        append(RECORD_REMOVE + key.getName() + SEPARATOR + key.getTag() + '\n');
+    }
+
+    /**
+     * Replaces the whole index with the given content. The caller must hold the lock of the {@link ManifestDatabase}.
+     *
+     * @param manifests all manifests along with their root trees.
+     */
+    synchronized void rebuild(Map<Manifest.Key, ObjectId> manifests) throws IOException {
+        String newGeneration = UUID.randomUUID().toString();
+
+        Path tmpFile = Files.createTempFile(tmp, "mi-", ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                writer.write(HEADER_PREFIX + newGeneration + '\n');
+                for (Map.Entry<Manifest.Key, ObjectId> entry : manifests.entrySet()) {
+                    writer.write(addRecord(entry.getKey(), entry.getValue()));
+                }
+            }
+            long length = Files.size(tmpFile);
+            PathHelper.moveRetry(tmpFile, file, StandardCopyOption.ATOMIC_MOVE);
+
+            clear();
+            manifests.forEach(this::put);
+            generation = newGeneration;
+            offset = length;
+            records = manifests.size();
+        } catch (Throwable t) {
+            PathHelper.deleteIfExistsRetry(tmpFile);
+            throw t;
+        }
+    }
+
+    private static String addRecord(Manifest.Key key, ObjectId root) {
+        return RECORD_ADD + key.getName() + SEPARATOR + key.getTag() + SEPARATOR + root.getId() + '\n';
+    }
+
+    private void append(String record) throws IOException {
+        refresh();
+        if (generation == null) {
+            return; // not available, nothing to update.
+        }
+
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // drop incomplete records, e.g. after a crash while appending.
+            channel.truncate(offset);
+            channel.write(ByteBuffer.wrap(bytes), offset);
+        }
+        offset += bytes.length;
+        records++;
+        apply(record);
+
+        if (records > COMPACT_THRESHOLD && records > entries.size() * 2l) {
+            rebuild(new TreeMap<>(entries));
+        }
+    }
+
+    /**
+     * Loads the index file if it has been replaced, or reads records appended since the last refresh.
+     */
+    private void refresh() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(channel, header, 0);
+            String current = new String(header.array(), 0, header.position(), StandardCharsets.UTF_8);
+            if (header.hasRemaining() || !current.startsWith(HEADER_PREFIX) || !current.endsWith("\n")) {
+                log.warn("Invalid manifest index {}, needs to be rebuilt", file);
+                generation = null;
+                clear();
+                return;
+            }
+
+            current = current.substring(HEADER_PREFIX.length(), HEADER_LENGTH - 1);
+            if (!current.equals(generation)) {
+                clear();
+                generation = current;
+                offset = HEADER_LENGTH;
+                records = 0;
+            }
+
+            long size = channel.size();
+            if (size <= offset) {
+                return;
+            }
+
+            ByteBuffer tail = ByteBuffer.allocate((int) (size - offset));
+            readFully(channel, tail, offset);
+
+            byte[] data = tail.array();
+            int start = 0;
+            for (int i = 0; i < tail.position(); ++i) {
+                if (data[i] == '\n') {
+                    apply(new String(data, start, i - start + 1, StandardCharsets.UTF_8));
+                    records++;
+                    start = i + 1;
+                }
+            }
+            offset += start;
+        } catch (NoSuchFileException e) {
+            generation = null;
+            clear();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                return;
+            }
+        }
+    }
+
+    private void put(Manifest.Key key, ObjectId root) {
+        if (entries.put(key, root) == null) {
+            tags.computeIfAbsent(key.getName(), n -> new TagInfo()).add(key.getTag());
+        }
+    }
+
+    private void delete(Manifest.Key key) {
+        if (entries.remove(key) == null) {
+            return;
+        }
+
+        TagInfo info = tags.get(key.getName());
+        if (!info.remove(key.getTag())) {
+            return;
+        }
+
+        // the highest tag has been removed, find the new one (or none).
+        NavigableMap<Manifest.Key, ObjectId> same = entries.subMap(new Manifest.Key(key.getName(), ""), true,
+                new Manifest.Key(key.getName() + '\0', ""), false);
+        if (same.isEmpty()) {
+            tags.remove(key.getName());
+        } else {
+            TagInfo updated = new TagInfo();
+            same.keySet().forEach(k -> updated.add(k.getTag()));
+            tags.put(key.getName(), updated);
+        }
+    }
+
+    private void clear() {
+        entries.clear();
+        tags.clear();
+    }
+
+    private void apply(String line) {
+        Record record = parse(line.substring(0, line.length() - 1));
+        if (record == null) {
+            log.warn("Ignoring invalid record in manifest index {}: {}", file, line.trim());
+        } else if (record.root != null) {
+            put(record.key, record.root);
+        } else {
+            delete(record.key);
+        }
+    }
+
+    /**
+     * @param line a single record without the trailing line break.
+     * @return the parsed record, or <code>null</code> if the record is invalid.
+     */
+    private static Record parse(String line) {
+        if (line.isEmpty()) {
+            return null;
+        }
+
+        String[] parts = line.substring(1).split(String.valueOf(SEPARATOR));
+        char op = line.charAt(0);
+        if (op == RECORD_ADD && parts.length == 3) {
+            ObjectId root = ObjectId.parse(parts[2]);
+            return root == null ? null : new Record(new Manifest.Key(parts[0], parts[1]), root);
+        } else if (op == RECORD_REMOVE && parts.length == 2) {
+            return new Record(new Manifest.Key(parts[0], parts[1]), null);
+        }
+        return null;
+    }
+
+    /**
+     * A single record of the index file.
+     */
+    private static final class Record {
+
+        private final Manifest.Key key;
+
+        /** The root tree of an added manifest, <code>null</code> if the manifest has been removed */
+        private final ObjectId root;
+
+        private Record(Manifest.Key key, ObjectId root) {
+            this.key = key;
+            this.root = root;
+        }
+    }
+
+    /**
+     * Tracks the highest numeric tag of all manifests with a certain name, so that it does not need to be calculated from
+     * all existing tags on each query.
+     */
+    private static final class TagInfo {
+
+        private long max = Long.MIN_VALUE;
+        private int numeric;
+        private int nonNumeric;
+
+        void add(String tag) {
+            try {
+                max = Math.max(max, Long.parseLong(tag));
+                numeric++;
+            } catch (NumberFormatException e) {
+                nonNumeric++;
+            }
+        }
+
+        /**
+         * @return whether the highest tag (or the last numeric one) has been removed and {@link #max} needs to be re-calculated.
+         */
+        boolean remove(String tag) {
+            try {
+                long value = Long.parseLong(tag);
+                numeric--;
+                return value == max || numeric == 0;
+            } catch (NumberFormatException e) {
+                nonNumeric--;
+                return numeric == 0 && nonNumeric == 0;
+            }
+        }
+    }
+
+}
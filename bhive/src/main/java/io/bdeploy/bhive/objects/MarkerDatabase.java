@@ -21,7 +21,7 @@ import io.bdeploy.common.util.PathHelper;
 public class MarkerDatabase extends ObjectDatabase {
 
     public MarkerDatabase(Path root, ActivityReporter reporter) {
-        super(root, root.resolve("tmp"), reporter, null);
+        super(root, root.resolve("tmp"), reporter, null, false);
     }
 
     /**
@@ -34,7 +34,7 @@ public class MarkerDatabase extends ObjectDatabase {
             return;
         }
 
-        locked(() -> {
+        locked(id, () -> {
             if (hasObject(id)) {
                 return;
             }
@@ -48,6 +48,13 @@ public class MarkerDatabase extends ObjectDatabase {
         });
     }
 
+    /**
+     * Removes the marker for the given {@link ObjectId} if present.
+     */
+    public void removeMarker(ObjectId id) {
+        locked(id, () -> PathHelper.deleteIfExistsRetry(getObjectFile(id)));
+    }
+
     @Override
     public InputStream getStream(ObjectId id) throws IOException {
         throw new UnsupportedOperationException("Marker-only Database");
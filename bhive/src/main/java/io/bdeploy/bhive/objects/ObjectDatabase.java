@@ -6,15 +6,31 @@ package io.bdeploy.bhive.objects;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,6 +39,7 @@ import org.slf4j.LoggerFactory;
 
 import io.bdeploy.bhive.BHiveTransactions;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
 import io.bdeploy.common.ActivityReporter;
 import io.bdeploy.common.ActivityReporter.Activity;
 import io.bdeploy.common.util.PathHelper;
@@ -37,6 +54,14 @@ import io.bdeploy.common.util.PathHelper;
  * to determine the target directory. Two levels of directories are used. The first level is based on the first two characters and
  * the second level on the next two characters.
  * </p>
+ * <p>
+ * Optionally, objects can be moved into append-only pack files by {@link #repack(long, Activity)}, see {@link PackStore}. Packed
+ * objects are transparently available through the same API as loose objects. New objects are always added as loose files first.
+ * </p>
+ * <p>
+ * Presence of objects is tracked in a {@link PresenceIndex} if available, so that existence checks do not need to touch the file
+ * system. The index is created for new databases, and (re-)built for existing ones by {@link #rebuildPresenceIndex()}.
+ * </p>
  */
 public class ObjectDatabase extends LockableDatabase {
 
@@ -49,10 +74,29 @@ public class ObjectDatabase extends LockableDatabase {
      */
     static final long MAX_BUFFER_SIZE = 10l * 1024l * 1024l; // 10M
 
+    /**
+     * The amount of objects moved into a pack while holding the database lock once.
+     */
+    private static final int REPACK_BATCH_SIZE = 256;
+
+    private static final String PACK_DIR = "packs";
+    private static final String PRESENCE_DIR = "presence";
+
+    /** Appended to a shard prefix to form the lowest {@link ObjectId} in the shard */
+    private static final String SHARD_SUFFIX = "0".repeat(36);
+
     private final Path root;
     private final Path tmp;
     private final ActivityReporter reporter;
     private final BHiveTransactions transactions;
+    private final Path packRoot;
+    private volatile PackStore packs;
+    private final Path presenceRoot;
+    private volatile PresenceIndex presence;
+
+    /** Changes waiting to be recorded in the {@link PresenceIndex}, see {@link #recordPresence(ObjectId, boolean)} */
+    private final Queue<PendingChange> pendingChanges = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock presenceCommit = new ReentrantLock();
 
     /**
      * Create a new {@link ObjectDatabase} at the given root. The database is not
@@ -64,14 +108,42 @@ public class ObjectDatabase extends LockableDatabase {
      *            running operations.
      */
     public ObjectDatabase(Path root, Path tmp, ActivityReporter reporter, BHiveTransactions transactions) {
+        this(root, tmp, reporter, transactions, true);
+    }
+
+    /**
+     * @param indexed whether to track presence of objects in a {@link PresenceIndex}. The index is only available on the
+     *            default file system.
+     */
+    protected ObjectDatabase(Path root, Path tmp, ActivityReporter reporter, BHiveTransactions transactions, boolean indexed) {
         super(root);
         this.root = root;
         this.tmp = tmp;
         this.reporter = reporter;
         this.transactions = transactions;
+        this.packRoot = root.resolve(PACK_DIR);
+        this.presenceRoot = indexed && root.getFileSystem() == FileSystems.getDefault() ? root.resolve(PRESENCE_DIR) : null;
 
+        boolean created = false;
         if (!PathHelper.exists(root)) {
             PathHelper.mkdirs(root);
+            created = true;
+        }
+
+        if (PathHelper.exists(packRoot)) {
+            this.packs = new PackStore(packRoot);
+        }
+
+        if (presenceRoot != null && (created || PathHelper.exists(presenceRoot))) {
+            this.presence = new PresenceIndex(presenceRoot);
+            if (created) {
+                // a new database is empty, so there is no need to scan for existing objects.
+                locked(() -> {
+                    if (!presence.isAvailable()) {
+                        presence.rebuild(Collections.emptySortedSet());
+                    }
+                });
+            }
         }
 
         if (!PathHelper.exists(tmp)) {
@@ -91,6 +163,14 @@ public class ObjectDatabase extends LockableDatabase {
         if (!hasObject(id)) {
             throw new IllegalStateException("Missing object: " + id);
         }
+
+        PackStore p = getPacks();
+        if (p != null) {
+            InputStream packed = p.getStream(id);
+            if (packed != null) {
+                return packed;
+            }
+        }
         return Files.newInputStream(getObjectFile(id));
     }
 
@@ -102,7 +182,59 @@ public class ObjectDatabase extends LockableDatabase {
      * @return <code>true</code> if it exists, <code>false</code> otherwise.
      */
     public boolean hasObject(ObjectId id) {
-        return PathHelper.exists(getObjectFile(id));
+        PresenceIndex index = presence;
+        if (index != null && index.isAvailable()) {
+            return index.contains(id);
+        }
+        return existsOnDisc(id);
+    }
+
+    /**
+     * Checks whether the object with the given {@link ObjectId} exists on disc, bypassing the {@link PresenceIndex}.
+     */
+    private boolean existsOnDisc(ObjectId id) {
+        if (packs != null && packs.contains(id)) {
+            return true;
+        }
+
+        if (PathHelper.exists(getObjectFile(id))) {
+            return true;
+        }
+
+        // the object might have been packed by someone else (even another process) in the meantime.
+        PackStore p = getPacks();
+        if (p == null) {
+            return false;
+        }
+        p.refresh();
+        return p.contains(id);
+    }
+
+    /**
+     * @return the {@link PackStore} of this database, <code>null</code> if no packs exist (yet).
+     */
+    private synchronized PackStore getPacks() {
+        if (packs == null && PathHelper.exists(packRoot)) {
+            packs = new PackStore(packRoot);
+        }
+        return packs;
+    }
+
+    /**
+     * @return the {@link PresenceIndex} of this database, <code>null</code> if presence is not (yet) tracked.
+     */
+    private synchronized PresenceIndex getPresence() {
+        if (presence == null && presenceRoot != null && PathHelper.exists(presenceRoot)) {
+            presence = new PresenceIndex(presenceRoot);
+        }
+        return presence;
+    }
+
+    /**
+     * @return whether this database stores objects in packs.
+     */
+    public boolean isPacked() {
+        return getPacks() != null;
     }
 
     /**
@@ -179,13 +311,23 @@ public class ObjectDatabase extends LockableDatabase {
                 transactions.touchObject(id);
             }
 
-            locked(() -> {
-                if (hasObject(id)) {
-                    return;
-                }
+            // the index is not trusted here, a stale entry must never lead to a missing object. Existing objects need no lock, a
+            // concurrent removal is no different from a later one.
+            PresenceIndex index = getPresence();
+            boolean recorded = index == null || (index.isAvailable() && index.contains(id));
+            if (recorded && existsOnDisc(id)) {
+                return id;
+            }
 
-                PathHelper.mkdirs(target.getParent());
-                PathHelper.moveRetry(tmpFile, target);
+            // checked, moved and recorded under the same lock as removals, so the index never records a removed object.
+            locked(id, () -> {
+                if (!existsOnDisc(id)) {
+                    PathHelper.mkdirs(target.getParent());
+                    PathHelper.moveRetry(tmpFile, target);
+                }
+                if (!recorded) {
+                    recordPresence(id, true);
+                }
             });
             return id;
         } finally {
@@ -197,6 +339,43 @@ public class ObjectDatabase extends LockableDatabase {
         }
     }
 
+    /**
+     * Records a change in the {@link PresenceIndex}. Concurrent changes are committed together, holding the journal lock only
+     * once for all of them. The whole database is not locked, so other writers are not blocked.
+     */
+    private void recordPresence(ObjectId id, boolean present) {
+        PresenceIndex index = getPresence();
+        if (index == null) {
+            return;
+        }
+
+        PendingChange pending = new PendingChange(new PresenceIndex.Change(id, present));
+        pendingChanges.add(pending);
+
+        presenceCommit.lock();
+        try {
+            if (!pending.done) {
+                List<PendingChange> batch = new ArrayList<>();
+                for (PendingChange next = pendingChanges.poll(); next != null; next = pendingChanges.poll()) {
+                    batch.add(next);
+                }
+
+                try {
+                    lockedJournal(() -> index.record(batch.stream().map(c -> c.change).collect(Collectors.toList())));
+                } catch (RuntimeException e) {
+                    batch.forEach(c -> c.failure = e);
+                }
+                batch.forEach(c -> c.done = true);
+            }
+        } finally {
+            presenceCommit.unlock();
+        }
+
+        if (pending.failure != null) {
+            throw pending.failure;
+        }
+    }
+
     /**
      * Verifies that a given {@link ObjectId}s backing file still hashes to the
      * given {@link ObjectId}. This can be used to detect corruption of objects.
@@ -215,17 +394,33 @@ public class ObjectDatabase extends LockableDatabase {
      */
     public void removeObject(ObjectId id) {
         Path file = getObjectFile(id);
-        locked(() -> {
-            if (!hasObject(id)) {
-                return;
-            }
+        locked(id, () -> {
             PathHelper.deleteIfExistsRetry(file);
+            recordRemoval(id);
         });
+
+        // the loose file is gone, so the object can only still exist in a pack, which is shared by all objects.
+        PackStore p = getPacks();
+        if (p != null && existsOnDisc(id)) {
+            locked(() -> p.remove(Collections.singleton(id)));
+            locked(id, () -> recordRemoval(id));
+        }
+    }
+
+    /**
+     * Records the removal of the given object once it is gone. Must be called holding the stripe lock of the object, which
+     * inserts hold as well, so an object inserted again in the meantime is not recorded as removed.
+     */
+    private void recordRemoval(ObjectId id) {
+        if (!existsOnDisc(id)) {
+            recordPresence(id, false);
+        }
     }
 
     /**
-     * Calculate the {@link Path} where a certain {@link ObjectId} can be found in
-     * the database. Use with caution.
+     * Calculate the {@link Path} where a certain {@link ObjectId} is stored as loose
+     * file in the database. Use with caution, the file does not exist in case the
+     * object is packed, see {@link #getLooseObjectFile(ObjectId)}.
      */
     public Path getObjectFile(ObjectId id) {
         String rawId = id.getId();
@@ -234,13 +429,284 @@ public class ObjectDatabase extends LockableDatabase {
         return root.resolve(root.getFileSystem().getPath(l1, l2, rawId));
     }
 
+    /**
+     * Creates a new temporary file in the temporary directory of this {@link ObjectDatabase}. The caller is responsible for
+     * deleting it.
+     */
+    public Path createTempFile(String prefix, String suffix) throws IOException {
+        return Files.createTempFile(tmp, prefix, suffix);
+    }
+
     /**
      * Retrieve the file size for the file backing {@link ObjectId}.
      */
     public long getObjectSize(ObjectId id) throws IOException {
+        PackStore p = getPacks();
+        if (p != null) {
+            long size = p.getSize(id);
+            if (size >= 0) {
+                return size;
+            }
+        }
         return Files.size(getObjectFile(id));
     }
 
+    /**
+     * Retrieve a loose file backing the given {@link ObjectId}. In case the object is
+     * only available in a pack, it is extracted to its loose location first. The
+     * returned file is never removed by {@link #repack(long, Activity)}.
+     */
+    public Path getLooseObjectFile(ObjectId id) throws IOException {
+        Path file = getObjectFile(id);
+        if (PathHelper.exists(file)) {
+            return file;
+        }
+
+        PackStore p = getPacks();
+        if (p == null || !p.contains(id)) {
+            throw new IllegalStateException("Missing object: " + id);
+        }
+
+        Path tmpFile = Files.createTempFile(this.tmp, "obj", ".tmp");
+        try {
+            try (InputStream is = p.getStream(id)) {
+                ObjectId extracted = ObjectId.createByCopy(is, tmpFile);
+                if (!extracted.equals(id)) {
+                    throw new IOException("Packed object corruption: " + id + " (is " + extracted + "), run FSCK");
+                }
+            }
+            locked(id, () -> {
+                if (PathHelper.exists(file)) {
+                    return;
+                }
+                PathHelper.mkdirs(file.getParent());
+                PathHelper.moveRetry(tmpFile, file);
+            });
+            return file;
+        } finally {
+            PathHelper.deleteIfExistsRetry(tmpFile);
+        }
+    }
+
+    /**
+     * Moves loose objects into append-only pack files. Packing is enabled for this database if it is not already. Afterwards,
+     * the space of objects removed from packs is reclaimed by moving the remaining objects of the affected packs into a new
+     * pack.
+     * <p>
+     * Objects are moved in small batches, each holding the database lock only briefly. Readers are never blocked, as the loose
+     * file is only removed after the packed copy and its index record are synced to disc.
+     *
+     * @param maxObjectSize objects larger than this are kept as loose files.
+     * @param activity used to report progress and check for cancellation.
+     * @return the number of objects that have been moved into packs.
+     */
+    public long repack(long maxObjectSize, Activity activity) throws IOException {
+        if (root.getFileSystem() != FileSystems.getDefault()) {
+            log.info("Not packing {}, packing is only supported on the default file system", root);
+            return 0;
+        }
+
+        PathHelper.mkdirs(packRoot);
+        PackStore p = getPacks();
+
+        List<ObjectId> candidates = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.filter(f -> !f.startsWith(packRoot)).filter(Files::isRegularFile).forEach(f -> {
+                ObjectId id = ObjectId.parse(f.getFileName().toString());
+                if (id != null && !p.contains(id)) {
+                    candidates.add(id);
+                }
+            });
+        }
+
+        long packed = 0;
+        for (int i = 0; i < candidates.size(); i += REPACK_BATCH_SIZE) {
+            List<ObjectId> batch = candidates.subList(i, Math.min(candidates.size(), i + REPACK_BATCH_SIZE));
+            packed += repackBatch(p, batch, maxObjectSize);
+            activity.workAndCancelIfRequested(batch.size());
+        }
+
+        AtomicReference<SortedSet<Integer>> reclaimable = new AtomicReference<>();
+        locked(() -> reclaimable.set(p.getReclaimablePacks()));
+        for (int pack : reclaimable.get()) {
+            reclaimPack(p, pack, activity);
+        }
+        return packed;
+    }
+
+    /**
+     * Moves all objects of the given pack into another pack in batches, and deletes the pack once it is empty.
+     */
+    private void reclaimPack(PackStore p, int pack, Activity activity) {
+        AtomicLong moved = new AtomicLong();
+        AtomicBoolean done = new AtomicBoolean();
+        while (!done.get()) {
+            AtomicInteger batchSize = new AtomicInteger();
+            locked(() -> {
+                // re-evaluated each time, objects might have been removed or added by others meanwhile.
+                List<ObjectId> remaining = p.getObjects(pack);
+                if (remaining.isEmpty()) {
+                    deletePack(p, pack);
+                    done.set(true);
+                    return;
+                }
+
+                List<ObjectId> batch = remaining.subList(0, Math.min(remaining.size(), REPACK_BATCH_SIZE));
+                Map<ObjectId, byte[]> content = new LinkedHashMap<>();
+                long contentSize = 0;
+                for (ObjectId id : batch) {
+                    byte[] bytes;
+                    try (InputStream is = p.getStream(id)) {
+                        bytes = is.readAllBytes();
+                    }
+                    if (!ObjectId.create(bytes, 0, bytes.length).equals(id)) {
+                        log.warn("Moving damaged packed object {}, run FSCK", id);
+                    }
+                    content.put(id, bytes);
+                    contentSize += bytes.length;
+
+                    if (contentSize >= MAX_BUFFER_SIZE) {
+                        p.append(content, pack);
+                        content.clear();
+                        contentSize = 0;
+                    }
+                }
+                p.append(content, pack);
+                batchSize.set(batch.size());
+            });
+            moved.addAndGet(batchSize.get());
+            activity.workAndCancelIfRequested(batchSize.get());
+        }
+        log.info("Reclaimed pack {} of {}, moved {} objects", pack, root, moved.get());
+    }
+
+    private void deletePack(PackStore p, int pack) {
+        try {
+            p.deletePack(pack);
+        } catch (IOException e) {
+            // e.g. still opened by readers on Windows. the empty pack is reclaimable, so deleting is retried on the next repack.
+            log.warn("Cannot delete reclaimed pack {} of {}", pack, root, e);
+        }
+    }
+
+    private long repackBatch(PackStore p, List<ObjectId> batch, long maxObjectSize) {
+        AtomicLong packed = new AtomicLong();
+        locked(() -> {
+            Map<ObjectId, byte[]> content = new LinkedHashMap<>();
+            long contentSize = 0;
+            for (ObjectId id : batch) {
+                Path file = getObjectFile(id);
+                if (p.contains(id) || !PathHelper.exists(file) || Files.size(file) > maxObjectSize) {
+                    continue; // removed, packed or too large in the meantime
+                }
+
+                byte[] bytes = Files.readAllBytes(file);
+                if (!ObjectId.create(bytes, 0, bytes.length).equals(id)) {
+                    log.warn("Not packing damaged object {}, run FSCK", id);
+                    continue;
+                }
+                content.put(id, bytes);
+                contentSize += bytes.length;
+
+                if (contentSize >= MAX_BUFFER_SIZE) {
+                    packed.addAndGet(appendToPack(p, content));
+                    contentSize = 0;
+                }
+            }
+            packed.addAndGet(appendToPack(p, content));
+        });
+        return packed.get();
+    }
+
+    private int appendToPack(PackStore p, Map<ObjectId, byte[]> content) throws IOException {
+        p.append(content);
+
+        for (ObjectId id : content.keySet()) {
+            try {
+                PathHelper.deleteIfExistsRetry(getObjectFile(id));
+            } catch (Exception e) {
+                // the packed copy takes precedence, the loose one is just a duplicate now.
+                log.debug("Cannot remove loose object {} after packing", id, e);
+            }
+        }
+
+        int count = content.size();
+        content.clear();
+        return count;
+    }
+
+    /**
+     * (Re-)builds the {@link PresenceIndex} from the objects currently present on disc. This enables the index for databases
+     * which have been created without it.
+     * <p>
+     * Objects are listed without holding the database lock. Changes done concurrently are recorded in the index journal and
+     * applied afterwards.
+     *
+     * @return the number of objects in the index, or <code>-1</code> if the index is not supported by this database.
+     */
+    public long rebuildPresenceIndex() throws IOException, InterruptedException {
+        if (presenceRoot == null) {
+            return -1;
+        }
+
+        PathHelper.mkdirs(presenceRoot);
+        PresenceIndex index = getPresence();
+
+        AtomicReference<PresenceIndex.Mark> mark = new AtomicReference<>();
+        locked(() -> mark.set(index.mark()));
+
+        SortedSet<ObjectId> objects = getAllObjects(TreeSet::new);
+        AtomicLong count = new AtomicLong();
+        locked(() -> {
+            if (index.rebuild(mark.get(), objects)) {
+                count.set(objects.size());
+                return;
+            }
+
+            // the index has been compacted concurrently, list again while holding the lock.
+            SortedSet<ObjectId> current = getAllObjects();
+            index.rebuild(current);
+            count.set(current.size());
+        });
+        return count.get();
+    }
+
+    /**
+     * Lists all objects in a single shard of the database. A shard contains all objects whose {@link ObjectId} starts with the
+     * given four character prefix, which is also the two levels of directories that loose objects of the shard are stored in.
+     * This is much cheaper than {@link #getAllObjects()} when processing only a part of the database.
+     *
+     * @param prefix the four lower case hexadecimal characters identifying the shard.
+     * @throws IOException in case of an error.
+     */
+    public Set<ObjectId> getShardObjects(String prefix) throws IOException {
+        if (prefix.length() != 4) {
+            throw new IllegalArgumentException("Invalid shard: " + prefix);
+        }
+
+        Set<ObjectId> result = new ObjectIdSet();
+        Path dir = root.resolve(root.getFileSystem().getPath(prefix.substring(0, 2), prefix.substring(2, 4)));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                ObjectId id = ObjectId.parse(file.getFileName().toString());
+                if (id != null) {
+                    result.add(id);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // no loose objects in this shard.
+        }
+
+        PackStore p = getPacks();
+        if (p != null) {
+            p.refresh();
+            int next = Integer.parseInt(prefix, 16) + 1;
+            ObjectId to = next > 0xFFFF ? null : ObjectId.parse(String.format("%04x", next) + SHARD_SUFFIX);
+            p.addRangeTo(ObjectId.parse(prefix + SHARD_SUFFIX), to, result);
+        }
+        return result;
+    }
+
     /**
      * Scan for and retrieve all objects in the database. This is potentially an
      * expensive operation, as object presence is not cached.
@@ -249,14 +715,32 @@ public class ObjectDatabase extends LockableDatabase {
      * @throws InterruptedException when interrupted.
      */
     public SortedSet<ObjectId> getAllObjects() throws IOException, InterruptedException {
+        return getAllObjects(TreeSet::new);
+    }
+
+    /**
+     * Scan for and retrieve all objects in the database into a collection created by the given factory. This allows using
+     * compact collections like {@link ObjectIdSet} for very large databases.
+     *
+     * @throws IOException in case of an error.
+     * @throws InterruptedException when interrupted.
+     */
+    public <T extends Collection<ObjectId>> T getAllObjects(Supplier<T> factory) throws IOException, InterruptedException {
         try (Activity scan = reporter.start("Listing Objects", 0)) {
             long xctpCount = 0;
             do {
                 try {
                     try (Stream<Path> walk = Files.walk(root)) {
-                        return walk.filter(Files::isRegularFile).map(Path::getFileName).map(Object::toString).map(ObjectId::parse)
-                                .filter(Objects::nonNull).peek(e -> scan.workAndCancelIfRequested(1))
-                                .collect(Collectors.toCollection(TreeSet::new));
+                        T result = walk.filter(Files::isRegularFile).map(Path::getFileName).map(Object::toString)
+                                .map(ObjectId::parse).filter(Objects::nonNull).peek(e -> scan.workAndCancelIfRequested(1))
+                                .collect(Collectors.toCollection(factory));
+
+                        PackStore p = getPacks();
+                        if (p != null) {
+                            p.refresh();
+                            p.addAllTo(result);
+                        }
+                        return result;
                     } catch (UncheckedIOException e) {
                         // something was removed in the middle of the walk... retry.
                         if (!(e.getCause() instanceof NoSuchFileException) || xctpCount++ > 20) {
@@ -265,7 +749,7 @@ public class ObjectDatabase extends LockableDatabase {
                     }
                 } catch (NoSuchFileException e) {
                     // this happens if the path does not exist at all anymore, so there are zero objects.
-                    return Collections.emptySortedSet();
+                    return factory.get();
                 }
 
                 // Delay the loop a little
@@ -274,4 +758,18 @@ public class ObjectDatabase extends LockableDatabase {
         }
     }
 
+    /**
+     * A change waiting to be committed to the {@link PresenceIndex}.
+     */
+    private static final class PendingChange {
+
+        final PresenceIndex.Change change;
+        boolean done;
+        RuntimeException failure;
+
+        PendingChange(PresenceIndex.Change change) {
+            this.change = change;
+        }
+    }
+
 }
@@ -19,14 +19,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -64,6 +70,9 @@ public class ObjectManager {
 
     private static final Logger log = LoggerFactory.getLogger(ObjectManager.class);
 
+    /** The maximum amount of trees and manifests prefetched for a single scan */
+    private static final int MAX_PREFETCHED = 10_000;
+
     private final ObjectDatabase db;
     private final ManifestDatabase mdb;
     private final ActivityReporter reporter;
@@ -80,6 +89,11 @@ public class ObjectManager {
      */
     private final Cache<ObjectId, Object> objectCache = CacheBuilder.newBuilder().maximumSize(10_000).build();
 
+    /**
+     * Objects whose files have been verified when exporting without streaming, so that each object is hashed only once.
+     */
+    private final Cache<ObjectId, Boolean> verifiedObjectFiles = CacheBuilder.newBuilder().maximumSize(100_000).build();
+
     /**
      * Creates a new {@link ObjectManager}. The manager itself has no state. It only
      * provides operations on the underlying {@link ObjectDatabase}
@@ -189,8 +203,25 @@ public class ObjectManager {
      *            export of manifest reference in place).
      */
     public void exportTree(ObjectId tree, Path location, ReferenceHandler handler) {
+        exportTree(tree, location, handler, ExportMode.COPY);
+    }
+
+    /**
+     * Exports a given tree (by {@link ObjectId}) to the given location, which must
+     * not exist yet.
+     *
+     * @param tree the {@link ObjectId} of the {@link Tree} to write
+     * @param location the target {@link Path} to create
+     * @param handler a custom reference handler which takes care of references. If not set, the default will be used (inline
+     *            export of manifest reference in place, using the same mode).
+     * @param mode how to create the files in the target location.
+     */
+    public void exportTree(ObjectId tree, Path location, ReferenceHandler handler, ExportMode mode) {
         if (handler == null) {
-            handler = new DefaultReferenceHandler(this);
+            handler = new DefaultReferenceHandler(this, mode);
+        }
+        if (mode != ExportMode.COPY && !db.getObjectFile(tree).getFileSystem().equals(location.getFileSystem())) {
+            mode = ExportMode.COPY; // e.g. exporting from or to ZIP files.
         }
         try {
             if (PathHelper.exists(location)) {
@@ -226,7 +257,7 @@ public class ObjectManager {
 
             Activity exporting = reporter.start("Exporting Files", fileCount.get());
             try {
-                internalExportTree(tree, tempLocation, tree, tempLocation, exporting, handler);
+                internalExportTree(tree, tempLocation, tree, tempLocation, exporting, handler, mode);
                 PathHelper.moveRetry(tempLocation, location, StandardCopyOption.ATOMIC_MOVE);
             } catch (Throwable t) {
                 try {
@@ -249,7 +280,7 @@ public class ObjectManager {
      * Recursively export tree to target location.
      */
     private void internalExportTree(ObjectId tree, Path topLevel, ObjectId topLevelTree, Path location, Activity exporting,
-            ReferenceHandler handler) throws IOException {
+            ReferenceHandler handler, ExportMode mode) throws IOException {
         PathHelper.mkdirs(location);
 
         Tree t;
@@ -269,7 +300,7 @@ public class ObjectManager {
                 case BLOB:
                     filesOnLevel.add(fileOps.submit(() -> {
                         try {
-                            internalExportBlobByCopy(obj, child);
+                            internalExportBlob(obj, child, mode);
                         } catch (Exception e) {
                             throw new IllegalStateException("Cannot export BLOB to " + child, e);
                         } finally {
@@ -282,7 +313,7 @@ public class ObjectManager {
                     exporting.workAndCancelIfRequested(1);
                     break;
                 case TREE:
-                    internalExportTree(obj, topLevel, topLevelTree, child, exporting, handler);
+                    internalExportTree(obj, topLevel, topLevelTree, child, exporting, handler, mode);
                     exporting.workAndCancelIfRequested(1);
                     break;
                 default:
@@ -297,6 +328,82 @@ public class ObjectManager {
         exporting.workAndCancelIfRequested(1);
     }
 
+    private void internalExportBlob(ObjectId obj, Path child, ExportMode mode) throws IOException {
+        if (mode != ExportMode.COPY) {
+            try {
+                if (internalExportBlobByFile(obj, child, mode)) {
+                    return;
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                // e.g. the target is on another file system than the object database.
+                log.debug("Cannot export {} to {} using {}, copying", obj, child, mode, e);
+                PathHelper.deleteIfExistsRetry(child);
+            }
+        }
+        internalExportBlobByCopy(obj, child);
+    }
+
+    /**
+     * Creates the target file from the loose object file, without streaming the content through the JVM.
+     *
+     * @return whether the file has been created, <code>false</code> if it needs to be copied instead.
+     */
+    private boolean internalExportBlobByFile(ObjectId obj, Path child, ExportMode mode) throws IOException {
+        Path source;
+        if (mode == ExportMode.LINK) {
+            // packed objects are extracted once, so that all following exports can link to them as well.
+            source = db.getLooseObjectFile(obj);
+        } else {
+            source = db.getObjectFile(obj);
+            if (!PathHelper.exists(source)) {
+                return false; // packed, reading the pack is cheaper than extracting first.
+            }
+        }
+        verifyObjectFile(obj, source);
+
+        ContentInfo info = PathHelper.getContentInfo(source, null);
+        if (mode == ExportMode.LINK && hasRequiredMode(source, info)) {
+            // never change the permissions of a link, this would change the shared object file as well.
+            Files.createLink(child, source);
+            return true;
+        }
+
+        Files.copy(source, child);
+        setExecutable(child, info);
+        return true;
+    }
+
+    /**
+     * Verifies the checksum of an object file which is exported without streaming its content. Each object is verified only
+     * once, as re-hashing each time would defeat the purpose of exporting by file.
+     */
+    private void verifyObjectFile(ObjectId obj, Path source) throws IOException {
+        if (verifiedObjectFiles.getIfPresent(obj) != null) {
+            return;
+        }
+
+        ObjectId actual;
+        try (InputStream is = Files.newInputStream(source)) {
+            actual = ObjectId.createFromStreamNoCopy(is);
+        }
+        if (!actual.equals(obj)) {
+            throw new IllegalStateException("BLOB corruption: " + obj + " (is " + actual + "), run FSCK");
+        }
+        verifiedObjectFiles.put(obj, Boolean.TRUE);
+    }
+
+    /**
+     * @return whether the executable permission of the given object file matches what the content requires.
+     */
+    private static boolean hasRequiredMode(Path source, ContentInfo info) throws IOException {
+        PosixFileAttributeView view = PathHelper.getPosixView(source);
+        if (view == null) {
+            return true;
+        }
+        boolean executable = view.readAttributes().permissions().contains(PosixFilePermission.OWNER_EXECUTE);
+        return executable == PathHelper.isExecutable(info);
+    }
+
     private void internalExportBlobByCopy(ObjectId obj, Path child) {
         // fallback only: create copy of file. determine content type as we go.
         try (ContentInfoInputStreamWrapper is = new ContentInfoInputStreamWrapper(db.getStream(obj),
@@ -346,7 +453,8 @@ public class ObjectManager {
     public TreeView scan(ObjectId tree, int maxDepth, boolean followReferences) {
         ElementView ev;
         if (db.hasObject(tree)) {
-            ev = scan(tree, EntryType.TREE, new ArrayDeque<>(), maxDepth, followReferences);
+            Map<ObjectId, Object> prefetched = prefetch(tree, maxDepth, followReferences);
+            ev = scan(tree, EntryType.TREE, new ArrayDeque<>(), maxDepth, followReferences, prefetched);
         } else {
             ev = new DamagedObjectView(tree, EntryType.TREE, Collections.singletonList("/"));
         }
@@ -362,7 +470,8 @@ public class ObjectManager {
         return tv;
     }
 
-    private ElementView scan(ObjectId object, EntryType type, Deque<String> path, int maxDepth, boolean followReferences) {
+    private ElementView scan(ObjectId object, EntryType type, Deque<String> path, int maxDepth, boolean followReferences,
+            Map<ObjectId, Object> prefetched) {
         // include blobs anyway, only skip following trees
         if (type != EntryType.BLOB && path.size() >= maxDepth) {
             return new SkippedElementView(object, path);
@@ -374,7 +483,10 @@ public class ObjectManager {
             case BLOB:
                 return new BlobView(object, path);
             case MANIFEST:
-                Manifest mf = lookupManifestRef(object);
+                Manifest mf = (Manifest) prefetched.remove(object);
+                if (mf == null) {
+                    mf = lookupManifestRef(object);
+                }
                 if (mf == null) {
                     return new MissingObjectView(object, type, path);
                 }
@@ -391,17 +503,17 @@ public class ObjectManager {
                 }
 
                 try {
-                    Tree mrt = loadObject(mf.getRoot(), is -> StorageHelper.fromStream(is, Tree.class));
-                    scanChildren(mrs, mrt, path, maxDepth, followReferences);
+                    Tree mrt = loadTree(mf.getRoot(), prefetched);
+                    scanChildren(mrs, mrt, path, maxDepth, followReferences, prefetched);
                 } catch (Exception e) {
                     mrs.addChild(new DamagedObjectView(mf.getRoot(), type, path));
                 }
                 return mrs;
             case TREE:
                 try {
-                    Tree t = loadObject(object, is -> StorageHelper.fromStream(is, Tree.class));
+                    Tree t = loadTree(object, prefetched);
                     TreeView ts = new TreeView(object, path);
-                    scanChildren(ts, t, path, maxDepth, followReferences);
+                    scanChildren(ts, t, path, maxDepth, followReferences, prefetched);
                     return ts;
                 } catch (Exception e) {
                     return new DamagedObjectView(object, EntryType.TREE, path);
@@ -411,14 +523,119 @@ public class ObjectManager {
         }
     }
 
-    private void scanChildren(TreeView container, Tree tree, Deque<String> path, int maxDepth, boolean followReferences) {
+    private void scanChildren(TreeView container, Tree tree, Deque<String> path, int maxDepth, boolean followReferences,
+            Map<ObjectId, Object> prefetched) {
         for (Entry<Key, ObjectId> entry : tree.getChildren().entrySet()) {
             path.addLast(entry.getKey().getName());
-            container.addChild(scan(entry.getValue(), entry.getKey().getType(), path, maxDepth, followReferences));
+            container.addChild(scan(entry.getValue(), entry.getKey().getType(), path, maxDepth, followReferences, prefetched));
             path.removeLast();
         }
     }
 
+    private Tree loadTree(ObjectId id, Map<ObjectId, Object> prefetched) {
+        // consumed entries are evicted, trees occurring more than once are loaded again if required.
+        Tree tree = (Tree) prefetched.remove(id);
+        if (tree != null) {
+            return tree;
+        }
+        return loadObject(id, is -> StorageHelper.fromStream(is, Tree.class));
+    }
+
+    /**
+     * Loads all {@link Tree}s and referenced {@link Manifest}s which a {@link #scan(ObjectId, int, boolean)} will visit, level by
+     * level and in parallel on the file operations pool.
+     * <p>
+     * The result is only a cache for the (sequential) construction of the {@link TreeView}, which keeps the view exactly the same
+     * as without prefetching. Anything which cannot be loaded is simply left out here, and is handled (and reported) by the
+     * actual scan. The amount of objects being parsed at the same time is limited by the amount of helper tasks.
+     * <p>
+     * At most {@link #MAX_PREFETCHED} objects are prefetched, so that huge trees do not need to be held in memory at once. The
+     * scan loads everything beyond that on demand.
+     */
+    private Map<ObjectId, Object> prefetch(ObjectId root, int maxDepth, boolean followReferences) {
+        Map<ObjectId, Object> prefetched = new ConcurrentHashMap<>();
+        Set<ObjectId> seen = new HashSet<>();
+        seen.add(root);
+
+        Map<ObjectId, EntryType> level = Collections.singletonMap(root, EntryType.TREE);
+        for (int depth = 0; depth < maxDepth && !level.isEmpty() && prefetched.size() < MAX_PREFETCHED; ++depth) {
+            Map<ObjectId, EntryType> next = new ConcurrentHashMap<>();
+            Queue<Entry<ObjectId, EntryType>> queue = new ConcurrentLinkedQueue<>(level.entrySet());
+            runParallel(queue, e -> prefetch(e.getKey(), e.getValue(), followReferences, prefetched, next));
+
+            level = new HashMap<>();
+            for (Entry<ObjectId, EntryType> e : next.entrySet()) {
+                if (seen.add(e.getKey())) {
+                    level.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        return prefetched;
+    }
+
+    private void prefetch(ObjectId object, EntryType type, boolean followReferences, Map<ObjectId, Object> prefetched,
+            Map<ObjectId, EntryType> next) {
+        if (prefetched.size() >= MAX_PREFETCHED) {
+            return;
+        }
+        try {
+            ObjectId tree = object;
+            if (type == EntryType.MANIFEST) {
+                Manifest mf = lookupManifestRef(object);
+                if (mf == null) {
+                    return; // reported as missing by the scan.
+                }
+                prefetched.put(object, mf);
+                if (!followReferences) {
+                    return;
+                }
+                tree = mf.getRoot();
+            }
+
+            if (!db.hasObject(tree)) {
+                return;
+            }
+            Tree t = loadObject(tree, is -> StorageHelper.fromStream(is, Tree.class));
+            prefetched.put(tree, t);
+
+            for (Entry<Key, ObjectId> entry : t.getChildren().entrySet()) {
+                if (entry.getKey().getType() != EntryType.BLOB) {
+                    next.put(entry.getValue(), entry.getKey().getType());
+                }
+            }
+        } catch (Exception e) {
+            if (log.isTraceEnabled()) {
+                log.trace("Cannot prefetch {}, leaving it to the scan", object, e);
+            }
+        }
+    }
+
+    /**
+     * Processes all elements in the queue using helper tasks on the file operations pool as well as the calling thread.
+     * <p>
+     * The calling thread never waits for helpers which did not start yet, so this is safe to use even if called from within
+     * the (possibly exhausted) pool itself.
+     */
+    private <T> void runParallel(Queue<T> queue, Consumer<T> action) {
+        int helperCount = Math.min(queue.size() - 1, Runtime.getRuntime().availableProcessors());
+        List<Future<?>> helpers = new ArrayList<>();
+        Runnable drain = () -> {
+            T element;
+            while ((element = queue.poll()) != null) {
+                action.accept(element);
+            }
+        };
+        for (int i = 0; i < helperCount; ++i) {
+            helpers.add(fileOps.submit(drain));
+        }
+
+        drain.run();
+
+        // helpers which did not start are no longer required, the ones running finish their current element.
+        helpers.removeIf(f -> f.cancel(false));
+        FutureHelper.awaitAll(helpers);
+    }
+
     /**
      * @param tree the root tree to resolve from
      * @param path the path in the tree to resolve
@@ -0,0 +1,417 @@
+package io.bdeploy.bhive.objects;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.util.PathHelper;
+
+/**
+ * Append-only storage of many objects in few large pack files.
+ * <p>
+ * Object content is appended to numbered pack files (<code>pack-NNNNNN.dat</code>). For each appended object a fixed size
+ * record is appended to a single index journal (<code>packs.idx</code>) which maps the {@link ObjectId} to the pack, offset and
+ * length of the content. Removal of an object appends a tombstone record. The journal is replayed into memory when opened, and
+ * incrementally re-read whenever a lookup misses, which makes packs written by other processes visible without locking.
+ * <p>
+ * Space of removed objects is reclaimed by moving the remaining objects of a pack into a newer pack and deleting the old pack
+ * file afterwards. Pack numbers are never re-used, so a stale location never points to different content.
+ * <p>
+ * Writers must hold the lock of the owning {@link ObjectDatabase}. Readers never lock: content is always written and synced
+ * before the index record pointing to it.
+ */
+public class PackStore {
+
+    static final String INDEX_FILE = "packs.idx";
+
+    /** id (20 bytes) + pack number (int) + offset (long) + length (long), length < 0 is a tombstone. */
+    private static final int RECORD_SIZE = 20 + 4 + 8 + 8;
+    private static final int ID_SIZE = ObjectId.BYTES;
+    private static final long MAX_PACK_SIZE = 1024l * 1024l * 1024l; // 1G
+
+    private final Path root;
+    private final Path index;
+    private final ConcurrentSkipListMap<ObjectId, PackLocation> locations = new ConcurrentSkipListMap<>();
+
+    private long indexPosition = 0;
+
+    /** The highest pack number ever referenced by the index journal */
+    private volatile int maxRecordedPack = 0;
+
+    /**
+     * @param root the directory holding pack files and the index journal. Created if it does not exist.
+     */
+    public PackStore(Path root) {
+        this.root = root;
+        this.index = root.resolve(INDEX_FILE);
+
+        if (!PathHelper.exists(root)) {
+            PathHelper.mkdirs(root);
+        }
+
+        refresh();
+    }
+
+    /**
+     * @param id the {@link ObjectId} to look up.
+     * @return whether the object is stored in any of the packs.
+     */
+    public boolean contains(ObjectId id) {
+        return locations.containsKey(id);
+    }
+
+    /**
+     * @param id the {@link ObjectId} to look up.
+     * @return the size of the packed object, or <code>-1</code> if the object is not packed.
+     */
+    public long getSize(ObjectId id) {
+        PackLocation loc = locations.get(id);
+        return loc == null ? -1 : loc.length;
+    }
+
+    /**
+     * @return all {@link ObjectId}s currently stored in packs.
+     */
+    public SortedSet<ObjectId> getAll() {
+        return new TreeSet<>(locations.keySet());
+    }
+
+    /**
+     * Adds all {@link ObjectId}s currently stored in packs to the given collection.
+     */
+    void addAllTo(Collection<ObjectId> target) {
+        target.addAll(locations.keySet());
+    }
+
+    /**
+     * Adds all {@link ObjectId}s in the given range currently stored in packs to the given collection.
+     *
+     * @param from the first {@link ObjectId} of the range (inclusive).
+     * @param to the end of the range (exclusive), <code>null</code> to include all {@link ObjectId}s starting at from.
+     */
+    void addRangeTo(ObjectId from, ObjectId to, Collection<ObjectId> target) {
+        target.addAll(to == null ? locations.tailMap(from).keySet() : locations.subMap(from, to).keySet());
+    }
+
+    /**
+     * @param id the {@link ObjectId} to read.
+     * @return an {@link InputStream} reading the packed content, or <code>null</code> if the object is not packed.
+     */
+    public InputStream getStream(ObjectId id) throws IOException {
+        PackLocation loc = locations.get(id);
+        if (loc == null) {
+            return null;
+        }
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(getPackFile(loc.pack), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // the pack has been reclaimed meanwhile, the object has been moved to another pack (or removed).
+            refresh();
+            PackLocation moved = locations.get(id);
+            if (moved == null || moved.pack == loc.pack) {
+                throw e;
+            }
+            loc = moved;
+            channel = FileChannel.open(getPackFile(loc.pack), StandardOpenOption.READ);
+        }
+        return new PackEntryInputStream(channel, loc.offset, loc.length);
+    }
+
+    /**
+     * Re-reads all records appended to the index journal since the last read. This is cheap if nothing changed.
+     */
+    public synchronized void refresh() {
+        if (!PathHelper.exists(index)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long complete = size - (size % RECORD_SIZE);
+            if (complete <= indexPosition) {
+                return;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            long pos = indexPosition;
+            while (pos < complete) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), complete - pos));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, pos + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of pack index " + index);
+                    }
+                }
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    applyRecord(buffer);
+                }
+                pos += buffer.limit();
+            }
+            indexPosition = complete;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read pack index " + index, e);
+        }
+    }
+
+    private void applyRecord(ByteBuffer buffer) {
+        byte[] raw = new byte[ID_SIZE];
+        buffer.get(raw);
+        int pack = buffer.getInt();
+        long offset = buffer.getLong();
+        long length = buffer.getLong();
+
+        ObjectId id = ObjectId.fromBytes(raw);
+        if (length < 0) {
+            locations.remove(id);
+        } else {
+            locations.put(id, new PackLocation(pack, offset, length));
+            maxRecordedPack = Math.max(maxRecordedPack, pack);
+        }
+    }
+
+    /**
+     * Appends the given objects to the current pack file. The caller must hold the database lock.
+     * <p>
+     * Content is synced to disc before the index records are written, so readers in this or other processes will never see an
+     * index record pointing to incomplete content.
+     *
+     * @param objects the objects and their content to append.
+     */
+    void append(Map<ObjectId, byte[]> objects) throws IOException {
+        append(objects, 0);
+    }
+
+    /**
+     * Appends the given objects to the current pack file, or to a new pack file if the current one is the given pack. The caller
+     * must hold the database lock.
+     *
+     * @param objects the objects and their content to append.
+     * @param reclaimed the pack which is being reclaimed and must not receive any objects.
+     */
+    void append(Map<ObjectId, byte[]> objects, int reclaimed) throws IOException {
+        if (objects.isEmpty()) {
+            return;
+        }
+
+        ByteBuffer records = ByteBuffer.allocate(objects.size() * RECORD_SIZE);
+        int pack = getCurrentPack();
+        if (pack == reclaimed) {
+            pack++;
+        }
+        try (FileChannel channel = FileChannel.open(getPackFile(pack), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = channel.size();
+            for (Map.Entry<ObjectId, byte[]> entry : objects.entrySet()) {
+                ByteBuffer content = ByteBuffer.wrap(entry.getValue());
+                long pos = offset;
+                while (content.hasRemaining()) {
+                    pos += channel.write(content, pos);
+                }
+
+                writeRecord(records, entry.getKey(), pack, offset, entry.getValue().length);
+                offset = pos;
+            }
+            channel.force(false);
+        }
+
+        appendRecords(records);
+    }
+
+    /**
+     * Records removal of the given objects. The caller must hold the database lock.
+     * <p>
+     * The space occupied in the pack files is reclaimed on the next repack, see {@link #getReclaimablePacks()}.
+     */
+    void remove(Set<ObjectId> ids) throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(ids.size() * RECORD_SIZE);
+        for (ObjectId id : ids) {
+            writeRecord(records, id, -1, -1, -1);
+        }
+        appendRecords(records);
+    }
+
+    /**
+     * Determines packs which occupy more space than the objects they contain, i.e. contain removed objects, replaced objects or
+     * content of interrupted writes. The caller must hold the database lock.
+     *
+     * @return the numbers of the packs which should be reclaimed.
+     */
+    SortedSet<Integer> getReclaimablePacks() throws IOException {
+        refresh();
+
+        Map<Integer, Long> used = new HashMap<>();
+        for (PackLocation loc : locations.values()) {
+            used.merge(loc.pack, loc.length, Long::sum);
+        }
+
+        SortedSet<Integer> result = new TreeSet<>();
+        for (Map.Entry<Integer, Path> pack : getPackFiles().entrySet()) {
+            if (Files.size(pack.getValue()) > used.getOrDefault(pack.getKey(), 0l)) {
+                result.add(pack.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param pack the number of the pack.
+     * @return all {@link ObjectId}s currently stored in the given pack.
+     */
+    List<ObjectId> getObjects(int pack) {
+        refresh();
+
+        List<ObjectId> result = new ArrayList<>();
+        locations.forEach((id, loc) -> {
+            if (loc.pack == pack) {
+                result.add(id);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Deletes the given pack file, which must not contain any object anymore. The caller must hold the database lock.
+     *
+     * @param pack the number of the pack to delete.
+     */
+    void deletePack(int pack) throws IOException {
+        if (!getObjects(pack).isEmpty()) {
+            throw new IllegalStateException("Pack " + pack + " still contains objects");
+        }
+        Files.deleteIfExists(getPackFile(pack));
+    }
+
+    private static void writeRecord(ByteBuffer records, ObjectId id, int pack, long offset, long length) {
+        records.put(id.toBytes());
+        records.putInt(pack);
+        records.putLong(offset);
+        records.putLong(length);
+    }
+
+    private void appendRecords(ByteBuffer records) throws IOException {
+        records.flip();
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size % RECORD_SIZE != 0) {
+                // a previous writer crashed while appending a record - drop the incomplete tail.
+                size -= size % RECORD_SIZE;
+                channel.truncate(size);
+            }
+            while (records.hasRemaining()) {
+                size += channel.write(records, size);
+            }
+            channel.force(false);
+        }
+
+        refresh();
+    }
+
+    private int getCurrentPack() throws IOException {
+        int current = maxRecordedPack;
+        for (int pack : getPackFiles().keySet()) {
+            current = Math.max(current, pack);
+        }
+
+        // the highest pack might have been reclaimed, its number is never used again.
+        Path file = getPackFile(current);
+        if (current == 0 || !PathHelper.exists(file) || Files.size(file) >= MAX_PACK_SIZE) {
+            return current + 1;
+        }
+        return current;
+    }
+
+    private Map<Integer, Path> getPackFiles() throws IOException {
+        Map<Integer, Path> result = new HashMap<>();
+        try (DirectoryStream<Path> packs = Files.newDirectoryStream(root, "pack-*.dat")) {
+            for (Path pack : packs) {
+                String name = pack.getFileName().toString();
+                result.put(Integer.parseInt(name.substring(5, name.length() - 4)), pack);
+            }
+        }
+        return result;
+    }
+
+    private Path getPackFile(int pack) {
+        return root.resolve(String.format("pack-%06d.dat", pack));
+    }
+
+    private static final class PackLocation {
+
+        private final int pack;
+        private final long offset;
+        private final long length;
+
+        PackLocation(int pack, long offset, long length) {
+            this.pack = pack;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Reads a range of a pack file using positional reads, thus not interfering with other readers of the same file.
+     */
+    private static final class PackEntryInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        PackEntryInputStream(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int num = read(single, 0, 1);
+            return num == -1 ? -1 : (single[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int num = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (num < 0) {
+                throw new IOException("Unexpected end of pack file. Expecting '" + remaining + "' bytes.");
+            }
+            position += num;
+            remaining -= num;
+            return num;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,544 @@
+package io.bdeploy.bhive.objects;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.util.PathHelper;
+
+/**
+ * Persistent index of all {@link ObjectId}s present in an {@link ObjectDatabase}, which allows answering presence queries
+ * without touching the file system.
+ * <p>
+ * The index consists of three parts:
+ * <ul>
+ * <li>A memory-mapped <code>state</code> file holding the current generation and the length of the journal. As all processes
+ * map the same file, changes done by other processes are visible without any system call.
+ * <li>A sorted snapshot of fixed width (20 byte) identifiers per generation, which is memory-mapped and binary searched. A bloom
+ * filter built when loading the snapshot answers most negative lookups without touching the snapshot at all.
+ * <li>An append-only journal per generation recording objects added and removed since the snapshot was written. The journal is
+ * merged into a new snapshot (generation) once it grows too large.
+ * </ul>
+ * Writers appending to the journal must hold the journal lock of the owning {@link ObjectDatabase}, all other writers the
+ * database lock, which excludes appending. The index is not available (and must not be trusted) until a
+ * snapshot has been written the first time, see {@link ObjectDatabase#rebuildPresenceIndex()}.
+ */
+public class PresenceIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceIndex.class);
+
+    private static final String STATE_FILE = "state";
+
+    private static final int MAGIC = 0x42485049; // BHPI
+    private static final int VERSION = 1;
+
+    /** magic (int) + version (int) + generation (long) + journal length (long) */
+    private static final int STATE_SIZE = 4 + 4 + 8 + 8;
+    private static final int VERSION_OFFSET = 4;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int LENGTH_OFFSET = 16;
+
+    private static final int ID_SIZE = ObjectId.BYTES;
+
+    /** operation (byte) + id (20 bytes) */
+    private static final int RECORD_SIZE = 1 + ID_SIZE;
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_REMOVE = 0;
+
+    /** amount of journal records which trigger writing a new snapshot */
+    private static final long COMPACT_THRESHOLD = 64l * 1024l;
+
+    private static final int BLOOM_BITS_PER_ID = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final Path root;
+    private final MappedByteBuffer state;
+
+    private volatile View view;
+
+    /**
+     * @param root the directory holding the index files. Created if it does not exist.
+     */
+    public PresenceIndex(Path root) {
+        this.root = root;
+
+        if (!PathHelper.exists(root)) {
+            PathHelper.mkdirs(root);
+        }
+
+        try (FileChannel channel = FileChannel.open(root.resolve(STATE_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.state = channel.map(MapMode.READ_WRITE, 0, STATE_SIZE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open presence index " + root, e);
+        }
+    }
+
+    /**
+     * @return whether the index has been fully built and can be used to answer queries. Catches up with changes done by
+     *         other processes if required, which only touches the file system if something changed.
+     */
+    public boolean isAvailable() {
+        long generation = getGeneration();
+        if (generation <= 0) {
+            return false;
+        }
+
+        View v = view;
+        if (v != null && v.generation == generation && v.length == state.getLong(LENGTH_OFFSET)) {
+            return true;
+        }
+
+        try {
+            refresh();
+            return view != null;
+        } catch (IOException e) {
+            log.debug("Cannot refresh presence index {}", root, e);
+            return false;
+        }
+    }
+
+    /**
+     * @param id the {@link ObjectId} to look up
+     * @return whether the object is present. Only valid if {@link #isAvailable()} returned <code>true</code> before.
+     */
+    public boolean contains(ObjectId id) {
+        View v = view;
+        if (v.removed.contains(id)) {
+            return false;
+        }
+        if (v.added.contains(id)) {
+            return true;
+        }
+
+        byte[] raw = id.toBytes();
+        return v.mightContain(raw) && v.find(raw);
+    }
+
+    /**
+     * Records that the given object has been added to or removed from the database. The caller must hold the journal lock.
+     */
+    synchronized void record(ObjectId id, boolean present) throws IOException {
+        record(Collections.singletonList(new Change(id, present)));
+    }
+
+    /**
+     * Records multiple changes at once, in the given order. The caller must hold the journal lock.
+     */
+    synchronized void record(List<Change> changes) throws IOException {
+        if (!isWritable() || changes.isEmpty()) {
+            return;
+        }
+
+        long generation = getGeneration();
+        long length = state.getLong(LENGTH_OFFSET);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE * changes.size());
+        for (Change change : changes) {
+            record.put(change.present ? RECORD_ADD : RECORD_REMOVE);
+            record.put(change.id.toBytes());
+        }
+        record.flip();
+
+        // the record is written at the length recorded in the state, which overwrites records of crashed writers.
+        try (FileChannel channel = FileChannel.open(getJournalFile(generation), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            long pos = length;
+            while (record.hasRemaining()) {
+                pos += channel.write(record, pos);
+            }
+        }
+        state.putLong(LENGTH_OFFSET, length + RECORD_SIZE * changes.size());
+
+        if (generation > 0 && (length / RECORD_SIZE) >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * Captures the current position in the journal. Used to start a rebuild without holding the database lock. The caller
+     * must hold the database lock.
+     */
+    synchronized Mark mark() {
+        if (getGeneration() == 0 && state.getInt(0) != MAGIC) {
+            // initialize the state, so that all writers start to record changes from now on.
+            state.putInt(0, MAGIC);
+            state.putInt(VERSION_OFFSET, VERSION);
+        }
+        return new Mark(getGeneration(), state.getLong(LENGTH_OFFSET));
+    }
+
+    /**
+     * Writes a new snapshot from the given objects, which have been listed after the given {@link Mark} was taken. All
+     * changes recorded since the {@link Mark} are applied before writing. The caller must hold the database lock.
+     *
+     * @return <code>false</code> if the index has been compacted in the meantime. The caller has to rebuild while holding the
+     *         database lock using {@link #rebuild(SortedSet)} in this case.
+     */
+    synchronized boolean rebuild(Mark mark, SortedSet<ObjectId> objects) throws IOException {
+        if (!isWritable() || getGeneration() != mark.generation) {
+            return false;
+        }
+
+        readJournal(mark.generation, mark.length, state.getLong(LENGTH_OFFSET), (raw, present) -> {
+            ObjectId id = ObjectId.fromBytes(raw);
+            if (present) {
+                objects.add(id);
+            } else {
+                objects.remove(id);
+            }
+        });
+
+        rebuild(objects);
+        return true;
+    }
+
+    /**
+     * Writes a new snapshot from the given objects, which must be the complete list of objects in the database. The caller
+     * must hold the database lock during listing the objects and writing the snapshot.
+     */
+    synchronized void rebuild(SortedSet<ObjectId> objects) throws IOException {
+        long next = getGeneration() + 1;
+        writeSnapshot(next, out -> {
+            for (ObjectId id : objects) {
+                out.write(id.toBytes());
+            }
+        });
+        publish(next);
+    }
+
+    private boolean isWritable() {
+        int magic = state.getInt(0);
+        if (magic == 0) {
+            return true; // not initialized yet.
+        }
+        return magic == MAGIC && state.getInt(VERSION_OFFSET) == VERSION;
+    }
+
+    private long getGeneration() {
+        if (state.getInt(0) != MAGIC || state.getInt(VERSION_OFFSET) != VERSION) {
+            return 0;
+        }
+        return state.getLong(GENERATION_OFFSET);
+    }
+
+    /**
+     * Merges the current snapshot with all changes recorded in the journal into a new snapshot.
+     */
+    private void compact() throws IOException {
+        refresh();
+
+        View v = view;
+        byte[][] added = sorted(v.added);
+        byte[][] removed = sorted(v.removed);
+
+        writeSnapshot(v.generation + 1, out -> {
+            int s = 0;
+            int a = 0;
+            int r = 0;
+            while (s < v.count || a < added.length) {
+                byte[] next;
+                if (a >= added.length) {
+                    next = v.get(s++);
+                } else if (s >= v.count) {
+                    next = added[a++];
+                } else {
+                    byte[] current = v.get(s);
+                    int cmp = Arrays.compareUnsigned(current, added[a]);
+                    if (cmp < 0) {
+                        next = current;
+                        s++;
+                    } else {
+                        next = added[a++];
+                        if (cmp == 0) {
+                            s++;
+                        }
+                    }
+                }
+
+                while (r < removed.length && Arrays.compareUnsigned(removed[r], next) < 0) {
+                    r++;
+                }
+                if (r < removed.length && Arrays.equals(removed[r], next)) {
+                    continue;
+                }
+                out.write(next);
+            }
+        });
+        publish(v.generation + 1);
+    }
+
+    private void writeSnapshot(long generation, SnapshotWriter writer) throws IOException {
+        Path target = getSnapshotFile(generation);
+        Path tmp = root.resolve(target.getFileName().toString() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            writer.write(out);
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        PathHelper.moveRetry(tmp, target);
+    }
+
+    private void publish(long generation) {
+        state.putInt(0, MAGIC);
+        state.putInt(VERSION_OFFSET, VERSION);
+        state.putLong(GENERATION_OFFSET, generation);
+        state.putLong(LENGTH_OFFSET, 0);
+        state.force();
+
+        // old generations are still mapped by readers in other processes - which prevents removal on some platforms.
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, "{snapshot,journal}-*")) {
+            String current = String.format("-%012d.", generation);
+            for (Path file : files) {
+                if (!file.getFileName().toString().contains(current)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Cannot remove outdated presence index files in {}", root, e);
+        }
+    }
+
+    private synchronized void refresh() throws IOException {
+        long generation = getGeneration();
+        long length = state.getLong(LENGTH_OFFSET);
+        if (generation <= 0) {
+            view = null;
+            return;
+        }
+
+        View v = view;
+        if (v == null || v.generation != generation || length < v.position) {
+            v = load(generation);
+        }
+
+        View target = v;
+        long end = readJournal(generation, v.position, length, (raw, present) -> {
+            ObjectId id = ObjectId.fromBytes(raw);
+            if (present) {
+                target.removed.remove(id);
+                target.added.add(id);
+            } else {
+                target.added.remove(id);
+                target.removed.add(id);
+            }
+        });
+        v.position = end;
+
+        // if the journal is shorter than announced (switching generation), force another refresh on the next query.
+        v.length = end == length ? length : -1;
+        view = v;
+    }
+
+    private View load(long generation) throws IOException {
+        Path file = getSnapshotFile(generation);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % ID_SIZE != 0 || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid presence index snapshot " + file);
+            }
+            MappedByteBuffer snapshot = size == 0 ? null : channel.map(MapMode.READ_ONLY, 0, size);
+            return new View(generation, snapshot, (int) (size / ID_SIZE));
+        }
+    }
+
+    /**
+     * Reads all complete journal records between the given positions.
+     *
+     * @return the position up to which records have been read.
+     */
+    private long readJournal(long generation, long from, long to, JournalConsumer consumer) throws IOException {
+        if (from >= to) {
+            return from;
+        }
+
+        try (FileChannel channel = FileChannel.open(getJournalFile(generation), StandardOpenOption.READ)) {
+            long end = Math.min(to, channel.size());
+            end -= (end - from) % RECORD_SIZE;
+
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            long pos = from;
+            while (pos < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - pos));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, pos + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of presence journal in " + root);
+                    }
+                }
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    boolean present = buffer.get() == RECORD_ADD;
+                    byte[] raw = new byte[ID_SIZE];
+                    buffer.get(raw);
+                    consumer.accept(raw, present);
+                }
+                pos += buffer.limit();
+            }
+            return end;
+        } catch (NoSuchFileException e) {
+            // nothing recorded yet in this generation.
+            return from;
+        }
+    }
+
+    private static byte[][] sorted(Set<ObjectId> ids) {
+        byte[][] result = ids.stream().map(ObjectId::toBytes).toArray(byte[][]::new);
+        Arrays.sort(result, Arrays::compareUnsigned);
+        return result;
+    }
+
+    private Path getSnapshotFile(long generation) {
+        return root.resolve(String.format("snapshot-%012d.idx", generation));
+    }
+
+    private Path getJournalFile(long generation) {
+        return root.resolve(String.format("journal-%012d.log", generation));
+    }
+
+    /**
+     * A position in the journal of the index.
+     */
+    static final class Mark {
+
+        private final long generation;
+        private final long length;
+
+        private Mark(long generation, long length) {
+            this.generation = generation;
+            this.length = length;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SnapshotWriter {
+
+        void write(OutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface JournalConsumer {
+
+        void accept(byte[] raw, boolean present);
+    }
+
+    /**
+     * The in-memory state of a single generation of the index.
+     */
+    private static final class View {
+
+        private final long generation;
+        private final MappedByteBuffer snapshot;
+        private final int count;
+        private final long[] bloom;
+        private final long bloomBits;
+
+        private final Set<ObjectId> added = ConcurrentHashMap.newKeySet();
+        private final Set<ObjectId> removed = ConcurrentHashMap.newKeySet();
+
+        /** the position up to which the journal has been applied */
+        private long position;
+
+        /** the journal length announced in the state when last refreshed, -1 if unknown */
+        private volatile long length = -1;
+
+        View(long generation, MappedByteBuffer snapshot, int count) {
+            this.generation = generation;
+            this.snapshot = snapshot;
+            this.count = count;
+            this.bloom = new long[Math.max(1, (int) ((count * (long) BLOOM_BITS_PER_ID + 63) / 64))];
+            this.bloomBits = bloom.length * 64l;
+
+            for (int i = 0; i < count; ++i) {
+                long h1 = snapshot.getLong(i * ID_SIZE);
+                long h2 = snapshot.getLong(i * ID_SIZE + 8);
+                for (int k = 0; k < BLOOM_HASHES; ++k) {
+                    long bit = Math.floorMod(h1 + k * h2, bloomBits);
+                    bloom[(int) (bit >>> 6)] |= 1l << bit;
+                }
+            }
+        }
+
+        boolean mightContain(byte[] raw) {
+            ByteBuffer buffer = ByteBuffer.wrap(raw);
+            long h1 = buffer.getLong(0);
+            long h2 = buffer.getLong(8);
+            for (int k = 0; k < BLOOM_HASHES; ++k) {
+                long bit = Math.floorMod(h1 + k * h2, bloomBits);
+                if ((bloom[(int) (bit >>> 6)] & (1l << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean find(byte[] raw) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compareAt(mid, raw);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        byte[] get(int index) {
+            byte[] raw = new byte[ID_SIZE];
+            snapshot.get(index * ID_SIZE, raw);
+            return raw;
+        }
+
+        private int compareAt(int index, byte[] raw) {
+            int base = index * ID_SIZE;
+            for (int i = 0; i < ID_SIZE; ++i) {
+                int cmp = Byte.compareUnsigned(snapshot.get(base + i), raw[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * A single object which has been added to or removed from the database.
+     */
+    static final class Change {
+
+        final ObjectId id;
+        final boolean present;
+
+        Change(ObjectId id, boolean present) {
+            this.id = id;
+            this.present = present;
+        }
+    }
+
+}
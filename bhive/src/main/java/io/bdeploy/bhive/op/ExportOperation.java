@@ -2,6 +2,7 @@ package io.bdeploy.bhive.op;
 
 import static io.bdeploy.common.util.RuntimeAssert.assertNotNull;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Set;
 
@@ -9,10 +10,16 @@ import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.ReadOnlyOperation;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Tree;
+import io.bdeploy.bhive.objects.ExportMode;
 import io.bdeploy.bhive.objects.ReferenceHandler;
+import io.bdeploy.bhive.objects.view.TreeView;
+import io.bdeploy.bhive.objects.view.scanner.TreeVisitor;
 
 /**
  * Export a {@link Manifest}s root {@link Tree} to a target directory.
+ * <p>
+ * Optionally records the fingerprints of all exported files, which allows a later {@link VerifyOperation} to skip hashing
+ * unchanged files.
  */
 @ReadOnlyOperation
 public class ExportOperation extends BHive.Operation<Manifest.Key> {
@@ -20,6 +27,8 @@ public class ExportOperation extends BHive.Operation<Manifest.Key> {
     private Manifest.Key manifest;
     private Path target;
     private ReferenceHandler refHandler;
+    private ExportMode mode = ExportMode.COPY;
+    private Path fingerprintFile;
 
     @Override
     public Manifest.Key call() throws Exception {
@@ -32,7 +41,23 @@ public class ExportOperation extends BHive.Operation<Manifest.Key> {
         }
 
         Manifest mf = getManifestDatabase().getManifest(manifest);
-        getObjectManager().exportTree(mf.getRoot(), target, refHandler);
+        getObjectManager().exportTree(mf.getRoot(), target, refHandler, mode);
+
+        if (fingerprintFile != null) {
+            // the content has just been written from the objects, so there is no need to hash it again. The files are only
+            // trusted once their timestamps are old enough, so the first verification still hashes them.
+            FileFingerprints fingerprints = new FileFingerprints();
+            TreeView state = execute(new ScanOperation().setManifest(manifest));
+            state.visit(new TreeVisitor.Builder().onBlob(blob -> {
+                try {
+                    Path file = target.resolve(blob.getPathString());
+                    fingerprints.record(blob.getPathString(), FileFingerprints.readState(file), blob.getElementId());
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot record fingerprint of " + blob.getPathString(), e);
+                }
+            }).build());
+            fingerprints.write(fingerprintFile);
+        }
 
         return manifest;
     }
@@ -53,6 +78,23 @@ public class ExportOperation extends BHive.Operation<Manifest.Key> {
         return this;
     }
 
+    /**
+     * Set how to create the exported files. Defaults to {@link ExportMode#COPY}.
+     */
+    public ExportOperation setExportMode(ExportMode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * Set a file to record the fingerprints of all exported files in, see {@link VerifyOperation#setFingerprintFile(Path)}. Must
+     * not be located in the target path.
+     */
+    public ExportOperation setFingerprintFile(Path fingerprintFile) {
+        this.fingerprintFile = fingerprintFile;
+        return this;
+    }
+
     /**
      * Set a custom reference handler which takes care of nested (recursive) manifest references.
      */
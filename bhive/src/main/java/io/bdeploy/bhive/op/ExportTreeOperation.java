@@ -8,6 +8,7 @@ import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.ReadOnlyOperation;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.model.Tree;
+import io.bdeploy.bhive.objects.ExportMode;
 import io.bdeploy.bhive.objects.ReferenceHandler;
 
 /**
@@ -19,13 +20,14 @@ public class ExportTreeOperation extends BHive.Operation<Void> {
     private Path target;
     private ObjectId treeId;
     private ReferenceHandler refHandler;
+    private ExportMode mode = ExportMode.COPY;
 
     @Override
     public Void call() throws Exception {
         assertNotNull(target, "Target path not set");
         assertNotNull(treeId, "Source tree not set");
 
-        getObjectManager().exportTree(treeId, target, refHandler);
+        getObjectManager().exportTree(treeId, target, refHandler, mode);
 
         return null;
     }
@@ -44,6 +46,14 @@ public class ExportTreeOperation extends BHive.Operation<Void> {
         return this;
     }
 
+    /**
+     * Set how to create the exported files. Defaults to {@link ExportMode#COPY}.
+     */
+    public ExportTreeOperation setExportMode(ExportMode mode) {
+        this.mode = mode;
+        return this;
+    }
+
     /**
      * Set a custom reference handler which takes care of nested (recursive) manifest references.
      */
@@ -0,0 +1,220 @@
+package io.bdeploy.bhive.op;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.util.PathHelper;
+
+/**
+ * Remembers the {@link ObjectId} of exported files along with their size, modification time, change time and file key
+ * (inode). As long as none of these changed, a file can be assumed to still have the recorded content without hashing it again.
+ * <p>
+ * The attributes must be read <em>before</em> the content is hashed, so that a modification while hashing is noticed the next
+ * time. A file modified within {@link #TIMESTAMP_GRANULARITY} of the time it was recorded may have been modified again without
+ * its timestamps changing, so such an entry is never trusted and the file is hashed (and recorded again) instead.
+ * <p>
+ * The fingerprints are stored in a sidecar text file, one line per file, which must not be located inside the exported
+ * directory, as the directory would not match the exported tree anymore otherwise.
+ */
+class FileFingerprints {
+
+    private static final Logger log = LoggerFactory.getLogger(FileFingerprints.class);
+
+    private static final String HEADER = "BHFP2";
+    private static final String SEPARATOR = "\t";
+    private static final String UNIX_VIEW = "unix";
+
+    /** Coarsest timestamp resolution of supported file systems (FAT) */
+    static final long TIMESTAMP_GRANULARITY = 2_000;
+
+    private final Map<String, Fingerprint> entries = new TreeMap<>();
+    private boolean modified;
+
+    /**
+     * Reads the given sidecar file. A missing or invalid file results in empty fingerprints.
+     */
+    static FileFingerprints read(Path file) {
+        FileFingerprints result = new FileFingerprints();
+        if (!PathHelper.exists(file)) {
+            return result;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                log.warn("Ignoring invalid fingerprints in {}", file);
+                return result;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // path is last, so it may contain the separator.
+                String[] parts = line.split(SEPARATOR, 7);
+                ObjectId id = parts.length == 7 ? ObjectId.parse(parts[0]) : null;
+                if (id == null) {
+                    log.warn("Ignoring invalid fingerprint in {}: {}", file, line);
+                    continue;
+                }
+                FileState state = new FileState(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                        parts[5].isEmpty() ? null : parts[5]);
+                result.entries.put(parts[6], new Fingerprint(id, state, Long.parseLong(parts[4])));
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Cannot read fingerprints from {}", file, e);
+            result.entries.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Reads the current state of the given file. The state is only valid for regular files.
+     */
+    static FileState readState(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+            throw new IOException("Not a regular file: " + file);
+        }
+
+        long changed = -1;
+        if (file.getFileSystem().supportedFileAttributeViews().contains(UNIX_VIEW)) {
+            changed = ((FileTime) Files.getAttribute(file, UNIX_VIEW + ":ctime")).toMillis();
+        }
+        return new FileState(attributes.size(), attributes.lastModifiedTime().toMillis(), changed,
+                attributes.fileKey() == null ? null : attributes.fileKey().toString());
+    }
+
+    /**
+     * @param relPath the path of the file relative to the exported directory.
+     * @param current the current state of the file, see {@link #readState(Path)}.
+     * @param expected the expected {@link ObjectId} of the file.
+     * @return whether the file has been recorded with the expected {@link ObjectId} and is unchanged since.
+     */
+    boolean isUnchanged(String relPath, FileState current, ObjectId expected) {
+        Fingerprint recorded = entries.get(relPath);
+        return recorded != null && recorded.id.equals(expected) && recorded.isTrusted() && recorded.state.equals(current);
+    }
+
+    /**
+     * Records the state of the given file, which is known to have the given {@link ObjectId}. The state must have been read
+     * before the content has been written or hashed.
+     */
+    void record(String relPath, FileState state, ObjectId id) {
+        if (relPath.indexOf('\n') >= 0 || relPath.indexOf('\r') >= 0) {
+            return; // cannot be recorded, will always be hashed.
+        }
+
+        Fingerprint recorded = entries.get(relPath);
+        if (recorded != null && recorded.id.equals(id) && recorded.state.equals(state) && recorded.isTrusted()) {
+            return; // keep the original recording time.
+        }
+        entries.put(relPath, new Fingerprint(id, state, System.currentTimeMillis()));
+        modified = true;
+    }
+
+    /**
+     * Forgets about the given file, e.g. because it has been modified.
+     */
+    void remove(String relPath) {
+        if (entries.remove(relPath) != null) {
+            modified = true;
+        }
+    }
+
+    /**
+     * @return whether the fingerprints changed since they have been read.
+     */
+    boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Writes the fingerprints to the given file, replacing it atomically.
+     */
+    void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName().toString() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write(HEADER + "\n");
+                for (Map.Entry<String, Fingerprint> entry : entries.entrySet()) {
+                    Fingerprint fp = entry.getValue();
+                    FileState state = fp.state;
+                    writer.write(fp.id + SEPARATOR + state.size + SEPARATOR + state.modified + SEPARATOR + state.changed
+                            + SEPARATOR + fp.recorded + SEPARATOR + (state.fileKey == null ? "" : state.fileKey) + SEPARATOR
+                            + entry.getKey() + "\n");
+                }
+            }
+            PathHelper.moveRetry(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+        } finally {
+            PathHelper.deleteIfExistsRetry(tmp);
+        }
+    }
+
+    /**
+     * The attributes of a file which are expected to change whenever its content changes.
+     */
+    static final class FileState {
+
+        private final long size;
+        private final long modified;
+        private final long changed;
+        private final String fileKey;
+
+        private FileState(long size, long modified, long changed, String fileKey) {
+            this.size = size;
+            this.modified = modified;
+            this.changed = changed;
+            this.fileKey = fileKey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileState)) {
+                return false;
+            }
+            FileState other = (FileState) obj;
+            return size == other.size && modified == other.modified && changed == other.changed
+                    && Objects.equals(fileKey, other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, modified, changed, fileKey);
+        }
+    }
+
+    private static final class Fingerprint {
+
+        private final ObjectId id;
+        private final FileState state;
+        private final long recorded;
+
+        Fingerprint(ObjectId id, FileState state, long recorded) {
+            this.id = id;
+            this.state = state;
+            this.recorded = recorded;
+        }
+
+        /**
+         * @return whether the file was last modified (or changed) long enough before it has been recorded, so that any later
+         *         modification must have changed its timestamps.
+         */
+        boolean isTrusted() {
+            return Math.max(state.modified, state.changed) + TIMESTAMP_GRANULARITY < recorded;
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+package io.bdeploy.bhive.op;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.ReadOnlyOperation;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.objects.view.TreeView;
+import io.bdeploy.bhive.objects.view.scanner.TreeVisitor;
+import io.bdeploy.bhive.util.ObjectDelta;
+
+/**
+ * Finds base objects which allow sending large objects as {@link ObjectDelta} instead of in full.
+ * <p>
+ * The base of an object is the object at the same path in another version (tag) of the same manifest. Referenced manifests
+ * are matched by name as well, so that e.g. an application within a product also finds its previous version. Base manifests
+ * which do not exist in this {@link BHive} are ignored.
+ */
+@ReadOnlyOperation
+public class FindDeltaBasesOperation extends BHive.Operation<Map<ObjectId, ObjectId>> {
+
+    /** The maximum amount of base manifests with the same name which are considered for a single target manifest */
+    private static final int MAX_BASES_PER_NAME = 3;
+
+    private final Set<Manifest.Key> targets = new LinkedHashSet<>();
+    private final Set<Manifest.Key> bases = new LinkedHashSet<>();
+    private Set<ObjectId> objects;
+
+    @Override
+    public Map<ObjectId, ObjectId> call() throws Exception {
+        Map<ObjectId, ObjectId> result = new HashMap<>();
+        if (objects == null || objects.isEmpty()) {
+            return result;
+        }
+
+        Map<String, List<Manifest.Key>> basesByName = expand(bases).stream().filter(k -> !targets.contains(k))
+                .collect(Collectors.groupingBy(Manifest.Key::getName));
+
+        for (Manifest.Key target : expand(targets)) {
+            List<Manifest.Key> candidates = basesByName.get(target.getName());
+            if (candidates == null) {
+                continue;
+            }
+
+            Map<String, ObjectId> targetBlobs = getLargeBlobs(target);
+            targetBlobs.values().removeIf(o -> !objects.contains(o) || result.containsKey(o));
+            if (targetBlobs.isEmpty()) {
+                continue;
+            }
+
+            // highest tag first - the first base which has an object at the same path wins.
+            candidates.sort(Comparator.comparing(Manifest.Key::getTag, FindDeltaBasesOperation::compareTags).reversed());
+            for (Manifest.Key base : candidates.subList(0, Math.min(candidates.size(), MAX_BASES_PER_NAME))) {
+                Map<String, ObjectId> baseBlobs = getLargeBlobs(base);
+                for (Map.Entry<String, ObjectId> entry : new ArrayList<>(targetBlobs.entrySet())) {
+                    ObjectId baseObject = baseBlobs.get(entry.getKey());
+                    if (baseObject != null && !baseObject.equals(entry.getValue())) {
+                        result.put(entry.getValue(), baseObject);
+                        targetBlobs.remove(entry.getKey());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compares numeric tags by their value, so that e.g. "10" is newer than "9". Other tags are compared as strings, and are
+     * considered older than any numeric tag.
+     */
+    private static int compareTags(String a, String b) {
+        Long numA = parseTag(a);
+        Long numB = parseTag(b);
+        if (numA != null && numB != null) {
+            return Long.compare(numA, numB);
+        } else if (numA != null) {
+            return 1;
+        } else if (numB != null) {
+            return -1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static Long parseTag(String tag) {
+        try {
+            return Long.valueOf(tag);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the given manifests and all manifests referenced by them which exist in this {@link BHive}.
+     */
+    private Set<Manifest.Key> expand(Collection<Manifest.Key> keys) {
+        Set<Manifest.Key> result = new LinkedHashSet<>();
+        for (Manifest.Key key : keys) {
+            if (!getManifestDatabase().hasManifest(key)) {
+                continue;
+            }
+            result.add(key);
+            result.addAll(execute(new ManifestRefScanOperation().setAllowMissingObjects(true).setManifest(key)).values());
+        }
+        return result;
+    }
+
+    /**
+     * @return all blobs which are large enough for a delta by their path, not including referenced manifests.
+     */
+    private Map<String, ObjectId> getLargeBlobs(Manifest.Key key) {
+        Map<String, ObjectId> result = new TreeMap<>();
+        TreeView view = execute(new ScanOperation().setManifest(key).setFollowReferences(false));
+        view.visit(new TreeVisitor.Builder().onBlob(b -> {
+            try {
+                if (getObjectManager().db(db -> db.getObjectSize(b.getElementId())) >= ObjectDelta.MIN_SIZE) {
+                    result.put(b.getPathString(), b.getElementId());
+                }
+            } catch (Exception e) {
+                // not available locally, cannot be used.
+            }
+        }).build());
+        return result;
+    }
+
+    /**
+     * The manifests which are about to be transferred. Referenced manifests are included automatically.
+     */
+    public FindDeltaBasesOperation addTarget(Collection<Manifest.Key> keys) {
+        targets.addAll(keys);
+        return this;
+    }
+
+    /**
+     * Manifests which exist on the receiving side, and may thus serve as base. Referenced manifests are included automatically.
+     */
+    public FindDeltaBasesOperation addBase(Collection<Manifest.Key> keys) {
+        bases.addAll(keys);
+        return this;
+    }
+
+    /**
+     * The objects which are about to be transferred. Only these are considered.
+     */
+    public FindDeltaBasesOperation setObjects(Set<ObjectId> objects) {
+        this.objects = objects;
+        return this;
+    }
+
+}
@@ -6,6 +6,9 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditStrategy;
 import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditWith;
@@ -16,10 +19,15 @@ import io.bdeploy.common.ActivityReporter.Activity;
 /**
  * The {@link FsckOperation} checks the hive for consistency problems.
  * <p>
+ * When checking all manifests, the presence index of the object database and the manifest index are rebuilt from the actual
+ * files first.
+ * <p>
  * The returned set contains all {@link ElementView}s which are problematic (damaged, missing)
  */
 public class FsckOperation extends BHive.Operation<Set<ElementView>> {
 
+    private static final Logger log = LoggerFactory.getLogger(FsckOperation.class);
+
     @AuditWith(AuditStrategy.COLLECTION_PEEK)
     private final SortedSet<Manifest.Key> manifests = new TreeSet<>();
     private boolean repair;
@@ -31,6 +39,23 @@ public class FsckOperation extends BHive.Operation<Set<ElementView>> {
 
         try (Activity activity = getActivityReporter().start("Checking", -1)) {
             if (manifests.isEmpty()) {
+                // full check: rebuild the presence index, it must reflect the state on disc to detect missing objects.
+                getObjectManager().db(db -> {
+                    try {
+                        return db.rebuildPresenceIndex();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted", e);
+                    }
+                });
+
+                // ... and the manifest index, which may miss manifests written by older versions.
+                try {
+                    getManifestDatabase().rebuildIndex();
+                } catch (Exception e) {
+                    log.warn("Cannot rebuild manifest index", e);
+                }
+
                 Set<Manifest.Key> localManifests = execute(new ManifestListOperation());
                 if (localManifests.isEmpty()) {
                     return Collections.emptySet();
@@ -0,0 +1,39 @@
+package io.bdeploy.bhive.op;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.ReadOnlyOperation;
+import io.bdeploy.bhive.model.ManifestChanges;
+
+/**
+ * Returns the {@link ManifestChanges} since a given position in the change journal of the {@link BHive}.
+ * <p>
+ * Without a journal and cursor, only the current position is returned, which can be used as starting point for the next query.
+ */
+@ReadOnlyOperation
+public class ManifestChangesOperation extends BHive.Operation<ManifestChanges> {
+
+    private String journal;
+    private long cursor;
+
+    @Override
+    public ManifestChanges call() throws Exception {
+        ManifestChanges changes = getManifestDatabase().getChanges(journal, cursor);
+        if (changes == null) {
+            // no journal available, callers always need to compare all manifests.
+            changes = new ManifestChanges();
+        }
+        return changes;
+    }
+
+    /**
+     * @param journal the journal identifier of a previous result.
+     * @param cursor the cursor of a previous result.
+     * @return the operation for chaining.
+     */
+    public ManifestChangesOperation setCursor(String journal, long cursor) {
+        this.journal = journal;
+        this.cursor = cursor;
+        return this;
+    }
+
+}
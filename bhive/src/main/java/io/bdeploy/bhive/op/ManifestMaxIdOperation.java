@@ -4,7 +4,6 @@ import java.util.Optional;
 
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.ReadOnlyOperation;
-import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.common.util.RuntimeAssert;
 
 /**
@@ -19,12 +18,7 @@ public class ManifestMaxIdOperation extends BHive.Operation<Optional<Long>> {
     public Optional<Long> call() throws Exception {
         RuntimeAssert.assertNotNull(key, "No Manifest to inspect");
 
-        try {
-            return getManifestDatabase().getAllForName(key).stream().map(Manifest.Key::getTag).map(Long::parseLong)
-                    .max(Long::compare);
-        } catch (NumberFormatException e) {
-            return Optional.empty();
-        }
+        return getManifestDatabase().getMaxId(key);
     }
 
     /**
@@ -18,6 +18,7 @@ import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditStrategy;
 import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditWith;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
 import io.bdeploy.bhive.model.Tree;
 import io.bdeploy.bhive.objects.view.BlobView;
 import io.bdeploy.bhive.objects.view.ElementView;
@@ -60,7 +61,7 @@ public class ObjectListOperation extends BHive.Operation<Set<ObjectId>> {
             // Load all trees that are referenced by the manifest
             for (Manifest.Key m : manifests) {
                 try {
-                    trees.add(execute(new ManifestLoadOperation().setManifest(m)).getRoot());
+                    trees.add(getManifestDatabase().getManifestRoot(m));
                 } catch (Exception e) {
                     if (!Boolean.TRUE.equals(execute(new ManifestExistsOperation().setManifest(m)) && ignoreMissingManifest)) {
                         // no longer exists, and we want to ignore this - just go on.
@@ -101,7 +102,7 @@ public class ObjectListOperation extends BHive.Operation<Set<ObjectId>> {
             // Collect all objects referring to the tree
             // First we add the children then we add the parent tree
             // We intentionally do not use a visitor here as we just need the direct children
-            Set<ObjectId> result = new LinkedHashSet<>();
+            Set<ObjectId> result = new ObjectIdSet();
             for (List<ObjectId> flatTree : allTrees) {
                 result.addAll(flatTree);
             }
@@ -2,15 +2,25 @@ package io.bdeploy.bhive.op;
 
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CountingInputStream;
 
 import io.bdeploy.bhive.BHive;
@@ -20,6 +30,9 @@ import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.model.SortManifestsByReferences;
 import io.bdeploy.bhive.objects.view.ElementView;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
+import io.bdeploy.bhive.util.ObjectDelta;
+import io.bdeploy.bhive.util.ObjectStreamFormat;
+import io.bdeploy.bhive.util.ObjectStreamFormat.StreamReader;
 import io.bdeploy.bhive.util.StorageHelper;
 import io.bdeploy.common.ActivityReporter.Activity;
 import io.bdeploy.common.util.FixedLengthStream;
@@ -29,35 +42,62 @@ import io.bdeploy.common.util.StreamHelper;
 
 /**
  * Reads one or more objects from a stream and inserts them into the local hive.
+ * <p>
+ * The stream is read on the calling thread, while objects are hashed and persisted in parallel on the file operation pool. The
+ * amount of received content waiting to be persisted is limited, so a fast sender cannot exhaust memory. Large objects are
+ * streamed to the database directly.
+ * <p>
+ * If the stream is interrupted or incomplete, all objects received so far are kept for
+ * {@link io.bdeploy.bhive.BHiveTransactions#RESUME_TIMEOUT}, so a retry of the transfer only needs to send the remaining ones.
+ * Objects received by a stream without manifests are kept the same way, until a stream carrying the manifests which reference
+ * them is received.
  */
 public class ObjectReadOperation extends BHive.TransactedOperation<TransferStatistics> {
 
+    private static final Logger log = LoggerFactory.getLogger(ObjectReadOperation.class);
+
+    /** Objects up to this size are received in memory and persisted in parallel, larger ones are streamed */
+    private static final int MAX_PARALLEL_OBJECT_SIZE = 4 * 1024 * 1024;
+
+    /** The maximum amount of received content held in memory while waiting to be persisted */
+    private static final int MAX_IN_FLIGHT_SIZE = 64 * 1024 * 1024;
+
     @NoAudit
     private InputStream input;
 
+    @NoAudit
+    private int maxParallelObjectSize = MAX_PARALLEL_OBJECT_SIZE;
+
+    @NoAudit
+    private int maxInFlightSize = MAX_IN_FLIGHT_SIZE;
+
+    @NoAudit
+    private Consumer<byte[]> beforeInsert;
+
     @Override
     public TransferStatistics callTransacted() throws Exception {
         TransferStatistics result = new TransferStatistics();
         Instant start = Instant.now();
         RuntimeAssert.assertNotNull(input);
+        SortedSet<ObjectId> objects = Collections.synchronizedSortedSet(new TreeSet<>());
+        ParallelInserter inserter = new ParallelInserter(objects);
         try (CountingInputStream countingIn = new CountingInputStream(input);
                 BufferedInputStream buffIn = new BufferedInputStream(countingIn, ObjectWriteOperation.BUFFER_SIZE * 2);
-                GZIPInputStream zipIn = new GZIPInputStream(buffIn, ObjectWriteOperation.BUFFER_SIZE);
-                DataInputStream dataIn = new DataInputStream(zipIn)) {
+                StreamReader reader = StreamReader.open(buffIn)) {
+            DataInputStream dataIn = reader.data();
             long totalSize = dataIn.readLong();
 
             String baseActivity = "Receiving";
             ManifestConsistencyCheckOperation checkOp = new ManifestConsistencyCheckOperation();
+            SortedSet<Manifest> manifests = new TreeSet<>();
             try (Activity activity = getActivityReporter().start(baseActivity, totalSize);
-                    ReportingInputStream reportingIn = new ReportingInputStream(dataIn, totalSize, activity, baseActivity)) {
-                SortedSet<ObjectId> objects = new TreeSet<>();
-                SortedSet<Manifest> manifests = new TreeSet<>();
-
+                    ReportingInputStream reportingIn = new ReportingInputStream(reader, totalSize, activity, baseActivity)) {
                 // Read all manifests from the stream
                 long counter = dataIn.readLong();
                 for (int i = 0; i < counter; i++) {
-                    long size = dataIn.readLong();
+                    long size = reader.next();
                     Manifest mf = StorageHelper.fromStream(new FixedLengthStream(reportingIn, size), Manifest.class);
+                    reader.finish();
                     manifests.add(mf);
                     checkOp.addRoot(mf.getKey());
                 }
@@ -65,10 +105,29 @@ public class ObjectReadOperation extends BHive.TransactedOperation<TransferStati
                 // Read all objects from the stream
                 counter = dataIn.readLong();
                 for (int i = 0; i < counter; i++) {
-                    long size = dataIn.readLong();
-                    ObjectId insertedId = getObjectManager().db(db -> db.addObject(new FixedLengthStream(reportingIn, size)));
-                    objects.add(insertedId);
+                    if (reader.getVersion() >= ObjectStreamFormat.VERSION_DELTA
+                            && dataIn.readByte() == ObjectStreamFormat.OBJECT_DELTA) {
+                        ObjectId insertedId = readDelta(reader, reportingIn);
+                        if (insertedId != null) {
+                            objects.add(insertedId);
+                        }
+                        continue;
+                    }
+
+                    long size = reader.next();
+                    if (size <= maxParallelObjectSize) {
+                        byte[] content = inserter.allocate((int) size);
+                        ByteStreams.readFully(reportingIn, content);
+                        reader.finish();
+                        inserter.insert(content);
+                    } else {
+                        ObjectId insertedId = getObjectManager()
+                                .db(db -> db.addObject(new FixedLengthStream(reportingIn, size)));
+                        reader.finish();
+                        objects.add(insertedId);
+                    }
                 }
+                inserter.await();
                 result.sumMissingObjects = counter;
 
                 // Insert manifests as last operation - sorted by references they may have to each other.
@@ -81,17 +140,30 @@ public class ObjectReadOperation extends BHive.TransactedOperation<TransferStati
 
                 result.duration = Duration.between(start, Instant.now()).toMillis();
             }
-            // Check manifests for consistency and remove invalid ones
-            Set<ElementView> damaged = execute(checkOp.setDryRun(false));
+            // Check manifests for consistency and remove invalid ones. Streams may also carry objects only.
+            Set<ElementView> damaged = manifests.isEmpty() ? Collections.emptySet() : execute(checkOp.setDryRun(false));
             if (!damaged.isEmpty()) {
                 // in case the damaged manifests where removed, we also want to remove
-                // all the associated objects.
+                // all the associated objects. Received objects are still marked by the transaction.
                 SortedMap<ObjectId, Long> pruned = execute(new PruneOperation());
 
                 throw new IllegalStateException("Failed to stream all required objects. Removed " + damaged.size()
                         + " missing/damaged elements, pruned " + pruned.size() + " objects.");
             }
             result.transferSize = countingIn.getCount();
+
+            if (manifests.isEmpty()) {
+                // the manifests follow in another stream (and transaction), the objects must survive until then.
+                getTransactions().keepForResume(objects);
+            } else if (getTransactions().hasResumeMarkers()) {
+                Set<Manifest.Key> keys = manifests.stream().map(Manifest::getKey).collect(Collectors.toSet());
+                getTransactions().releaseForResume(execute(new ObjectListOperation().addManifest(keys)));
+            }
+        } catch (Exception e) {
+            // acknowledge what has been received, the sender can resume with the remaining objects.
+            inserter.awaitQuietly();
+            getTransactions().keepForResume(objects);
+            throw e;
         } finally {
             if (result.duration == 0) {
                 // fallback only if no duration has been calculated (aborted, failure, etc.).
@@ -102,6 +174,129 @@ public class ObjectReadOperation extends BHive.TransactedOperation<TransferStati
         return result;
     }
 
+    /**
+     * Reconstructs an object from its base and a delta. The reconstructed object is verified.
+     * <p>
+     * If the base does not exist (anymore), the delta is skipped and the object is missing after reading the stream. Senders
+     * therefore send deltas without manifests, and send objects which are still missing afterwards in full.
+     *
+     * @return the inserted object, or <code>null</code> if the base is missing.
+     */
+    private ObjectId readDelta(StreamReader reader, InputStream content) throws IOException {
+        ObjectId expected = ObjectId.parse(reader.data().readUTF());
+        ObjectId base = ObjectId.parse(reader.data().readUTF());
+
+        long size = reader.next();
+        if (!getObjectManager().db(db -> db.hasObject(base))) {
+            ByteStreams.skipFully(content, size);
+            reader.finish();
+            log.info("Skipping delta of {}, base {} is missing", expected, base);
+            return null;
+        }
+
+        ObjectId insertedId = getObjectManager().db(db -> {
+            try (SeekableByteChannel baseChannel = Files.newByteChannel(db.getLooseObjectFile(base))) {
+                return db.addObject(ObjectDelta.decode(baseChannel, new FixedLengthStream(content, size)));
+            }
+        });
+        reader.finish();
+
+        if (!expected.equals(insertedId)) {
+            throw new IllegalStateException("Delta of " + expected + " to " + base + " reconstructed " + insertedId);
+        }
+        return insertedId;
+    }
+
+    /**
+     * Persists objects which have been received in memory on the file operation pool.
+     */
+    private final class ParallelInserter {
+
+        private final Semaphore inFlight = new Semaphore(maxInFlightSize);
+        private final Set<ObjectId> inserted;
+
+        /** Guards the amount of pending inserts and the first failure */
+        private final Object lock = new Object();
+        private int pending;
+        private Throwable failure;
+
+        ParallelInserter(Set<ObjectId> inserted) {
+            this.inserted = inserted;
+        }
+
+        /**
+         * Allocates a buffer for an object, blocking until enough previously received objects have been persisted.
+         */
+        byte[] allocate(int size) throws InterruptedException {
+            inFlight.acquire(size);
+            return new byte[size];
+        }
+
+        /**
+         * Persists the object with the given content, which must have been allocated using {@link #allocate(int)}.
+         */
+        void insert(byte[] content) {
+            synchronized (lock) {
+                // fail early, there is no use in receiving more objects.
+                checkFailure();
+                pending++;
+            }
+
+            submitFileOperation(() -> {
+                try {
+                    if (beforeInsert != null) {
+                        beforeInsert.accept(content);
+                    }
+                    inserted.add(getObjectManager().db(db -> db.addObject(content)));
+                } catch (Throwable t) {
+                    synchronized (lock) {
+                        if (failure == null) {
+                            failure = t;
+                        }
+                    }
+                    throw t;
+                } finally {
+                    inFlight.release(content.length);
+                    synchronized (lock) {
+                        pending--;
+                        lock.notifyAll();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Waits until all objects have been persisted.
+         */
+        void await() throws InterruptedException {
+            synchronized (lock) {
+                while (pending > 0) {
+                    lock.wait();
+                }
+                checkFailure();
+            }
+        }
+
+        private void checkFailure() {
+            if (failure != null) {
+                throw new IllegalStateException("Asynchronous operation(s) failed", failure);
+            }
+        }
+
+        /**
+         * Waits until all objects have been persisted, ignoring any failure.
+         */
+        void awaitQuietly() {
+            try {
+                await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // already failing, the original failure is reported.
+            }
+        }
+    }
+
     /**
      * The stream to read the objects from. The stream is closed at the end of the operation
      */
@@ -110,4 +305,22 @@ public class ObjectReadOperation extends BHive.TransactedOperation<TransferStati
         return this;
     }
 
+    /**
+     * @param maxParallelObjectSize the size up to which objects are persisted in parallel, for testing.
+     * @param maxInFlightSize the maximum amount of received content waiting to be persisted, for testing.
+     */
+    ObjectReadOperation setLimits(int maxParallelObjectSize, int maxInFlightSize) {
+        this.maxParallelObjectSize = maxParallelObjectSize;
+        this.maxInFlightSize = maxInFlightSize;
+        return this;
+    }
+
+    /**
+     * @param beforeInsert called with the content of each object persisted in parallel before inserting it, for testing.
+     */
+    ObjectReadOperation setBeforeInsert(Consumer<byte[]> beforeInsert) {
+        this.beforeInsert = beforeInsert;
+        return this;
+    }
+
 }
@@ -1,16 +1,19 @@
 package io.bdeploy.bhive.op;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPOutputStream;
 
 import com.google.common.io.CountingOutputStream;
 
@@ -21,8 +24,12 @@ import io.bdeploy.bhive.audit.AuditParameterExtractor.AuditWith;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.util.ObjectDelta;
+import io.bdeploy.bhive.util.ObjectStreamFormat;
+import io.bdeploy.bhive.util.ObjectStreamFormat.StreamWriter;
 import io.bdeploy.bhive.util.StorageHelper;
 import io.bdeploy.common.ActivityReporter.Activity;
+import io.bdeploy.common.util.PathHelper;
 import io.bdeploy.common.util.RuntimeAssert;
 import io.bdeploy.common.util.StreamHelper;
 
@@ -41,6 +48,10 @@ public class ObjectWriteOperation extends BHive.Operation<Long> {
 
     private OutputStream output;
 
+    private int version = ObjectStreamFormat.VERSION_GZIP;
+
+    private final Map<ObjectId, ObjectId> deltaBases = new HashMap<>();
+
     @Override
     public Long call() throws Exception {
         RuntimeAssert.assertNotNull(output);
@@ -61,43 +72,110 @@ public class ObjectWriteOperation extends BHive.Operation<Long> {
         }
 
         try (Activity activity = getActivityReporter().start("Sending", totalSize);
-                CountingOutputStream countingOut = new CountingOutputStream(output);
-                GZIPOutputStream zipOut = new GZIPOutputStream(countingOut, BUFFER_SIZE);
-                BufferedOutputStream buffOut = new BufferedOutputStream(zipOut, BUFFER_SIZE * 2);
-                DataOutputStream dataOut = new DataOutputStream(zipOut)) {
-
-            // First we send the total size so that the client can display a progress bar
-            dataOut.writeLong(totalSize);
-
-            // Stream all manifests
-            dataOut.writeLong(manifests.size());
-            for (Manifest.Key key : manifests) {
-                Manifest mf = getManifestDatabase().getManifest(key);
-                byte[] bytes = StorageHelper.toRawBytes(mf);
-                dataOut.writeLong(bytes.length);
-                dataOut.write(bytes);
+                CountingOutputStream countingOut = new CountingOutputStream(output)) {
+            try (StreamWriter writer = StreamWriter.open(countingOut, version)) {
+                DataOutputStream dataOut = writer.data();
+
+                // First we send the total size so that the client can display a progress bar
+                dataOut.writeLong(totalSize);
+
+                // Stream all manifests
+                dataOut.writeLong(manifests.size());
+                for (Manifest.Key key : manifests) {
+                    Manifest mf = getManifestDatabase().getManifest(key);
+                    byte[] bytes = StorageHelper.toRawBytes(mf);
+                    writer.writeFrame(new ByteArrayInputStream(bytes), bytes.length);
+                }
+
+                // Stream all objects
+                dataOut.writeLong(objects.size());
+                for (Map.Entry<ObjectId, Long> entry : object2FileSize.entrySet()) {
+                    ObjectId objectId = entry.getKey();
+                    long size = entry.getValue();
+                    if (writer.getVersion() >= ObjectStreamFormat.VERSION_DELTA && writeDelta(writer, objectId, size)) {
+                        activity.worked(size);
+                        continue;
+                    }
+
+                    if (writer.getVersion() >= ObjectStreamFormat.VERSION_DELTA) {
+                        dataOut.writeByte(ObjectStreamFormat.OBJECT_FULL);
+                    }
+                    getObjectManager().db(db -> {
+                        try (InputStream input = db.getStream(objectId)) {
+                            writer.writeFrame(input, size);
+                        }
+                        return null;
+                    });
+                    activity.worked(size);
+                }
             }
+            return countingOut.getCount();
+        } finally {
+            StreamHelper.close(output);
+        }
+    }
 
-            // Stream all objects
-            dataOut.writeLong(objects.size());
-            for (Map.Entry<ObjectId, Long> entry : object2FileSize.entrySet()) {
-                ObjectId objectId = entry.getKey();
-                long size = entry.getValue();
+    /**
+     * Writes the given object as delta to its base if there is one, and the delta is considerably smaller than the object.
+     *
+     * @return whether the object has been written.
+     */
+    private boolean writeDelta(StreamWriter writer, ObjectId objectId, long size) throws IOException {
+        ObjectId base = deltaBases.get(objectId);
+        if (base == null || size < ObjectDelta.MIN_SIZE) {
+            return false;
+        }
+
+        Path delta = getObjectManager().db(db -> db.createTempFile("delta-", ".bin"));
+        try {
+            try (OutputStream out = Files.newOutputStream(delta)) {
                 getObjectManager().db(db -> {
-                    dataOut.writeLong(size);
-                    try (InputStream input = db.getStream(objectId)) {
-                        StreamHelper.copy(input, dataOut);
+                    try (InputStream baseInput = db.getStream(base); InputStream input = db.getStream(objectId)) {
+                        ObjectDelta.encode(baseInput, db.getObjectSize(base), input, out);
                     }
                     return null;
                 });
-                activity.worked(size);
             }
-            return countingOut.getCount();
+
+            long deltaSize = Files.size(delta);
+            if (deltaSize * 10 > size * 9) {
+                return false; // not worth it, the objects are too different.
+            }
+
+            DataOutputStream dataOut = writer.data();
+            dataOut.writeByte(ObjectStreamFormat.OBJECT_DELTA);
+            dataOut.writeUTF(objectId.getId());
+            dataOut.writeUTF(base.getId());
+            try (InputStream input = Files.newInputStream(delta)) {
+                writer.writeFrame(input, deltaSize);
+            }
+            return true;
         } finally {
-            StreamHelper.close(output);
+            PathHelper.deleteIfExistsRetry(delta);
         }
     }
 
+    /**
+     * The version of the {@link ObjectStreamFormat} to write. The reading side must support it. Defaults to
+     * {@link ObjectStreamFormat#VERSION_GZIP}, which is supported by all versions.
+     */
+    public ObjectWriteOperation version(int version) {
+        this.version = version;
+        return this;
+    }
+
+    /**
+     * Objects which may be sent as delta to a base object, which must exist on the reading side. Only used if the
+     * {@link #version(int)} is at least {@link ObjectStreamFormat#VERSION_DELTA}.
+     *
+     * @param deltaBases the base object for each object.
+     * @see FindDeltaBasesOperation
+     */
+    public ObjectWriteOperation deltaBases(Map<ObjectId, ObjectId> deltaBases) {
+        this.deltaBases.putAll(deltaBases);
+        return this;
+    }
+
     /**
      * The stream to write the objects to
      */
@@ -1,18 +1,21 @@
 package io.bdeploy.bhive.op;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedMap;
-import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,15 +23,24 @@ import org.slf4j.LoggerFactory;
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
 import io.bdeploy.bhive.objects.MarkerDatabase;
 import io.bdeploy.bhive.objects.ObjectDatabase;
 import io.bdeploy.common.ActivityReporter.Activity;
 import io.bdeploy.common.audit.AuditRecord;
 import io.bdeploy.common.audit.AuditRecord.Severity;
+import io.bdeploy.common.util.PathHelper;
+import io.bdeploy.common.util.Threads;
 
 /**
  * Removes dangling (unreferenced) objects from the {@link ObjectDatabase}.
  * <p>
+ * By default the whole operation runs while holding the lock on the marker root, which prevents new transactions from
+ * starting. In incremental mode, the {@link ObjectDatabase} is processed shard by shard (see
+ * {@link ObjectDatabase#getShardObjects(String)}) in short time slices, releasing the lock in between. The progress is
+ * persisted, so an incremental prune which is stopped due to {@link #setMaxTime(Duration)} resumes with the next shard when
+ * run again.
+ * <p>
  * Returns a map of removed {@link ObjectId}s along with the size of the removed
  * underlying file.
  */
@@ -36,8 +48,23 @@ public class PruneOperation extends BHive.Operation<SortedMap<ObjectId, Long>> {
 
     private static final Logger log = LoggerFactory.getLogger(PruneOperation.class);
 
+    private static final int SHARD_COUNT = 0x10000;
+    private static final String PROGRESS_FILE = "prune-progress";
+
+    /** The time to wait between two slices, giving waiting transactions the chance to start or finish */
+    private static final long SLICE_PAUSE_MILLIS = 100;
+
+    private boolean incremental = false;
+    private Duration sliceTime = Duration.ofSeconds(1);
+    private Duration maxTime;
+    private Consumer<String> beforeShard;
+
     @Override
     public SortedMap<ObjectId, Long> call() throws Exception {
+        if (incremental) {
+            return pruneIncremental();
+        }
+
         SortedMap<ObjectId, Long> result = new TreeMap<>();
 
         AtomicLong max = new AtomicLong(-1);
@@ -52,7 +79,7 @@ public class PruneOperation extends BHive.Operation<SortedMap<ObjectId, Long>> {
             //  3) Upon completion, existing trasactions will block removal of the markers until the root is unlocked.
             execute(new LockDirectoryOperation().setDirectory(getMarkerRoot()));
 
-            SortedSet<ObjectId> all;
+            Set<ObjectId> all;
             try {
                 // read existing manifests also inside the lock, so we are sure that the existing
                 // manifests and objects are in a consistent state.
@@ -62,29 +89,22 @@ public class PruneOperation extends BHive.Operation<SortedMap<ObjectId, Long>> {
                     // we list all object, ignoring manifests which disappeared in the meantime (since the list call).
                     referenced = execute(new ObjectListOperation().addManifest(manifests).ignoreMissingManifest(true));
                 } else {
-                    referenced = new TreeSet<>();
+                    referenced = new ObjectIdSet();
                 }
 
-                SortedSet<ObjectId> orig = getObjectManager().db(db -> {
+                all = getObjectManager().db(db -> {
                     try {
-                        return db.getAllObjects();
+                        return db.getAllObjects(ObjectIdSet::new);
                     } catch (InterruptedException e1) {
                         Thread.currentThread().interrupt();
                         throw new IllegalStateException("Interrupted", e1);
                     }
                 });
-                all = new TreeSet<>(orig);
                 all.removeAll(referenced);
 
                 // read all existing marker databases and regard any existing object as referenced.
-                try (DirectoryStream<Path> markerDbs = Files.newDirectoryStream(getMarkerRoot())) {
-                    for (Path markerDb : markerDbs) {
-                        if (Files.isDirectory(markerDb)) {
-                            MarkerDatabase mdb = new MarkerDatabase(markerDb, getActivityReporter());
-                            all.removeAll(mdb.getAllObjects());
-                        }
-                    }
-                }
+                getTransactions().cleanExpiredResumeMarkers();
+                all.removeAll(readMarkers());
 
                 List<ObjectId> auditList = new ArrayList<>();
 
@@ -93,26 +113,11 @@ public class PruneOperation extends BHive.Operation<SortedMap<ObjectId, Long>> {
 
                 // delete within the lock, just to be sure that nobody "re-needs" one of the objects.
                 for (ObjectId unreferenced : all) {
-                    result.put(unreferenced, getObjectManager().db(x -> {
-                        try {
-                            long sz = x.getObjectSize(unreferenced);
-                            x.removeObject(unreferenced);
-                            if (auditList.size() < 50) {
-                                auditList.add(unreferenced);
-                            }
-                            return sz;
-                        } catch (NoSuchFileException e) {
-                            log.debug("To-be-removed object is no longer existing: {}", unreferenced);
-                            return (long) 0;
-                        }
-                    }));
-
+                    remove(unreferenced, result, auditList);
                     current.increment();
                 }
 
-                getAuditor().audit(AuditRecord.Builder.fromSystem().setSeverity(Severity.NORMAL)
-                        .setWhat(PruneOperation.class.getName()).setMessage("Removed " + result.size() + " Objects ")
-                        .addParameter("removed", auditList.toString()).build());
+                audit(result, auditList);
             } finally {
                 // Unlocking the root will allow:
                 //  1) Ongoing operations to continue clearing their markers
@@ -124,4 +129,176 @@ public class PruneOperation extends BHive.Operation<SortedMap<ObjectId, Long>> {
         }
     }
 
+    private SortedMap<ObjectId, Long> pruneIncremental() throws IOException, InterruptedException {
+        SortedMap<ObjectId, Long> result = new TreeMap<>();
+        List<ObjectId> auditList = new ArrayList<>();
+
+        long deadline = maxTime == null ? Long.MAX_VALUE : System.currentTimeMillis() + maxTime.toMillis();
+        Path progressFile = getMarkerRoot().resolve(PROGRESS_FILE);
+        int shard = readProgress(progressFile);
+
+        LongAdder current = new LongAdder();
+        current.add(shard);
+
+        try (Activity activity = getActivityReporter().start("Prune (calculating)", () -> SHARD_COUNT, current::sum)) {
+            // Mark without holding the lock. Manifests added in the meantime are marked in each slice. Removed manifests only
+            // keep some objects alive for one more pass. Manifests are never modified once inserted.
+            Set<Manifest.Key> marked = new HashSet<>(execute(new ManifestListOperation()));
+            Set<ObjectId> referenced = listReferenced(marked);
+
+            activity.activity("Prune (cleaning)");
+            while (shard < SHARD_COUNT && System.currentTimeMillis() < deadline) {
+                execute(new LockDirectoryOperation().setDirectory(getMarkerRoot()));
+                try {
+                    Set<Manifest.Key> added = new HashSet<>(execute(new ManifestListOperation()));
+                    added.removeAll(marked);
+                    if (!added.isEmpty()) {
+                        referenced.addAll(listReferenced(added));
+                        marked.addAll(added);
+                    }
+
+                    getTransactions().cleanExpiredResumeMarkers();
+
+                    long sliceEnd = System.currentTimeMillis() + sliceTime.toMillis();
+                    do {
+                        String prefix = String.format("%04x", shard);
+                        if (beforeShard != null) {
+                            beforeShard.accept(prefix);
+                        }
+
+                        Set<ObjectId> candidates = getObjectManager().db(db -> db.getShardObjects(prefix));
+                        candidates.removeAll(referenced);
+                        if (!candidates.isEmpty()) {
+                            // running transactions keep inserting objects. they are marked before being inserted, so reading
+                            // the markers after listing the shard (like the full prune does) covers all listed objects.
+                            candidates.removeAll(readMarkers());
+                            for (ObjectId object : candidates) {
+                                remove(object, result, auditList);
+                            }
+                        }
+
+                        shard++;
+                        current.increment();
+                    } while (shard < SHARD_COUNT && System.currentTimeMillis() < sliceEnd);
+
+                    writeProgress(progressFile, shard);
+                } finally {
+                    execute(new ReleaseDirectoryLockOperation().setDirectory(getMarkerRoot()));
+                }
+
+                if (shard < SHARD_COUNT && !Threads.sleep(SLICE_PAUSE_MILLIS)) {
+                    break; // interrupted, resume next time.
+                }
+            }
+
+            if (shard >= SHARD_COUNT) {
+                // pass complete, the next incremental prune starts over.
+                PathHelper.deleteIfExistsRetry(progressFile);
+            }
+
+            audit(result, auditList);
+            return result;
+        }
+    }
+
+    private Set<ObjectId> listReferenced(Set<Manifest.Key> manifests) {
+        if (manifests.isEmpty()) {
+            return new ObjectIdSet();
+        }
+        // ignoring manifests which disappeared in the meantime (since the list call).
+        return execute(new ObjectListOperation().addManifest(manifests).ignoreMissingManifest(true));
+    }
+
+    /**
+     * Reads all existing marker databases. Any marked object must be regarded as referenced.
+     * <p>
+     * Objects of interrupted transfers are only kept for a limited time, expired markers should be cleaned before.
+     */
+    private Set<ObjectId> readMarkers() throws IOException, InterruptedException {
+        Set<ObjectId> markers = new ObjectIdSet();
+        try (DirectoryStream<Path> markerDbs = Files.newDirectoryStream(getMarkerRoot())) {
+            for (Path markerDb : markerDbs) {
+                if (Files.isDirectory(markerDb)) {
+                    MarkerDatabase mdb = new MarkerDatabase(markerDb, getActivityReporter());
+                    markers.addAll(mdb.getAllObjects(ObjectIdSet::new));
+                }
+            }
+        }
+        return markers;
+    }
+
+    private void remove(ObjectId unreferenced, SortedMap<ObjectId, Long> result, List<ObjectId> auditList) {
+        result.put(unreferenced, getObjectManager().db(x -> {
+            try {
+                long sz = x.getObjectSize(unreferenced);
+                x.removeObject(unreferenced);
+                if (auditList.size() < 50) {
+                    auditList.add(unreferenced);
+                }
+                return sz;
+            } catch (NoSuchFileException e) {
+                log.debug("To-be-removed object is no longer existing: {}", unreferenced);
+                return (long) 0;
+            }
+        }));
+    }
+
+    private void audit(SortedMap<ObjectId, Long> result, List<ObjectId> auditList) {
+        getAuditor().audit(AuditRecord.Builder.fromSystem().setSeverity(Severity.NORMAL).setWhat(PruneOperation.class.getName())
+                .setMessage("Removed " + result.size() + " Objects ").addParameter("removed", auditList.toString()).build());
+    }
+
+    private static int readProgress(Path progressFile) {
+        if (!PathHelper.exists(progressFile)) {
+            return 0;
+        }
+
+        try {
+            int shard = Integer.parseInt(new String(Files.readAllBytes(progressFile), StandardCharsets.UTF_8).trim(), 16);
+            return shard >= 0 && shard < SHARD_COUNT ? shard : 0;
+        } catch (Exception e) {
+            log.warn("Cannot read prune progress from {}, starting over", progressFile, e);
+            return 0;
+        }
+    }
+
+    private static void writeProgress(Path progressFile, int shard) throws IOException {
+        Files.write(progressFile, String.format("%04x", shard).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param incremental whether to prune shard by shard in time slices, releasing the lock on the marker root in between. This
+     *            allows transactions to run concurrently to a long running prune.
+     */
+    public PruneOperation setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    /**
+     * @param sliceTime the time to hold the lock on the marker root at once when pruning incrementally. Defaults to one
+     *            second.
+     */
+    public PruneOperation setSliceTime(Duration sliceTime) {
+        this.sliceTime = sliceTime;
+        return this;
+    }
+
+    /**
+     * @param maxTime the maximum time to spend pruning incrementally. The next incremental prune resumes where this one stopped.
+     *            Unlimited by default.
+     */
+    public PruneOperation setMaxTime(Duration maxTime) {
+        this.maxTime = maxTime;
+        return this;
+    }
+
+    /**
+     * @param beforeShard called with the prefix of each shard before it is pruned incrementally, for testing.
+     */
+    PruneOperation setBeforeShard(Consumer<String> beforeShard) {
+        this.beforeShard = beforeShard;
+        return this;
+    }
+
 }
@@ -0,0 +1,52 @@
+package io.bdeploy.bhive.op;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.objects.ObjectDatabase;
+import io.bdeploy.bhive.objects.PackStore;
+import io.bdeploy.common.ActivityReporter.Activity;
+
+/**
+ * Moves loose objects of the {@link ObjectDatabase} into append-only pack files, see {@link PackStore}.
+ * <p>
+ * This enables packed storage on the {@link BHive} if it is not already enabled. The operation can run concurrently to any
+ * other operation, readers are never blocked.
+ * <p>
+ * Returns the number of objects moved into packs.
+ */
+public class RepackOperation extends BHive.Operation<Long> {
+
+    /** Objects larger than this are kept as loose files by default, as they do not contribute much to the amount of files. */
+    public static final long DEFAULT_MAX_OBJECT_SIZE = 512l * 1024l; // 512K
+
+    private long maxObjectSize = DEFAULT_MAX_OBJECT_SIZE;
+    private boolean enable = true;
+
+    @Override
+    public Long call() throws Exception {
+        if (!enable && !Boolean.TRUE.equals(getObjectManager().db(ObjectDatabase::isPacked))) {
+            return 0l;
+        }
+
+        try (Activity activity = getActivityReporter().start("Repacking Objects", -1)) {
+            return getObjectManager().db(db -> db.repack(maxObjectSize, activity));
+        }
+    }
+
+    /**
+     * @param maxObjectSize the maximum size of objects to move into packs. Larger objects are kept as loose files.
+     */
+    public RepackOperation setMaxObjectSize(long maxObjectSize) {
+        this.maxObjectSize = maxObjectSize;
+        return this;
+    }
+
+    /**
+     * @param enable whether to enable packed storage if it is not yet enabled. If <code>false</code>, hives without packed
+     *            storage are left untouched. Defaults to <code>true</code>.
+     */
+    public RepackOperation setEnablePacking(boolean enable) {
+        this.enable = enable;
+        return this;
+    }
+
+}
@@ -6,11 +6,15 @@ import static io.bdeploy.bhive.op.VerifyOperation.VerifyOpStatus.UNMODIFIED;
 
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.ReadOnlyOperation;
 import io.bdeploy.bhive.model.Manifest;
@@ -18,40 +22,74 @@ import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.objects.view.BlobView;
 import io.bdeploy.bhive.objects.view.TreeView;
 import io.bdeploy.bhive.objects.view.scanner.TreeVisitor;
+import io.bdeploy.bhive.op.FileFingerprints.FileState;
 import io.bdeploy.bhive.op.VerifyOperation.VerifiedBlobView;
 
 /**
  * Scan a given target folder and origin {@link Manifest} and identify which files were deleted or modified.
+ * <p>
+ * If a fingerprint file is set (see {@link ExportOperation#setFingerprintFile(Path)}), only files whose size, modification time,
+ * change time or file key changed since they have been recorded are hashed. Files found to be unmodified are recorded for the
+ * next verification, using the attributes read before hashing them.
  */
 @ReadOnlyOperation
 public class VerifyOperation extends BHive.Operation<List<VerifiedBlobView>> {
 
+    private static final Logger log = LoggerFactory.getLogger(VerifyOperation.class);
+
     private Path targetPath;
     private Manifest.Key manifest;
+    private Path fingerprintFile;
+    private boolean deep;
 
     @Override
     public List<VerifiedBlobView> call() throws Exception {
         List<VerifiedBlobView> result = new ArrayList<>();
+        FileFingerprints fingerprints = fingerprintFile == null ? new FileFingerprints() : FileFingerprints.read(fingerprintFile);
+
         TreeView state = execute(new ScanOperation().setManifest(manifest));
-        state.visit(new TreeVisitor.Builder().onBlob(blob -> this.visit(blob, result)).build());
+        state.visit(new TreeVisitor.Builder().onBlob(blob -> this.visit(blob, result, fingerprints)).build());
+
+        if (fingerprintFile != null && fingerprints.isModified()) {
+            try {
+                fingerprints.write(fingerprintFile);
+            } catch (IOException e) {
+                log.warn("Cannot update fingerprints in {}", fingerprintFile, e);
+            }
+        }
         return result;
     }
 
-    private void visit(BlobView blob, List<VerifiedBlobView> result) {
-        Path path = targetPath.resolve(blob.getPathString());
+    private void visit(BlobView blob, List<VerifiedBlobView> result, FileFingerprints fingerprints) {
+        String relPath = blob.getPathString();
+        Path path = targetPath.resolve(relPath);
         if (!path.toFile().exists()) {
-            result.add(new VerifiedBlobView(MISSING, blob.getPathString()));
+            fingerprints.remove(relPath);
+            result.add(new VerifiedBlobView(MISSING, relPath));
             return;
         }
-        try (InputStream is = new BufferedInputStream(new FileInputStream(path.toFile()))) {
-            ObjectId objectId = ObjectId.createFromStreamNoCopy(is);
+        try {
+            // read before hashing - a modification while hashing must not be recorded as unmodified.
+            FileState state = FileFingerprints.readState(path);
+            if (!deep && fingerprints.isUnchanged(relPath, state, blob.getElementId())) {
+                result.add(new VerifiedBlobView(UNMODIFIED, relPath));
+                return;
+            }
+
+            ObjectId objectId;
+            try (InputStream is = new BufferedInputStream(new FileInputStream(path.toFile()))) {
+                objectId = ObjectId.createFromStreamNoCopy(is);
+            }
             if (objectId.equals(blob.getElementId())) {
-                result.add(new VerifiedBlobView(UNMODIFIED, blob.getPathString()));
+                fingerprints.record(relPath, state, objectId);
+                result.add(new VerifiedBlobView(UNMODIFIED, relPath));
             } else {
-                result.add(new VerifiedBlobView(MODIFIED, blob.getPathString()));
+                fingerprints.remove(relPath);
+                result.add(new VerifiedBlobView(MODIFIED, relPath));
             }
         } catch (Exception e) {
-            result.add(new VerifiedBlobView(MODIFIED, blob.getPathString()));
+            fingerprints.remove(relPath);
+            result.add(new VerifiedBlobView(MODIFIED, relPath));
         }
     }
 
@@ -71,6 +109,23 @@ public class VerifyOperation extends BHive.Operation<List<VerifiedBlobView>> {
         return this;
     }
 
+    /**
+     * Set the file holding the fingerprints of the files in the target path, usually written by {@link ExportOperation}. It
+     * is created or updated as required. Must not be located in the target path.
+     */
+    public VerifyOperation setFingerprintFile(Path fingerprintFile) {
+        this.fingerprintFile = fingerprintFile;
+        return this;
+    }
+
+    /**
+     * Set whether to hash all files, regardless of their fingerprints.
+     */
+    public VerifyOperation setDeep(boolean deep) {
+        this.deep = deep;
+        return this;
+    }
+
     public static class VerifiedBlobView {
 
         public final VerifyOpStatus status;
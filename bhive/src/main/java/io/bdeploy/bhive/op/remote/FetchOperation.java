@@ -8,12 +8,16 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedHashSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,7 +26,9 @@ import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
 import io.bdeploy.bhive.op.CopyOperation;
+import io.bdeploy.bhive.op.ManifestListOperation;
 import io.bdeploy.bhive.op.ObjectExistsOperation;
 import io.bdeploy.bhive.op.ObjectExistsOperation.Result;
 import io.bdeploy.bhive.op.ObjectReadOperation;
@@ -41,6 +47,9 @@ public class FetchOperation extends TransactedRemoteOperation<TransferStatistics
 
     private final SortedSet<Manifest.Key> manifests = new TreeSet<>();
     private String hiveName;
+    private int streams = TransferStreams.DEFAULT_STREAMS;
+    private int resumeAttempts = TransferStreams.DEFAULT_RESUME_ATTEMPTS;
+    private boolean deltas;
 
     @Override
     public TransferStatistics callTransacted() throws Exception {
@@ -75,14 +84,14 @@ public class FetchOperation extends TransactedRemoteOperation<TransferStatistics
                 }
 
                 // STEP 1: Figure out required trees for the roots to fetch
-                Set<ObjectId> requiredTrees = new LinkedHashSet<>();
+                Set<ObjectId> requiredTrees = new ObjectIdSet();
                 toFetchRootTrees.forEach(t -> requiredTrees.addAll(rh.getRequiredTrees(t)));
 
                 // STEP 2: Figure out which trees we already have locally.
                 Result treeResult = execute(new ObjectExistsOperation().addAll(requiredTrees));
 
                 // STEP 3: Find objects for all missing objects, filtering trees we have.
-                Set<ObjectId> requiredObjects = new LinkedHashSet<>();
+                Set<ObjectId> requiredObjects = new ObjectIdSet();
                 if (!treeResult.missing.isEmpty()) {
                     requiredObjects = rh.getRequiredObjects(treeResult.missing, treeResult.existing);
                 }
@@ -122,15 +131,55 @@ public class FetchOperation extends TransactedRemoteOperation<TransferStatistics
         return this;
     }
 
+    /**
+     * @param streams the maximum amount of concurrent streams to fetch objects from a remote server.
+     */
+    public FetchOperation setStreams(int streams) {
+        this.streams = streams;
+        return this;
+    }
+
+    /**
+     * @param resumeAttempts the maximum amount of times an interrupted transfer is resumed. Objects which have been received
+     *            already are not fetched again. Resuming stops once an attempt does not make any progress.
+     */
+    public FetchOperation setResumeAttempts(int resumeAttempts) {
+        this.resumeAttempts = resumeAttempts;
+        return this;
+    }
+
+    /**
+     * @param deltas whether the remote may send large objects as delta to an object at the same path in another version of the
+     *            same manifest which already exists locally. Only used if the remote supports it.
+     */
+    public FetchOperation setDeltas(boolean deltas) {
+        this.deltas = deltas;
+        return this;
+    }
+
     public SortedSet<Manifest.Key> getManifests() {
         return manifests;
     }
 
     private TransferStatistics fetch(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests) throws IOException {
-        try {
-            return fetchAsStream(rh, objects, manifests);
-        } catch (UnsupportedOperationException ex) {
-            return fetchAsZip(rh, objects, manifests);
+        TransferStatistics result = new TransferStatistics();
+        for (int attempt = 0;; ++attempt) {
+            try {
+                TransferStreams.add(result, fetchAsStream(rh, objects, manifests));
+                return result;
+            } catch (UnsupportedOperationException ex) {
+                return fetchAsZip(rh, objects, manifests);
+            } catch (RuntimeException ex) {
+                if (attempt >= resumeAttempts) {
+                    throw ex;
+                }
+
+                // all objects received so far are kept, only the remaining ones need to be fetched.
+                Set<ObjectId> remaining = TransferStreams.getRemaining(ex, objects,
+                        o -> execute(new ObjectExistsOperation().addAll(o)).missing);
+                log.warn("Fetch interrupted, resuming with {} of {} objects", remaining.size(), objects.size(), ex);
+                objects = remaining;
+            }
         }
     }
 
@@ -150,7 +199,53 @@ public class FetchOperation extends TransactedRemoteOperation<TransferStatistics
     }
 
     private TransferStatistics fetchAsStream(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests) {
-        InputStream stream = rh.fetchAsStream(objects, manifests);
+        Set<Key> deltaBases = deltas ? getDeltaBases(manifests) : Collections.emptySet();
+        int count = TransferStreams.getStreamCount(getRemote(), rh, streams, objects.size());
+        if (count > 1 || !deltaBases.isEmpty()) {
+            // object sizes are not known locally, the IDs are evenly distributed though.
+            List<Callable<TransferStatistics>> transfers = new ArrayList<>();
+            for (Set<ObjectId> part : TransferStreams.split(objects, count, o -> 1)) {
+                transfers.add(() -> fetchStream(rh, part, Collections.emptySet(), manifests, deltaBases));
+            }
+            TransferStatistics result = TransferStreams.transferAll("Fetch-Stream", transfers);
+
+            // deltas whose base is not available (anymore) are skipped, those objects are fetched in full.
+            if (!deltaBases.isEmpty()) {
+                Set<ObjectId> missing = execute(new ObjectExistsOperation().addAll(objects)).missing;
+                if (!missing.isEmpty()) {
+                    log.info("Could not apply {} deltas, fetching the objects in full", missing.size());
+                    TransferStreams.add(result,
+                            fetchStream(rh, missing, Collections.emptySet(), manifests, Collections.emptySet()));
+                }
+            }
+
+            // all objects are present locally now, so the manifests can follow.
+            TransferStreams.add(result, fetchStream(rh, Collections.emptySet(), manifests, manifests, Collections.emptySet()));
+            return result;
+        }
+        return fetchStream(rh, objects, manifests, manifests, deltaBases);
+    }
+
+    /**
+     * @return other versions of the given manifests which exist locally, so the remote can send deltas to their objects.
+     */
+    private Set<Key> getDeltaBases(Set<Key> fetched) {
+        Set<Key> result = new TreeSet<>();
+        for (String name : fetched.stream().map(Key::getName).collect(Collectors.toCollection(TreeSet::new))) {
+            execute(new ManifestListOperation().setManifestName(name)).stream()
+                    .filter(k -> k.getName().equals(name) && !fetched.contains(k)).forEach(result::add);
+        }
+        return result;
+    }
+
+    private TransferStatistics fetchStream(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests, Set<Key> deltaTargets,
+            Set<Key> deltaBases) {
+        InputStream stream;
+        if (deltaBases.isEmpty()) {
+            stream = rh.fetchAsStream(objects, manifests);
+        } else {
+            stream = rh.fetchAsStream(objects, manifests, deltaTargets, deltaBases);
+        }
         return execute(new ObjectReadOperation().stream(stream));
     }
 
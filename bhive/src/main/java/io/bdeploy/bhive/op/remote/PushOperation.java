@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
@@ -27,17 +28,20 @@ import io.bdeploy.bhive.ReadOnlyOperation;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
 import io.bdeploy.bhive.objects.view.BlobView;
 import io.bdeploy.bhive.objects.view.ElementView;
 import io.bdeploy.bhive.objects.view.ManifestRefView;
 import io.bdeploy.bhive.objects.view.TreeView;
 import io.bdeploy.bhive.objects.view.scanner.TreeVisitor;
 import io.bdeploy.bhive.op.CopyOperation;
+import io.bdeploy.bhive.op.FindDeltaBasesOperation;
 import io.bdeploy.bhive.op.ManifestListOperation;
 import io.bdeploy.bhive.op.ManifestRefScanOperation;
 import io.bdeploy.bhive.op.ObjectWriteOperation;
 import io.bdeploy.bhive.op.ScanOperation;
 import io.bdeploy.bhive.remote.RemoteBHive;
+import io.bdeploy.bhive.util.ObjectStreamFormat;
 import io.bdeploy.common.ActivityReporter.Activity;
 import io.bdeploy.common.util.PathHelper;
 import jakarta.ws.rs.core.UriBuilder;
@@ -53,6 +57,9 @@ public class PushOperation extends RemoteOperation<TransferStatistics, PushOpera
 
     private final Set<Manifest.Key> manifests = new LinkedHashSet<>();
     private String hiveName;
+    private int streams = TransferStreams.DEFAULT_STREAMS;
+    private int resumeAttempts = TransferStreams.DEFAULT_RESUME_ATTEMPTS;
+    private boolean deltas;
 
     @Override
     public TransferStatistics call() throws Exception {
@@ -87,7 +94,7 @@ public class PushOperation extends RemoteOperation<TransferStatistics, PushOpera
                 Map<ObjectId, TreeView> allTrees = getAllTrees(allManifests);
 
                 // STEP 2: Ask the remote for missing trees
-                Set<ObjectId> missingTrees = rh.getMissingObjects(new LinkedHashSet<>(allTrees.keySet()));
+                Set<ObjectId> missingTrees = rh.getMissingObjects(new ObjectIdSet(allTrees.keySet()));
 
                 // STEP 3: Figure out which trees are already present on the remote.
                 //         We reverse the list at the end so that leaves are first followed by their parents
@@ -101,8 +108,12 @@ public class PushOperation extends RemoteOperation<TransferStatistics, PushOpera
                 // STEP 5: filter object to transfer only what is REALLY required
                 Set<ObjectId> missingObjects = rh.getMissingObjects(requiredObjects);
 
-                // STEP 6: copy objects and manifests
-                TransferStatistics pushStats = push(rh, missingObjects, allManifests);
+                // STEP 6: find objects which can be sent as delta to an object the remote has.
+                Map<ObjectId, ObjectId> deltaBases = deltas ? getDeltaBases(rh, allManifests, missingObjects)
+                        : Collections.emptyMap();
+
+                // STEP 7: copy objects and manifests
+                TransferStatistics pushStats = push(rh, missingObjects, allManifests, deltaBases);
 
                 // Update statistics with some new knowledge.
                 stats.sumTrees = allTrees.size();
@@ -135,11 +146,29 @@ public class PushOperation extends RemoteOperation<TransferStatistics, PushOpera
         return allTrees;
     }
 
+    /**
+     * Find base objects for large objects in other versions of the pushed manifests which exist on the remote.
+     */
+    private Map<ObjectId, ObjectId> getDeltaBases(RemoteBHive rh, Set<Manifest.Key> pushed, Set<ObjectId> objects) {
+        Set<String> names = pushed.stream().map(Manifest.Key::getName).collect(Collectors.toCollection(LinkedHashSet::new));
+        Set<Manifest.Key> remote = rh.getManifestInventory(names.toArray(String[]::new)).keySet();
+        Set<Manifest.Key> bases = remote.stream().filter(k -> names.contains(k.getName()) && !pushed.contains(k))
+                .collect(Collectors.toSet());
+        if (bases.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<ObjectId, ObjectId> result = execute(
+                new FindDeltaBasesOperation().addTarget(pushed).addBase(bases).setObjects(objects));
+        log.debug("Found delta bases for {} objects", result.size());
+        return result;
+    }
+
     /**
      * Find all {@link ObjectId}s referenced by the given trees (flat).
      */
     private Set<ObjectId> getRequiredObjects(List<TreeView> missingTrees) {
-        Set<ObjectId> result = new LinkedHashSet<>();
+        Set<ObjectId> result = new ObjectIdSet();
         for (TreeView view : missingTrees) {
             for (ElementView child : view.getChildren().values()) {
                 if (child instanceof BlobView) {
@@ -169,12 +198,52 @@ public class PushOperation extends RemoteOperation<TransferStatistics, PushOpera
         return this;
     }
 
-    private TransferStatistics push(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests) throws IOException {
-        try {
-            return pushAsStream(rh, objects, manifests);
-        } catch (UnsupportedOperationException ex) {
-            log.debug("Stream pushing not supported by target server", ex);
-            return pushAsZip(rh, objects, manifests);
+    /**
+     * @param streams the maximum amount of concurrent streams to push objects to a remote server.
+     */
+    public PushOperation setStreams(int streams) {
+        this.streams = streams;
+        return this;
+    }
+
+    /**
+     * @param resumeAttempts the maximum amount of times an interrupted transfer is resumed. Objects which the remote received
+     *            already are not sent again. Resuming stops once an attempt does not make any progress.
+     */
+    public PushOperation setResumeAttempts(int resumeAttempts) {
+        this.resumeAttempts = resumeAttempts;
+        return this;
+    }
+
+    /**
+     * @param deltas whether large objects may be sent as delta to an object at the same path in another version of the same
+     *            manifest which already exists on the remote. Only used if the remote supports it.
+     */
+    public PushOperation setDeltas(boolean deltas) {
+        this.deltas = deltas;
+        return this;
+    }
+
+    private TransferStatistics push(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests, Map<ObjectId, ObjectId> deltaBases)
+            throws IOException {
+        TransferStatistics result = new TransferStatistics();
+        for (int attempt = 0;; ++attempt) {
+            try {
+                TransferStreams.add(result, pushAsStream(rh, objects, manifests, deltaBases));
+                return result;
+            } catch (UnsupportedOperationException ex) {
+                log.debug("Stream pushing not supported by target server", ex);
+                return pushAsZip(rh, objects, manifests);
+            } catch (RuntimeException ex) {
+                if (attempt >= resumeAttempts) {
+                    throw ex;
+                }
+
+                // the remote keeps all objects it received, only the remaining ones need to be sent.
+                Set<ObjectId> remaining = TransferStreams.getRemaining(ex, objects, rh::getMissingObjects);
+                log.warn("Push interrupted, resuming with {} of {} objects", remaining.size(), objects.size(), ex);
+                objects = remaining;
+            }
         }
     }
 
@@ -204,14 +273,53 @@ public class PushOperation extends RemoteOperation<TransferStatistics, PushOpera
         }
     }
 
-    private TransferStatistics pushAsStream(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests) {
+    private TransferStatistics pushAsStream(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests,
+            Map<ObjectId, ObjectId> deltaBases) {
+        int version = rh.getStreamVersion();
+        int count = TransferStreams.getStreamCount(getRemote(), rh, streams, objects.size());
+        if (version < ObjectStreamFormat.VERSION_DELTA) {
+            deltaBases = Collections.emptyMap();
+        }
+
+        // only remotes which accept multiple streams or deltas can receive streams without manifests.
+        if (count > 1 || !deltaBases.isEmpty()) {
+            return pushAsStreams(rh, objects, manifests, count, version, deltaBases);
+        }
+        return pushStream(rh, objects, manifests, version, Collections.emptyMap());
+    }
+
+    private TransferStatistics pushAsStreams(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests, int count,
+            int version, Map<ObjectId, ObjectId> deltaBases) {
+        List<Callable<TransferStatistics>> transfers = new ArrayList<>();
+        for (Set<ObjectId> part : TransferStreams.split(objects, count, o -> getObjectManager().db(db -> db.getObjectSize(o)))) {
+            transfers.add(() -> pushStream(rh, part, Collections.emptySet(), version, deltaBases));
+        }
+        TransferStatistics result = TransferStreams.transferAll("Push-Stream", transfers);
+
+        // the remote skips deltas whose base it does not have (anymore), those are sent in full.
+        if (!deltaBases.isEmpty()) {
+            Set<ObjectId> missing = rh.getMissingObjects(objects);
+            if (!missing.isEmpty()) {
+                log.info("Remote could not apply {} deltas, sending the objects in full", missing.size());
+                TransferStreams.add(result, pushStream(rh, missing, Collections.emptySet(), version, Collections.emptyMap()));
+            }
+        }
+
+        // all objects are present on the remote now, so the manifests can follow.
+        TransferStreams.add(result, pushStream(rh, Collections.emptySet(), manifests, version, Collections.emptyMap()));
+        return result;
+    }
+
+    private TransferStatistics pushStream(RemoteBHive rh, Set<ObjectId> objects, Set<Key> manifests, int version,
+            Map<ObjectId, ObjectId> deltaBases) {
         PipedInputStream input = new PipedInputStream();
         CompletableFuture<Void> barrier = new CompletableFuture<>();
 
         Thread thread = new Thread(() -> {
             try (PipedOutputStream output = new PipedOutputStream(input)) {
                 barrier.complete(null);
-                execute(new ObjectWriteOperation().stream(output).manifests(manifests).objects(objects));
+                execute(new ObjectWriteOperation().stream(output).version(version).manifests(manifests).objects(objects)
+                        .deltaBases(deltaBases));
             } catch (Exception e) {
                 log.warn("Cannot fully push content via stream", e);
             }
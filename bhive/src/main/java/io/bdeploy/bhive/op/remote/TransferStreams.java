@@ -0,0 +1,168 @@
+package io.bdeploy.bhive.op.remote;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
+import io.bdeploy.bhive.remote.RemoteBHive;
+import io.bdeploy.common.security.RemoteService;
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+
+/**
+ * Helps splitting the objects of a push or fetch into multiple independently compressed streams, which are transferred
+ * concurrently. A single stream is limited by the throughput of a single TCP connection and a single deflater, which is easily
+ * reached on links with high latency and high bandwidth.
+ * <p>
+ * Streams only ever carry objects. The manifests are transferred in a separate stream once all objects have been transferred,
+ * so that the receiving side never sees a manifest before all of its objects.
+ */
+class TransferStreams {
+
+    /** The default amount of concurrent streams used for a single transfer */
+    static final int DEFAULT_STREAMS = 4;
+
+    /** The default amount of times an interrupted transfer is resumed, as long as each attempt makes progress */
+    static final int DEFAULT_RESUME_ATTEMPTS = 3;
+
+    /** Transfers below this amount of objects per stream are not split further */
+    private static final int MIN_OBJECTS_PER_STREAM = 100;
+
+    private TransferStreams() {
+    }
+
+    /**
+     * @param remote the remote to transfer from/to. Only remote servers benefit from multiple streams.
+     * @param rh the remote hive, queried for the amount of streams it accepts before splitting a transfer.
+     * @param requested the maximum amount of streams requested.
+     * @param objects the amount of objects to transfer.
+     * @return the amount of streams to use.
+     */
+    static int getStreamCount(RemoteService remote, RemoteBHive rh, int requested, int objects) {
+        if (remote == null || !"https".equalsIgnoreCase(remote.getUri().getScheme())) {
+            return 1;
+        }
+        int count = Math.min(requested, objects / MIN_OBJECTS_PER_STREAM);
+        if (count <= 1) {
+            return 1;
+        }
+        return Math.max(1, Math.min(count, rh.getMaxStreams()));
+    }
+
+    /**
+     * Splits the given objects into the given amount of parts of roughly equal size.
+     *
+     * @param objects the objects to split
+     * @param count the amount of parts to create
+     * @param sizes calculates the size of an object, or any constant if sizes are unknown.
+     * @return the parts
+     */
+    static List<Set<ObjectId>> split(Set<ObjectId> objects, int count, ToLongFunction<ObjectId> sizes) {
+        List<Set<ObjectId>> parts = new ArrayList<>();
+        PriorityQueue<long[]> loads = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < count; ++i) {
+            parts.add(new ObjectIdSet(objects.size() / count));
+            loads.add(new long[] { 0, i });
+        }
+
+        // always add to the part with the lowest total size so far.
+        for (ObjectId object : objects) {
+            long[] lowest = loads.poll();
+            parts.get((int) lowest[1]).add(object);
+            lowest[0] += sizes.applyAsLong(object);
+            loads.add(lowest);
+        }
+        return parts;
+    }
+
+    /**
+     * Performs the given transfers concurrently and waits for all of them to finish.
+     * <p>
+     * Each transfer runs on a new thread created from the calling thread, so that it inherits the calling thread's
+     * transaction.
+     *
+     * @param name the name of the threads
+     * @param transfers the transfers to perform
+     * @return the statistics of all transfers summed up.
+     */
+    static TransferStatistics transferAll(String name, List<Callable<TransferStatistics>> transfers) {
+        ExecutorService executor = Executors.newFixedThreadPool(transfers.size(), new NamedDaemonThreadFactory(name));
+        try {
+            List<Future<TransferStatistics>> futures = new ArrayList<>();
+            for (Callable<TransferStatistics> transfer : transfers) {
+                futures.add(executor.submit(transfer));
+            }
+
+            TransferStatistics result = new TransferStatistics();
+            RuntimeException failure = null;
+            for (Future<TransferStatistics> future : futures) {
+                try {
+                    add(result, future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for transfer", e);
+                } catch (ExecutionException e) {
+                    RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                            : new IllegalStateException("Transfer failed", e.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Determines the objects which still need to be transferred after a transfer has been interrupted.
+     *
+     * @param failure the failure which interrupted the transfer, re-thrown if no progress has been made.
+     * @param objects the objects which should have been transferred.
+     * @param missing determines which of the given objects are still missing on the receiving side.
+     * @return the remaining objects.
+     */
+    static Set<ObjectId> getRemaining(RuntimeException failure, Set<ObjectId> objects,
+            UnaryOperator<Set<ObjectId>> missing) {
+        Set<ObjectId> remaining;
+        try {
+            remaining = missing.apply(objects);
+        } catch (RuntimeException e) {
+            failure.addSuppressed(e);
+            throw failure;
+        }
+
+        if (remaining.size() >= objects.size()) {
+            // no progress, e.g. a failure which is not caused by the connection.
+            throw failure;
+        }
+        return remaining;
+    }
+
+    /**
+     * Adds the statistics of a single stream to the given result.
+     */
+    static void add(TransferStatistics result, TransferStatistics stream) {
+        result.sumManifests += stream.sumManifests;
+        result.sumMissingObjects += stream.sumMissingObjects;
+        result.transferSize += stream.transferSize;
+        result.duration = Math.max(result.duration, stream.duration);
+    }
+
+}
@@ -5,7 +5,9 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -20,10 +22,13 @@ import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.BHiveTransactions.Transaction;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
+import io.bdeploy.bhive.model.ManifestChanges;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.objects.view.TreeView;
 import io.bdeploy.bhive.objects.view.scanner.TreeVisitor;
 import io.bdeploy.bhive.op.CopyOperation;
+import io.bdeploy.bhive.op.FindDeltaBasesOperation;
+import io.bdeploy.bhive.op.ManifestChangesOperation;
 import io.bdeploy.bhive.op.ManifestDeleteOperation;
 import io.bdeploy.bhive.op.ManifestListOperation;
 import io.bdeploy.bhive.op.ManifestLoadOperation;
@@ -34,6 +39,7 @@ import io.bdeploy.bhive.op.ObjectWriteOperation;
 import io.bdeploy.bhive.op.PruneOperation;
 import io.bdeploy.bhive.op.ScanOperation;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
+import io.bdeploy.bhive.util.ObjectStreamFormat;
 import io.bdeploy.common.ActivityReporter;
 import io.bdeploy.common.util.PathHelper;
 import jakarta.ws.rs.core.UriBuilder;
@@ -46,6 +52,9 @@ public class LocalBHiveAdapter implements RemoteBHive {
 
     private static final Logger log = LoggerFactory.getLogger(LocalBHiveAdapter.class);
 
+    /** The maximum amount of concurrent streams accepted for a single transfer */
+    private static final int MAX_STREAMS = 8;
+
     private final BHive hive;
 
     /**
@@ -98,6 +107,11 @@ public class LocalBHiveAdapter implements RemoteBHive {
         return result;
     }
 
+    @Override
+    public ManifestChanges getManifestChanges(String journal, long cursor) {
+        return hive.execute(new ManifestChangesOperation().setCursor(journal, cursor));
+    }
+
     @Override
     public void removeManifest(Key key) {
         hive.execute(new ManifestDeleteOperation().setToDelete(key));
@@ -122,6 +136,16 @@ public class LocalBHiveAdapter implements RemoteBHive {
         }
     }
 
+    @Override
+    public int getStreamVersion() {
+        return ObjectStreamFormat.CURRENT_VERSION;
+    }
+
+    @Override
+    public int getMaxStreams() {
+        return MAX_STREAMS;
+    }
+
     @Override
     public TransferStatistics pushAsStream(InputStream in) {
         try (Transaction t = hive.getTransactions().begin()) {
@@ -154,13 +178,40 @@ public class LocalBHiveAdapter implements RemoteBHive {
 
     @Override
     public InputStream fetchAsStream(Set<ObjectId> objects, Set<Manifest.Key> manifests) {
+        return fetchAsStream(objects, manifests, ObjectStreamFormat.CURRENT_VERSION);
+    }
+
+    /**
+     * Streams the given objects using the given {@link ObjectStreamFormat} version, which must be supported by the reader.
+     */
+    public InputStream fetchAsStream(Set<ObjectId> objects, Set<Manifest.Key> manifests, int version) {
+        return fetchAsStream(objects, manifests, version, Collections.emptySet(), Collections.emptySet());
+    }
+
+    @Override
+    public InputStream fetchAsStream(Set<ObjectId> objects, Set<Key> manifests, Set<Key> deltaTargets, Set<Key> deltaBases) {
+        return fetchAsStream(objects, manifests, ObjectStreamFormat.CURRENT_VERSION, deltaTargets, deltaBases);
+    }
+
+    /**
+     * Streams the given objects using the given {@link ObjectStreamFormat} version, which must be supported by the reader. Large
+     * objects are sent as delta to objects in the given base manifests if the version supports it.
+     */
+    public InputStream fetchAsStream(Set<ObjectId> objects, Set<Manifest.Key> manifests, int version,
+            Set<Manifest.Key> deltaTargets, Set<Manifest.Key> deltaBases) {
         PipedInputStream input = new PipedInputStream();
         CompletableFuture<Void> barrier = new CompletableFuture<>();
 
         Thread thread = new Thread(() -> {
             try (PipedOutputStream output = new PipedOutputStream(input)) {
                 barrier.complete(null);
-                hive.execute(new ObjectWriteOperation().stream(output).manifests(manifests).objects(objects));
+                Map<ObjectId, ObjectId> bases = Collections.emptyMap();
+                if (version >= ObjectStreamFormat.VERSION_DELTA && deltaTargets != null && deltaBases != null) {
+                    bases = hive.execute(
+                            new FindDeltaBasesOperation().addTarget(deltaTargets).addBase(deltaBases).setObjects(objects));
+                }
+                hive.execute(new ObjectWriteOperation().stream(output).version(version).manifests(manifests).objects(objects)
+                        .deltaBases(bases));
             } catch (Exception e) {
                 log.warn("Cannot fully send content to fetching client via stream", e);
             }
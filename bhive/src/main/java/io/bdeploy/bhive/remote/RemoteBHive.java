@@ -8,10 +8,12 @@ import java.util.SortedMap;
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
+import io.bdeploy.bhive.model.ManifestChanges;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.model.Tree;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
 import io.bdeploy.bhive.remote.jersey.JerseyRemoteBHive;
+import io.bdeploy.bhive.util.ObjectStreamFormat;
 import io.bdeploy.common.ActivityReporter;
 import io.bdeploy.common.security.RemoteService;
 
@@ -40,6 +42,15 @@ public interface RemoteBHive extends AutoCloseable {
      */
     public SortedMap<Manifest.Key, ObjectId> getManifestInventory(String... names);
 
+    /**
+     * Retrieve the {@link Manifest}s added and removed since a given position in the remote's change journal.
+     *
+     * @param journal the journal of a previous result, <code>null</code> to start a new journal.
+     * @param cursor the cursor of a previous result.
+     * @throws UnsupportedOperationException in case the remote does not support change journals.
+     */
+    public ManifestChanges getManifestChanges(String journal, long cursor);
+
     /**
      * @param key the manifest to delete
      */
@@ -67,6 +78,17 @@ public interface RemoteBHive extends AutoCloseable {
      */
     public void push(Path zipedHive);
 
+    /**
+     * @return the latest {@link ObjectStreamFormat} version which the remote hive can read in {@link #pushAsStream(InputStream)}.
+     */
+    public int getStreamVersion();
+
+    /**
+     * @return the maximum amount of concurrent streams the remote hive accepts for a single transfer. Streams which carry
+     *         objects but no manifests are only sent to (or requested from) remotes which accept more than one stream.
+     */
+    public int getMaxStreams();
+
     /**
      * Streams objects directly into the given remote hive.
      */
@@ -78,10 +100,20 @@ public interface RemoteBHive extends AutoCloseable {
     public Path fetch(Set<ObjectId> objects, Set<Manifest.Key> manifests);
 
     /**
-     * Streams the given objects one after each other to the given output stream.
+     * Streams the given objects one after each other to the given output stream. The remote hive chooses the
+     * {@link ObjectStreamFormat} version, which is detected when reading the stream.
      */
     public InputStream fetchAsStream(Set<ObjectId> objects, Set<Key> manifests);
 
+    /**
+     * Streams the given objects like {@link #fetchAsStream(Set, Set)}, but allows the remote hive to send large objects as delta
+     * to an object at the same path in one of the given base manifests.
+     *
+     * @param deltaTargets the manifests which are being fetched, used to find the paths of the objects.
+     * @param deltaBases manifests which exist in the fetching hive.
+     */
+    public InputStream fetchAsStream(Set<ObjectId> objects, Set<Key> manifests, Set<Key> deltaTargets, Set<Key> deltaBases);
+
     /**
      * Figures out the type of {@link RemoteBHive} required for the given
      * {@link RemoteService} and returns an instance.
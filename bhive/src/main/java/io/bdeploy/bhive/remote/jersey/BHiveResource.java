@@ -5,18 +5,22 @@ import java.util.Set;
 import java.util.SortedMap;
 
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
+import io.bdeploy.bhive.model.ManifestChanges;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.model.Tree;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
+import io.bdeploy.bhive.util.ObjectStreamFormat;
 import io.bdeploy.common.security.RequiredPermission;
 import io.bdeploy.common.security.ScopedPermission.Permission;
 import io.bdeploy.jersey.JerseyAuthenticationProvider.WeakTokenAllowed;
@@ -40,6 +44,17 @@ public interface BHiveResource {
     @Path("/manifests")
     public SortedMap<Manifest.Key, ObjectId> getManifestInventory(String... names);
 
+    /**
+     * Retrieve the {@link Manifest}s added and removed since a given position in the change journal.
+     *
+     * @param journal the journal of a previous result, <code>null</code> to start a new journal.
+     * @param cursor the cursor of a previous result.
+     */
+    @GET
+    @WeakTokenAllowed
+    @Path("/manifest_changes")
+    public ManifestChanges getManifestChanges(@QueryParam("journal") String journal, @QueryParam("cursor") long cursor);
+
     /**
      * @param key the manifest to delete.
      */
@@ -90,6 +105,22 @@ public interface BHiveResource {
     @RequiredPermission(permission = Permission.WRITE)
     public void push(java.nio.file.Path zipedHive);
 
+    /**
+     * @return the latest {@link ObjectStreamFormat} version accepted by {@link #pushAsStream(InputStream)}.
+     */
+    @GET
+    @WeakTokenAllowed
+    @Path("/streamVersion")
+    public int getStreamVersion();
+
+    /**
+     * @return the maximum amount of concurrent streams accepted for a single transfer.
+     */
+    @GET
+    @WeakTokenAllowed
+    @Path("/maxStreams")
+    public int getMaxStreams();
+
     /**
      * Streams manifests and objects into the remove hive.
      */
@@ -125,6 +156,15 @@ public interface BHiveResource {
 
         Set<ObjectId> requiredObjects;
         Set<Manifest.Key> manifestsToFetch;
+
+        /** The latest {@link ObjectStreamFormat} version the client can read, <code>null</code> for older clients */
+        Integer streamVersion;
+
+        /** The manifests being fetched, used to find bases for deltas. <code>null</code> if no deltas are wanted */
+        Set<Manifest.Key> deltaTargets;
+
+        /** Manifests which exist on the client and may serve as base for deltas. <code>null</code> if no deltas are wanted */
+        Set<Manifest.Key> deltaBases;
     }
 
     public static class ObjectListSpec {
@@ -9,9 +9,11 @@ import org.slf4j.LoggerFactory;
 
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.model.Manifest.Key;
+import io.bdeploy.bhive.model.ManifestChanges;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
 import io.bdeploy.bhive.remote.LocalBHiveAdapter;
+import io.bdeploy.bhive.util.ObjectStreamFormat;
 import io.bdeploy.common.util.PathHelper;
 import io.bdeploy.jersey.JerseyPathWriter.DeleteAfterWrite;
 
@@ -35,6 +37,11 @@ public class BHiveResourceImpl implements BHiveResource {
         return wrapper.getManifestInventory(names);
     }
 
+    @Override
+    public ManifestChanges getManifestChanges(String journal, long cursor) {
+        return wrapper.getManifestChanges(journal, cursor);
+    }
+
     @Override
     public void removeManifest(Key key) {
         wrapper.removeManifest(key);
@@ -71,6 +78,16 @@ public class BHiveResourceImpl implements BHiveResource {
         }
     }
 
+    @Override
+    public int getStreamVersion() {
+        return wrapper.getStreamVersion();
+    }
+
+    @Override
+    public int getMaxStreams() {
+        return wrapper.getMaxStreams();
+    }
+
     @Override
     public TransferStatistics pushAsStream(InputStream in) {
         return wrapper.pushAsStream(in);
@@ -84,7 +101,8 @@ public class BHiveResourceImpl implements BHiveResource {
 
     @Override
     public InputStream fetchAsStream(FetchSpec spec) {
-        return wrapper.fetchAsStream(spec.requiredObjects, spec.manifestsToFetch);
+        int version = ObjectStreamFormat.negotiate(spec.streamVersion);
+        return wrapper.fetchAsStream(spec.requiredObjects, spec.manifestsToFetch, version, spec.deltaTargets, spec.deltaBases);
     }
 
 }
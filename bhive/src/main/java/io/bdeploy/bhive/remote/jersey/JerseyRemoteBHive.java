@@ -5,15 +5,21 @@ import java.nio.file.Path;
 import java.util.Set;
 import java.util.SortedMap;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import io.bdeploy.bhive.model.Manifest.Key;
+import io.bdeploy.bhive.model.ManifestChanges;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.op.remote.TransferStatistics;
 import io.bdeploy.bhive.remote.RemoteBHive;
 import io.bdeploy.bhive.remote.jersey.BHiveResource.FetchSpec;
 import io.bdeploy.bhive.remote.jersey.BHiveResource.ObjectListSpec;
+import io.bdeploy.bhive.util.ObjectStreamFormat;
 import io.bdeploy.common.security.RemoteService;
 import io.bdeploy.jersey.JerseyClientFactory;
 import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.client.ResponseProcessingException;
 
 /**
@@ -21,6 +27,8 @@ import jakarta.ws.rs.client.ResponseProcessingException;
  */
 public class JerseyRemoteBHive implements RemoteBHive {
 
+    private static final Logger log = LoggerFactory.getLogger(JerseyRemoteBHive.class);
+
     public static final BHiveJacksonModule HIVE_JACKSON_MODULE = new BHiveJacksonModule();
     public static final String DEFAULT_NAME = "default";
 
@@ -44,6 +52,15 @@ public class JerseyRemoteBHive implements RemoteBHive {
         return client.getManifestInventory(names);
     }
 
+    @Override
+    public ManifestChanges getManifestChanges(String journal, long cursor) {
+        try {
+            return client.getManifestChanges(journal, cursor);
+        } catch (NotFoundException nfe) {
+            throw new UnsupportedOperationException("Manifest change journal not supported", nfe);
+        }
+    }
+
     @Override
     public void removeManifest(Key key) {
         client.removeManifest(key);
@@ -72,6 +89,26 @@ public class JerseyRemoteBHive implements RemoteBHive {
         client.push(zipedHive);
     }
 
+    @Override
+    public int getStreamVersion() {
+        try {
+            return ObjectStreamFormat.negotiate(client.getStreamVersion());
+        } catch (WebApplicationException e) {
+            log.debug("Cannot query stream version, assuming older server", e);
+            return ObjectStreamFormat.VERSION_GZIP;
+        }
+    }
+
+    @Override
+    public int getMaxStreams() {
+        try {
+            return Math.max(1, client.getMaxStreams());
+        } catch (WebApplicationException e) {
+            log.debug("Cannot query maximum amount of streams, assuming older server", e);
+            return 1;
+        }
+    }
+
     @Override
     public TransferStatistics pushAsStream(InputStream in) {
         try {
@@ -92,10 +129,18 @@ public class JerseyRemoteBHive implements RemoteBHive {
 
     @Override
     public InputStream fetchAsStream(Set<ObjectId> objects, Set<Key> manifests) {
+        return fetchAsStream(objects, manifests, null, null);
+    }
+
+    @Override
+    public InputStream fetchAsStream(Set<ObjectId> objects, Set<Key> manifests, Set<Key> deltaTargets, Set<Key> deltaBases) {
         try {
             FetchSpec spec = new FetchSpec();
             spec.requiredObjects = objects;
             spec.manifestsToFetch = manifests;
+            spec.streamVersion = ObjectStreamFormat.CURRENT_VERSION;
+            spec.deltaTargets = deltaTargets;
+            spec.deltaBases = deltaBases;
             return client.fetchAsStream(spec);
         } catch (NotFoundException nfe) {
             throw new UnsupportedOperationException("Fetching as stream not supported", nfe);
@@ -0,0 +1,327 @@
+package io.bdeploy.bhive.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Binary delta encoding of an object against a similar base object, e.g. the previous version of a large archive.
+ * <p>
+ * The base is split into fixed size blocks, which are indexed using a weak rolling checksum and a strong hash. The target is
+ * scanned using the rolling checksum, and each block which is found in the base is replaced by an instruction to copy it from
+ * the base (similar to rsync). All other content is inserted literally. Adjacent copies are merged into a single instruction.
+ * <p>
+ * A delta is a sequence of instructions, each starting with a single byte: {@link #OP_COPY} followed by the offset and length
+ * of the content to copy from the base, {@link #OP_INSERT} followed by the length and the literal content, and {@link #OP_END}.
+ */
+public final class ObjectDelta {
+
+    /** Objects smaller than this are not worth a delta */
+    public static final long MIN_SIZE = 1024L * 1024;
+
+    private static final int OP_END = 0;
+    private static final int OP_COPY = 1;
+    private static final int OP_INSERT = 2;
+
+    private static final int MIN_BLOCK_SIZE = 2 * 1024;
+    private static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    /** The amount of blocks in the base above which the block size is increased to limit the size of the index */
+    private static final long MAX_BLOCKS = 64 * 1024;
+
+    /** The amount of target content held in memory, which is also the maximum size of a single insert */
+    private static final int WINDOW_SIZE = 1024 * 1024;
+
+    private static final HashFunction STRONG = Hashing.murmur3_128();
+
+    private ObjectDelta() {
+    }
+
+    /**
+     * Calculates a delta which reconstructs the target from the base.
+     *
+     * @param base the content of the base object
+     * @param baseSize the size of the base object
+     * @param target the content of the target object
+     * @param out the stream to write the delta to, which is not closed.
+     */
+    public static void encode(InputStream base, long baseSize, InputStream target, OutputStream out) throws IOException {
+        int blockSize = (int) Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, baseSize / MAX_BLOCKS));
+        Map<Integer, List<Block>> index = index(base, blockSize);
+        new Encoder(index, blockSize, new DataOutputStream(out)).encode(target);
+    }
+
+    /**
+     * @param base random access to the base object, which is not closed.
+     * @param delta the delta as written by {@link #encode(InputStream, long, InputStream, OutputStream)}.
+     * @return a stream of the reconstructed target.
+     */
+    public static InputStream decode(SeekableByteChannel base, InputStream delta) {
+        return new DeltaInputStream(base, new DataInputStream(delta));
+    }
+
+    private static Map<Integer, List<Block>> index(InputStream base, int blockSize) throws IOException {
+        Map<Integer, List<Block>> index = new HashMap<>();
+        byte[] block = new byte[blockSize];
+        long offset = 0;
+        while (readFully(base, block) == blockSize) {
+            Block b = new Block(offset, STRONG.hashBytes(block));
+            index.computeIfAbsent(weak(block, 0, blockSize), k -> new ArrayList<>(1)).add(b);
+            offset += blockSize;
+        }
+        return index;
+    }
+
+    /** rsync style checksum, which can be rolled over the content one byte at a time */
+    private static int weak(byte[] data, int off, int len) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < len; ++i) {
+            a += data[off + i] & 0xFF;
+            b += (len - i) * (data[off + i] & 0xFF);
+        }
+        return (a & 0xFFFF) | (b << 16);
+    }
+
+    private static int readFully(InputStream in, byte[] target) throws IOException {
+        int total = 0;
+        while (total < target.length) {
+            int num = in.read(target, total, target.length - total);
+            if (num == -1) {
+                break;
+            }
+            total += num;
+        }
+        return total;
+    }
+
+    private static final class Block {
+
+        final long offset;
+        final HashCode strong;
+
+        Block(long offset, HashCode strong) {
+            this.offset = offset;
+            this.strong = strong;
+        }
+    }
+
+    private static final class Encoder {
+
+        private final Map<Integer, List<Block>> index;
+        private final int blockSize;
+        private final DataOutputStream out;
+        private final byte[] window;
+
+        private long copyOffset = -1;
+        private long copyLength;
+
+        Encoder(Map<Integer, List<Block>> index, int blockSize, DataOutputStream out) {
+            this.index = index;
+            this.blockSize = blockSize;
+            this.out = out;
+            this.window = new byte[WINDOW_SIZE + blockSize];
+        }
+
+        void encode(InputStream target) throws IOException {
+            int len = 0;
+            int pos = 0;
+            int literal = 0;
+            boolean eof = false;
+            boolean hashed = false;
+            int a = 0;
+            int b = 0;
+
+            while (true) {
+                if (pos + blockSize > len) {
+                    if (eof) {
+                        break;
+                    }
+
+                    // flush pending literal content and move the rest to the start of the window.
+                    insert(literal, pos);
+                    System.arraycopy(window, pos, window, 0, len - pos);
+                    len -= pos;
+                    pos = 0;
+                    literal = 0;
+
+                    int num = target.read(window, len, window.length - len);
+                    if (num == -1) {
+                        eof = true;
+                    } else {
+                        len += num;
+                    }
+                    continue;
+                }
+
+                if (!hashed) {
+                    a = 0;
+                    b = 0;
+                    for (int i = 0; i < blockSize; ++i) {
+                        a += window[pos + i] & 0xFF;
+                        b += (blockSize - i) * (window[pos + i] & 0xFF);
+                    }
+                    hashed = true;
+                }
+
+                Block match = find((a & 0xFFFF) | (b << 16), pos);
+                if (match != null) {
+                    insert(literal, pos);
+                    copy(match.offset);
+                    pos += blockSize;
+                    literal = pos;
+                    hashed = false;
+                    continue;
+                }
+
+                if (pos + blockSize < len) {
+                    int leaving = window[pos] & 0xFF;
+                    a += (window[pos + blockSize] & 0xFF) - leaving;
+                    b += a - blockSize * leaving;
+                } else {
+                    hashed = false;
+                }
+                pos++;
+            }
+
+            insert(literal, len);
+            flushCopy();
+            out.writeByte(OP_END);
+            out.flush();
+        }
+
+        private Block find(int weak, int pos) {
+            List<Block> candidates = index.get(weak);
+            if (candidates == null) {
+                return null;
+            }
+
+            HashCode strong = STRONG.hashBytes(window, pos, blockSize);
+            Block found = null;
+            for (Block candidate : candidates) {
+                if (candidate.strong.equals(strong)) {
+                    // prefer the block which continues the pending copy.
+                    if (candidate.offset == copyOffset + copyLength) {
+                        return candidate;
+                    }
+                    if (found == null) {
+                        found = candidate;
+                    }
+                }
+            }
+            return found;
+        }
+
+        private void copy(long offset) throws IOException {
+            if (copyOffset >= 0 && copyOffset + copyLength == offset) {
+                copyLength += blockSize;
+                return;
+            }
+            flushCopy();
+            copyOffset = offset;
+            copyLength = blockSize;
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyOffset >= 0) {
+                out.writeByte(OP_COPY);
+                out.writeLong(copyOffset);
+                out.writeLong(copyLength);
+                copyOffset = -1;
+                copyLength = 0;
+            }
+        }
+
+        private void insert(int from, int to) throws IOException {
+            if (to > from) {
+                flushCopy();
+                out.writeByte(OP_INSERT);
+                out.writeInt(to - from);
+                out.write(window, from, to - from);
+            }
+        }
+    }
+
+    private static final class DeltaInputStream extends InputStream {
+
+        private final SeekableByteChannel base;
+        private final DataInputStream delta;
+
+        private int op = -1;
+        private long remaining;
+        private long basePosition;
+
+        DeltaInputStream(SeekableByteChannel base, DataInputStream delta) {
+            this.base = base;
+            this.delta = delta;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int num = read(single, 0, 1);
+            return num == -1 ? -1 : (single[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (remaining == 0) {
+                if (op == OP_END) {
+                    return -1;
+                }
+                next();
+            }
+
+            int num;
+            int max = (int) Math.min(len, remaining);
+            if (op == OP_COPY) {
+                base.position(basePosition);
+                num = base.read(ByteBuffer.wrap(b, off, max));
+                basePosition += Math.max(num, 0);
+            } else {
+                num = delta.read(b, off, max);
+            }
+
+            if (num <= 0) {
+                throw new EOFException("Unexpected end of delta. Expecting '" + remaining + "' more bytes.");
+            }
+            remaining -= num;
+            return num;
+        }
+
+        private void next() throws IOException {
+            op = delta.readByte();
+            switch (op) {
+                case OP_END:
+                    remaining = 0;
+                    break;
+                case OP_COPY:
+                    basePosition = delta.readLong();
+                    remaining = delta.readLong();
+                    break;
+                case OP_INSERT:
+                    remaining = delta.readInt();
+                    break;
+                default:
+                    throw new IOException("Unsupported delta instruction: " + op);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,541 @@
+package io.bdeploy.bhive.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import io.bdeploy.common.util.FixedLengthStream;
+
+/**
+ * Encoding of the streams used to transfer manifests and objects between {@link io.bdeploy.bhive.BHive}s.
+ * <p>
+ * {@link #VERSION_GZIP} compresses the whole stream using GZIP. {@link #VERSION_FRAMED} starts with a magic number (which
+ * cannot be confused with the GZIP header) and compresses each manifest or object separately. Content which is already
+ * compressed (archives, images, ...) is detected by its magic bytes or by the ratio of a trial compression, and sent as-is,
+ * which saves CPU time on both sides and avoids inflating it even further. {@link #VERSION_DELTA} is framed as well, but each
+ * object is preceded by its kind, which allows sending large objects as {@link ObjectDelta} to an object the reading side has.
+ * <p>
+ * Readers detect the version of a stream automatically. Writers must only use a version the reading side supports.
+ */
+public final class ObjectStreamFormat {
+
+    /** The whole stream is compressed using GZIP. Supported by all versions */
+    public static final int VERSION_GZIP = 1;
+
+    /** Each manifest or object is sent in a separate frame, which is either compressed or raw */
+    public static final int VERSION_FRAMED = 2;
+
+    /** Like {@link #VERSION_FRAMED}, but each object is preceded by {@link #OBJECT_FULL} or {@link #OBJECT_DELTA} */
+    public static final int VERSION_DELTA = 3;
+
+    /** The latest version supported by this implementation */
+    public static final int CURRENT_VERSION = VERSION_DELTA;
+
+    /** The object follows in a single frame */
+    public static final int OBJECT_FULL = 0;
+
+    /** The IDs of the object and its base follow, then a single frame containing the {@link ObjectDelta} */
+    public static final int OBJECT_DELTA = 1;
+
+    /** "BHS2" - the first byte differs from the first byte of the GZIP header */
+    private static final int FRAMED_MAGIC = 0x42485332;
+
+    /** "BHS3" */
+    private static final int DELTA_MAGIC = 0x42485333;
+
+    private static final int FRAME_RAW = 0;
+    private static final int FRAME_DEFLATED = 1;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The amount of bytes at the start of each object used to determine whether it is compressible */
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    /** Objects smaller than this are always compressed, as trying does not pay off */
+    private static final int MIN_SAMPLE_SIZE = 512;
+
+    /** Magic bytes of file formats which are compressed already */
+    private static final byte[][] COMPRESSED_MAGICS = { //
+            { 'P', 'K', 3, 4 }, // ZIP, JAR, ...
+            { (byte) 0x1f, (byte) 0x8b }, // GZIP
+            { 'B', 'Z', 'h' }, // BZIP2
+            { (byte) 0xfd, '7', 'z', 'X', 'Z', 0 }, // XZ
+            { '7', 'z', (byte) 0xbc, (byte) 0xaf, 0x27, 0x1c }, // 7-Zip
+            { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd }, // Zstandard
+            { (byte) 0x89, 'P', 'N', 'G' }, // PNG
+            { (byte) 0xff, (byte) 0xd8, (byte) 0xff }, // JPEG
+    };
+
+    private ObjectStreamFormat() {
+    }
+
+    /**
+     * @param requested the version requested by the other side, or <code>null</code> if the other side did not specify one.
+     * @return the version to use when writing for the other side.
+     */
+    public static int negotiate(Integer requested) {
+        if (requested == null || requested < VERSION_GZIP) {
+            return VERSION_GZIP;
+        }
+        return Math.min(requested, CURRENT_VERSION);
+    }
+
+    /**
+     * Writes a stream of manifests and objects. The header and counts are written to {@link #data()}, the actual content of
+     * each manifest and object using {@link #writeFrame(InputStream, long)}.
+     */
+    public abstract static class StreamWriter implements Closeable {
+
+        /**
+         * @param out the target stream, closed along with the writer.
+         * @param version the version of the stream to write.
+         */
+        public static StreamWriter open(OutputStream out, int version) throws IOException {
+            if (version >= VERSION_DELTA) {
+                return new FramedWriter(out, VERSION_DELTA);
+            }
+            if (version >= VERSION_FRAMED) {
+                return new FramedWriter(out, VERSION_FRAMED);
+            }
+            return new GzipWriter(out);
+        }
+
+        /**
+         * @return the version of the stream being written.
+         */
+        public abstract int getVersion();
+
+        /**
+         * @return the stream to write header information to.
+         */
+        public abstract DataOutputStream data();
+
+        /**
+         * Writes the given content including its size.
+         *
+         * @param in the content to write
+         * @param size the exact size of the content.
+         */
+        public abstract void writeFrame(InputStream in, long size) throws IOException;
+
+    }
+
+    /**
+     * Reads a stream written by a {@link StreamWriter} of any version.
+     */
+    public abstract static class StreamReader extends InputStream {
+
+        /**
+         * @param in the source stream, closed along with the reader. Must support {@link InputStream#mark(int)}.
+         */
+        public static StreamReader open(BufferedInputStream in) throws IOException {
+            in.mark(Integer.BYTES);
+            int magic = new DataInputStream(in).readInt();
+            if (magic == DELTA_MAGIC) {
+                return new FramedReader(in, VERSION_DELTA);
+            }
+            if (magic == FRAMED_MAGIC) {
+                return new FramedReader(in, VERSION_FRAMED);
+            }
+            in.reset();
+            return new GzipReader(in);
+        }
+
+        /**
+         * @return the version of the stream being read.
+         */
+        public abstract int getVersion();
+
+        /**
+         * @return the stream to read header information from.
+         */
+        public abstract DataInputStream data();
+
+        /**
+         * Starts reading the next frame. Its content is read from this stream afterwards.
+         *
+         * @return the size of the content of the frame.
+         */
+        public abstract long next() throws IOException;
+
+        /**
+         * Skips remaining content of the current frame.
+         */
+        public abstract void finish() throws IOException;
+
+    }
+
+    private static final class GzipWriter extends StreamWriter {
+
+        private final DataOutputStream out;
+
+        GzipWriter(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new GZIPOutputStream(out, BUFFER_SIZE));
+        }
+
+        @Override
+        public int getVersion() {
+            return VERSION_GZIP;
+        }
+
+        @Override
+        public DataOutputStream data() {
+            return out;
+        }
+
+        @Override
+        public void writeFrame(InputStream in, long size) throws IOException {
+            out.writeLong(size);
+            copy(in, out, size, new byte[BUFFER_SIZE]);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+    }
+
+    private static final class GzipReader extends StreamReader {
+
+        private final DataInputStream in;
+
+        GzipReader(InputStream in) throws IOException {
+            this.in = new DataInputStream(new GZIPInputStream(in, BUFFER_SIZE));
+        }
+
+        @Override
+        public int getVersion() {
+            return VERSION_GZIP;
+        }
+
+        @Override
+        public DataInputStream data() {
+            return in;
+        }
+
+        @Override
+        public long next() throws IOException {
+            return in.readLong();
+        }
+
+        @Override
+        public void finish() {
+            // content is not framed, the reader must consume all of it.
+        }
+
+        @Override
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+    }
+
+    private static final class FramedWriter extends StreamWriter {
+
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater();
+        private final Deflater trial = new Deflater(Deflater.BEST_SPEED);
+        private final byte[] sample = new byte[SAMPLE_SIZE];
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final int version;
+
+        FramedWriter(OutputStream out, int version) throws IOException {
+            this.version = version;
+            this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE * 2));
+            this.out.writeInt(version == VERSION_DELTA ? DELTA_MAGIC : FRAMED_MAGIC);
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public DataOutputStream data() {
+            return out;
+        }
+
+        @Override
+        public void writeFrame(InputStream in, long size) throws IOException {
+            int sampleSize = readFully(in, sample, (int) Math.min(size, SAMPLE_SIZE));
+            if (sampleSize != Math.min(size, SAMPLE_SIZE)) {
+                throw new EOFException("Unexpected end of stream. Expecting '" + size + "' bytes.");
+            }
+
+            out.writeLong(size);
+            if (isCompressed(sampleSize)) {
+                out.writeByte(FRAME_RAW);
+                out.write(sample, 0, sampleSize);
+                copy(in, out, size - sampleSize, buffer);
+            } else {
+                out.writeByte(FRAME_DEFLATED);
+                deflater.reset();
+                try (DeflaterOutputStream deflated = new DeflaterOutputStream(new ChunkedOutputStream(out), deflater,
+                        BUFFER_SIZE)) {
+                    deflated.write(sample, 0, sampleSize);
+                    copy(in, deflated, size - sampleSize, buffer);
+                }
+            }
+        }
+
+        private boolean isCompressed(int sampleSize) {
+            if (sampleSize < MIN_SAMPLE_SIZE) {
+                return false;
+            }
+
+            for (byte[] magic : COMPRESSED_MAGICS) {
+                if (startsWith(sample, magic)) {
+                    return true;
+                }
+            }
+
+            // compressing the sample fast does not save at least 10% - the rest will not be much better.
+            trial.reset();
+            trial.setInput(sample, 0, sampleSize);
+            trial.finish();
+            long compressed = 0;
+            while (!trial.finished()) {
+                compressed += trial.deflate(buffer);
+            }
+            return compressed * 10 > sampleSize * 9l;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                deflater.end();
+                trial.end();
+            }
+        }
+
+    }
+
+    private static final class FramedReader extends StreamReader {
+
+        private final DataInputStream in;
+        private final Inflater inflater = new Inflater();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private final int version;
+
+        private InputStream current;
+        private ChunkedInputStream chunks;
+
+        FramedReader(InputStream in, int version) {
+            this.in = new DataInputStream(in);
+            this.version = version;
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public DataInputStream data() {
+            return in;
+        }
+
+        @Override
+        public long next() throws IOException {
+            long size = in.readLong();
+            int type = in.readByte();
+            if (type == FRAME_RAW) {
+                chunks = null;
+                current = new FixedLengthStream(in, size);
+            } else if (type == FRAME_DEFLATED) {
+                inflater.reset();
+                chunks = new ChunkedInputStream(in);
+                current = new InflaterInputStream(chunks, inflater, BUFFER_SIZE);
+            } else {
+                throw new IOException("Unsupported frame type: " + type);
+            }
+            return size;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (current == null) {
+                return;
+            }
+            while (current.read(buffer) >= 0) {
+                // skip remaining content
+            }
+            if (chunks != null) {
+                chunks.skipAll();
+            }
+            current = null;
+            chunks = null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return current == null ? -1 : current.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return current == null ? -1 : current.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                inflater.end();
+            }
+        }
+
+    }
+
+    /**
+     * Writes each write call as a chunk prefixed with its length. Closing writes the terminating empty chunk, but keeps the
+     * underlying stream open.
+     */
+    private static final class ChunkedOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+
+        ChunkedOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.writeInt(0);
+        }
+
+    }
+
+    /**
+     * Reads chunks written by {@link ChunkedOutputStream} up to the terminating empty chunk. Closing does not close the
+     * underlying stream.
+     */
+    private static final class ChunkedInputStream extends InputStream {
+
+        private final DataInputStream in;
+        private int remaining;
+        private boolean done;
+
+        ChunkedInputStream(DataInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int num = read(single, 0, 1);
+            return num == -1 ? -1 : (single[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (remaining == 0) {
+                remaining = in.readInt();
+                if (remaining <= 0) {
+                    done = true;
+                    if (remaining < 0) {
+                        throw new IOException("Invalid chunk length: " + remaining);
+                    }
+                    return -1;
+                }
+            }
+
+            int num = in.read(b, off, Math.min(len, remaining));
+            if (num == -1) {
+                throw new EOFException("Unexpected end of stream. Expecting '" + remaining + "' bytes.");
+            }
+            remaining -= num;
+            return num;
+        }
+
+        void skipAll() throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (read(buffer, 0, buffer.length) >= 0) {
+                // skip remaining chunks
+            }
+        }
+
+        @Override
+        public void close() {
+            // keep the underlying stream open.
+        }
+
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        for (int i = 0; i < prefix.length; ++i) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readFully(InputStream in, byte[] target, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int num = in.read(target, total, length - total);
+            if (num == -1) {
+                break;
+            }
+            total += num;
+        }
+        return total;
+    }
+
+    private static void copy(InputStream in, OutputStream out, long size, byte[] buffer) throws IOException {
+        long remaining = size;
+        while (remaining > 0) {
+            int num = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (num == -1) {
+                throw new EOFException("Unexpected end of stream. Expecting '" + remaining + "' more bytes.");
+            }
+            out.write(buffer, 0, num);
+            remaining -= num;
+        }
+    }
+
+}
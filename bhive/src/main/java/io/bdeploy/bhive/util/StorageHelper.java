@@ -11,9 +11,11 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.bdeploy.bhive.model.Tree;
@@ -117,6 +119,18 @@ public class StorageHelper {
         }
     }
 
+    /**
+     * De-serializes all Objects of given type from a stream holding a sequence of values, as created by concatenating the
+     * results of multiple {@link #toRawBytes(Object)} calls.
+     */
+    public static <T> List<T> fromStreamSequence(InputStream is, Class<T> clazz) {
+        try (MappingIterator<T> it = getMapper(MapperType.JSON).readerFor(clazz).readValues(is)) {
+            return it.readAll();
+        } catch (IOException e) {
+            throw new IllegalStateException(JSON_READ_ERROR, e);
+        }
+    }
+
     /**
      * De-serializes an Object of given type from a YAML content stream into memory.
      */
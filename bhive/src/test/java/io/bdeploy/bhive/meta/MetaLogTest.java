@@ -0,0 +1,134 @@
+package io.bdeploy.bhive.meta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.BHiveTransactions.Transaction;
+import io.bdeploy.bhive.TestHive;
+import io.bdeploy.bhive.meta.MetaLog.Cursor;
+import io.bdeploy.bhive.meta.MetaLog.Page;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.Tree;
+import io.bdeploy.bhive.op.ImportOperation;
+import io.bdeploy.bhive.op.ManifestLoadOperation;
+import io.bdeploy.bhive.op.TreeLoadOperation;
+import io.bdeploy.bhive.util.StorageHelper;
+import io.bdeploy.common.ContentHelper;
+
+@ExtendWith(TestHive.class)
+class MetaLogTest {
+
+    private static final class MyLog {
+
+        public List<MyRecord> records = new ArrayList<>();
+    }
+
+    private static final class MyRecord {
+
+        public String value;
+        public long timestamp;
+    }
+
+    private static MyRecord record(long timestamp) {
+        MyRecord rec = new MyRecord();
+        rec.value = "rec-" + timestamp;
+        rec.timestamp = timestamp;
+        return rec;
+    }
+
+    @Test
+    void pageSameTimestamp(BHive hive, @TempDir Path temp) throws Exception {
+        Manifest.Key testMf = new Manifest.Key("my/test", "v1");
+        try (Transaction t = hive.getTransactions().begin()) {
+            hive.execute(new ImportOperation().setSourcePath(ContentHelper.genSimpleTestTree(temp, "test")).setManifest(testMf));
+        }
+
+        // many records sharing a timestamp, spanning multiple segments.
+        MetaLog<MyRecord> metaLog = new MetaLog<>(testMf, true, MyLog.class, MyRecord.class, r -> r.timestamp);
+        int count = MetaLog.SEGMENT_RECORDS * 3;
+        for (int i = 0; i < count; ++i) {
+            MyRecord rec = record(i < 10 ? i : 10);
+            rec.value = "rec-" + i;
+            metaLog.append(hive, rec);
+        }
+
+        List<String> values = new ArrayList<>();
+        Cursor cursor = Cursor.NEWEST;
+        while (cursor != null) {
+            Page<MyRecord> page = metaLog.readPage(hive, cursor, 7);
+            assertTrue(page.records.size() <= 7);
+            page.records.forEach(r -> values.add(r.value));
+            cursor = page.next;
+        }
+
+        assertEquals(count, values.size());
+        for (int i = 0; i < count; ++i) {
+            assertEquals("rec-" + (count - 1 - i), values.get(i));
+        }
+    }
+
+    @Test
+    void appendAndQuery(BHive hive, @TempDir Path temp) throws Exception {
+        Manifest.Key testMf = new Manifest.Key("my/test", "v1");
+        try (Transaction t = hive.getTransactions().begin()) {
+            hive.execute(new ImportOperation().setSourcePath(ContentHelper.genSimpleTestTree(temp, "test")).setManifest(testMf));
+        }
+
+        // history written by a MetaManifest is the oldest part of the log.
+        MyLog legacy = new MyLog();
+        legacy.records.add(record(1));
+        legacy.records.add(record(2));
+        new MetaManifest<>(testMf, true, MyLog.class).write(hive, legacy);
+
+        MetaLog<MyRecord> metaLog = new MetaLog<>(testMf, true, MyLog.class, MyRecord.class, r -> r.timestamp)
+                .setLegacyReader(is -> StorageHelper.fromStream(is, MyLog.class).records);
+        assertEquals(2, metaLog.read(hive).size());
+
+        int count = MetaLog.SEGMENT_RECORDS * (MetaLog.COMPACT_SEGMENTS + 2) + 5;
+        Manifest.Key last = null;
+        for (int i = 0; i < count; ++i) {
+            last = metaLog.append(hive, record(10 + i));
+        }
+
+        // legacy, one compacted segment, two sealed small segments and the open segment.
+        Manifest current = hive.execute(new ManifestLoadOperation().setManifest(last));
+        Tree tree = hive.execute(new TreeLoadOperation().setTree(current.getRoot()));
+        assertEquals(5, tree.getChildren().size());
+
+        List<MyRecord> all = metaLog.read(hive);
+        assertEquals(count + 2, all.size());
+        for (int i = 1; i < all.size(); ++i) {
+            assertTrue(all.get(i - 1).timestamp < all.get(i).timestamp);
+        }
+
+        List<MyRecord> range = metaLog.read(hive, 500, 509);
+        assertEquals(10, range.size());
+        assertEquals(500, range.get(0).timestamp);
+
+        Page<MyRecord> page = metaLog.readPage(hive, Cursor.NEWEST, 50);
+        assertEquals(50, page.records.size());
+        assertEquals(10 + count - 1, page.records.get(0).timestamp);
+        assertNotNull(page.next);
+
+        page = metaLog.readPage(hive, new Cursor(12, Long.MAX_VALUE), 50);
+        assertEquals(4, page.records.size());
+        assertEquals(11, page.records.get(0).timestamp);
+        assertEquals(1, page.records.get(3).timestamp);
+        assertNull(page.next);
+
+        // reading the same meta manifest using the legacy format still works.
+        assertEquals(2, new MetaManifest<>(testMf, true, MyLog.class).read(hive).records.size());
+    }
+
+}
@@ -0,0 +1,131 @@
+package io.bdeploy.bhive.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.objects.DbTestBase;
+import io.bdeploy.common.SlowTest;
+
+class ObjectIdSetTest extends DbTestBase {
+
+    private static final Logger log = LoggerFactory.getLogger(ObjectIdSetTest.class);
+
+    @Test
+    void testSetOperations() {
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; ++i) {
+            ids.add(randomId());
+        }
+
+        ObjectIdSet set = new ObjectIdSet();
+        Set<ObjectId> reference = new LinkedHashSet<>();
+        for (ObjectId id : ids) {
+            assertEquals(reference.add(id), set.add(id));
+        }
+        assertFalse(set.add(ids.get(0)));
+        assertEquals(reference, set);
+        assertEquals(new ArrayList<>(reference), new ArrayList<>(set)); // insertion order
+
+        // remove every other element, and re-add some.
+        for (int i = 0; i < ids.size(); i += 2) {
+            assertTrue(set.remove(ids.get(i)));
+            reference.remove(ids.get(i));
+        }
+        assertFalse(set.remove(ids.get(0)));
+        for (int i = 0; i < ids.size(); i += 10) {
+            set.add(ids.get(i));
+            reference.add(ids.get(i));
+        }
+        assertEquals(reference.size(), set.size());
+        assertEquals(new ArrayList<>(reference), new ArrayList<>(set));
+
+        // add more to force compaction of removed elements.
+        for (int i = 0; i < 20_000; ++i) {
+            ObjectId id = randomId();
+            set.add(id);
+            reference.add(id);
+        }
+        assertEquals(new ArrayList<>(reference), new ArrayList<>(set));
+
+        set.removeAll(ids);
+        reference.removeAll(ids);
+        assertEquals(reference, set);
+        assertTrue(set.containsAll(reference));
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(ids.get(1)));
+    }
+
+    @Test
+    void testIterator() {
+        ObjectIdSet set = new ObjectIdSet();
+        for (int i = 0; i < 100; ++i) {
+            set.add(randomId());
+        }
+
+        Iterator<ObjectId> it = set.iterator();
+        while (it.hasNext()) {
+            ObjectId id = it.next();
+            if (id.hashCode() % 2 == 0) {
+                it.remove();
+                assertFalse(set.contains(id));
+            }
+        }
+        set.forEach(id -> assertTrue(id.hashCode() % 2 != 0));
+
+        Iterator<ObjectId> failing = set.iterator();
+        failing.next();
+        set.add(randomId());
+        assertThrows(ConcurrentModificationException.class, failing::next);
+    }
+
+    @SlowTest
+    @Test
+    void benchmark() {
+        int count = 2_000_000;
+        List<ObjectId> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            ids.add(randomId());
+        }
+
+        measure("TreeSet", TreeSet::new, ids);
+        measure("LinkedHashSet", LinkedHashSet::new, ids);
+        measure("ObjectIdSet", ObjectIdSet::new, ids);
+    }
+
+    private static void measure(String name, Supplier<Set<ObjectId>> factory, List<ObjectId> ids) {
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = rt.totalMemory() - rt.freeMemory();
+        long start = System.nanoTime();
+
+        // the same pattern as prune: fill from a listing (creating new ids), then remove the referenced ones.
+        Set<ObjectId> all = factory.get();
+        ids.forEach(id -> all.add(ObjectId.parse(id.getId())));
+        all.removeAll(ids.subList(0, ids.size() / 2));
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.gc();
+        long heapAfter = rt.totalMemory() - rt.freeMemory();
+
+        assertEquals(ids.size() - ids.size() / 2, all.size());
+        log.info("{}: {} ms, ~{} MB retained for {} ids", name, millis, (heapAfter - heapBefore) / (1024 * 1024), ids.size());
+    }
+
+}
@@ -0,0 +1,50 @@
+package io.bdeploy.bhive.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import io.bdeploy.bhive.objects.DbTestBase;
+import io.bdeploy.bhive.util.StorageHelper;
+
+class ObjectIdTest extends DbTestBase {
+
+    private static final String ID = "b3f3e1f1d6a2c1e8a4b3c2d1e0f9a8b7c6d5e4f3";
+
+    @Test
+    void testParse() {
+        ObjectId id = ObjectId.parse(ID);
+        assertEquals(ID, id.getId());
+        assertEquals(ID, id.toString());
+        assertEquals(id, ObjectId.fromBytes(id.toBytes()));
+        assertEquals(id.hashCode(), ObjectId.parse(ID).hashCode());
+
+        assertNull(ObjectId.parse(ID.toUpperCase()));
+        assertNull(ObjectId.parse(ID.substring(1)));
+        assertNull(ObjectId.parse(ID.substring(1) + "x"));
+    }
+
+    @Test
+    void testOrder() {
+        for (int i = 0; i < 1000; ++i) {
+            ObjectId a = randomId();
+            ObjectId b = randomId();
+            assertEquals(Integer.signum(a.getId().compareTo(b.getId())), Integer.signum(a.compareTo(b)));
+        }
+    }
+
+    @Test
+    void testSerialization() {
+        ObjectId id = ObjectId.parse(ID);
+        byte[] json = StorageHelper.toRawBytes(id);
+
+        assertEquals("{\"id\":\"" + ID + "\"}", new String(json, StandardCharsets.UTF_8).replaceAll("\\s", ""));
+        assertEquals(id, StorageHelper.fromRawBytes(json, ObjectId.class));
+        assertArrayEquals(json, StorageHelper.toRawBytes(StorageHelper.fromRawBytes(json, ObjectId.class)));
+    }
+
+}
@@ -0,0 +1,51 @@
+package io.bdeploy.bhive.objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.bdeploy.bhive.model.ObjectId;
+
+class LockableDatabaseTest {
+
+    private static final class TestDatabase extends LockableDatabase {
+
+        TestDatabase(Path root) {
+            super(root);
+        }
+    }
+
+    @Test
+    void testReentrant(@TempDir Path tmp) {
+        TestDatabase db = new TestDatabase(tmp);
+        ObjectId id = DbTestBase.randomId();
+        AtomicInteger runs = new AtomicInteger();
+
+        // the same stripe, the journal and the whole database can be locked again by the same thread.
+        db.locked(id, () -> db.locked(id, () -> db.lockedJournal(runs::incrementAndGet)));
+        db.locked(() -> db.locked(() -> db.locked(id, () -> db.lockedJournal(runs::incrementAndGet))));
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void testNoUpgrade(@TempDir Path tmp) {
+        TestDatabase db = new TestDatabase(tmp);
+        ObjectId id = DbTestBase.randomId();
+
+        assertThrows(IllegalStateException.class, () -> db.locked(id, () -> db.locked(() -> {
+            // never reached.
+        })));
+
+        // the failed upgrade did not leave any lock behind.
+        AtomicInteger runs = new AtomicInteger();
+        db.locked(runs::incrementAndGet);
+        assertEquals(1, runs.get());
+    }
+
+}
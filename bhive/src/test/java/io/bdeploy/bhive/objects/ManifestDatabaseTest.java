@@ -6,17 +6,30 @@ package io.bdeploy.bhive.objects;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ManifestChanges;
+import io.bdeploy.bhive.model.ObjectId;
 
 class ManifestDatabaseTest extends DbTestBase {
 
@@ -51,4 +64,132 @@ class ManifestDatabaseTest extends DbTestBase {
         }
     }
 
+    @Test
+    void testIndex(@TempDir Path tmp) throws IOException {
+        Path dbDir = tmp.resolve("manifests");
+
+        Manifest.Key app = new Manifest.Key("test/app", "v1");
+        Manifest.Key appNested = new Manifest.Key("test/app/nested", "v1");
+        Manifest.Key appOther = new Manifest.Key("test/application", "v1");
+        ObjectId root = randomId();
+
+        try (ManifestDatabase db1 = new ManifestDatabase(dbDir); ManifestDatabase db2 = new ManifestDatabase(dbDir)) {
+            db1.addManifest(new Manifest.Builder(app).setRoot(root).build(null));
+            db1.addManifest(new Manifest.Builder(appNested).setRoot(randomId()).build(null));
+
+            // the second instance sees changes through the shared index.
+            db2.addManifest(new Manifest.Builder(appOther).setRoot(randomId()).build(null));
+            assertEquals(Set.of(app, appNested, appOther), db1.getAllManifests());
+            assertEquals(Set.of(app, appNested), db2.getAllForName("test/app"));
+            assertEquals(root, db2.getManifestRoot(app));
+
+            db1.removeManifest(appNested);
+            assertEquals(Set.of(app), db2.getAllForName("test/app"));
+        }
+
+        // existing databases without index get one on first use.
+        Files.delete(dbDir.resolve(".index"));
+        try (ManifestDatabase db = new ManifestDatabase(dbDir)) {
+            assertEquals(Set.of(app, appOther), db.getAllManifests());
+            assertTrue(Files.exists(dbDir.resolve(".index")));
+        }
+    }
+
+    @Test
+    void testMaxId(@TempDir Path tmp) {
+        try (ManifestDatabase db = new ManifestDatabase(tmp.resolve("manifests"))) {
+            assertEquals(Optional.empty(), db.getMaxId("test/app"));
+
+            for (int i = 1; i <= 10; ++i) {
+                Manifest.Key key = new Manifest.Key("test/app", Integer.toString(i));
+                db.addManifest(new Manifest.Builder(key).setRoot(randomId()).build(null));
+            }
+            assertEquals(Optional.of(10l), db.getMaxId("test/app"));
+
+            db.removeManifest(new Manifest.Key("test/app", "10"));
+            db.removeManifest(new Manifest.Key("test/app", "1"));
+            assertEquals(Optional.of(9l), db.getMaxId("test/app"));
+
+            // nested names are included, non-numeric tags make the max unavailable.
+            db.addManifest(new Manifest.Builder(new Manifest.Key("test/app/nested", "20")).setRoot(randomId()).build(null));
+            assertEquals(Optional.of(20l), db.getMaxId("test/app"));
+            db.addManifest(new Manifest.Builder(new Manifest.Key("test/app/nested", "v1")).setRoot(randomId()).build(null));
+            assertEquals(Optional.empty(), db.getMaxId("test/app"));
+            assertEquals(Optional.of(9l), db.getMaxId("test/app:9"));
+        }
+    }
+
+    @Test
+    void testChanges(@TempDir Path tmp) {
+        Manifest.Key app1 = new Manifest.Key("test/app", "1");
+        Manifest.Key app2 = new Manifest.Key("test/app", "2");
+        Manifest.Key other = new Manifest.Key("test/other", "1");
+
+        try (ManifestDatabase db = new ManifestDatabase(tmp.resolve("manifests"))) {
+            db.addManifest(new Manifest.Builder(app1).setRoot(randomId()).build(null));
+
+            // an unknown journal requires a full comparison, but yields a starting point.
+            ManifestChanges start = db.getChanges(null, 0);
+            assertFalse(start.complete);
+            assertNotNull(start.journal);
+
+            ManifestChanges none = db.getChanges(start.journal, start.cursor);
+            assertTrue(none.complete);
+            assertTrue(none.added.isEmpty());
+            assertEquals(start.cursor, none.cursor);
+
+            db.addManifest(new Manifest.Builder(app2).setRoot(randomId()).build(null));
+            db.addManifest(new Manifest.Builder(other).setRoot(randomId()).build(null));
+            db.removeManifest(app1);
+            db.removeManifest(other);
+
+            ManifestChanges changes = db.getChanges(start.journal, start.cursor);
+            assertTrue(changes.complete);
+            assertFalse(changes.more);
+            assertEquals(List.of(app2), changes.added);
+            assertEquals(List.of(app1, other), changes.removed);
+            assertTrue(changes.cursor > start.cursor);
+
+            // a re-built index starts a new journal.
+            db.rebuildIndex();
+            ManifestChanges rebuilt = db.getChanges(changes.journal, changes.cursor);
+            assertFalse(rebuilt.complete);
+            assertNotEquals(changes.journal, rebuilt.journal);
+        }
+    }
+
+    @Test
+    void testChangesPaging(@TempDir Path tmp) throws IOException {
+        Manifest.Key app1 = new Manifest.Key("test/app", "1");
+        Manifest.Key app2 = new Manifest.Key("test/app", "2");
+        Path file = tmp.resolve("index");
+
+        ManifestIndex index = new ManifestIndex(file, tmp);
+        index.rebuild(Collections.emptyMap());
+        ManifestChanges start = index.getChanges(null, 0, 1);
+
+        index.add(app1, randomId());
+        Files.write(file, "\n*invalid\n+test/app\t3\tnot-an-id\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        index.add(app2, randomId());
+        index.remove(app1);
+
+        // records larger than the limit are returned one by one, invalid records are skipped.
+        List<Manifest.Key> added = new ArrayList<>();
+        List<Manifest.Key> removed = new ArrayList<>();
+        ManifestChanges changes = start;
+        int calls = 0;
+        do {
+            changes = index.getChanges(changes.journal, changes.cursor, 1);
+            assertTrue(changes.complete);
+            added.addAll(changes.added);
+            removed.addAll(changes.removed);
+            calls++;
+        } while (changes.more);
+
+        assertTrue(calls > 1);
+        assertEquals(List.of(app1, app2), added);
+        assertEquals(List.of(app1), removed);
+    }
+
 }
@@ -5,15 +5,21 @@ package io.bdeploy.bhive.objects;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -99,4 +105,63 @@ class ObjectDatabaseTest extends DbTestBase {
         inMem.done();
     }
 
+    @Test
+    void testConcurrentInsertSameObject(ActivityReporter r) throws Exception {
+        byte[] content = "This is a test".getBytes(StandardCharsets.UTF_8);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ObjectId>> inserts = new ArrayList<>();
+            for (int i = 0; i < 200; ++i) {
+                inserts.add(pool.submit(() -> getObjectDatabase().addObject(content)));
+            }
+            for (Future<ObjectId> insert : inserts) {
+                assertTrue(getObjectDatabase().hasObject(insert.get()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        ObjectId id = ObjectId.create(content, 0, content.length);
+        getObjectDatabase().removeObject(id);
+        assertFalse(getObjectDatabase().hasObject(id));
+        assertFalse(new ObjectDatabase(getObjectDatabasePath(), getObjectDatabasePath(), r, null).hasObject(id));
+    }
+
+    /**
+     * Not an assertion on timing, but reports how inserting scales with the amount of threads.
+     */
+    @SlowTest
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 4, 8, 16 })
+    void benchmarkParallelInsert(int threads, ActivityReporter r) throws Exception {
+        int count = 4000;
+        List<byte[]> contents = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            contents.add(ContentHelper.randomString(4096).getBytes(StandardCharsets.UTF_8));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ObjectId>> inserts = new ArrayList<>();
+            long start = System.nanoTime();
+            try (Activity insert = r.start("Inserting " + count + " objects using " + threads + " threads...")) {
+                for (byte[] content : contents) {
+                    inserts.add(pool.submit(() -> getObjectDatabase().addObject(content)));
+                }
+                for (Future<ObjectId> f : inserts) {
+                    f.get();
+                }
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.println(threads + " threads: " + count + " objects in " + millis + "ms ("
+                    + (count * 1000L / Math.max(1, millis)) + " objects/s)");
+
+            for (Future<ObjectId> f : inserts) {
+                assertTrue(getObjectDatabase().hasObject(f.get()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
 }
@@ -6,18 +6,25 @@ package io.bdeploy.bhive.objects;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -85,6 +92,81 @@ class ObjectManagerTest extends DbTestBase {
 
     }
 
+    @Test
+    void testExportModes(@TempDir Path tmp, ActivityReporter r) throws IOException {
+        Path mySource = ContentHelper.genSimpleTestTree(tmp, "source");
+
+        ExecutorService s = Executors.newFixedThreadPool(2);
+        try {
+            ObjectManager mgr = new ObjectManager(getObjectDatabase(), null, r, s);
+            ObjectId tree = mgr.importTree(mySource, false);
+
+            for (ExportMode mode : ExportMode.values()) {
+                Path myTarget = tmp.resolve("target-" + mode);
+                mgr.exportTree(tree, myTarget, null, mode);
+                ContentHelper.checkDirsEqual(mySource, myTarget);
+
+                ObjectId blob = ObjectId.parse(ContentHelper.TEST_TXT_OID);
+                boolean linked = Files.isSameFile(myTarget.resolve("test.txt"), getObjectDatabase().getObjectFile(blob));
+                assertEquals(mode == ExportMode.LINK, linked);
+            }
+        } finally {
+            s.shutdownNow();
+        }
+    }
+
+    @Test
+    void testLinkKeepsObjectMode(@TempDir Path tmp, ActivityReporter r) throws IOException {
+        Path mySource = ContentHelper.genSimpleTestTree(tmp, "source");
+        Path script = mySource.resolve("script.sh");
+        Files.writeString(script, "#!/bin/sh\necho test\n");
+        assumeTrue(PathHelper.getPosixView(script) != null);
+
+        ExecutorService s = Executors.newFixedThreadPool(2);
+        try {
+            ObjectManager mgr = new ObjectManager(getObjectDatabase(), null, r, s);
+            ObjectId tree = mgr.importTree(mySource, false);
+            Path myTarget = tmp.resolve("target");
+            mgr.exportTree(tree, myTarget, null, ExportMode.LINK);
+
+            // the script requires a different mode than the object file, so it is copied and the object file is untouched.
+            Path exported = myTarget.resolve("script.sh");
+            ObjectId blob;
+            try (InputStream is = Files.newInputStream(script)) {
+                blob = ObjectId.createFromStreamNoCopy(is);
+            }
+            Path objectFile = getObjectDatabase().getObjectFile(blob);
+            assertFalse(Files.isSameFile(exported, objectFile));
+            assertTrue(Files.getPosixFilePermissions(exported).contains(PosixFilePermission.OWNER_EXECUTE));
+            assertFalse(Files.getPosixFilePermissions(objectFile).contains(PosixFilePermission.OWNER_EXECUTE));
+            assertTrue(Files.isSameFile(myTarget.resolve("test.txt"),
+                    getObjectDatabase().getObjectFile(ObjectId.parse(ContentHelper.TEST_TXT_OID))));
+        } finally {
+            s.shutdownNow();
+        }
+    }
+
+    @Test
+    void testLinkVerifiesObjects(@TempDir Path tmp, ActivityReporter r) throws IOException {
+        Path mySource = ContentHelper.genSimpleTestTree(tmp, "source");
+
+        ExecutorService s = Executors.newFixedThreadPool(2);
+        try {
+            ObjectManager mgr = new ObjectManager(getObjectDatabase(), null, r, s);
+            ObjectId tree = mgr.importTree(mySource, false);
+
+            Path objectFile = getObjectDatabase().getObjectFile(ObjectId.parse(ContentHelper.TEST_TXT_OID));
+            Files.writeString(objectFile, "corrupt");
+
+            for (ExportMode mode : ExportMode.values()) {
+                Path myTarget = tmp.resolve("target-" + mode);
+                assertThrows(IllegalStateException.class, () -> mgr.exportTree(tree, myTarget, null, mode));
+            }
+        } finally {
+            s.shutdownNow();
+        }
+    }
+
     @SlowTest
     @Test
     void importLarge(@TempDir Path tmp, ActivityReporter r) throws IOException {
@@ -148,6 +230,52 @@ class ObjectManagerTest extends DbTestBase {
         }
     }
 
+    @Test
+    void testParallelTreeSnapshot(@TempDir Path tmp, ActivityReporter r) throws Exception {
+        Path mySource = ContentHelper.genSimpleTestTree(tmp, "source");
+        ManifestDatabase mdb = new ManifestDatabase(tmp.resolve("mdb"));
+
+        ExecutorService single = Executors.newFixedThreadPool(1);
+        ExecutorService multi = Executors.newFixedThreadPool(4);
+        try {
+            ObjectManager mgr = new ObjectManager(getObjectDatabase(), mdb, r, multi);
+            ObjectId tree = mgr.importTree(mySource, false);
+
+            Manifest.Key refKey = new Manifest.Key("ref", "1");
+            mdb.addManifest(new Manifest.Builder(refKey).setRoot(tree).build(null));
+
+            Tree.Builder builder = new Tree.Builder();
+            for (int i = 0; i < 20; ++i) {
+                builder.add(new Tree.Key("tree" + i, EntryType.TREE), tree);
+                builder.add(new Tree.Key("app" + i, EntryType.MANIFEST), mgr.insertManifestReference(refKey));
+            }
+            builder.add(new Tree.Key("missing", EntryType.TREE), randomId());
+            ObjectId testTree = mgr.insertTree(builder.build());
+
+            for (int depth : new int[] { 1, 2, Integer.MAX_VALUE }) {
+                List<String> expected = flatten(mgr.scan(testTree, depth, true));
+
+                // scanning from within an exhausted pool must not wait for helpers which can never start.
+                ObjectManager singleMgr = new ObjectManager(getObjectDatabase(), mdb, r, single);
+                List<String> actual = flatten(single.submit(() -> singleMgr.scan(testTree, depth, true)).get());
+
+                assertEquals(expected, actual);
+            }
+        } finally {
+            single.shutdownNow();
+            multi.shutdownNow();
+        }
+    }
+
+    private static List<String> flatten(ElementView view) {
+        List<String> result = new ArrayList<>();
+        result.add(view.toString());
+        if (view instanceof TreeView) {
+            ((TreeView) view).getChildren().values().forEach(c -> result.addAll(flatten(c)));
+        }
+        return result;
+    }
+
     @Test
     void testEmptyDirImport(@TempDir Path tmp, ActivityReporter r) throws Exception {
         Path mySource = ContentHelper.genSimpleTestTree(tmp, "source");
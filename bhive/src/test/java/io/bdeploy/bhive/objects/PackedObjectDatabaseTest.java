@@ -0,0 +1,138 @@
+package io.bdeploy.bhive.objects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.ActivityReporter;
+import io.bdeploy.common.TestActivityReporter;
+
+@ExtendWith(TestActivityReporter.class)
+class PackedObjectDatabaseTest extends DbTestBase {
+
+    @Test
+    void testRepackAndRead(@TempDir Path tmp, ActivityReporter r) throws IOException, InterruptedException {
+        ObjectDatabase db = getObjectDatabase();
+
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            ids.add(db.addObject(("Object content " + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        ObjectId large = db.addObject(new byte[4096]);
+
+        assertFalse(db.isPacked());
+        long packed = db.repack(1024, r.start("Repack"));
+        assertEquals(100, packed);
+        assertTrue(db.isPacked());
+
+        // loose files are gone, except for the large object.
+        assertFalse(Files.exists(db.getObjectFile(ids.get(0))));
+        assertTrue(Files.exists(db.getObjectFile(large)));
+
+        for (int i = 0; i < ids.size(); ++i) {
+            ObjectId id = ids.get(i);
+            byte[] expected = ("Object content " + i).getBytes(StandardCharsets.UTF_8);
+            assertTrue(db.hasObject(id));
+            assertTrue(db.checkObject(id));
+            assertEquals(expected.length, db.getObjectSize(id));
+            try (InputStream is = db.getStream(id)) {
+                assertArrayEquals(expected, is.readAllBytes());
+            }
+        }
+        assertEquals(101, db.getAllObjects().size());
+
+        // another database on the same location sees the same state.
+        ObjectDatabase other = new ObjectDatabase(getObjectDatabasePath(), tmp.resolve("othertmp"), r, null);
+        assertTrue(other.hasObject(ids.get(42)));
+        assertEquals(101, other.getAllObjects().size());
+
+        // removal is visible to other databases as well.
+        db.removeObject(ids.get(42));
+        assertFalse(db.hasObject(ids.get(42)));
+        other = new ObjectDatabase(getObjectDatabasePath(), tmp.resolve("othertmp"), r, null);
+        assertFalse(other.hasObject(ids.get(42)));
+
+        // second repack does not touch anything.
+        assertEquals(0, db.repack(1024, r.start("Repack")));
+    }
+
+    @Test
+    void testReclaimRemoved(@TempDir Path tmp, ActivityReporter r) throws IOException {
+        ObjectDatabase db = getObjectDatabase();
+
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            ids.add(db.addObject(("Object content " + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        db.repack(1024, r.start("Repack"));
+
+        Path packs = getObjectDatabasePath().resolve("packs");
+        Path first = packs.resolve("pack-000001.dat");
+        long size = Files.size(first);
+
+        // a reader which does not know about reclaiming yet.
+        ObjectDatabase other = new ObjectDatabase(getObjectDatabasePath(), tmp.resolve("othertmp"), r, null);
+        assertTrue(other.hasObject(ids.get(1)));
+
+        db.removeObject(ids.get(0));
+        assertEquals(0, db.repack(1024, r.start("Repack")));
+
+        // the remaining objects have been moved to a new pack, the old one is gone.
+        Path second = packs.resolve("pack-000002.dat");
+        assertFalse(Files.exists(first));
+        assertTrue(Files.exists(second));
+        assertTrue(Files.size(second) < size);
+
+        assertFalse(db.hasObject(ids.get(0)));
+        for (int i = 1; i < ids.size(); ++i) {
+            try (InputStream is = db.getStream(ids.get(i))) {
+                assertArrayEquals(("Object content " + i).getBytes(StandardCharsets.UTF_8), is.readAllBytes());
+            }
+            try (InputStream is = other.getStream(ids.get(i))) {
+                assertArrayEquals(("Object content " + i).getBytes(StandardCharsets.UTF_8), is.readAllBytes());
+            }
+        }
+
+        // new objects never re-use the number of a reclaimed pack.
+        db.removeObject(ids.get(1));
+        db.repack(1024, r.start("Repack"));
+        ObjectId added = db.addObject("Added later".getBytes(StandardCharsets.UTF_8));
+        db.repack(1024, r.start("Repack"));
+        assertFalse(Files.exists(first));
+        assertFalse(Files.exists(second));
+        assertTrue(Files.exists(packs.resolve("pack-000003.dat")));
+        assertTrue(db.checkObject(added));
+        assertTrue(db.checkObject(ids.get(2)));
+    }
+
+    @Test
+    void testLooseExtraction(ActivityReporter r) throws IOException {
+        ObjectDatabase db = getObjectDatabase();
+        ObjectId id = db.addObject("Packed Object".getBytes(StandardCharsets.UTF_8));
+        db.repack(1024, r.start("Repack"));
+
+        assertFalse(Files.exists(db.getObjectFile(id)));
+        Path loose = db.getLooseObjectFile(id);
+        assertTrue(Files.exists(loose));
+        assertEquals("Packed Object", Files.readString(loose));
+
+        // still packed, the loose file is just a copy.
+        assertEquals(0, db.repack(1024, r.start("Repack")));
+        assertTrue(Files.exists(loose));
+    }
+
+}
@@ -0,0 +1,67 @@
+package io.bdeploy.bhive.objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.ActivityReporter;
+
+class PresenceIndexTest extends DbTestBase {
+
+    @Test
+    void testPresence(@TempDir Path tmp, ActivityReporter r) throws IOException {
+        ObjectDatabase db = getObjectDatabase();
+        ObjectDatabase other = new ObjectDatabase(getObjectDatabasePath(), tmp.resolve("othertmp"), r, null);
+
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            ids.add(db.addObject(("Object " + i).getBytes()));
+        }
+
+        for (ObjectId id : ids) {
+            assertTrue(db.hasObject(id));
+            assertTrue(other.hasObject(id));
+        }
+        assertFalse(db.hasObject(randomId()));
+        assertFalse(other.hasObject(randomId()));
+
+        // removal in one database is visible to the other one.
+        other.removeObject(ids.get(0));
+        assertFalse(db.hasObject(ids.get(0)));
+        assertTrue(db.hasObject(ids.get(1)));
+
+        // re-adding is recorded as well.
+        db.addObject("Object 0".getBytes());
+        assertTrue(other.hasObject(ids.get(0)));
+    }
+
+    @Test
+    void testRebuild(@TempDir Path tmp, ActivityReporter r) throws IOException, InterruptedException {
+        ObjectDatabase db = getObjectDatabase();
+        ObjectId id = db.addObject("Some Content".getBytes());
+        ObjectId other = db.addObject("Other Content".getBytes());
+
+        // tampering with the database behind its back makes the index stale.
+        Files.delete(db.getObjectFile(id));
+        assertTrue(db.hasObject(id));
+
+        assertEquals(1, db.rebuildPresenceIndex());
+        assertFalse(db.hasObject(id));
+        assertTrue(db.hasObject(other));
+
+        ObjectDatabase reopened = new ObjectDatabase(getObjectDatabasePath(), tmp.resolve("othertmp"), r, null);
+        assertFalse(reopened.hasObject(id));
+        assertTrue(reopened.hasObject(other));
+    }
+
+}
@@ -2,11 +2,32 @@ package io.bdeploy.bhive.op;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,6 +37,11 @@ import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.BHiveTransactions.Transaction;
 import io.bdeploy.bhive.TestHive;
 import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.model.ObjectIdSet;
+import io.bdeploy.bhive.op.remote.TransferStatistics;
+import io.bdeploy.bhive.util.ObjectStreamFormat;
+import io.bdeploy.common.ActivityReporter;
 import io.bdeploy.common.ContentHelper;
 
 @ExtendWith(TestHive.class)
@@ -44,4 +70,241 @@ class OperationTests {
         assertThat(hive.execute(new ManifestListOperation()).size(), is(0));
     }
 
+    @Test
+    void testObjectStreamVersions(BHive hive, @TempDir Path tmp) throws IOException {
+        Path src = ContentHelper.genSimpleTestTree(tmp, "src");
+        ContentHelper.genTestFile(src, 200_000);
+
+        // content which does not compress, both random and already compressed.
+        byte[] random = new byte[200_000];
+        new Random().nextBytes(random);
+        Files.write(src.resolve("random.bin"), random);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(src.resolve("text.gz")))) {
+            out.write(ContentHelper.randomString(100_000).getBytes(StandardCharsets.UTF_8));
+        }
+
+        Manifest.Key key = new Manifest.Key("test", "v1");
+        try (Transaction t = hive.getTransactions().begin()) {
+            hive.execute(new ImportOperation().setManifest(key).setSourcePath(src));
+        }
+        Set<ObjectId> objects = hive.execute(new ObjectListOperation().addManifest(key));
+
+        for (int version : new int[] { ObjectStreamFormat.VERSION_GZIP, ObjectStreamFormat.VERSION_FRAMED,
+                ObjectStreamFormat.VERSION_DELTA }) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            hive.execute(new ObjectWriteOperation().stream(stream).version(version).manifest(key).objects(objects));
+
+            try (BHive target = new BHive(tmp.resolve("target-" + version).toUri(), null, new ActivityReporter.Null())) {
+                try (Transaction t = target.getTransactions().begin()) {
+                    TransferStatistics stats = target
+                            .execute(new ObjectReadOperation().stream(new ByteArrayInputStream(stream.toByteArray())));
+                    assertThat(stats.sumManifests, is(1l));
+                    assertThat(stats.sumMissingObjects, is((long) objects.size()));
+                }
+
+                Path exported = tmp.resolve("exp-" + version);
+                target.execute(new ExportOperation().setManifest(key).setTarget(exported));
+                ContentHelper.checkDirsEqual(src, exported);
+            }
+        }
+    }
+
+    @Test
+    void resumeInterruptedStream(BHive hive, @TempDir Path tmp) throws IOException {
+        Path src = ContentHelper.genSimpleTestTree(tmp, "src");
+        for (int i = 0; i < 50; ++i) {
+            ContentHelper.genTestFile(src, 20_000);
+        }
+
+        Manifest.Key key = new Manifest.Key("test", "v1");
+        try (Transaction t = hive.getTransactions().begin()) {
+            hive.execute(new ImportOperation().setManifest(key).setSourcePath(src));
+        }
+        Set<ObjectId> objects = hive.execute(new ObjectListOperation().addManifest(key));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        hive.execute(new ObjectWriteOperation().stream(stream).manifest(key).objects(objects));
+        byte[] truncated = Arrays.copyOf(stream.toByteArray(), stream.size() / 2);
+
+        try (BHive target = new BHive(tmp.resolve("target").toUri(), null, new ActivityReporter.Null())) {
+            try (Transaction t = target.getTransactions().begin()) {
+                ObjectReadOperation read = new ObjectReadOperation().stream(new ByteArrayInputStream(truncated));
+                assertThrows(IllegalStateException.class, () -> target.execute(read));
+            }
+
+            // objects received before the interruption survive a prune, so only the remaining ones need to be sent.
+            target.execute(new PruneOperation());
+            Set<ObjectId> remaining = target.execute(new ObjectExistsOperation().addAll(objects)).missing;
+            assertTrue(remaining.size() > 0);
+            assertTrue(remaining.size() < objects.size());
+
+            stream = new ByteArrayOutputStream();
+            hive.execute(new ObjectWriteOperation().stream(stream).manifest(key).objects(remaining));
+            try (Transaction t = target.getTransactions().begin()) {
+                TransferStatistics stats = target
+                        .execute(new ObjectReadOperation().stream(new ByteArrayInputStream(stream.toByteArray())));
+                assertThat(stats.sumManifests, is(1l));
+                assertThat(stats.sumMissingObjects, is((long) remaining.size()));
+            }
+
+            Path exported = tmp.resolve("exp");
+            target.execute(new ExportOperation().setManifest(key).setTarget(exported));
+            ContentHelper.checkDirsEqual(src, exported);
+        }
+    }
+
+    @Test
+    void keepObjectsUntilManifestStream(BHive hive, @TempDir Path tmp) throws IOException {
+        Path src = ContentHelper.genSimpleTestTree(tmp, "src");
+
+        Manifest.Key key = new Manifest.Key("test", "v1");
+        try (Transaction t = hive.getTransactions().begin()) {
+            hive.execute(new ImportOperation().setManifest(key).setSourcePath(src));
+        }
+        Set<ObjectId> objects = hive.execute(new ObjectListOperation().addManifest(key));
+
+        try (BHive target = new BHive(tmp.resolve("target").toUri(), null, new ActivityReporter.Null())) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            hive.execute(new ObjectWriteOperation().stream(stream).objects(objects));
+            try (Transaction t = target.getTransactions().begin()) {
+                target.execute(new ObjectReadOperation().stream(new ByteArrayInputStream(stream.toByteArray())));
+            }
+
+            // the manifests are sent in another stream, the objects must survive until then.
+            target.execute(new PruneOperation());
+            assertTrue(target.execute(new ObjectExistsOperation().addAll(objects)).missing.isEmpty());
+
+            stream = new ByteArrayOutputStream();
+            hive.execute(new ObjectWriteOperation().stream(stream).manifest(key));
+            try (Transaction t = target.getTransactions().begin()) {
+                TransferStatistics stats = target
+                        .execute(new ObjectReadOperation().stream(new ByteArrayInputStream(stream.toByteArray())));
+                assertThat(stats.sumManifests, is(1l));
+            }
+
+            // once referenced, the objects are no longer kept on their own.
+            target.execute(new ManifestDeleteOperation().setToDelete(key));
+            target.execute(new PruneOperation());
+            assertThat(target.execute(new ObjectExistsOperation().addAll(objects)).missing, is(objects));
+        }
+    }
+
+    @Test
+    void readBlocksWhileInsertsPending(BHive hive, @TempDir Path tmp) throws Exception {
+        Set<ObjectId> objects = importObjects(hive, 10, 1000);
+        byte[] stream = writeObjects(hive, objects);
+
+        // only three objects fit into the in-flight limit, reading the fourth waits for one of them to be persisted.
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger inserts = new AtomicInteger();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (BHive target = new BHive(tmp.resolve("target").toUri(), null, new ActivityReporter.Null())) {
+            Future<TransferStatistics> read = executor.submit(() -> {
+                try (Transaction t = target.getTransactions().begin()) {
+                    return target.execute(new ObjectReadOperation().setLimits(1024, 3000).setBeforeInsert(c -> {
+                        inserts.incrementAndGet();
+                        started.countDown();
+                        await(release);
+                    }).stream(new ByteArrayInputStream(stream)));
+                }
+            });
+
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            assertFalse(read.isDone());
+            assertEquals(3, inserts.get());
+
+            release.countDown();
+            assertThat(read.get(10, TimeUnit.SECONDS).sumMissingObjects, is((long) objects.size()));
+            assertEquals(objects.size(), inserts.get());
+            assertTrue(target.execute(new ObjectExistsOperation().addAll(objects)).missing.isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void readSmallAndLargeObjects(BHive hive, @TempDir Path tmp) throws IOException {
+        Set<ObjectId> small = importObjects(hive, 10, 500);
+        Set<ObjectId> large = importObjects(hive, 5, 5000);
+        Set<ObjectId> objects = new ObjectIdSet();
+        objects.addAll(small);
+        objects.addAll(large);
+        byte[] stream = writeObjects(hive, objects);
+
+        // large objects are streamed to the database directly, the small ones are persisted in parallel.
+        Set<ObjectId> parallel = Collections.synchronizedSet(new ObjectIdSet());
+        try (BHive target = new BHive(tmp.resolve("target").toUri(), null, new ActivityReporter.Null())) {
+            try (Transaction t = target.getTransactions().begin()) {
+                TransferStatistics stats = target.execute(new ObjectReadOperation().setLimits(1024, 4096)
+                        .setBeforeInsert(c -> parallel.add(ObjectId.create(c, 0, c.length)))
+                        .stream(new ByteArrayInputStream(stream)));
+                assertThat(stats.sumMissingObjects, is((long) objects.size()));
+            }
+
+            assertThat(parallel, is(small));
+            assertTrue(target.execute(new ObjectExistsOperation().addAll(objects)).missing.isEmpty());
+            for (ObjectId id : objects) {
+                try (InputStream is = target.execute(new ObjectLoadOperation().setObject(id))) {
+                    assertEquals(id, ObjectId.createFromStreamNoCopy(is));
+                }
+            }
+        }
+    }
+
+    @Test
+    void keepPersistedObjectsOnFailedInsert(BHive hive, @TempDir Path tmp) throws IOException {
+        Set<ObjectId> objects = importObjects(hive, 10, 1000);
+        byte[] stream = writeObjects(hive, objects);
+
+        // only one object is in flight at a time, so the objects before the failing one are persisted already.
+        List<ObjectId> attempted = Collections.synchronizedList(new ArrayList<>());
+        try (BHive target = new BHive(tmp.resolve("target").toUri(), null, new ActivityReporter.Null())) {
+            try (Transaction t = target.getTransactions().begin()) {
+                ObjectReadOperation read = new ObjectReadOperation().setLimits(1024, 1024).setBeforeInsert(c -> {
+                    attempted.add(ObjectId.create(c, 0, c.length));
+                    if (attempted.size() == 3) {
+                        throw new IllegalStateException("Simulated failure");
+                    }
+                }).stream(new ByteArrayInputStream(stream));
+                assertThrows(IllegalStateException.class, () -> target.execute(read));
+            }
+
+            // the persisted objects are kept for a retry of the transfer.
+            target.execute(new PruneOperation());
+            Set<ObjectId> existing = target.execute(new ObjectExistsOperation().addAll(objects)).existing;
+            assertThat(existing, is(new ObjectIdSet(attempted.subList(0, 2))));
+        }
+    }
+
+    private static Set<ObjectId> importObjects(BHive hive, int count, int size) {
+        Random random = new Random();
+        Set<ObjectId> result = new ObjectIdSet();
+        try (Transaction t = hive.getTransactions().begin()) {
+            for (int i = 0; i < count; ++i) {
+                byte[] data = new byte[size];
+                random.nextBytes(data);
+                result.add(hive.execute(new ImportObjectOperation().setData(data)));
+            }
+        }
+        return result;
+    }
+
+    private static byte[] writeObjects(BHive hive, Set<ObjectId> objects) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        hive.execute(new ObjectWriteOperation().stream(stream).objects(objects));
+        return stream.toByteArray();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
 }
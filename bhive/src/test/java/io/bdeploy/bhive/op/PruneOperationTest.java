@@ -0,0 +1,109 @@
+package io.bdeploy.bhive.op;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.BHiveTransactions.Transaction;
+import io.bdeploy.bhive.TestHive;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.common.ContentHelper;
+
+@ExtendWith(TestHive.class)
+class PruneOperationTest {
+
+    @Test
+    void testIncrementalPrune(BHive hive, @TempDir Path tmp) throws IOException {
+        Path src1 = ContentHelper.genSimpleTestTree(tmp, "src1");
+        Path src2 = ContentHelper.genSimpleTestTree(tmp, "src2");
+        ContentHelper.genTestFile(src2, 1024);
+
+        Manifest.Key key1 = new Manifest.Key("test", "v1");
+        Manifest.Key key2 = new Manifest.Key("test", "v2");
+
+        try (Transaction t = hive.getTransactions().begin()) {
+            hive.execute(new ImportOperation().setManifest(key1).setSourcePath(src1));
+            hive.execute(new ImportOperation().setManifest(key2).setSourcePath(src2));
+        }
+
+        Set<ObjectId> kept = hive.execute(new ObjectListOperation().addManifest(key1));
+        Set<ObjectId> dangling = hive.execute(new ObjectListOperation().addManifest(key2));
+        dangling.removeAll(kept);
+        assertFalse(dangling.isEmpty());
+
+        hive.execute(new ManifestDeleteOperation().setToDelete(key2));
+
+        SortedMap<ObjectId, Long> removed = hive.execute(new PruneOperation().setIncremental(true));
+        assertEquals(dangling, removed.keySet());
+        assertTrue(hive.execute(new ObjectExistsOperation().addAll(kept)).missing.isEmpty());
+
+        // nothing left to remove, neither incrementally nor in a full prune.
+        assertTrue(hive.execute(new PruneOperation().setIncremental(true)).isEmpty());
+        assertTrue(hive.execute(new PruneOperation()).isEmpty());
+    }
+
+    @Test
+    void testIncrementalPruneConcurrentInsert(BHive hive) throws Exception {
+        byte[] data = "inserted while pruning".getBytes(StandardCharsets.UTF_8);
+        ObjectId id = ObjectId.create(data, 0, data.length);
+        String prefix = id.getId().substring(0, 4);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch insert = new CountDownLatch(1);
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch pruned = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the transaction stays open during the prune, the object is not (yet) referenced by any manifest.
+            Future<?> transfer = executor.submit(() -> {
+                try (Transaction t = hive.getTransactions().begin()) {
+                    started.countDown();
+                    insert.await();
+                    hive.execute(new ImportObjectOperation().setData(data));
+                    inserted.countDown();
+                    pruned.await();
+                }
+                return null;
+            });
+            started.await();
+
+            // insert the object during the slice, right before its shard is listed.
+            SortedMap<ObjectId, Long> removed = hive.execute(new PruneOperation().setIncremental(true).setBeforeShard(p -> {
+                if (p.equals(prefix)) {
+                    insert.countDown();
+                    try {
+                        inserted.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }));
+            pruned.countDown();
+            transfer.get();
+
+            assertFalse(removed.containsKey(id));
+            assertTrue(hive.execute(new ObjectExistsOperation().addObject(id)).missing.isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
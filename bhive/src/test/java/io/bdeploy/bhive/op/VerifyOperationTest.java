@@ -5,11 +5,13 @@ import static io.bdeploy.bhive.op.VerifyOperation.VerifyOpStatus.MODIFIED;
 import static io.bdeploy.bhive.op.VerifyOperation.VerifyOpStatus.UNMODIFIED;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -53,6 +55,44 @@ public class VerifyOperationTest {
         }
     }
 
+    @Test
+    void testFingerprints(BHive hive, @TempDir Path tmp) throws IOException {
+        Path src = ContentHelper.genSimpleTestTree(tmp, "src");
+        Path target = tmp.resolve("target");
+        Path fingerprints = tmp.resolve("target.fingerprint");
+        Manifest.Key key = new Manifest.Key("test", "v1");
+
+        try (Transaction t = hive.getTransactions().begin()) {
+            hive.execute(new ImportOperation().setManifest(key).setSourcePath(src));
+        }
+        hive.execute(new ExportOperation().setManifest(key).setTarget(target).setFingerprintFile(fingerprints));
+        assertTrue(Files.exists(fingerprints));
+
+        var result = hive.execute(new VerifyOperation().setManifest(key).setTargetPath(target).setFingerprintFile(fingerprints));
+        assertThat(getByStatus(result, UNMODIFIED).size(), is(3));
+
+        // modify content without changing size or modification time right after recording. the recorded timestamps are too
+        // close to the time of recording to be trusted, so the file is hashed anyway.
+        Path file = target.resolve("test.txt");
+        FileTime modified = Files.getLastModifiedTime(file);
+        byte[] content = Files.readAllBytes(file);
+        content[0]++;
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, modified);
+
+        result = hive.execute(new VerifyOperation().setManifest(key).setTargetPath(target).setFingerprintFile(fingerprints));
+        assertThat(getByStatus(result, MODIFIED).size(), is(1));
+
+        result = hive.execute(
+                new VerifyOperation().setManifest(key).setTargetPath(target).setFingerprintFile(fingerprints).setDeep(true));
+        assertThat(getByStatus(result, MODIFIED).size(), is(1));
+
+        // the modified file is not trusted anymore, even without deep verification.
+        result = hive.execute(new VerifyOperation().setManifest(key).setTargetPath(target).setFingerprintFile(fingerprints));
+        assertThat(getByStatus(result, MODIFIED).size(), is(1));
+        assertThat(getByStatus(result, UNMODIFIED).size(), is(2));
+    }
+
     private List<VerifiedBlobView> getByStatus(List<VerifiedBlobView> list, VerifyOpStatus status) {
         return list.stream().filter(view -> view.status == status).collect(Collectors.toList());
     }
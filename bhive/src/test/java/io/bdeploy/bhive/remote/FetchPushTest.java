@@ -1,8 +1,11 @@
 package io.bdeploy.bhive.remote;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Set;
 import java.util.SortedMap;
@@ -19,6 +22,7 @@ import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.model.Tree;
 import io.bdeploy.bhive.model.Tree.EntryType;
+import io.bdeploy.bhive.op.ExportOperation;
 import io.bdeploy.bhive.op.ImportOperation;
 import io.bdeploy.bhive.op.InsertArtificialTreeOperation;
 import io.bdeploy.bhive.op.InsertManifestOperation;
@@ -243,6 +247,102 @@ class FetchPushTest extends RemoteHiveTestBase {
         }
     }
 
+    @Test
+    void pushFetchWithDelta(@TempDir Path tmp, RemoteService svc, ActivityReporter r) throws IOException {
+        // note: the TestHive.class provided hive is used in the base class, don't use.
+        try (BHive local = new BHive(tmp.resolve("h1").toUri(), null, r);
+                BHive fetchHive = new BHive(tmp.resolve("h2").toUri(), null, r)) {
+            Path src = ContentHelper.genSimpleTestTree(tmp, "app");
+            Path large = ContentHelper.genTestFile(src, 4 * 1024 * 1024);
+
+            Manifest.Key v1 = new Manifest.Key("app", "v1");
+            try (Transaction t = local.getTransactions().begin()) {
+                local.execute(new ImportOperation().setManifest(v1).setSourcePath(src));
+            }
+
+            // STEP 1: push and fetch the first version in full.
+            local.execute(new PushOperation().setRemote(svc).addManifest(v1));
+            try (Transaction t = fetchHive.getTransactions().begin()) {
+                fetchHive.execute(new FetchOperation().setRemote(svc).addManifest(v1));
+            }
+
+            // STEP 2: change a few bytes in the middle of the large file.
+            byte[] content = Files.readAllBytes(large);
+            System.arraycopy("changed".getBytes(StandardCharsets.UTF_8), 0, content, content.length / 2, 7);
+            Files.write(large, content);
+
+            Manifest.Key v2 = new Manifest.Key("app", "v2");
+            try (Transaction t = local.getTransactions().begin()) {
+                local.execute(new ImportOperation().setManifest(v2).setSourcePath(src));
+            }
+
+            // STEP 3: push the second version, the large file is sent as delta to the first version.
+            TransferStatistics s = local.execute(new PushOperation().setRemote(svc).addManifest(v2).setDeltas(true));
+            assertTrue(s.transferSize < content.length / 10);
+
+            // STEP 4: fetch the second version, again as delta.
+            try (Transaction t = fetchHive.getTransactions().begin()) {
+                TransferStatistics fs = fetchHive.execute(new FetchOperation().setRemote(svc).addManifest(v2).setDeltas(true));
+                assertTrue(fs.transferSize < content.length / 10);
+            }
+
+            Path exported = tmp.resolve("exported");
+            fetchHive.execute(new ExportOperation().setManifest(v2).setTarget(exported));
+            ContentHelper.checkDirsEqual(src, exported);
+        }
+    }
+
+    @Test
+    void fetchWithDeltaMissingBase(@TempDir Path tmp, RemoteService svc, ActivityReporter r) throws IOException {
+        // note: the TestHive.class provided hive is used in the base class, don't use.
+        try (BHive local = new BHive(tmp.resolve("h1").toUri(), null, r);
+                BHive fetchHive = new BHive(tmp.resolve("h2").toUri(), null, r)) {
+            Path src = ContentHelper.genSimpleTestTree(tmp, "app");
+            Path large = ContentHelper.genTestFile(src, 4 * 1024 * 1024);
+            byte[] content = Files.readAllBytes(large);
+            ObjectId base = ObjectId.create(content, 0, content.length);
+
+            Manifest.Key v1 = new Manifest.Key("app", "v1");
+            try (Transaction t = local.getTransactions().begin()) {
+                local.execute(new ImportOperation().setManifest(v1).setSourcePath(src));
+            }
+
+            System.arraycopy("changed".getBytes(StandardCharsets.UTF_8), 0, content, content.length / 2, 7);
+            Files.write(large, content);
+
+            Manifest.Key v2 = new Manifest.Key("app", "v2");
+            try (Transaction t = local.getTransactions().begin()) {
+                local.execute(new ImportOperation().setManifest(v2).setSourcePath(src));
+            }
+            local.execute(new PushOperation().setRemote(svc).addManifest(v1).addManifest(v2));
+
+            // the fetching side has the first version, but lost the object the remote would send a delta to.
+            try (Transaction t = fetchHive.getTransactions().begin()) {
+                fetchHive.execute(new FetchOperation().setRemote(svc).addManifest(v1));
+            }
+            fetchHive.execute(new BHive.Operation<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    return getObjectManager().db(db -> {
+                        db.removeObject(base);
+                        return null;
+                    });
+                }
+            });
+
+            // the delta cannot be applied, so the object is fetched in full instead.
+            try (Transaction t = fetchHive.getTransactions().begin()) {
+                TransferStatistics fs = fetchHive.execute(new FetchOperation().setRemote(svc).addManifest(v2).setDeltas(true));
+                assertTrue(fs.transferSize > content.length / 10);
+            }
+
+            Path exported = tmp.resolve("exported");
+            fetchHive.execute(new ExportOperation().setManifest(v2).setTarget(exported));
+            ContentHelper.checkDirsEqual(src, exported);
+        }
+    }
+
     private Manifest.Key createManifestWithRefs(Path tmp, BHive local) throws IOException {
         Path source = ContentHelper.genSimpleTestTree(tmp, "source");
 
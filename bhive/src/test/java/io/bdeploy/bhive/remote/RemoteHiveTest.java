@@ -173,4 +173,31 @@ class RemoteHiveTest extends RemoteHiveTestBase {
         }
     }
 
+    @Test
+    void testParallelStreams(RemoteService svc, BHive hive, @TempDir Path tmp, ActivityReporter r) throws IOException {
+        Path src = tmp.resolve("src");
+        for (int i = 0; i < 500; ++i) {
+            ContentHelper.genTestFile(src.resolve("dir" + (i % 10)), 1024);
+        }
+
+        // push to the remote using multiple streams.
+        Manifest.Key key = new Manifest.Key("parallel", "v1");
+        try (BHive other = new BHive(tmp.resolve("push").toUri(), null, r)) {
+            try (Transaction t = other.getTransactions().begin()) {
+                other.execute(new ImportOperation().setSourcePath(src).setManifest(key));
+            }
+            other.execute(new PushOperation().setRemote(svc).addManifest(key).setStreams(4));
+        }
+        assertTrue(getRemote().getManifestInventory("parallel").containsKey(key));
+
+        // and fetch it back again.
+        try (BHive other = new BHive(tmp.resolve("fetch").toUri(), null, r)) {
+            try (Transaction t = other.getTransactions().begin()) {
+                other.execute(new FetchOperation().setRemote(svc).addManifest(key).setStreams(4));
+            }
+            other.execute(new ExportOperation().setTarget(tmp.resolve("exp")).setManifest(key));
+            ContentHelper.checkDirsEqual(src, tmp.resolve("exp"));
+        }
+    }
+
 }
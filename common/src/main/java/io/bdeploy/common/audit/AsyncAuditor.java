@@ -0,0 +1,188 @@
+package io.bdeploy.common.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+
+/**
+ * An {@link Auditor} which passes records to another {@link Auditor} in the background, so that auditing does not delay the
+ * caller.
+ * <p>
+ * Records are queued without locking and written in batches of up to {@link #BATCH_SIZE} records using
+ * {@link Auditor#auditAll(List)}. The queue holds at most {@link #CAPACITY} records. If it is full, the caller writes all queued
+ * records and its own record directly to the target {@link Auditor}, which slows down the caller, but never loses a record or
+ * changes their order.
+ * <p>
+ * Records audited once the target {@link Auditor} has been closed are written to the log using a {@link Slf4jAuditor} instead.
+ */
+public class AsyncAuditor implements Auditor {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncAuditor.class);
+
+    /** The maximum amount of records waiting to be written */
+    static final int CAPACITY = 8192;
+
+    /** The maximum amount of records written at once */
+    static final int BATCH_SIZE = 256;
+
+    /** Writes records for all {@link AsyncAuditor}s. Each {@link AsyncAuditor} uses at most one thread at a time */
+    private static final ExecutorService writers = Executors.newCachedThreadPool(new NamedDaemonThreadFactory("Audit Writer"));
+
+    /** Receives records audited after closing */
+    private static final Auditor closedFallback = new Slf4jAuditor();
+
+    private final Auditor target;
+
+    private final Queue<AuditRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** Serializes writing to the target {@link Auditor} */
+    private final Object writeLock = new Object();
+    private volatile boolean closed;
+
+    /** Whether the target {@link Auditor} has been closed, guarded by {@link #writeLock} */
+    private boolean targetClosed;
+
+    /**
+     * @param target the {@link Auditor} to write records to. It is closed once this {@link Auditor} is closed.
+     */
+    public AsyncAuditor(Auditor target) {
+        this.target = target;
+    }
+
+    @Override
+    public void audit(AuditRecord rec) {
+        if (closed) {
+            closedFallback.audit(rec);
+            return;
+        }
+
+        if (queued.incrementAndGet() > CAPACITY) {
+            // overflow: write on the caller's thread instead of dropping the record, after all queued records.
+            queued.decrementAndGet();
+            synchronized (writeLock) {
+                drainLocked();
+                write(rec);
+            }
+            return;
+        }
+
+        queue.add(rec);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            writers.execute(this::drainInBackground);
+        }
+    }
+
+    private void drainInBackground() {
+        try {
+            drain();
+        } finally {
+            scheduled.set(false);
+        }
+
+        // records may have been added after draining but before resetting the flag.
+        if (!queue.isEmpty() && !closed) {
+            schedule();
+        }
+    }
+
+    private void drain() {
+        synchronized (writeLock) {
+            drainLocked();
+        }
+    }
+
+    /**
+     * Writes all queued records. The caller must hold the {@link #writeLock}.
+     */
+    private void drainLocked() {
+        List<AuditRecord> batch = new ArrayList<>(BATCH_SIZE);
+        AuditRecord rec;
+        while ((rec = queue.poll()) != null) {
+            queued.decrementAndGet();
+            batch.add(rec);
+            if (batch.size() >= BATCH_SIZE) {
+                writeAll(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeAll(batch);
+        }
+    }
+
+    /**
+     * Writes a single record. The caller must hold the {@link #writeLock}.
+     */
+    private void write(AuditRecord rec) {
+        if (targetClosed) {
+            closedFallback.audit(rec);
+            return;
+        }
+
+        try {
+            target.audit(rec);
+        } catch (Exception e) {
+            log.error("Cannot write audit record", e);
+        }
+    }
+
+    /**
+     * Writes a batch of records. The caller must hold the {@link #writeLock}.
+     */
+    private void writeAll(List<AuditRecord> batch) {
+        if (targetClosed) {
+            // queued concurrently to closing.
+            batch.forEach(closedFallback::audit);
+            return;
+        }
+
+        try {
+            target.auditAll(batch);
+        } catch (Exception e) {
+            log.error("Cannot write {} audit records", batch.size(), e);
+        }
+    }
+
+    /**
+     * Writes all queued records to the target {@link Auditor} before returning.
+     */
+    public void flush() {
+        // also waits for a batch which is currently written in the background.
+        drain();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (writeLock) {
+            if (targetClosed) {
+                return;
+            }
+            drainLocked();
+            target.close();
+            targetClosed = true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncAuditor [" + target + "]";
+    }
+
+}
@@ -1,5 +1,7 @@
 package io.bdeploy.common.audit;
 
+import java.util.List;
+
 /**
  * A {@link Auditor} is responsible for persisting {@link AuditRecord}s.
  */
@@ -13,6 +15,18 @@ public interface Auditor extends AutoCloseable {
      */
     public void audit(AuditRecord rec);
 
+    /**
+     * Stores the given audit records. Implementations may write them more efficiently than one by one.
+     *
+     * @param recs
+     *            records to write
+     */
+    public default void auditAll(List<AuditRecord> recs) {
+        for (AuditRecord rec : recs) {
+            audit(rec);
+        }
+    }
+
     @Override
     public void close();
 
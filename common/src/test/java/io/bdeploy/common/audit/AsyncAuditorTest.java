@@ -0,0 +1,144 @@
+package io.bdeploy.common.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class AsyncAuditorTest {
+
+    private static final class RecordingAuditor implements Auditor {
+
+        private final List<AuditRecord> records = new CopyOnWriteArrayList<>();
+        private final AtomicInteger maxBatch = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private CountDownLatch block = new CountDownLatch(0);
+
+        @Override
+        public void audit(AuditRecord rec) {
+            records.add(rec);
+        }
+
+        @Override
+        public void auditAll(List<AuditRecord> recs) {
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            maxBatch.accumulateAndGet(recs.size(), Math::max);
+            records.addAll(recs);
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+
+    @Test
+    void testConcurrentAudit() throws Exception {
+        RecordingAuditor target = new RecordingAuditor();
+        int threads = 8;
+        int perThread = AsyncAuditor.CAPACITY / threads; // no overflow, which would write out of order.
+
+        try (AsyncAuditor auditor = new AsyncAuditor(target)) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; ++t) {
+                    String what = "thread-" + t;
+                    futures.add(pool.submit(() -> {
+                        for (int i = 0; i < perThread; ++i) {
+                            auditor.audit(AuditRecord.Builder.fromSystem().setWhat(what).setMessage(Integer.toString(i)).build());
+                        }
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+
+            auditor.flush();
+            assertEquals(threads * perThread, target.records.size());
+            assertTrue(target.maxBatch.get() <= AsyncAuditor.BATCH_SIZE);
+
+            // records of a single thread keep their order.
+            int last = -1;
+            for (AuditRecord rec : target.records) {
+                if (rec.what.equals("thread-0")) {
+                    int current = Integer.parseInt(rec.message);
+                    assertTrue(current > last);
+                    last = current;
+                }
+            }
+        }
+
+        assertTrue(target.closed.get());
+    }
+
+    @Test
+    void testOverflowWritesDirectly() throws Exception {
+        RecordingAuditor target = new RecordingAuditor();
+        target.block = new CountDownLatch(1);
+
+        try (AsyncAuditor auditor = new AsyncAuditor(target)) {
+            // the background writer is blocked, so the queue fills up and the caller needs to write.
+            int count = AsyncAuditor.CAPACITY + AsyncAuditor.BATCH_SIZE * 2;
+            CountDownLatch done = new CountDownLatch(1);
+            Thread caller = new Thread(() -> {
+                for (int i = 0; i < count; ++i) {
+                    auditor.audit(AuditRecord.Builder.fromSystem().setWhat("overflow").setMessage(Integer.toString(i)).build());
+                }
+                done.countDown();
+            });
+            caller.start();
+
+            // the caller waits for the blocked writer instead of overtaking queued records.
+            assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+            assertTrue(target.records.isEmpty());
+
+            target.block.countDown();
+            caller.join();
+            auditor.flush();
+
+            // nothing is lost and records keep their order.
+            assertEquals(count, target.records.size());
+            for (int i = 0; i < count; ++i) {
+                assertEquals(Integer.toString(i), target.records.get(i).message);
+            }
+        }
+    }
+
+    @Test
+    void testAuditAfterClose() {
+        RecordingAuditor target = new RecordingAuditor();
+
+        AsyncAuditor auditor = new AsyncAuditor(target);
+        auditor.audit(AuditRecord.Builder.fromSystem().setWhat("before").build());
+        auditor.close();
+        assertTrue(target.closed.get());
+        assertEquals(1, target.records.size());
+
+        // the closed target does not receive any more records.
+        auditor.audit(AuditRecord.Builder.fromSystem().setWhat("after").build());
+        auditor.flush();
+        auditor.close();
+        assertEquals(1, target.records.size());
+    }
+
+}
@@ -24,6 +24,7 @@ import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.objects.ExportMode;
 import io.bdeploy.bhive.op.ExportOperation;
 import io.bdeploy.bhive.op.ExportTreeOperation;
 import io.bdeploy.bhive.op.VerifyOperation;
@@ -73,6 +74,11 @@ public class InstanceNodeController {
      */
     private static final String PCU_JSON = "pcu.json";
 
+    /**
+     * Suffix of the file next to each installed application which holds the fingerprints of the installed files.
+     */
+    private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+
     private final BHive hive;
     private final TaskSynchronizer syncOps;
     private final InstanceNodeManifest manifest;
@@ -183,6 +189,10 @@ public class InstanceNodeController {
         return target;
     }
 
+    private static Path getFingerprintFile(Path target) {
+        return target.resolveSibling(target.getFileName().toString() + FINGERPRINT_SUFFIX);
+    }
+
     /**
      * Returns the directory where this instance is deployed to.
      */
@@ -291,7 +301,9 @@ public class InstanceNodeController {
                 result.put(key, target);
 
                 if (!Files.isDirectory(target)) {
-                    syncOps.perform(target, () -> hive.execute(new ExportOperation().setTarget(target).setManifest(key)));
+                    // pools are shared, and only ever read. Let the file system copy (or even clone) the objects.
+                    syncOps.perform(target, () -> hive.execute(new ExportOperation().setTarget(target).setManifest(key)
+                            .setExportMode(ExportMode.CLONE).setFingerprintFile(getFingerprintFile(target))));
                 }
             }
         }
@@ -392,7 +404,12 @@ public class InstanceNodeController {
 
         try (DirectoryStream<Path> poolStream = Files.newDirectoryStream(poolDir)) {
             for (Path pooled : poolStream) {
-                if (!requiredKeys.contains(pooled.getFileName().toString())) {
+                String name = pooled.getFileName().toString();
+                if (name.endsWith(FINGERPRINT_SUFFIX)) {
+                    // belongs to the pooled application with the same name.
+                    name = name.substring(0, name.length() - FINGERPRINT_SUFFIX.length());
+                }
+                if (!requiredKeys.contains(name)) {
                     toRemove.add(new CleanupAction(CleanupType.DELETE_FOLDER, pooled.toAbsolutePath().toString(),
                             "Remove stale pooled application"));
 
@@ -462,13 +479,17 @@ public class InstanceNodeController {
                 .findAny();
     }
 
-    public VerifyOperationResultDto verify(String applicationId) {
+    /**
+     * @param applicationId the application to verify
+     * @param deep whether to hash all files, even if their fingerprint did not change since installation.
+     */
+    public VerifyOperationResultDto verify(String applicationId, boolean deep) {
         ApplicationConfiguration config = getManifest().getConfiguration().applications.stream()
                 .filter(a -> a.id.equals(applicationId)).findAny().orElseThrow();
         Path target = getApplicationTarget(config);
 
-        VerifyOperationResultDto dto = new VerifyOperationResultDto(
-                hive.execute(new VerifyOperation().setTargetPath(target).setManifest(config.application)));
+        VerifyOperationResultDto dto = new VerifyOperationResultDto(hive.execute(new VerifyOperation().setTargetPath(target)
+                .setManifest(config.application).setFingerprintFile(getFingerprintFile(target)).setDeep(deep)));
         return dto;
     }
 
@@ -477,6 +498,7 @@ public class InstanceNodeController {
                 .filter(a -> a.id.equals(applicationId)).findAny().orElseThrow();
         Path target = getApplicationTarget(config);
         PathHelper.deleteRecursiveRetry(target);
+        PathHelper.deleteIfExistsRetry(getFingerprintFile(target));
         installPooledApplicationsFor(manifest.getConfiguration());
     }
 
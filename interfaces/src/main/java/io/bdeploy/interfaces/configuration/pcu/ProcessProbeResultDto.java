@@ -15,6 +15,9 @@ public class ProcessProbeResultDto {
     public String message;
     public long time;
 
+    /** The time in milliseconds it took to receive the response */
+    public long latency;
+
     @JsonCreator
     public ProcessProbeResultDto(@JsonProperty("type") ProcessProbeType type, @JsonProperty("status") int status,
             @JsonProperty("message") String message, @JsonProperty("time") long time) {
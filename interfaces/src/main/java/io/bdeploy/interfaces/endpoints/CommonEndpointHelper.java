@@ -23,6 +23,7 @@ import io.bdeploy.interfaces.configuration.dcu.LinkedValueConfiguration;
 import io.bdeploy.interfaces.descriptor.application.HttpEndpoint;
 import io.bdeploy.interfaces.descriptor.application.HttpEndpoint.HttpAuthenticationType;
 import io.bdeploy.jersey.TrustAllServersTrustManager;
+import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.WebTarget;
 
@@ -69,6 +70,18 @@ public class CommonEndpointHelper {
     }
 
     public static WebTarget initClient(HttpEndpoint endpoint, String subPath) throws GeneralSecurityException {
+        // client is always used locally, so we use localhost as hostname to avoid contacting somebody else unintentionally.
+        return createClient(endpoint).target(initUri(endpoint, "localhost", subPath));
+    }
+
+    /**
+     * Creates a {@link Client} which is configured (security, authentication) to talk to the given endpoint. The {@link Client}
+     * can be re-used for multiple requests to the endpoint, which allows to keep connections alive in between.
+     *
+     * @param endpoint the processed endpoint, see {@link #processEndpoint(VariableResolver, HttpEndpoint)}.
+     * @return a new {@link Client}, which must be closed by the caller once no longer required.
+     */
+    public static Client createClient(HttpEndpoint endpoint) throws GeneralSecurityException {
         ClientBuilder client = ClientBuilder.newBuilder();
 
         if (Boolean.valueOf(endpoint.secure.getPreRenderable()) == Boolean.TRUE && endpoint.trustAll) {
@@ -116,8 +129,7 @@ public class CommonEndpointHelper {
                     HttpAuthenticationFeature.digest(endpoint.authUser.getPreRenderable(), endpoint.authPass.getPreRenderable()));
         }
 
-        // client is always used locally, so we use localhost as hostname to avoid contacting somebody else unintentionally.
-        return client.build().target(initUri(endpoint, "localhost", subPath));
+        return client.build();
     }
 
     /**
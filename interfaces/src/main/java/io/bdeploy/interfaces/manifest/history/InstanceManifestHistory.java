@@ -6,15 +6,19 @@ import java.util.List;
 import com.fasterxml.jackson.annotation.JsonEnumDefaultValue;
 
 import io.bdeploy.bhive.BHiveExecution;
-import io.bdeploy.bhive.meta.MetaManifest;
+import io.bdeploy.bhive.meta.MetaLog;
+import io.bdeploy.bhive.meta.MetaLog.Cursor;
+import io.bdeploy.bhive.meta.MetaLog.Page;
 import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.util.StorageHelper;
 import io.bdeploy.interfaces.manifest.InstanceManifest;
 
 /**
  * Encapsulates book-keeping on an {@link InstanceManifest}. This history keeps track of all actions performed on a certain
  * {@link InstanceManifest}.
  * <p>
- * History is kept per instance tag, this it is only available when queried with the matching instance tag.
+ * History is kept per instance tag, this it is only available when queried with the matching instance tag. Records are
+ * appended to a {@link MetaLog}, history written by previous versions is still read as the oldest part of the log.
  */
 public class InstanceManifestHistory {
 
@@ -31,12 +35,13 @@ public class InstanceManifestHistory {
         UNKNOWN
     }
 
-    private final MetaManifest<History> meta;
+    private final MetaLog<InstanceManifestHistoryRecord> meta;
     private final BHiveExecution hive;
 
     public InstanceManifestHistory(Manifest.Key instanceManifest, BHiveExecution hive) {
         this.hive = hive;
-        this.meta = new MetaManifest<>(instanceManifest, true, History.class);
+        this.meta = new MetaLog<>(instanceManifest, true, History.class, InstanceManifestHistoryRecord.class, r -> r.timestamp)
+                .setLegacyReader(is -> StorageHelper.fromStream(is, History.class).records);
     }
 
     /**
@@ -45,36 +50,47 @@ public class InstanceManifestHistory {
      * @param action the performed action.
      */
     public void recordAction(Action action, String user, String comment) {
-        store(readOrCreate().append(new InstanceManifestHistoryRecord(action, System.currentTimeMillis(), user, comment)));
+        meta.append(hive, new InstanceManifestHistoryRecord(action, System.currentTimeMillis(), user, comment));
     }
 
     /**
      * @return all of the history attached to the {@link InstanceManifest}.
      */
     public List<InstanceManifestHistoryRecord> getFullHistory() {
-        return readOrCreate().records;
+        return meta.read(hive);
     }
 
-    private History readOrCreate() {
-        History stored = meta.read(hive);
-        if (stored == null) {
-            return new History();
-        }
-        return stored;
+    /**
+     * @param from the lowest timestamp to include.
+     * @param to the highest timestamp to include.
+     * @return the history attached to the {@link InstanceManifest} in the given range of time.
+     */
+    public List<InstanceManifestHistoryRecord> getHistory(long from, long to) {
+        return meta.read(hive, from, to);
     }
 
-    private void store(History history) {
-        meta.write(hive, history);
+    /**
+     * @param before only records before this cursor are included, see {@link MetaLog#readPage(BHiveExecution, Cursor, int)}.
+     * @param max the maximum amount of records to return.
+     * @return the newest records before the given cursor, newest first.
+     */
+    public Page<InstanceManifestHistoryRecord> getHistoryPage(Cursor before, int max) {
+        return meta.readPage(hive, before, max);
     }
 
+    /**
+     * @return whether there is no history at all attached to the {@link InstanceManifest}.
+     */
+    public boolean isEmpty() {
+        return getHistoryPage(Cursor.NEWEST, 1).records.isEmpty();
+    }
+
+    /**
+     * The format of the history written by previous versions, and the name of the meta manifest holding the history.
+     */
     private static final class History {
 
         public List<InstanceManifestHistoryRecord> records = new ArrayList<>();
-
-        public History append(InstanceManifestHistoryRecord rec) {
-            this.records.add(rec);
-            return this;
-        }
     }
 
 }
@@ -0,0 +1,20 @@
+package io.bdeploy.interfaces.manifest.history.runtime;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A single {@link MinionRuntimeHistoryRecord} along with the application it belongs to, as stored in the runtime history log.
+ */
+public class MinionRuntimeHistoryEvent {
+
+    public final String applicationId;
+    public final MinionRuntimeHistoryRecord record;
+
+    @JsonCreator
+    public MinionRuntimeHistoryEvent(@JsonProperty("applicationId") String applicationId,
+            @JsonProperty("record") MinionRuntimeHistoryRecord record) {
+        this.applicationId = applicationId;
+        this.record = record;
+    }
+}
@@ -1,22 +1,56 @@
 package io.bdeploy.interfaces.manifest.history.runtime;
 
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
 import io.bdeploy.bhive.BHiveExecution;
-import io.bdeploy.bhive.meta.MetaManifest;
+import io.bdeploy.bhive.meta.MetaLog;
+import io.bdeploy.bhive.meta.MetaLog.Cursor;
+import io.bdeploy.bhive.meta.MetaLog.Page;
 import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.util.StorageHelper;
 import io.bdeploy.interfaces.configuration.pcu.ProcessState;
 
+/**
+ * Keeps track of all process state changes of a given instance node version.
+ * <p>
+ * Events are appended to a {@link MetaLog}, so recording an event does not require to read and re-write the whole history.
+ * History written by previous versions is still read as the oldest part of the log.
+ */
 public class MinionRuntimeHistoryManager {
 
-    private final MetaManifest<MinionRuntimeHistory> meta;
+    private final MetaLog<MinionRuntimeHistoryEvent> meta;
     private final BHiveExecution hive;
 
     public MinionRuntimeHistoryManager(Manifest.Key manifest, BHiveExecution hive) {
-        this.meta = new MetaManifest<>(manifest, true, MinionRuntimeHistory.class);
+        this.meta = new MetaLog<>(manifest, true, MinionRuntimeHistory.class, MinionRuntimeHistoryEvent.class,
+                e -> e.record.timestamp).setLegacyReader(MinionRuntimeHistoryManager::readLegacy);
         this.hive = hive;
     }
 
     public MinionRuntimeHistory getFullHistory() {
-        return readOrCreate();
+        return toHistory(meta.read(hive));
+    }
+
+    /**
+     * @param from the lowest timestamp to include.
+     * @param to the highest timestamp to include.
+     * @return the history of all events in the given range of time.
+     */
+    public MinionRuntimeHistory getHistory(long from, long to) {
+        return toHistory(meta.read(hive, from, to));
+    }
+
+    /**
+     * @param before only events before this cursor are included, see {@link MetaLog#readPage(BHiveExecution, Cursor, int)}.
+     * @param max the maximum amount of events to return.
+     * @return the newest events before the given cursor, newest first.
+     */
+    public Page<MinionRuntimeHistoryEvent> getHistoryPage(Cursor before, int max) {
+        return meta.readPage(hive, before, max);
     }
 
     /**
@@ -28,19 +62,27 @@ public class MinionRuntimeHistoryManager {
      * </p>
      */
     public synchronized void recordEvent(long processId, int exitCode, ProcessState action, String applicationId, String user) {
-        store(readOrCreate().recordEvent(new MinionRuntimeHistoryRecord(processId, exitCode, action, user, System.currentTimeMillis()),
-                applicationId));
+        meta.append(hive, new MinionRuntimeHistoryEvent(applicationId,
+                new MinionRuntimeHistoryRecord(processId, exitCode, action, user, System.currentTimeMillis())));
     }
 
-    private MinionRuntimeHistory readOrCreate() {
-        MinionRuntimeHistory stored = meta.read(hive);
-        if (stored == null) {
-            return new MinionRuntimeHistory();
+    private static MinionRuntimeHistory toHistory(List<MinionRuntimeHistoryEvent> events) {
+        MinionRuntimeHistory history = new MinionRuntimeHistory();
+        for (MinionRuntimeHistoryEvent event : events) {
+            history.recordEvent(event.record, event.applicationId);
         }
-        return stored;
+        return history;
     }
 
-    private void store(MinionRuntimeHistory history) {
-        meta.write(hive, history);
+    private static List<MinionRuntimeHistoryEvent> readLegacy(InputStream is) {
+        List<MinionRuntimeHistoryEvent> result = new ArrayList<>();
+        MinionRuntimeHistory legacy = StorageHelper.fromStream(is, MinionRuntimeHistory.class);
+        for (Map.Entry<String, MinionApplicationRuntimeHistory> entry : legacy.getHistory().entrySet()) {
+            for (MinionRuntimeHistoryRecord rec : entry.getValue().getRecords()) {
+                result.add(new MinionRuntimeHistoryEvent(entry.getKey(), rec));
+            }
+        }
+        result.sort(Comparator.comparingLong(e -> e.record.timestamp));
+        return result;
     }
 }
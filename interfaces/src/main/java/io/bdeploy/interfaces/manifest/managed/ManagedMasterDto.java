@@ -18,4 +18,10 @@ public class ManagedMasterDto {
     public MinionUpdateDto update;
     public MinionProductUpdatesDto productUpdates;
 
+    /** The manifest change journal of the server's instance group, see {@link #syncCursor} */
+    public String syncJournal;
+
+    /** The position in {@link #syncJournal} up to which the instance group has been synchronized */
+    public long syncCursor;
+
 }
@@ -28,6 +28,19 @@ public interface CommonDirectoryEntryResource {
     @Path("/content")
     public EntryChunk getEntryContent(RemoteDirectoryEntry entry, @QueryParam("o") long offset, @QueryParam("l") long limit);
 
+    /**
+     * Streams the content of the given entry starting at the given offset, followed by all content which is appended to the
+     * entry afterwards. The stream ends once the entry is reset or replaced, or no content was appended for some time.
+     *
+     * @param entry the {@link RemoteDirectoryEntry} to follow.
+     * @param offset the offset into the underlying file.
+     * @return an {@link InputStream} which provides appended content as soon as it is available.
+     */
+    @POST
+    @Path("/follow")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response followEntry(RemoteDirectoryEntry entry, @QueryParam("o") long offset);
+
     /**
      * @param entry the entry to stream. The stream will include the complete content of the file.
      * @return an {@link InputStream} that can be used to stream the file.
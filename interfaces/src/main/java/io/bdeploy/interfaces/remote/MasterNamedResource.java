@@ -121,6 +121,16 @@ public interface MasterNamedResource {
     public EntryChunk getEntryContent(@QueryParam("m") String minion, RemoteDirectoryEntry entry, @QueryParam("o") long offset,
             @QueryParam("l") long limit);
 
+    /**
+     * Delegates to the specified minion to follow a file.
+     *
+     * @see CommonDirectoryEntryResource#followEntry(RemoteDirectoryEntry, long)
+     */
+    @POST
+    @Path("/dataDir/followEntry")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response followEntry(@QueryParam("m") String minion, RemoteDirectoryEntry entry, @QueryParam("o") long offset);
+
     /**
      * @param minion the minion the entry refers to.
      * @param entry the entry to stream. The stream will include the complete
@@ -374,10 +384,12 @@ public interface MasterNamedResource {
      *
      * @param instanceId the unique id of the instance.
      * @param appId the unique id of the application
+     * @param deep whether to hash all files, even if they seem to be unchanged since installation.
      */
     @POST
     @Path("/verify")
-    public VerifyOperationResultDto verify(@QueryParam("u") String instanceId, @QueryParam("a") String appId);
+    public VerifyOperationResultDto verify(@QueryParam("u") String instanceId, @QueryParam("a") String appId,
+            @QueryParam("deep") boolean deep);
 
     /**
      * Reinstalls application of an instance.
@@ -97,10 +97,13 @@ public interface NodeDeploymentResource {
      *            InstanceNodeManifest key of node where application is deployed
      * @param applicationId
      *            the unique ID of the application.
+     * @param deep
+     *            whether to hash all files, even if they seem to be unchanged since installation.
      */
     @POST
     @Path("/verify")
-    public VerifyOperationResultDto verify(@QueryParam("a") String applicationId, Manifest.Key nodeKey);
+    public VerifyOperationResultDto verify(@QueryParam("a") String applicationId, @QueryParam("deep") boolean deep,
+            Manifest.Key nodeKey);
 
     /**
      * Verifies a single application of an instance.
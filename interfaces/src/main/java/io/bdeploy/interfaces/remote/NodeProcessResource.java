@@ -1,6 +1,7 @@
 package io.bdeploy.interfaces.remote;
 
 import java.util.List;
+import java.util.Map;
 
 import io.bdeploy.interfaces.configuration.pcu.InstanceNodeStatusDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessDetailDto;
@@ -104,6 +105,17 @@ public interface NodeProcessResource {
     @Path("/process-status")
     public InstanceNodeStatusDto getStatus(@QueryParam("u") String instanceId);
 
+    /**
+     * Returns status information about multiple instances using a single request.
+     *
+     * @param instanceIds
+     *            the unique ids of the instances to query. An empty list queries all instances deployed to this node.
+     * @return the status information of each instance. Key = instance id.
+     */
+    @POST
+    @Path("/process-status-bulk")
+    public Map<String, InstanceNodeStatusDto> getStatus(List<String> instanceIds);
+
     /**
      * Returns the full status of a single application.
      *
@@ -0,0 +1,419 @@
+package io.bdeploy.jersey;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+import org.glassfish.jersey.message.internal.Statuses;
+
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+import io.bdeploy.jersey.monitoring.JerseyClientMonitor;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.core.Configuration;
+
+/**
+ * A {@link ConnectorProvider} which uses a single JDK {@link HttpClient} for all requests to a single remote.
+ * <p>
+ * The {@link HttpClient} keeps connections alive and re-uses them for subsequent requests. HTTPS connections negotiate HTTP/2
+ * if the remote supports it, which multiplexes concurrent requests over a single connection. The amount of concurrent requests
+ * to the remote is limited to {@link #MAX_REQUESTS_PER_REMOTE}, further requests wait for a free slot.
+ */
+class JerseyClientConnectorProvider implements ConnectorProvider, JerseyClientMonitor.Pool {
+
+    /** The maximum amount of requests to a single remote which wait for a response at the same time */
+    static final int MAX_REQUESTS_PER_REMOTE = 32;
+
+    /** 30 seconds to connect must be enough. A read timeout is only applied if explicitly requested on the request */
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+
+    /** Headers which are managed by the {@link HttpClient} itself and must not be set on a request */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new NamedDaemonThreadFactory("HTTP Client"));
+
+    private final HttpClient client;
+    private final Semaphore slots = new Semaphore(MAX_REQUESTS_PER_REMOTE, true);
+
+    /**
+     * @param uri the remote all requests are sent to.
+     * @param trustManagers the {@link TrustManager}s used to verify the remote's certificate. Like for all other clients, the
+     *            hostname of the remote is not verified.
+     */
+    JerseyClientConnectorProvider(URI uri, TrustManager[] trustManagers) {
+        HttpClient.Builder builder = HttpClient.newBuilder().executor(executor).connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(Redirect.NORMAL);
+
+        if ("https".equalsIgnoreCase(uri.getScheme())) {
+            builder.version(Version.HTTP_2).sslContext(createSslContext(trustManagers));
+        } else {
+            // HTTP/2 via upgrade from plain HTTP/1.1 is not supported by the server.
+            builder.version(Version.HTTP_1_1);
+        }
+
+        ProxySelector proxy = ProxySelector.getDefault();
+        if (proxy != null) {
+            builder.proxy(proxy);
+        }
+
+        this.client = builder.build();
+        JerseyClientMonitor.onPoolCreated(this);
+    }
+
+    private static SSLContext createSslContext(TrustManager[] trustManagers) {
+        TrustManager[] wrapped = new TrustManager[trustManagers.length];
+        for (int i = 0; i < trustManagers.length; ++i) {
+            if (trustManagers[i] instanceof X509TrustManager) {
+                wrapped[i] = new NoHostnameTrustManager((X509TrustManager) trustManagers[i]);
+            } else {
+                wrapped[i] = trustManagers[i];
+            }
+        }
+
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, wrapped, null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize security", e);
+        }
+    }
+
+    @Override
+    public int getQueuedRequests() {
+        return slots.getQueueLength();
+    }
+
+    @Override
+    public int getActiveRequests() {
+        return MAX_REQUESTS_PER_REMOTE - slots.availablePermits();
+    }
+
+    @Override
+    public Connector getConnector(Client jaxrsClient, Configuration runtimeConfig) {
+        return new HttpClientConnector();
+    }
+
+    private final class HttpClientConnector implements Connector {
+
+        @Override
+        public ClientResponse apply(ClientRequest request) {
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessingException("Interrupted while waiting for a connection to " + request.getUri(), e);
+            }
+
+            try {
+                HttpResponse<InputStream> response = send(request);
+                JerseyClientMonitor.onRequestCompleted(response.version() == Version.HTTP_2);
+                return toClientResponse(request, response);
+            } catch (IOException e) {
+                JerseyClientMonitor.onRequestFailed();
+                throw new ProcessingException("Request to " + request.getUri() + " failed", e);
+            } catch (InterruptedException e) {
+                JerseyClientMonitor.onRequestFailed();
+                Thread.currentThread().interrupt();
+                throw new ProcessingException("Interrupted while waiting for a response from " + request.getUri(), e);
+            } catch (RuntimeException e) {
+                JerseyClientMonitor.onRequestFailed();
+                throw e;
+            } finally {
+                // the response body is streamed without holding a slot.
+                slots.release();
+            }
+        }
+
+        private HttpResponse<InputStream> send(ClientRequest request) throws IOException, InterruptedException {
+            if (!request.hasEntity()) {
+                return client.send(createRequest(request, BodyPublishers.noBody()), BodyHandlers.ofInputStream());
+            }
+
+            // headers are final only once the entity is about to be written, so the request is created lazily.
+            EntityPipe pipe = new EntityPipe();
+            CompletableFuture<HttpResponse<InputStream>> future = new CompletableFuture<>();
+            request.setStreamProvider(contentLength -> {
+                BodyPublisher publisher = BodyPublishers.ofInputStream(pipe::getInput);
+                client.sendAsync(createRequest(request, publisher), BodyHandlers.ofInputStream()).whenComplete((r, e) -> {
+                    // the remote does not read any more of the entity, in case it responded early.
+                    pipe.abort();
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(r);
+                    }
+                });
+                return pipe.getOutput();
+            });
+
+            try {
+                request.writeEntity();
+            } catch (IOException e) {
+                // an early response (e.g. an error) aborts writing the entity - the response is relevant, not the abort.
+                if (!future.isDone()) {
+                    throw e;
+                }
+            }
+
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Cannot send request", e.getCause());
+            }
+        }
+
+        private HttpRequest createRequest(ClientRequest request, BodyPublisher body) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri()).method(request.getMethod(), body);
+
+            int readTimeout = request.resolveProperty(ClientProperties.READ_TIMEOUT, 0);
+            if (readTimeout > 0) {
+                builder.timeout(Duration.ofMillis(readTimeout));
+            }
+
+            for (Map.Entry<String, List<String>> header : request.getStringHeaders().entrySet()) {
+                if (RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                    continue;
+                }
+                for (String value : header.getValue()) {
+                    builder.header(header.getKey(), value);
+                }
+            }
+            return builder.build();
+        }
+
+        private ClientResponse toClientResponse(ClientRequest request, HttpResponse<InputStream> response) {
+            ClientResponse result = new ClientResponse(Statuses.from(response.statusCode()), request);
+            result.setResolvedRequestUri(response.uri());
+            for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+                // HTTP/2 pseudo headers like ':status'.
+                if (!header.getKey().startsWith(":")) {
+                    result.headers(header.getKey(), header.getValue());
+                }
+            }
+            result.setEntityStream(response.body());
+            return result;
+        }
+
+        @Override
+        public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+            return CompletableFuture.runAsync(() -> {
+                ClientResponse response;
+                try {
+                    response = apply(request);
+                } catch (Exception e) {
+                    callback.failure(e);
+                    return;
+                }
+                callback.response(response);
+            }, executor);
+        }
+
+        @Override
+        public String getName() {
+            return "JDK HttpClient";
+        }
+
+        @Override
+        public void close() {
+            // the HttpClient is shared by all clients for the remote, and lives as long as the provider.
+        }
+    }
+
+    /**
+     * Passes the entity written by Jersey on the calling thread to the {@link HttpClient}, which reads it on its own thread.
+     */
+    private static final class EntityPipe {
+
+        private static final int CHUNK_SIZE = 64 * 1024;
+        private static final byte[] EOF = new byte[0];
+
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(16);
+        private volatile boolean aborted;
+
+        void abort() {
+            aborted = true;
+        }
+
+        OutputStream getOutput() {
+            return new BufferedOutputStream(new OutputStream() {
+
+                private boolean closed;
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    if (len > 0) {
+                        put(Arrays.copyOfRange(b, off, off + len));
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        put(EOF);
+                    }
+                }
+            }, CHUNK_SIZE);
+        }
+
+        InputStream getInput() {
+            return new InputStream() {
+
+                private byte[] current;
+                private int pos;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    int num = read(single, 0, 1);
+                    return num == -1 ? -1 : (single[0] & 0xFF);
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (current == null || pos == current.length) {
+                        if (current == EOF) {
+                            return -1;
+                        }
+                        current = take();
+                        pos = 0;
+                        if (current == EOF) {
+                            return -1;
+                        }
+                    }
+
+                    int num = Math.min(len, current.length - pos);
+                    System.arraycopy(current, pos, b, off, num);
+                    pos += num;
+                    return num;
+                }
+            };
+        }
+
+        private void put(byte[] chunk) throws IOException {
+            try {
+                while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                    if (aborted) {
+                        throw new IOException("Remote stopped reading the request entity");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing the request entity");
+            }
+        }
+
+        private byte[] take() throws IOException {
+            try {
+                return chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading the request entity");
+            }
+        }
+    }
+
+    /**
+     * Verifies certificates using the given {@link X509TrustManager}, but skips the verification of the hostname, which the
+     * {@link HttpClient} otherwise always enforces. Internal certificates are self-signed and not issued for a hostname.
+     */
+    private static final class NoHostnameTrustManager extends X509ExtendedTrustManager {
+
+        private final X509TrustManager delegate;
+
+        NoHostnameTrustManager(X509TrustManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+
+}
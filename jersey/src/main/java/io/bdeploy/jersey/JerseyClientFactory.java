@@ -3,6 +3,7 @@ package io.bdeploy.jersey;
 import java.io.IOException;
 import java.net.URI;
 import java.security.GeneralSecurityException;
+import java.security.KeyStore;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -12,7 +13,9 @@ import java.util.function.Consumer;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
 
+import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.glassfish.jersey.client.proxy.WebResourceFactory;
@@ -38,6 +41,7 @@ import io.bdeploy.jersey.ws.change.client.ObjectChangeClientListener;
 import io.bdeploy.jersey.ws.change.client.ObjectChangeClientWebSocket;
 import io.bdeploy.jersey.ws.change.msg.ObjectChangeDto;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.ClientRequestContext;
 import jakarta.ws.rs.client.ClientRequestFilter;
@@ -46,6 +50,10 @@ import jakarta.ws.rs.ext.Provider;
 
 /**
  * A factory for Jersey based JAX-RS clients.
+ * <p>
+ * All clients for a single {@link RemoteService} share a pool of connections, see {@link JerseyClientConnectorProvider}. The
+ * previous connector based on {@link HttpsURLConnection} can be selected by setting the system property
+ * {@value #LEGACY_CONNECTOR_PROPERTY} to <code>true</code>.
  */
 public class JerseyClientFactory {
 
@@ -56,12 +64,17 @@ public class JerseyClientFactory {
 
     private static final Logger log = LoggerFactory.getLogger(JerseyClientFactory.class);
 
+    /** System property which selects the legacy {@link HttpsURLConnection} based connector */
+    public static final String LEGACY_CONNECTOR_PROPERTY = "bdeploy.client.legacyConnector";
+
     private SSLContext sslContext;
+    private TrustManager[] trustManagers;
     private String bearer;
     private final RemoteService svc;
 
     private final Set<com.fasterxml.jackson.databind.Module> additionalModules = new HashSet<>();
     private JerseyObjectMapper mapperFeature;
+    private Client cachedClient;
     private WebTarget cachedTarget;
 
     private static final Cache<RemoteService, JerseyClientFactory> factoryCache = CacheBuilder.newBuilder().maximumSize(100)
@@ -78,10 +91,10 @@ public class JerseyClientFactory {
 
             // composite of default trust manager (for official certificates), and the target server's
             // self-signed internal certificate (part of the authentication token).
-            TrustManager[] tm = CompositeX509TrustManager.getTrustManagers(svc.getKeyStore().getStore());
+            trustManagers = CompositeX509TrustManager.getTrustManagers(svc.getKeyStore().getStore());
 
             sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, tm, null);
+            sslContext.init(null, trustManagers, null);
         } catch (GeneralSecurityException e) {
             throw new IllegalStateException("Cannot initialize security", e);
         }
@@ -92,6 +105,10 @@ public class JerseyClientFactory {
         this.bearer = bearer;
         try {
             sslContext = SSLContext.getDefault();
+
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init((KeyStore) null);
+            trustManagers = tmf.getTrustManagers();
         } catch (GeneralSecurityException e) {
             throw new IllegalStateException("Cannot initialize security", e);
         }
@@ -123,6 +140,7 @@ public class JerseyClientFactory {
             return;
         }
 
+        cachedClient = null;
         cachedTarget = null;
         additionalModules.add(o);
 
@@ -159,23 +177,48 @@ public class JerseyClientFactory {
      *         factory.
      */
     public synchronized WebTarget getBaseTarget(Object... additionalRegistrations) {
-        if (additionalRegistrations.length == 0 && cachedTarget != null) {
+        if (additionalRegistrations.length == 0) {
+            if (cachedTarget == null) {
+                cachedTarget = getClient().target(svc.getUri());
+            }
             return cachedTarget;
         }
 
+        // each target has its own configuration, but all share the client's connection pool.
+        WebTarget target = getClient().target(svc.getUri());
+        for (Object reg : additionalRegistrations) {
+            if (reg instanceof Class<?>) {
+                target.register((Class<?>) reg);
+            } else {
+                target.register(reg);
+            }
+        }
+        return target;
+    }
+
+    private Client getClient() {
+        if (cachedClient != null) {
+            return cachedClient;
+        }
+
         ClientBuilder builder = ClientBuilder.newBuilder();
 
-        // for HttpUrlConnection to allow restricted headers, see https://eclipse-ee4j.github.io/jersey.github.io/documentation/latest/client.html#d0e4971
-        System.setProperty("sun.net.http.allowRestrictedHeaders", "true");
+        if (Boolean.getBoolean(LEGACY_CONNECTOR_PROPERTY)) {
+            // for HttpUrlConnection to allow restricted headers, see https://eclipse-ee4j.github.io/jersey.github.io/documentation/latest/client.html#d0e4971
+            System.setProperty("sun.net.http.allowRestrictedHeaders", "true");
 
-        // 30 seconds to connect must be enough. NEVER set ANY read timeout. Otherwise closing bogus HTTPS connections can block
-        // ALL other HTTPS connections, see sun.security.ssl.SSLSocketImpl.AppInputStream.readLockedDeplete().
-        builder.connectTimeout(30, TimeUnit.SECONDS);
+            // 30 seconds to connect must be enough. NEVER set ANY read timeout. Otherwise closing bogus HTTPS connections can
+            // block ALL other HTTPS connections, see sun.security.ssl.SSLSocketImpl.AppInputStream.readLockedDeplete().
+            builder.connectTimeout(30, TimeUnit.SECONDS);
 
-        builder.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
+            builder.sslContext(sslContext);
+            builder.hostnameVerifier((h, s) -> true);
+        } else {
+            JerseyClientConnectorProvider connector = new JerseyClientConnectorProvider(svc.getUri(), trustManagers);
+            builder.withConfig(new ClientConfig().connectorProvider(connector));
+        }
 
-        builder.sslContext(sslContext);
-        builder.hostnameVerifier((h, s) -> true);
+        builder.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
 
         if (mapperFeature == null) {
             mapperFeature = new JerseyObjectMapper(additionalModules);
@@ -191,22 +234,8 @@ public class JerseyClientFactory {
         builder.register(JerseyPathReader.class);
         builder.register(JerseyPathWriter.class);
 
-        for (Object reg : additionalRegistrations) {
-            if (reg instanceof Class<?>) {
-                builder.register((Class<?>) reg);
-            } else {
-                builder.register(reg);
-            }
-        }
-
-        WebTarget target = builder.build().target(svc.getUri());
-
-        if (additionalRegistrations.length == 0) {
-            // cache the target
-            cachedTarget = target;
-        }
-
-        return target;
+        cachedClient = builder.build();
+        return cachedClient;
     }
 
     /**
@@ -4,6 +4,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+
 /**
  * Handles reading/writing of large data streams while tracking progress.
  */
@@ -30,4 +33,28 @@ public class JerseyStreamingHelper {
         }
     }
 
+    /**
+     * Relays the entity of a response received from another server to the client, flushing each piece of content as soon as it
+     * arrives. This is required for streams which provide content over a long time, e.g. a followed log file.
+     *
+     * @param source the {@link Response} to relay, which is closed once the client is done.
+     * @return a {@link Response} to return to the client.
+     */
+    public static Response relayFlushing(Response source) {
+        InputStream in = source.readEntity(InputStream.class);
+        StreamingOutput relay = out -> {
+            try (InputStream is = in) {
+                final byte[] buffer = new byte[1024 * 8];
+                int l;
+                while ((l = is.read(buffer)) != -1) {
+                    out.write(buffer, 0, l);
+                    out.flush();
+                }
+            } finally {
+                source.close();
+            }
+        };
+        return Response.status(source.getStatus()).type(source.getMediaType()).entity(relay).build();
+    }
+
 }
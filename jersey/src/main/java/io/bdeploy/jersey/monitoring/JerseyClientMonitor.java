@@ -0,0 +1,70 @@
+package io.bdeploy.jersey.monitoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects metrics of all pooled HTTP clients in this VM, i.e. of all outgoing requests to other servers.
+ */
+public class JerseyClientMonitor {
+
+    /** The pools of all remotes, which are dropped once no longer used */
+    private static final Set<Pool> pools = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private static final LongAdder completed = new LongAdder();
+    private static final LongAdder completedHttp2 = new LongAdder();
+    private static final LongAdder failed = new LongAdder();
+
+    private JerseyClientMonitor() {
+    }
+
+    /**
+     * The connection pool of a single remote.
+     */
+    public interface Pool {
+
+        /**
+         * @return the amount of requests which currently wait for a response.
+         */
+        public int getActiveRequests();
+
+        /**
+         * @return the amount of requests which currently wait for a free slot in the pool.
+         */
+        public int getQueuedRequests();
+    }
+
+    public static void onPoolCreated(Pool pool) {
+        pools.add(pool);
+    }
+
+    public static void onRequestCompleted(boolean http2) {
+        completed.increment();
+        if (http2) {
+            completedHttp2.increment();
+        }
+    }
+
+    public static void onRequestFailed() {
+        failed.increment();
+    }
+
+    static void fill(JerseyServerMonitoringSnapshot snapshot) {
+        List<Pool> current;
+        synchronized (pools) {
+            current = new ArrayList<>(pools);
+        }
+
+        snapshot.clientPools = current.size();
+        snapshot.clientActive = current.stream().mapToLong(Pool::getActiveRequests).sum();
+        snapshot.clientQueued = current.stream().mapToLong(Pool::getQueuedRequests).sum();
+        snapshot.clientCompleted = completed.longValue();
+        snapshot.clientCompletedHttp2 = completedHttp2.longValue();
+        snapshot.clientFailed = failed.longValue();
+    }
+
+}
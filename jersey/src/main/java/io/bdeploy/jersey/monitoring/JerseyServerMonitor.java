@@ -87,6 +87,8 @@ public class JerseyServerMonitor {
 
         snapshot.activeSessions = sessionManager.getActiveSessions().size();
 
+        JerseyClientMonitor.fill(snapshot);
+
         return snapshot;
     }
 
@@ -31,4 +31,11 @@ public final class JerseyServerMonitoringSnapshot {
     public long vmFreeMem;
 
     public long activeSessions;
+
+    public long clientPools;
+    public long clientActive;
+    public long clientQueued;
+    public long clientCompleted;
+    public long clientCompletedHttp2;
+    public long clientFailed;
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package io.bdeploy.jersey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import io.bdeploy.common.util.Threads;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+class ClientConnectorTest {
+
+    private static final AtomicInteger current = new AtomicInteger();
+    private static final AtomicInteger max = new AtomicInteger();
+
+    @RegisterExtension
+    TestServer srv = new TestServer(EchoImpl.class);
+
+    @Path("/echo")
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(MediaType.TEXT_PLAIN)
+    public interface Echo {
+
+        @POST
+        public String echo(String value);
+    }
+
+    public static class EchoImpl implements Echo {
+
+        @Override
+        public String echo(String value) {
+            max.accumulateAndGet(current.incrementAndGet(), Math::max);
+            try {
+                Threads.sleep(20);
+                return value;
+            } finally {
+                current.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    void concurrentRequests(Echo echo) throws Exception {
+        int count = JerseyClientConnectorProvider.MAX_REQUESTS_PER_REMOTE * 3;
+        ExecutorService pool = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < count; ++i) {
+                String value = "value-" + i;
+                results.add(pool.submit(() -> echo.echo(value)));
+            }
+
+            for (int i = 0; i < count; ++i) {
+                assertEquals("value-" + i, results.get(i).get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // requests beyond the limit wait for a free slot instead of opening more connections.
+        assertTrue(max.get() <= JerseyClientConnectorProvider.MAX_REQUESTS_PER_REMOTE);
+        assertTrue(max.get() > 1);
+    }
+
+}
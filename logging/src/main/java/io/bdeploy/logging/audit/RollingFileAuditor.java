@@ -1,6 +1,7 @@
 package io.bdeploy.logging.audit;
 
 import java.nio.file.Path;
+import java.util.List;
 import java.util.function.Function;
 import java.util.zip.Deflater;
 
@@ -78,39 +79,55 @@ public class RollingFileAuditor implements Auditor {
      */
     @Override
     public void audit(AuditRecord rec) {
+        auditAll(List.of(rec));
+    }
+
+    /**
+     * Writes the given audit records to the file-system, flushing only once all records are written.
+     *
+     * @param recs the records to write
+     */
+    @Override
+    public void auditAll(List<AuditRecord> recs) {
         try {
             if (logAppender.isStopped()) {
                 return;
             }
 
-            Log4jLogEvent.Builder builder = Log4jLogEvent.newBuilder();
-            builder.setMessage(new SimpleMessage(rec.message));
-            switch (rec.severity) {
-                case NORMAL:
-                    builder.setLevel(Level.INFO);
-                    break;
-                case WARNING:
-                    builder.setLevel(Level.WARN);
-                    break;
-                case ERROR:
-                    builder.setLevel(Level.ERROR);
-                    break;
+            for (AuditRecord rec : recs) {
+                logAppender.append(createEvent(rec));
             }
-
-            StringMap contextData = ContextDataFactory.createContextData();
-            contextData.putValue("WHO", rec.who);
-            contextData.putValue("WHAT", rec.what);
-            contextData.putValue("PARAMETERS", rec.parameters);
-            contextData.putValue("METHOD", rec.method);
-            builder.setContextData(contextData);
-
-            Log4jLogEvent logEvent = builder.build();
-            logAppender.append(logEvent);
+            logAppender.getManager().flush();
         } catch (Exception e) {
             log.error("Cannot write audit log", e);
         }
     }
 
+    private static Log4jLogEvent createEvent(AuditRecord rec) {
+        Log4jLogEvent.Builder builder = Log4jLogEvent.newBuilder();
+        builder.setMessage(new SimpleMessage(rec.message));
+        switch (rec.severity) {
+            case NORMAL:
+                builder.setLevel(Level.INFO);
+                break;
+            case WARNING:
+                builder.setLevel(Level.WARN);
+                break;
+            case ERROR:
+                builder.setLevel(Level.ERROR);
+                break;
+        }
+
+        StringMap contextData = ContextDataFactory.createContextData();
+        contextData.putValue("WHO", rec.who);
+        contextData.putValue("WHAT", rec.what);
+        contextData.putValue("PARAMETERS", rec.parameters);
+        contextData.putValue("METHOD", rec.method);
+        builder.setContextData(contextData);
+
+        return builder.build();
+    }
+
     @Override
     public void close() {
         if (logAppender != null) {
@@ -136,6 +153,7 @@ public class RollingFileAuditor implements Auditor {
         builder.withFileName(logDir.resolve(LOG_TXT_FILENAME).toString());
         builder.withFilePattern(logDir.resolve(LOG_TXT_FILEPATTERN).toString());
         builder.withPolicy(SizeBasedTriggeringPolicy.createPolicy("5M"));
+        builder.setImmediateFlush(false); // flushed once per batch of records.
         builder.setLayout(PatternLayout.newBuilder().withPattern(LOG_PATTERN).build());
         builder.withStrategy(
                 DefaultRolloverStrategy.newBuilder().withCompressionLevelStr(String.valueOf(Deflater.DEFAULT_COMPRESSION))
@@ -75,6 +75,7 @@ import io.bdeploy.jersey.actions.Action;
 import io.bdeploy.jersey.actions.ActionExecution;
 import io.bdeploy.jersey.actions.ActionService;
 import io.bdeploy.jersey.actions.ActionService.ActionHandle;
+import io.bdeploy.jersey.ws.change.ObjectChangeBroadcaster;
 import io.bdeploy.jersey.ws.change.ObjectChangeWebSocket;
 import io.bdeploy.logging.audit.RollingFileAuditor;
 import io.bdeploy.minion.job.CheckLatestGitHubReleaseJob;
@@ -84,6 +85,7 @@ import io.bdeploy.minion.job.SyncLdapUserGroupsJob;
 import io.bdeploy.minion.migration.SettingsConfigurationMigration;
 import io.bdeploy.minion.migration.SystemUserMigration;
 import io.bdeploy.minion.nodes.NodeManagerImpl;
+import io.bdeploy.minion.nodes.NodeStatusPublisher;
 import io.bdeploy.minion.plugin.PluginManagerImpl;
 import io.bdeploy.minion.user.UserDatabase;
 import io.bdeploy.minion.user.UserGroupDatabase;
@@ -132,6 +134,7 @@ public class MinionRoot extends LockableDatabase implements Minion, AutoCloseabl
     private SecretKeySpec encryptionKey;
 
     private ActionService actions;
+    private NodeStatusPublisher statusPublisher;
     private ActionHandle startupAction;
 
     public MinionRoot(Path root, ActivityReporter reporter) {
@@ -529,6 +532,10 @@ public class MinionRoot extends LockableDatabase implements Minion, AutoCloseabl
         auditor.close();
         nodeManager.close();
 
+        if (statusPublisher != null) {
+            statusPublisher.close();
+        }
+
         if (scheduler != null) {
             try {
                 scheduler.shutdown();
@@ -943,4 +950,12 @@ public class MinionRoot extends LockableDatabase implements Minion, AutoCloseabl
     public ActionService getActions() {
         return actions;
     }
+
+    /**
+     * Starts pushing the status of this node and its processes to subscribed masters.
+     */
+    public void createStatusPublisher(ObjectChangeBroadcaster bc) {
+        statusPublisher = new NodeStatusPublisher(bc, this::getSelfConfig);
+        processController.addStatusListener(statusPublisher::onProcessStatus);
+    }
 }
@@ -54,6 +54,7 @@ import io.bdeploy.minion.api.v1.PublicProductValidationResourceImpl;
 import io.bdeploy.minion.api.v1.PublicRootResourceImpl;
 import io.bdeploy.minion.cli.StartTool.MasterConfig;
 import io.bdeploy.minion.cli.shutdown.RemoteShutdownImpl;
+import io.bdeploy.minion.job.RepackHivesJob;
 import io.bdeploy.minion.plugin.VersionSorterServiceImpl;
 import io.bdeploy.minion.remote.jersey.CentralUpdateResourceImpl;
 import io.bdeploy.minion.remote.jersey.CommonDirectoryEntryResourceImpl;
@@ -217,7 +218,9 @@ public class StartTool extends ConfiguredCliTool<MasterConfig> {
         r.setRestartManager(new JerseyAwareMinionRestartManager(srv));
         r.setupServerTasks(r.getMode());
 
-        return registerCommonResources(srv, r, repo);
+        BHiveRegistry reg = registerCommonResources(srv, r, repo);
+        RepackHivesJob.create(r.getScheduler(), reg);
+        return reg;
     }
 
     public static void registerMasterResources(RegistrationTarget srv, BHiveRegistry reg, boolean webapp, MinionRoot minionRoot,
@@ -293,6 +296,10 @@ public class StartTool extends ConfiguredCliTool<MasterConfig> {
         ObjectChangeWebSocket ocws = new ObjectChangeWebSocket(srv.getKeyStore());
         srv.registerWebsocketApplication(ObjectChangeWebSocket.OCWS_PATH, ocws);
 
+        if (root.getMode() != MinionMode.CENTRAL) {
+            root.createStatusPublisher(ocws);
+        }
+
         srv.register(new MinionCommonBinder(root, ocws));
         srv.registerResource(r);
 
@@ -0,0 +1,87 @@
+package io.bdeploy.minion.job;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.quartz.CronScheduleBuilder;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.op.RepackOperation;
+import io.bdeploy.bhive.remote.jersey.BHiveRegistry;
+import io.bdeploy.common.util.FormatHelper;
+
+/**
+ * A job that moves loose objects into pack files for all registered hives which have packed storage enabled.
+ * <p>
+ * Packed storage is never enabled by this job, this has to be done once per hive using the 'repack' BHive CLI command.
+ */
+@DisallowConcurrentExecution
+public class RepackHivesJob implements Job {
+
+    private static final Logger log = LoggerFactory.getLogger(RepackHivesJob.class);
+
+    /** Default schedule for repack job - once a day at 3:30am, after the cleanup job. */
+    private static final String DEFAULT_REPACK_SCHEDULE = "0 30 3 * * ?";
+
+    private static final String REGISTRY = "registry";
+
+    /**
+     * Initializes the job that repacks all packed hives.
+     *
+     * @param scheduler the quartz scheduler
+     * @param registry the registry holding all hives served by this minion
+     */
+    public static void create(Scheduler scheduler, BHiveRegistry registry) {
+        JobBuilder jBuilder = JobBuilder.newJob(RepackHivesJob.class);
+        jBuilder.withIdentity("Repack", "Minion").withDescription("Repack BHives");
+        jBuilder.usingJobData(new JobDataMap(Collections.singletonMap(REGISTRY, registry)));
+
+        TriggerBuilder<Trigger> tBuilder = TriggerBuilder.newTrigger().withIdentity("Repack", "Minion");
+        tBuilder.withSchedule(CronScheduleBuilder.cronSchedule(DEFAULT_REPACK_SCHEDULE));
+
+        try {
+            JobDetail job = jBuilder.build();
+            Trigger trigger = tBuilder.build();
+            Date nextRun = scheduler.scheduleJob(job, trigger);
+            log.info("Job '{}' scheduled. Trigger '{}'. Next run '{}'.", job.getDescription(), DEFAULT_REPACK_SCHEDULE,
+                    FormatHelper.format(nextRun));
+        } catch (SchedulerException e) {
+            throw new IllegalStateException("Cannot schedule job", e);
+        }
+    }
+
+    @Override
+    public void execute(JobExecutionContext context) throws JobExecutionException {
+        BHiveRegistry registry = (BHiveRegistry) context.getMergedJobDataMap().get(REGISTRY);
+
+        List<Map.Entry<String, BHive>> hives = new ArrayList<>(registry.getAll().entrySet());
+
+        for (Map.Entry<String, BHive> entry : hives) {
+            try {
+                Long packed = entry.getValue().execute(new RepackOperation().setEnablePacking(false));
+                if (packed > 0) {
+                    log.info("Moved {} objects into packs in {}", packed, entry.getKey());
+                }
+            } catch (Exception e) {
+                log.warn("Cannot repack {}", entry.getKey(), e);
+            }
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 package io.bdeploy.minion.nodes;
 
+import java.time.Instant;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
@@ -18,6 +19,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.bdeploy.common.security.RemoteService;
+import io.bdeploy.common.util.JacksonHelper;
 import io.bdeploy.common.util.NamedDaemonThreadFactory;
 import io.bdeploy.common.util.VersionHelper;
 import io.bdeploy.interfaces.manifest.MinionManifest;
@@ -26,6 +28,10 @@ import io.bdeploy.interfaces.minion.MinionDto;
 import io.bdeploy.interfaces.minion.MinionStatusDto;
 import io.bdeploy.interfaces.remote.MinionStatusResource;
 import io.bdeploy.interfaces.remote.ResourceProvider;
+import io.bdeploy.jersey.JerseyClientFactory;
+import io.bdeploy.jersey.ws.change.client.ObjectChangeClientWebSocket;
+import io.bdeploy.jersey.ws.change.msg.ObjectChangeDto;
+import io.bdeploy.jersey.ws.change.msg.ObjectScope;
 import io.bdeploy.minion.MinionRoot;
 import io.bdeploy.ui.api.MinionMode;
 import io.bdeploy.ui.api.NodeManager;
@@ -43,6 +49,40 @@ public class NodeManagerImpl implements NodeManager, AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(NodeManagerImpl.class);
 
+    /** Interval in which nodes which do not push their status are polled */
+    private static final long POLL_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    /** Interval in which nodes which push their status are polled anyway, e.g. to update monitoring information */
+    private static final long PUSH_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(60);
+
+    /** The time after which a node which pushes its status is considered offline if no heartbeat has been received */
+    private static final long HEARTBEAT_TIMEOUT = NodeStatusPublisher.HEARTBEAT_INTERVAL * 3;
+
+    /**
+     * Tracks contact to a single node, either by polling or through a subscription to the status the node pushes.
+     */
+    private static final class NodeContact {
+
+        ObjectChangeClientWebSocket ws;
+        volatile long subscribed;
+        volatile long lastPush;
+        volatile long lastPoll;
+
+        /** The startup time of the node when it was detected that it does not push its status */
+        Instant noPush;
+
+        synchronized boolean isPushAlive(long now) {
+            return ws != null && ws.isOpen() && lastPush >= subscribed && now - lastPush < HEARTBEAT_TIMEOUT;
+        }
+
+        synchronized void unsubscribe() {
+            if (ws != null) {
+                ws.close();
+                ws = null;
+            }
+        }
+    }
+
     private MinionRoot root;
     private String self;
     private MinionConfiguration config;
@@ -51,6 +91,7 @@ public class NodeManagerImpl implements NodeManager, AutoCloseable {
 
     private final Map<String, Boolean> contactWarning = new ConcurrentHashMap<>();
     private final Map<String, MinionStatusDto> status = new ConcurrentHashMap<>();
+    private final Map<String, NodeContact> contacts = new ConcurrentHashMap<>();
     private final ScheduledExecutorService schedule = Executors
             .newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("Scheduled Node Update"));
 
@@ -78,7 +119,9 @@ public class NodeManagerImpl implements NodeManager, AutoCloseable {
 
         // initially, all nodes are marked as "warn on contact failure".
         this.config.entrySet().forEach(e -> this.contactWarning.put(e.getKey(), Boolean.TRUE));
-        this.schedule.scheduleAtFixedRate(this::fetchNodeStates, 0, 10, TimeUnit.SECONDS);
+
+        // nodes push their status once subscribed after the first successful contact, polling is the fallback.
+        this.schedule.scheduleWithFixedDelay(this::checkNodeStates, 0, 1, TimeUnit.SECONDS);
 
         if (initialFetch) {
             log.info("Synchronous initial state fetching in Node Manager...");
@@ -93,6 +136,7 @@ public class NodeManagerImpl implements NodeManager, AutoCloseable {
     public void close() {
         schedule.shutdownNow();
         contact.shutdownNow();
+        contacts.values().forEach(NodeContact::unsubscribe);
     }
 
     private void initialFetchNodeStates() {
@@ -120,20 +164,142 @@ public class NodeManagerImpl implements NodeManager, AutoCloseable {
         }
 
         for (String minion : config.values().keySet()) {
-            // fetch an existing request.
-            var existing = requests.get(minion);
+            requestNodeState(minion);
+        }
+    }
 
-            if (existing != null && !existing.isDone()) {
-                // something is already running - we don't start another one.
-                // best case: it finishes "soon" - worst case it is "stuck"
-                if (log.isDebugEnabled()) {
-                    log.debug("Status request to {} still running", minion);
+    /**
+     * Polls nodes which do not push their status, or which stopped pushing their status.
+     */
+    private void checkNodeStates() {
+        long now = System.currentTimeMillis();
+        for (String minion : config.values().keySet()) {
+            NodeContact nc = contacts.computeIfAbsent(minion, k -> new NodeContact());
+
+            if (nc.isPushAlive(now)) {
+                if (now - nc.lastPoll >= PUSH_POLL_INTERVAL) {
+                    requestNodeState(minion);
                 }
                 continue;
             }
 
-            // start async request to a single minion.
-            requests.put(minion, contact.submit(() -> fetchNodeState(minion)));
+            synchronized (nc) {
+                if (nc.ws != null && nc.lastPush >= nc.subscribed) {
+                    // the node pushed its status before, but the heartbeat is missing or the connection closed.
+                    nc.unsubscribe();
+                    if (now - nc.lastPush >= HEARTBEAT_TIMEOUT) {
+                        String reason = "No heartbeat since " + Instant.ofEpochMilli(nc.lastPush);
+                        onContactFailed(minion, config.getMinion(minion), reason);
+                    }
+                    requestNodeState(minion);
+                    continue;
+                }
+
+                if (nc.ws != null && now - nc.subscribed >= HEARTBEAT_TIMEOUT) {
+                    // subscribed, but never received anything, the node does not support pushing its status.
+                    log.info("Node {} does not push its status, falling back to polling", minion);
+                    nc.unsubscribe();
+                    MinionStatusDto msd = status.get(minion);
+                    nc.noPush = msd == null || msd.startup == null ? Instant.EPOCH : msd.startup;
+                }
+            }
+
+            if (now - nc.lastPoll >= POLL_INTERVAL) {
+                requestNodeState(minion);
+            }
+        }
+    }
+
+    private void requestNodeState(String minion) {
+        // fetch an existing request.
+        var existing = requests.get(minion);
+
+        if (existing != null && !existing.isDone()) {
+            // something is already running - we don't start another one.
+            // best case: it finishes "soon" - worst case it is "stuck"
+            if (log.isDebugEnabled()) {
+                log.debug("Status request to {} still running", minion);
+            }
+            return;
+        }
+
+        // start async request to a single minion.
+        requests.put(minion, contact.submit(() -> fetchNodeState(minion)));
+    }
+
+    /**
+     * Subscribes to the status pushed by the given node unless already subscribed or the node does not support it.
+     */
+    private void subscribe(String node, MinionDto mdto, MinionStatusDto msd) {
+        NodeContact nc = contacts.computeIfAbsent(node, k -> new NodeContact());
+        synchronized (nc) {
+            if (nc.noPush != null && (msd.startup == null || nc.noPush.equals(msd.startup))) {
+                return; // node has not been restarted (e.g. updated) since detecting that it cannot push.
+            }
+            nc.noPush = null;
+
+            if (nc.ws != null && nc.ws.isOpen()) {
+                return;
+            }
+            nc.unsubscribe();
+
+            try {
+                nc.subscribed = System.currentTimeMillis();
+                nc.ws = JerseyClientFactory.get(mdto.remote).getObjectChangeWebSocket(c -> onPushedState(node, nc, c));
+                nc.ws.subscribe(NodeStatusPublisher.STATUS_TYPE, ObjectScope.EMPTY);
+            } catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Cannot subscribe to status of {}", node, e);
+                }
+                nc.unsubscribe();
+            }
+        }
+    }
+
+    private void onPushedState(String node, NodeContact nc, ObjectChangeDto change) {
+        nc.lastPush = System.currentTimeMillis();
+
+        MinionStatusDto current = status.get(node);
+        if (current == null || current.offline) {
+            // recovered after the heartbeat was missing - fetch the full status.
+            requestNodeState(node);
+            return;
+        }
+
+        String pushedConfig = change.details.get(NodeStatusPublisher.STATUS_CONFIG);
+        if (pushedConfig != null) {
+            try {
+                MinionDto pushed = JacksonHelper.getDefaultJsonObjectMapper().readValue(pushedConfig, MinionDto.class);
+                MinionStatusDto msd = new MinionStatusDto();
+                msd.config = pushed;
+                msd.startup = current.startup;
+                msd.monitoring = current.monitoring;
+                msd.lastRoundtrip = current.lastRoundtrip;
+                status.put(node, msd);
+                updateVersion(node, pushed);
+            } catch (Exception e) {
+                log.warn("Cannot read status pushed by {}", node, e);
+            }
+        }
+
+        if (NodeStatusPublisher.EVENT_PROCESS.equals(change.details.get(NodeStatusPublisher.STATUS_EVENT)) && changes != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Process {} of {} on {} changed to {}", change.details.get(NodeStatusPublisher.STATUS_APPLICATION),
+                        change.details.get(NodeStatusPublisher.STATUS_INSTANCE), node,
+                        change.details.get(NodeStatusPublisher.STATUS_STATE));
+            }
+            changes.change(ObjectChangeType.NODES,
+                    Map.of(ObjectChangeDetails.NODE, node, ObjectChangeDetails.CHANGE_HINT, ObjectChangeHint.STATE));
+        }
+    }
+
+    private void updateVersion(String node, MinionDto current) {
+        MinionDto mdto = config.getMinion(node);
+
+        // we compare whether some relevant information has changed and schedule saving in case it has.
+        if (mdto != null && current != null && !VersionHelper.equals(mdto.version, current.version)) {
+            mdto.version = current.version;
+            scheduleSave(); // schedule immediate when configuration changes.
         }
     }
 
@@ -162,6 +328,7 @@ public class NodeManagerImpl implements NodeManager, AutoCloseable {
 
                 msd.lastRoundtrip = duration;
                 status.put(node, msd);
+                contacts.computeIfAbsent(node, k -> new NodeContact()).lastPoll = System.currentTimeMillis();
 
                 // previously inhibited contact warning means node was not reachable. log recovery
                 if (Boolean.FALSE.equals(contactWarning.get(node))) {
@@ -179,10 +346,11 @@ public class NodeManagerImpl implements NodeManager, AutoCloseable {
                             msd.config == null ? "unknown" : msd.config.version, msd.infoText);
                 }
 
-                // we compare whether some relevant information has changed and schedule saving in case it has.
-                if (!VersionHelper.equals(mdto.version, msd.config.version)) {
-                    mdto.version = msd.config.version;
-                    scheduleSave(); // schedule immediate when configuration changes.
+                updateVersion(node, msd.config);
+
+                if (root.getMode() != MinionMode.CENTRAL) {
+                    // central only verifies connectivity, status is not tracked continuously.
+                    subscribe(node, mdto, msd);
                 }
             }
         } catch (Exception e) {
@@ -190,20 +358,29 @@ public class NodeManagerImpl implements NodeManager, AutoCloseable {
                 log.debug("Failed to contact {}", node, e);
             }
 
+            NodeContact nc = contacts.get(node);
+            if (nc != null) {
+                nc.lastPoll = System.currentTimeMillis();
+            }
+
             if (e instanceof ProcessingException x) {
-                status.put(node, MinionStatusDto.createOffline(mdto, x.getCause().toString()));
+                onContactFailed(node, mdto, x.getCause().toString());
             } else {
-                status.put(node, MinionStatusDto.createOffline(mdto, e.toString()));
+                onContactFailed(node, mdto, e.toString());
             }
+        }
+    }
 
-            // log it, we don't want to hold status in the futures.
-            if (Boolean.TRUE.equals(contactWarning.get(node))) {
-                contactWarning.put(node, Boolean.FALSE); // no warning, contact failed.
-                log.warn("Failed to fetch node {} status: {}", node, e.toString());
-                if (changes != null) {
-                    changes.change(ObjectChangeType.NODES,
-                            Map.of(ObjectChangeDetails.NODE, node, ObjectChangeDetails.CHANGE_HINT, ObjectChangeHint.STATE));
-                }
+    private void onContactFailed(String node, MinionDto mdto, String reason) {
+        status.put(node, MinionStatusDto.createOffline(mdto, reason));
+
+        // log it, we don't want to hold status in the futures.
+        if (Boolean.TRUE.equals(contactWarning.get(node))) {
+            contactWarning.put(node, Boolean.FALSE); // no warning, contact failed.
+            log.warn("Failed to fetch node {} status: {}", node, reason);
+            if (changes != null) {
+                changes.change(ObjectChangeType.NODES,
+                        Map.of(ObjectChangeDetails.NODE, node, ObjectChangeDetails.CHANGE_HINT, ObjectChangeHint.STATE));
             }
         }
     }
@@ -299,6 +476,12 @@ public class NodeManagerImpl implements NodeManager, AutoCloseable {
         m.remote = node;
         scheduleSave();
 
+        // the subscription still uses the previous remote.
+        NodeContact nc = contacts.get(name);
+        if (nc != null) {
+            nc.unsubscribe();
+        }
+
         log.info("Updating state for edited node {}", name);
         fetchNodeState(name);
     }
@@ -310,6 +493,11 @@ public class NodeManagerImpl implements NodeManager, AutoCloseable {
         config.removeMinion(name);
         status.remove(name);
         contactWarning.remove(name);
+
+        NodeContact nc = contacts.remove(name);
+        if (nc != null) {
+            nc.unsubscribe();
+        }
         scheduleSave();
     }
 
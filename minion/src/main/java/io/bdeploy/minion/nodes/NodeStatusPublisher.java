@@ -0,0 +1,119 @@
+package io.bdeploy.minion.nodes;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import io.bdeploy.common.util.JacksonHelper;
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+import io.bdeploy.interfaces.configuration.pcu.ProcessStatusDto;
+import io.bdeploy.interfaces.minion.MinionDto;
+import io.bdeploy.jersey.ws.change.ObjectChangeBroadcaster;
+import io.bdeploy.jersey.ws.change.msg.ObjectChangeDto;
+import io.bdeploy.jersey.ws.change.msg.ObjectEvent;
+import io.bdeploy.jersey.ws.change.msg.ObjectScope;
+
+/**
+ * Pushes the status of this node to subscribed masters using the object change web socket.
+ * <p>
+ * A heartbeat is sent periodically, which allows the master to detect a lost node without polling. The configuration of the
+ * node is only included if it changed since it was last sent, process state changes are sent immediately.
+ */
+public class NodeStatusPublisher implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(NodeStatusPublisher.class);
+
+    /** The object change type used for all node status events */
+    public static final String STATUS_TYPE = "NODE_STATUS";
+
+    /** The kind of event, one of {@link #EVENT_HEARTBEAT} or {@link #EVENT_PROCESS} */
+    public static final String STATUS_EVENT = "event";
+
+    /** The serialized {@link MinionDto} of the node, only present if it changed */
+    public static final String STATUS_CONFIG = "config";
+
+    public static final String STATUS_INSTANCE = "instance";
+    public static final String STATUS_APPLICATION = "application";
+    public static final String STATUS_STATE = "state";
+
+    public static final String EVENT_HEARTBEAT = "HEARTBEAT";
+    public static final String EVENT_PROCESS = "PROCESS";
+
+    /** Interval in which heartbeats are sent */
+    public static final long HEARTBEAT_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+
+    private final ObjectChangeBroadcaster bc;
+    private final Supplier<MinionDto> config;
+    private final ScheduledExecutorService sender = Executors
+            .newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("Node Status Publisher"));
+
+    /** The last sent configuration, only accessed from the sender thread */
+    private String lastConfig;
+
+    public NodeStatusPublisher(ObjectChangeBroadcaster bc, Supplier<MinionDto> config) {
+        this.bc = bc;
+        this.config = config;
+        this.sender.scheduleAtFixedRate(this::heartbeat, 0, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void heartbeat() {
+        Map<String, String> details = new TreeMap<>();
+        details.put(STATUS_EVENT, EVENT_HEARTBEAT);
+        addConfigIfChanged(details);
+        send(details);
+    }
+
+    /**
+     * Immediately publishes the given process status.
+     */
+    public void onProcessStatus(ProcessStatusDto status) {
+        sender.execute(() -> {
+            Map<String, String> details = new TreeMap<>();
+            details.put(STATUS_EVENT, EVENT_PROCESS);
+            details.put(STATUS_INSTANCE, status.instanceId);
+            details.put(STATUS_APPLICATION, status.appId);
+            details.put(STATUS_STATE, status.processState.name());
+            addConfigIfChanged(details);
+            send(details);
+        });
+    }
+
+    private void addConfigIfChanged(Map<String, String> details) {
+        MinionDto current = config.get();
+        if (current == null) {
+            return;
+        }
+
+        try {
+            String serialized = JacksonHelper.getDefaultJsonObjectMapper().writeValueAsString(current);
+            if (!serialized.equals(lastConfig)) {
+                details.put(STATUS_CONFIG, serialized);
+                lastConfig = serialized;
+            }
+        } catch (JsonProcessingException e) {
+            log.warn("Cannot serialize node configuration", e);
+        }
+    }
+
+    private void send(Map<String, String> details) {
+        try {
+            bc.send(new ObjectChangeDto(STATUS_TYPE, ObjectScope.EMPTY, ObjectEvent.CHANGED, details));
+        } catch (Exception e) {
+            log.warn("Cannot publish node status", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        sender.shutdownNow();
+    }
+
+}
@@ -353,7 +353,7 @@ public class PluginManagerImpl implements PluginManager {
 
         @Override
         public Path call() throws Exception {
-            return getObjectManager().db(db -> db.getObjectFile(object));
+            return getObjectManager().db(db -> db.getLooseObjectFile(object));
         }
 
         public FindFileOperation setObject(ObjectId id) {
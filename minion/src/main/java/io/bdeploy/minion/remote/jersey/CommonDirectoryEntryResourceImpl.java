@@ -1,14 +1,20 @@
 package io.bdeploy.minion.remote.jersey;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -20,6 +26,7 @@ import com.j256.simplemagic.ContentInfo;
 import com.j256.simplemagic.ContentInfoUtil;
 
 import io.bdeploy.common.util.PathHelper;
+import io.bdeploy.common.util.Threads;
 import io.bdeploy.interfaces.directory.EntryChunk;
 import io.bdeploy.interfaces.directory.RemoteDirectoryEntry;
 import io.bdeploy.interfaces.remote.CommonDirectoryEntryResource;
@@ -40,42 +47,113 @@ public class CommonDirectoryEntryResourceImpl implements CommonDirectoryEntryRes
     @Inject
     private MinionRoot root;
 
+    /** Interval in which a followed entry is checked for new content */
+    private static final long FOLLOW_POLL_INTERVAL = 250;
+
+    /** Following an entry stops if there was no new content for this long. The client is expected to reconnect */
+    private static final long FOLLOW_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    /** The maximum amount of bytes sent at once while following an entry */
+    private static final long FOLLOW_CHUNK_SIZE = 1024L * 1024;
+
     @Override
     public EntryChunk getEntryContent(RemoteDirectoryEntry entry, long offset, long limit) {
         // determine file first...
         Path actual = getEntryPath(root, entry);
 
-        if (limit == 0) {
-            limit = Long.MAX_VALUE;
+        try (FileChannel channel = FileChannel.open(actual, StandardOpenOption.READ)) {
+            long currentSize = channel.size();
+            if (currentSize < offset) {
+                // file has been reset.
+                return EntryChunk.ROLLOVER_CHUNK;
+            } else if (currentSize == offset) {
+                return null;
+            }
+
+            long available = currentSize - offset;
+            boolean limited = limit > 0 && limit < available;
+            long length = limited ? limit : available;
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new WebApplicationException("Chunk of " + actual + " too large, use a limit", Status.BAD_REQUEST);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) == -1) {
+                    break; // truncated while reading.
+                }
+            }
+
+            int end = buffer.position();
+            if (limited) {
+                // don't split a character, the rest is part of the next chunk.
+                end = getUtf8Boundary(buffer.array(), end);
+            }
+
+            byte[] content = end == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), end);
+            return new EntryChunk(content, offset, offset + end);
+        } catch (IOException e) {
+            throw new WebApplicationException("Cannot read chunk of " + actual, e);
+        }
+    }
+
+    /**
+     * @return the length of the content without a trailing incomplete UTF-8 sequence. If the content consists of only an
+     *         incomplete sequence (or is not UTF-8 at all), the length is returned unchanged.
+     */
+    static int getUtf8Boundary(byte[] content, int length) {
+        for (int i = length - 1; i >= Math.max(0, length - 4); --i) {
+            int b = content[i] & 0xFF;
+            if (b < 0x80) {
+                return length; // ASCII, nothing incomplete.
+            }
+            if (b >= 0xC0) {
+                // leading byte of a sequence.
+                int expected = b >= 0xF0 ? 4 : (b >= 0xE0 ? 3 : 2);
+                return (length - i >= expected || i == 0) ? length : i;
+            }
         }
+        return length;
+    }
 
-        File file = actual.toFile();
-        long currentSize = file.length();
-        if (currentSize < offset) {
-            // file has been reset.
-            return EntryChunk.ROLLOVER_CHUNK;
-        } else if (currentSize > offset) {
-            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-                raf.seek(offset);
-                try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-                    int b;
-                    long c = 0;
-                    while ((b = raf.read()) != -1) {
-                        if (c++ >= limit) {
-                            break;
-                        }
+    @Override
+    public Response followEntry(RemoteDirectoryEntry entry, long offset) {
+        Path actual = getEntryPath(root, entry);
+        return Response.ok((StreamingOutput) output -> follow(actual, offset, output), MediaType.APPLICATION_OCTET_STREAM)
+                .build();
+    }
 
-                        baos.write(b);
-                    }
+    private static void follow(Path file, long offset, OutputStream output) throws IOException {
+        WritableByteChannel target = Channels.newChannel(output);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+            long position = offset;
+            long lastContent = System.currentTimeMillis();
 
-                    return new EntryChunk(baos.toByteArray(), offset, raf.getFilePointer());
+            while (true) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.size() < position || !Objects.equals(fileKey, attributes.fileKey())) {
+                    // file has been reset or replaced, the client needs to start over.
+                    return;
                 }
-            } catch (IOException e) {
-                throw new WebApplicationException("Cannot read chunk of " + actual, e);
+
+                long size = channel.size();
+                if (size > position) {
+                    long num = channel.transferTo(position, Math.min(size - position, FOLLOW_CHUNK_SIZE), target);
+                    position += num;
+                    output.flush();
+                    lastContent = System.currentTimeMillis();
+                } else if (System.currentTimeMillis() - lastContent > FOLLOW_IDLE_TIMEOUT
+                        || !Threads.sleep(FOLLOW_POLL_INTERVAL)) {
+                    return;
+                }
+            }
+        } catch (IOException ioe) {
+            // the client went away, or the file was removed.
+            if (log.isDebugEnabled()) {
+                log.debug("Stopped following {}", file, ioe);
             }
         }
-
-        return null; // offset == size...
     }
 
     static Path getEntryPath(MinionRoot root, RemoteDirectoryEntry entry) {
@@ -90,7 +90,6 @@ import io.bdeploy.interfaces.manifest.attributes.CustomAttributesRecord;
 import io.bdeploy.interfaces.manifest.banner.InstanceBannerRecord;
 import io.bdeploy.interfaces.manifest.history.InstanceManifestHistory;
 import io.bdeploy.interfaces.manifest.history.InstanceManifestHistory.Action;
-import io.bdeploy.interfaces.manifest.history.InstanceManifestHistoryRecord;
 import io.bdeploy.interfaces.manifest.history.runtime.MasterRuntimeHistoryDto;
 import io.bdeploy.interfaces.manifest.state.InstanceOverallStateRecord;
 import io.bdeploy.interfaces.manifest.state.InstanceOverallStateRecord.OverallStatus;
@@ -106,6 +105,7 @@ import io.bdeploy.interfaces.remote.MasterSystemResource;
 import io.bdeploy.interfaces.remote.NodeDeploymentResource;
 import io.bdeploy.interfaces.remote.NodeProcessResource;
 import io.bdeploy.interfaces.remote.ResourceProvider;
+import io.bdeploy.jersey.JerseyStreamingHelper;
 import io.bdeploy.jersey.JerseyWriteLockService.LockingResource;
 import io.bdeploy.jersey.JerseyWriteLockService.WriteLock;
 import io.bdeploy.jersey.actions.ActionFactory;
@@ -113,6 +113,7 @@ import io.bdeploy.minion.MinionRoot;
 import io.bdeploy.ui.RequestScopedParallelOperationsService;
 import io.bdeploy.ui.api.NodeManager;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.container.ResourceContext;
 import jakarta.ws.rs.core.Context;
@@ -623,8 +624,7 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
         // Keep incrementing next until number with no historical records is found
         for (int i = 0; i < 100; i++) {
             Manifest.Key key = new Manifest.Key(rootName, next.toString());
-            List<InstanceManifestHistoryRecord> events = new InstanceManifestHistory(key, hive).getFullHistory();
-            if (events.isEmpty()) {
+            if (new InstanceManifestHistory(key, hive).isEmpty()) {
                 return next.toString();
             }
             next++;
@@ -822,6 +822,14 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
                 offset, limit);
     }
 
+    @Override
+    public Response followEntry(String nodeName, RemoteDirectoryEntry entry, long offset) {
+        // the default relaying of a response buffers content, which would delay appended content.
+        CommonDirectoryEntryResource node = nodes.getNodeResourceIfOnlineOrThrow(nodeName, CommonDirectoryEntryResource.class,
+                context);
+        return JerseyStreamingHelper.relayFlushing(node.followEntry(entry, offset));
+    }
+
     @Override
     public Response getEntryStream(String nodeName, RemoteDirectoryEntry entry) {
         return nodes.getNodeResourceIfOnlineOrThrow(nodeName, CommonDirectoryEntryResource.class, context).getEntryStream(entry);
@@ -1072,6 +1080,63 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
         return instanceStatus;
     }
 
+    /**
+     * Fetches the status of multiple instances from all nodes, using a single request per node instead of one per instance.
+     *
+     * @param instanceIds the instances to query.
+     * @return the status of each given instance. Key = instance ID.
+     */
+    private Map<String, InstanceStatusDto> getStatus(Collection<String> instanceIds) {
+        Map<String, InstanceStatusDto> result = new TreeMap<>();
+        for (String instanceId : instanceIds) {
+            result.put(instanceId, new InstanceStatusDto(instanceId));
+        }
+        if (result.isEmpty()) {
+            return result;
+        }
+
+        List<String> ids = new ArrayList<>(result.keySet());
+        List<Runnable> actions = new ArrayList<>();
+        for (String nodeName : nodes.getAllNodeNames()) {
+            MinionDto node = nodes.getNodeConfigIfOnline(nodeName);
+            if (node == null) {
+                continue; // don't log to avoid flooding - node manager will log once.
+            }
+
+            actions.add(() -> {
+                NodeProcessResource spc = ResourceProvider.getVersionedResource(node.remote, NodeProcessResource.class, context);
+                try {
+                    for (Map.Entry<String, InstanceNodeStatusDto> entry : getNodeStatus(spc, ids).entrySet()) {
+                        InstanceStatusDto instanceStatus = result.get(entry.getKey());
+                        if (instanceStatus != null) {
+                            instanceStatus.add(nodeName, entry.getValue());
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("Cannot fetch process status of {}", nodeName);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Exception:", e);
+                    }
+                }
+            });
+        }
+        rspos.runAndAwaitAll("Node-Process-Status", actions, hive.getTransactions());
+        return result;
+    }
+
+    private static Map<String, InstanceNodeStatusDto> getNodeStatus(NodeProcessResource spc, List<String> instanceIds) {
+        try {
+            return spc.getStatus(instanceIds);
+        } catch (NotFoundException e) {
+            // node does not support bulk queries yet, query each instance instead.
+            Map<String, InstanceNodeStatusDto> result = new TreeMap<>();
+            for (String instanceId : instanceIds) {
+                result.put(instanceId, spc.getStatus(instanceId));
+            }
+            return result;
+        }
+    }
+
     @Override
     public ProcessDetailDto getProcessDetails(String instanceId, String appId) {
         try (var handle = af.run(Actions.READ_PROCESS_STATUS, name, instanceId, appId)) {
@@ -1185,17 +1250,23 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
         Map<String, MinionStatusDto> nodeStatus = nodes.getAllNodeStatus();
 
         try (var handle = af.run(Actions.UPDATE_OVERALL_STATUS, name)) {
+            List<InstanceManifest> active = new ArrayList<>();
             for (Key imKey : imKeys) {
                 InstanceManifest im = InstanceManifest.of(hive, imKey);
 
                 if (im.getState(hive).read().activeTag == null) {
                     continue; // no active tag means there cannot be any status.
                 }
+                active.add(im);
+            }
 
-                InstanceConfiguration config = im.getConfiguration();
+            // get all node status of the responsible master, one request per node for all instances.
+            List<String> activeIds = active.stream().map(im -> im.getConfiguration().id).toList();
+            Map<String, InstanceStatusDto> allProcessStatus = getStatus(activeIds);
 
-                // get all node status of the responsible master.
-                InstanceStatusDto processStatus = getStatus(config.id);
+            for (InstanceManifest im : active) {
+                InstanceConfiguration config = im.getConfiguration();
+                InstanceStatusDto processStatus = allProcessStatus.get(config.id);
                 List<InstanceNodeConfigurationDto> nodeConfigs = readExistingNodeConfigs(im);
 
                 List<String> stoppedApps = new ArrayList<>();
@@ -1218,6 +1289,11 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
                     }
 
                     InstanceNodeStatusDto statusOnNode = processStatus.node2Applications.get(nodeCfg.nodeName);
+                    if (statusOnNode == null) {
+                        overallStatus = InstanceOverallStateRecord.OverallStatus.WARNING;
+                        overallStatusMessages.add("Cannot fetch process status of node " + nodeCfg.nodeName);
+                        continue;
+                    }
 
                     for (var app : nodeCfg.nodeConfiguration.applications) {
                         if (app.processControl.startType != ApplicationStartType.INSTANCE) {
@@ -1324,7 +1400,7 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
     }
 
     @Override
-    public VerifyOperationResultDto verify(String instanceId, String appId) {
+    public VerifyOperationResultDto verify(String instanceId, String appId, boolean deep) {
         Map.Entry<String, Manifest.Key> node = getInstanceNodeManifest(instanceId, appId);
         InstanceNodeManifest inm = InstanceNodeManifest.of(hive, node.getValue());
         String item = inm.getConfiguration().applications.stream().filter(a -> a.id.equals(appId))
@@ -1332,7 +1408,7 @@ public class MasterNamedResourceImpl implements MasterNamedResource {
         try (var handle = af.run(Actions.VERIFY_APPLICATION, null, null, item)) {
             NodeDeploymentResource ndr = nodes.getNodeResourceIfOnlineOrThrow(node.getKey(), NodeDeploymentResource.class,
                     context);
-            return ndr.verify(appId, node.getValue());
+            return ndr.verify(appId, deep, node.getValue());
         }
     }
 
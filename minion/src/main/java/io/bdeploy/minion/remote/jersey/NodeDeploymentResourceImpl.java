@@ -316,8 +316,8 @@ public class NodeDeploymentResourceImpl implements NodeDeploymentResource {
     }
 
     @Override
-    public VerifyOperationResultDto verify(String applicationId, Manifest.Key nodeKey) {
-        return getInstanceNodeController(nodeKey).verify(applicationId);
+    public VerifyOperationResultDto verify(String applicationId, boolean deep, Manifest.Key nodeKey) {
+        return getInstanceNodeController(nodeKey).verify(applicationId, deep);
     }
 
     @Override
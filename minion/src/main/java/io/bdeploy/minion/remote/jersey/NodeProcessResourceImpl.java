@@ -3,6 +3,7 @@ package io.bdeploy.minion.remote.jersey;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 
 import io.bdeploy.bhive.BHive;
 import io.bdeploy.bhive.model.Manifest.Key;
@@ -104,6 +105,17 @@ public class NodeProcessResourceImpl implements NodeProcessResource {
         return instanceController.getStatus();
     }
 
+    @Override
+    public Map<String, InstanceNodeStatusDto> getStatus(List<String> instanceIds) {
+        Map<String, InstanceNodeStatusDto> result = root.getProcessController().getStatus(instanceIds);
+
+        // same as querying a single unknown instance.
+        for (String instanceId : instanceIds) {
+            result.computeIfAbsent(instanceId, k -> new InstanceNodeStatusDto());
+        }
+        return result;
+    }
+
     @Override
     public ProcessDetailDto getProcessDetails(String instanceId, String appId) {
         MinionProcessController processController = root.getProcessController();
@@ -6,6 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -33,6 +34,7 @@ import io.bdeploy.interfaces.remote.MasterRootResource;
 import io.bdeploy.minion.MinionRoot;
 import io.bdeploy.minion.TestFactory;
 import io.bdeploy.minion.TestMinion;
+import jakarta.ws.rs.core.Response;
 
 @ExtendWith(TestMinion.class)
 @ExtendWith(TestHive.class)
@@ -124,6 +126,25 @@ class DataFileTest {
 
         chunk = master.getNamedMaster("demo").getEntryContent("master", sub, 6 + System.lineSeparator().length(), 6);
         assertArrayEquals("Line 2".getBytes(StandardCharsets.UTF_8), chunk.content);
+
+        // a limit within a character ends the chunk before the character.
+        Files.write(testFile2, "a\u00e4".getBytes(StandardCharsets.UTF_8));
+        chunk = master.getNamedMaster("demo").getEntryContent("master", sub, 0, 2);
+        assertArrayEquals("a".getBytes(StandardCharsets.UTF_8), chunk.content);
+        assertEquals(1, chunk.endPointer);
+
+        chunk = master.getNamedMaster("demo").getEntryContent("master", sub, chunk.endPointer, 2);
+        assertArrayEquals("\u00e4".getBytes(StandardCharsets.UTF_8), chunk.content);
+
+        // following pushes appended content.
+        Files.write(testFile2, "Line 1".getBytes(StandardCharsets.UTF_8));
+        try (Response rs = master.getNamedMaster("demo").followEntry("master", sub, 0);
+                InputStream is = rs.readEntity(InputStream.class)) {
+            assertArrayEquals("Line 1".getBytes(StandardCharsets.UTF_8), is.readNBytes(6));
+
+            Files.write(testFile2, "Line 2".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            assertArrayEquals("Line 2".getBytes(StandardCharsets.UTF_8), is.readNBytes(6));
+        }
     }
 
 }
@@ -11,6 +11,8 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.regex.Pattern;
 
@@ -39,6 +41,7 @@ import io.bdeploy.common.util.Threads;
 import io.bdeploy.common.util.UuidHelper;
 import io.bdeploy.interfaces.InstanceImportExportHelper;
 import io.bdeploy.interfaces.cleanup.CleanupGroup;
+import io.bdeploy.interfaces.configuration.pcu.InstanceNodeStatusDto;
 import io.bdeploy.interfaces.configuration.pcu.InstanceStatusDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessDetailDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessState;
@@ -48,9 +51,13 @@ import io.bdeploy.interfaces.directory.RemoteDirectory;
 import io.bdeploy.interfaces.directory.RemoteDirectoryEntry;
 import io.bdeploy.interfaces.manifest.InstanceManifest;
 import io.bdeploy.interfaces.manifest.InstanceNodeManifest;
+import io.bdeploy.interfaces.manifest.state.InstanceOverallStateRecord;
+import io.bdeploy.interfaces.manifest.state.InstanceOverallStateRecord.OverallStatus;
 import io.bdeploy.interfaces.remote.CommonRootResource;
 import io.bdeploy.interfaces.remote.MasterRootResource;
 import io.bdeploy.interfaces.remote.NodeCleanupResource;
+import io.bdeploy.interfaces.remote.NodeProcessResource;
+import io.bdeploy.interfaces.remote.ResourceProvider;
 import io.bdeploy.interfaces.variables.DeploymentPathProvider.SpecialDirectory;
 import io.bdeploy.launcher.cli.LauncherCli;
 import io.bdeploy.launcher.cli.LauncherTool;
@@ -60,6 +67,7 @@ import io.bdeploy.minion.MinionRoot;
 import io.bdeploy.minion.TestFactory;
 import io.bdeploy.minion.TestMinion;
 import io.bdeploy.ui.api.CleanupResource;
+import io.bdeploy.ui.api.InstanceGroupResource;
 import io.bdeploy.ui.api.Minion;
 
 @ExtendWith(TestMinion.class)
@@ -73,7 +81,7 @@ class MinionDeployTest {
     @Test
     @SlowTest
     void testRemoteDeploy(BHive local, MasterRootResource master, CommonRootResource common, CleanupResource cr,
-            RemoteService remote, @TempDir Path tmp, ActivityReporter reporter, MinionRoot mr)
+            RemoteService remote, @TempDir Path tmp, ActivityReporter reporter, MinionRoot mr, InstanceGroupResource igr)
             throws IOException, InterruptedException {
         SortedMap<Key, ObjectId> inventoryStart = null;
         try (RemoteBHive rbh = RemoteBHive.forService(remote, JerseyRemoteBHive.DEFAULT_NAME, reporter)) {
@@ -119,6 +127,23 @@ class MinionDeployTest {
         assertTrue(status.isAppRunningOrScheduled("app"));
         assertEquals(ProcessState.RUNNING, status.node2Applications.get("master").getStatus("app").processState);
 
+        // status of multiple instances can be queried from a node at once.
+        NodeProcessResource npr = ResourceProvider.getVersionedResource(remote, NodeProcessResource.class, null);
+        Map<String, InstanceNodeStatusDto> bulk = npr.getStatus(List.of(instanceId, "unknown"));
+        assertEquals(Set.of(instanceId, "unknown"), bulk.keySet());
+        assertEquals(ProcessState.RUNNING, bulk.get(instanceId).getStatus("app").processState);
+        assertFalse(bulk.get("unknown").isAppDeployed("app"));
+
+        // no instances given queries all instances deployed to the node.
+        Map<String, InstanceNodeStatusDto> all = npr.getStatus(List.of());
+        assertEquals(ProcessState.RUNNING, all.get(instanceId).getStatus("app").processState);
+
+        // the overall status is calculated from the bulk status. the only application is started manually.
+        master.getNamedMaster("demo").updateOverallStatus();
+        InstanceOverallStateRecord overall = igr.getInstanceResource("demo").read(instanceId).overallState;
+        assertEquals(OverallStatus.STOPPED, overall.status);
+        assertTrue(overall.messages.isEmpty());
+
         ProcessDetailDto details = master.getNamedMaster("demo").getProcessDetailsFromNode(instanceId, "app", "master");
         assertNotNull(details);
         assertEquals(ProcessState.RUNNING, details.status.processState);
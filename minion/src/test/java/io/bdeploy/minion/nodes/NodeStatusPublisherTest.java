@@ -0,0 +1,36 @@
+package io.bdeploy.minion.nodes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.bdeploy.common.security.RemoteService;
+import io.bdeploy.jersey.JerseyClientFactory;
+import io.bdeploy.jersey.ws.change.client.ObjectChangeClientWebSocket;
+import io.bdeploy.jersey.ws.change.msg.ObjectChangeDto;
+import io.bdeploy.jersey.ws.change.msg.ObjectScope;
+import io.bdeploy.minion.TestMinion;
+
+@ExtendWith(TestMinion.class)
+class NodeStatusPublisherTest {
+
+    @Test
+    void heartbeat(RemoteService remote) throws Exception {
+        BlockingQueue<ObjectChangeDto> received = new LinkedBlockingQueue<>();
+        try (ObjectChangeClientWebSocket ws = JerseyClientFactory.get(remote).getObjectChangeWebSocket(received::add)) {
+            ws.subscribe(NodeStatusPublisher.STATUS_TYPE, ObjectScope.EMPTY);
+
+            ObjectChangeDto change = received.poll(NodeStatusPublisher.HEARTBEAT_INTERVAL * 3, TimeUnit.MILLISECONDS);
+            assertNotNull(change);
+            assertEquals(NodeStatusPublisher.STATUS_TYPE, change.type);
+            assertEquals(NodeStatusPublisher.EVENT_HEARTBEAT, change.details.get(NodeStatusPublisher.STATUS_EVENT));
+        }
+    }
+
+}
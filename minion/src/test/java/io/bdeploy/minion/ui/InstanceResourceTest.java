@@ -37,6 +37,7 @@ import io.bdeploy.interfaces.manifest.InstanceManifest;
 import io.bdeploy.interfaces.manifest.InstanceManifest.Builder;
 import io.bdeploy.interfaces.manifest.InstanceNodeManifest;
 import io.bdeploy.interfaces.manifest.ProductManifest;
+import io.bdeploy.interfaces.manifest.banner.InstanceBannerRecord;
 import io.bdeploy.interfaces.remote.ResourceProvider;
 import io.bdeploy.minion.TestFactory;
 import io.bdeploy.minion.TestMinion;
@@ -45,6 +46,7 @@ import io.bdeploy.ui.api.InstanceResource;
 import io.bdeploy.ui.api.Minion;
 import io.bdeploy.ui.api.MinionMode;
 import io.bdeploy.ui.api.NodeManagementResource;
+import io.bdeploy.ui.dto.InstanceDto;
 import io.bdeploy.ui.dto.InstanceNodeConfigurationListDto;
 import io.bdeploy.ui.dto.InstanceVersionDto;
 import io.bdeploy.ui.dto.NodeAttachDto;
@@ -305,6 +307,58 @@ class InstanceResourceTest {
         assertThrows(NotFoundException.class, () -> res.readVersion(instance.id, "3"));
     }
 
+    @Test
+    void listChanges(InstanceGroupResource root, RemoteService remote, @TempDir Path tmp) throws IOException {
+        addNodes(remote);
+
+        InstanceGroupConfiguration group = TestFactory.createInstanceGroup("Demo");
+        root.create(group);
+        ProductManifest product = TestFactory.pushProduct(group.name, remote, tmp);
+
+        InstanceResource res = root.getInstanceResource(group.name);
+        InstanceConfiguration first = TestFactory.createInstanceConfig("First", product);
+        InstanceConfiguration second = TestFactory.createInstanceConfig("Second", product);
+        res.create(first, null);
+        res.create(second, null);
+
+        List<InstanceDto> list = res.list();
+        assertEquals(2, list.size());
+        assertEquals("First", find(list, first.id).instanceConfiguration.name);
+        assertEquals("1", find(list, first.id).instance.getTag());
+
+        // a new version of an instance replaces the listed one.
+        first.name = "First Modified";
+        res.update(first.id, new InstanceUpdateDto(new InstanceConfigurationDto(first, null), null), null, "1");
+
+        list = res.list();
+        assertEquals(2, list.size());
+        assertEquals("First Modified", find(list, first.id).instanceConfiguration.name);
+        assertEquals("2", find(list, first.id).instance.getTag());
+        assertEquals("Second", find(list, second.id).instanceConfiguration.name);
+
+        // changes to meta manifests of an instance are listed as well.
+        InstanceBannerRecord banner = new InstanceBannerRecord();
+        banner.text = "Maintenance";
+        res.updateBanner(second.id, banner);
+
+        list = res.list();
+        assertEquals("Maintenance", find(list, second.id).banner.text);
+        assertNull(find(list, first.id).banner);
+
+        banner.text = "Done";
+        res.updateBanner(second.id, banner);
+        assertEquals("Done", find(res.list(), second.id).banner.text);
+
+        res.delete(first.id);
+        list = res.list();
+        assertEquals(1, list.size());
+        assertEquals(second.id, list.get(0).instanceConfiguration.id);
+    }
+
+    private static InstanceDto find(List<InstanceDto> list, String id) {
+        return list.stream().filter(i -> i.instanceConfiguration.id.equals(id)).findFirst().orElseThrow();
+    }
+
     @Test
     void checkPortStates(InstanceGroupResource root, RemoteService remote, @TempDir Path tmp) throws Exception {
         addNodes(remote);
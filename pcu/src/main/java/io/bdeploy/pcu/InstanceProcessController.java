@@ -12,6 +12,7 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import com.google.common.collect.Sets;
 
@@ -61,6 +62,9 @@ public class InstanceProcessController {
     /** The instance ID */
     private final String instanceId;
 
+    /** Notified whenever the state of any process of this instance changes */
+    private Consumer<ProcessStatusDto> statusListener;
+
     /**
      * Create a new instance controller.
      */
@@ -69,6 +73,13 @@ public class InstanceProcessController {
         this.logger.setMdcValue(instanceId);
     }
 
+    /**
+     * Sets a listener which is notified whenever the state of any process of this instance changes.
+     */
+    public void setStatusListener(Consumer<ProcessStatusDto> listener) {
+        this.statusListener = listener;
+    }
+
     /**
      * Creates new process controllers for all applications defined in the process group and adds a listener for runtime events.
      *
@@ -116,6 +127,13 @@ public class InstanceProcessController {
                     });
                 }
 
+                controller.addStatusListener(event -> {
+                    Consumer<ProcessStatusDto> listener = statusListener;
+                    if (listener != null) {
+                        listener.accept(controller.getStatus());
+                    }
+                });
+
                 processList.add(controller);
                 logger.log(l -> l.debug("Creating new process controller."), tag, config.id);
             }
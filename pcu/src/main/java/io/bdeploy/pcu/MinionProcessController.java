@@ -1,15 +1,19 @@
 package io.bdeploy.pcu;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import io.bdeploy.bhive.BHive;
@@ -17,7 +21,9 @@ import io.bdeploy.bhive.model.Manifest.Key;
 import io.bdeploy.common.util.FutureHelper;
 import io.bdeploy.common.util.MdcLogger;
 import io.bdeploy.common.util.NamedDaemonThreadFactory;
+import io.bdeploy.interfaces.configuration.pcu.InstanceNodeStatusDto;
 import io.bdeploy.interfaces.configuration.pcu.ProcessDetailDto;
+import io.bdeploy.interfaces.configuration.pcu.ProcessStatusDto;
 import io.bdeploy.interfaces.manifest.InstanceNodeManifest;
 
 /**
@@ -36,6 +42,16 @@ public class MinionProcessController {
     /** Maps the UID of an instance to its controller */
     private final Map<String, InstanceProcessController> instance2Controller = new TreeMap<>();
 
+    /** Notified whenever the state of any process changes */
+    private final List<Consumer<ProcessStatusDto>> statusListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Adds a listener which is notified whenever the state of any process of any instance changes.
+     */
+    public void addStatusListener(Consumer<ProcessStatusDto> listener) {
+        statusListeners.add(listener);
+    }
+
     /**
      * Sets the active manifest versions for each deployed instance.
      *
@@ -112,6 +128,7 @@ public class MinionProcessController {
             InstanceProcessController controller = instance2Controller.get(instanceId);
             if (controller == null) {
                 controller = new InstanceProcessController(instanceId);
+                controller.setStatusListener(this::notifyStatusListeners);
                 instance2Controller.put(instanceId, controller);
                 logger.log(l -> l.debug("Creating new instance controller."), instanceId);
             }
@@ -121,6 +138,39 @@ public class MinionProcessController {
         }
     }
 
+    private void notifyStatusListeners(ProcessStatusDto status) {
+        for (Consumer<ProcessStatusDto> listener : statusListeners) {
+            try {
+                listener.accept(status);
+            } catch (Exception e) {
+                logger.log(l -> l.warn("Failed to notify listener about process status.", e), status.instanceId);
+            }
+        }
+    }
+
+    /**
+     * Returns status information about multiple instances.
+     *
+     * @param instanceIds
+     *            the IDs of the instances to query, all instances if empty.
+     * @return the status of each requested instance known to this controller. Key = InstanceId.
+     */
+    public Map<String, InstanceNodeStatusDto> getStatus(Collection<String> instanceIds) {
+        Collection<String> filter = new HashSet<>(instanceIds);
+        try {
+            readLock.lock();
+            Map<String, InstanceNodeStatusDto> result = new TreeMap<>();
+            for (Map.Entry<String, InstanceProcessController> entry : instance2Controller.entrySet()) {
+                if (filter.isEmpty() || filter.contains(entry.getKey())) {
+                    result.put(entry.getKey(), entry.getValue().getStatus());
+                }
+            }
+            return result;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
     /**
      * Returns detailed information about the process launched for a given application.
      *
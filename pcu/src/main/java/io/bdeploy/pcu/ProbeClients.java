@@ -0,0 +1,109 @@
+package io.bdeploy.pcu;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.bdeploy.interfaces.configuration.dcu.LinkedValueConfiguration;
+import io.bdeploy.interfaces.descriptor.application.HttpEndpoint;
+import io.bdeploy.interfaces.endpoints.CommonEndpointHelper;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.WebTarget;
+
+/**
+ * Caches the HTTP {@link Client}s used to probe processes, one per distinct endpoint configuration. Re-using a {@link Client}
+ * allows keeping connections and TLS sessions alive between probes instead of establishing new ones for each probe.
+ */
+final class ProbeClients {
+
+    /** the maximum amount of cached clients, the least recently used one is evicted once exceeded */
+    private static final int MAX_CLIENTS = 256;
+
+    /** the time after which an evicted client is closed. Probes which are still using it have finished by then */
+    private static final long CLOSE_DELAY = TimeUnit.MINUTES.toMillis(10);
+
+    /** evicted clients by the time they have been evicted, oldest first */
+    private static final Map<Client, Long> evicted = new LinkedHashMap<>();
+
+    private static final Map<String, Client> clients = new LinkedHashMap<>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Client> eldest) {
+            if (size() > MAX_CLIENTS) {
+                // the client may still be in use by a running probe, so it is closed later.
+                evicted.put(eldest.getValue(), System.currentTimeMillis());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private ProbeClients() {
+    }
+
+    /**
+     * @param endpoint the processed endpoint to probe, see {@link CommonEndpointHelper#processEndpoint}.
+     * @return a target for the given endpoint, using a shared {@link Client}.
+     */
+    static WebTarget getTarget(HttpEndpoint endpoint) throws GeneralSecurityException {
+        String key = getKey(endpoint);
+        Client client;
+        synchronized (clients) {
+            closeEvicted();
+            client = clients.get(key);
+            if (client == null) {
+                client = CommonEndpointHelper.createClient(endpoint);
+                clients.put(key, client);
+            }
+        }
+
+        // client is always used locally, so we use localhost as hostname to avoid contacting somebody else unintentionally.
+        return client.target(CommonEndpointHelper.initUri(endpoint, "localhost", null));
+    }
+
+    /**
+     * Closes all clients which have been evicted long enough ago. Must be called while holding the lock on the clients.
+     */
+    private static void closeEvicted() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<Client, Long>> it = evicted.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Client, Long> entry = it.next();
+            if (now - entry.getValue() < CLOSE_DELAY) {
+                break;
+            }
+            entry.getKey().close();
+            it.remove();
+        }
+    }
+
+    /**
+     * Calculates a key from all settings which influence the configuration of the {@link Client}. The modification time of the
+     * trust store is included, so that a replaced trust store is picked up.
+     */
+    private static String getKey(HttpEndpoint endpoint) {
+        StringBuilder key = new StringBuilder();
+        for (LinkedValueConfiguration value : new LinkedValueConfiguration[] { endpoint.secure, endpoint.trustStore,
+                endpoint.trustStorePass, endpoint.authType, endpoint.authUser, endpoint.authPass }) {
+            key.append(value == null ? null : value.getPreRenderable()).append('\0');
+        }
+        key.append(endpoint.trustAll);
+
+        String trustStore = endpoint.trustStore == null ? null : endpoint.trustStore.getPreRenderable();
+        if (trustStore != null && !trustStore.isEmpty()) {
+            try {
+                key.append('\0').append(Files.getLastModifiedTime(Paths.get(trustStore)).toMillis());
+            } catch (IOException | RuntimeException e) {
+                // not readable, the client will log the problem.
+            }
+        }
+        return key.toString();
+    }
+
+}
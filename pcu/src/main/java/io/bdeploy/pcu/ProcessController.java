@@ -9,15 +9,14 @@ import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantLock;
@@ -25,10 +24,12 @@ import java.util.function.Consumer;
 
 import org.glassfish.jersey.client.ClientProperties;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.codahale.metrics.Timer;
 
 import io.bdeploy.bhive.util.StorageHelper;
 import io.bdeploy.common.NoThrowAutoCloseable;
+import io.bdeploy.common.metrics.Metrics;
+import io.bdeploy.common.metrics.Metrics.MetricGroup;
 import io.bdeploy.common.security.ApiAccessToken;
 import io.bdeploy.common.util.MdcLogger;
 import io.bdeploy.common.util.OsHelper;
@@ -90,8 +91,8 @@ public class ProcessController {
     /** The active task that has the lock */
     private String lockTask = null;
 
-    /** Executor used to schedule re-launching of application */
-    private final ScheduledExecutorService executorService;
+    /** Scheduler used for re-launching of application and monitoring tasks, shared by all controllers */
+    private final ProcessScheduler scheduler = ProcessScheduler.getInstance();
 
     /** Task scheduled to monitor the up-time */
     private Future<?> uptimeTask;
@@ -155,7 +156,8 @@ public class ProcessController {
     private VariableResolver variableResolver;
 
     /** The results of the last probe calls */
-    private final Map<ProcessProbeType, ProcessProbeResultDto> lastProbeResults = new EnumMap<>(ProcessProbeType.class);
+    private final Map<ProcessProbeType, ProcessProbeResultDto> lastProbeResults = Collections
+            .synchronizedMap(new EnumMap<>(ProcessProbeType.class));
 
     /** In production, by default, don't wait for out.txt file lock */
     private static boolean lockWait = false;
@@ -180,8 +182,6 @@ public class ProcessController {
         this.processConfig = pc;
         this.recoverAttempts = pc.processControl.noOfRetries;
         this.processDir = processDir;
-        this.executorService = Executors.newSingleThreadScheduledExecutor(
-                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(processConfig.id).build());
     }
 
     @Override
@@ -316,7 +316,9 @@ public class ProcessController {
             dto.hasStdin = processStdin != null;
             dto.handle = ProcessControllerHelper.collectProcessInfo(processHandle);
         }
-        dto.lastProbes = new ArrayList<>(lastProbeResults.values());
+        synchronized (lastProbeResults) {
+            dto.lastProbes = new ArrayList<>(lastProbeResults.values());
+        }
         return dto;
     }
 
@@ -752,12 +754,13 @@ public class ProcessController {
             if (rateInSeconds == 0) {
                 rateInSeconds = 1;
             }
-            uptimeTask = executorService.scheduleAtFixedRate(this::doCheckUptime, rateInSeconds, rateInSeconds, TimeUnit.SECONDS);
+            uptimeTask = scheduler.scheduleAtFixedRate(processConfig.id, this::doCheckUptime, rateInSeconds, rateInSeconds,
+                    TimeUnit.SECONDS);
             String requiredUptime = ProcessControllerHelper.formatDuration(stableThreshold);
             logger.log(l -> l.info("Application will be marked as stable after: {}", requiredUptime));
         }
 
-        startupTask = executorService.scheduleWithFixedDelay(this::doCheckStarted, 500, 500, TimeUnit.MILLISECONDS);
+        startupTask = scheduler.scheduleWithFixedDelay(processConfig.id, this::doCheckStarted, 500, 500, TimeUnit.MILLISECONDS);
     }
 
     private void doCheckStarted() {
@@ -792,8 +795,8 @@ public class ProcessController {
                         logger.log(l -> l.warn("Application defined lifeness probe endpoint {} missing or has wrong type.",
                                 lifeness.endpoint));
                     } else {
-                        aliveTask = executorService.scheduleWithFixedDelay(this::doCheckAlive, lifeness.initialDelaySeconds,
-                                lifeness.periodSeconds, TimeUnit.SECONDS);
+                        aliveTask = scheduler.scheduleWithFixedDelay(processConfig.id, this::doCheckAlive,
+                                lifeness.initialDelaySeconds, lifeness.periodSeconds, TimeUnit.SECONDS);
                     }
                 }
 
@@ -838,18 +841,28 @@ public class ProcessController {
                 return true; // regard not-enabled probe as success, otherwise probing will always fail.
             }
 
-            WebTarget client = CommonEndpointHelper.initClient(processed, null);
+            // the client is shared, so that connections are kept alive between probes.
+            WebTarget client = ProbeClients.getTarget(processed);
 
             if (timeout > 0) {
                 client.property(ClientProperties.CONNECT_TIMEOUT, timeout * 1000);
                 client.property(ClientProperties.READ_TIMEOUT, timeout * 1000);
             }
 
-            Response rs = client.request().get();
-            String resp = rs.hasEntity() ? rs.readEntity(String.class) : "Empty Response";
-            int status = rs.getStatus();
+            String resp;
+            int status;
+            long latency;
+            Timer.Context timer = Metrics.getMetric(MetricGroup.PROBE).timer("Probe/" + type.name()).time();
+            try (Response rs = client.request().get()) {
+                resp = rs.hasEntity() ? rs.readEntity(String.class) : "Empty Response";
+                status = rs.getStatus();
+            } finally {
+                latency = TimeUnit.NANOSECONDS.toMillis(timer.stop());
+            }
 
-            lastProbeResults.put(type, new ProcessProbeResultDto(type, status, resp, System.currentTimeMillis()));
+            ProcessProbeResultDto result = new ProcessProbeResultDto(type, status, resp, System.currentTimeMillis());
+            result.latency = latency;
+            lastProbeResults.put(type, result);
 
             // defined as "OK" by kubernetes as well.
             return status >= 200 && status < 400;
@@ -915,10 +928,10 @@ public class ProcessController {
         Runnable task = () -> executeLocked("Restart", DEFAULT_USER, this::doRestart);
         if (delay.isZero()) {
             logger.log(l -> l.info("Re-launching application immediatly."));
-            recoverTask = executorService.schedule(task, 0, TimeUnit.SECONDS);
+            recoverTask = scheduler.schedule(processConfig.id, task, 0, TimeUnit.SECONDS);
         } else {
             logger.log(l -> l.info("Waiting {} before re-launching application.", ProcessControllerHelper.formatDuration(delay)));
-            recoverTask = executorService.schedule(task, delay.getSeconds(), TimeUnit.SECONDS);
+            recoverTask = scheduler.schedule(processConfig.id, task, delay.getSeconds(), TimeUnit.SECONDS);
         }
     }
 
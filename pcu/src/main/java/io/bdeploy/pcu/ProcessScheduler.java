@@ -0,0 +1,167 @@
+package io.bdeploy.pcu;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.bdeploy.common.util.NamedDaemonThreadFactory;
+
+/**
+ * Schedules the periodic tasks of all {@link ProcessController}s of a node, e.g. uptime monitoring, startup and lifeness probes
+ * and recovery of crashed processes.
+ * <p>
+ * A single timer thread keeps track of when tasks are due and hands them to a shared pool of worker threads. Worker threads
+ * are only created while tasks are actually running, so the amount of threads depends on the amount of concurrently running
+ * (e.g. blocking) probes instead of on the amount of processes. Executions of a single repeating task never overlap.
+ */
+final class ProcessScheduler {
+
+    private static final ProcessScheduler INSTANCE = new ProcessScheduler();
+
+    private final ScheduledThreadPoolExecutor timer;
+    private final ExecutorService workers;
+
+    private ProcessScheduler() {
+        timer = new ScheduledThreadPoolExecutor(1, new NamedDaemonThreadFactory("Process Scheduler"));
+        timer.setRemoveOnCancelPolicy(true);
+        workers = Executors.newCachedThreadPool(new NamedDaemonThreadFactory("Process Task"));
+    }
+
+    /**
+     * @return the scheduler shared by all {@link ProcessController}s.
+     */
+    static ProcessScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Executes the given task once after the given delay.
+     *
+     * @param name the name of the thread while executing the task.
+     */
+    Future<?> schedule(String name, Runnable task, long delay, TimeUnit unit) {
+        return new ScheduledTask(name, task, 0, false).start(unit.toNanos(delay));
+    }
+
+    /**
+     * Executes the given task repeatedly, waiting the given delay between the end of one and the start of the next execution.
+     *
+     * @param name the name of the thread while executing the task.
+     */
+    Future<?> scheduleWithFixedDelay(String name, Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        return new ScheduledTask(name, task, unit.toNanos(delay), false).start(unit.toNanos(initialDelay));
+    }
+
+    /**
+     * Executes the given task repeatedly at the given rate. Executions which are late are not executed concurrently, but
+     * start as soon as the previous one finished.
+     *
+     * @param name the name of the thread while executing the task.
+     */
+    Future<?> scheduleAtFixedRate(String name, Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return new ScheduledTask(name, task, unit.toNanos(period), true).start(unit.toNanos(initialDelay));
+    }
+
+    /**
+     * A task which is scheduled on the timer and executed by the workers. Like tasks of a
+     * {@link java.util.concurrent.ScheduledExecutorService}, a repeating task is not executed anymore once an execution throws
+     * an exception.
+     */
+    private final class ScheduledTask implements Future<Object> {
+
+        private final String name;
+        private final Runnable task;
+        private final long period;
+        private final boolean fixedRate;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        /** the timer or worker future of the next or current execution, guarded by this */
+        private Future<?> pending;
+        private long nextRun;
+
+        ScheduledTask(String name, Runnable task, long period, boolean fixedRate) {
+            this.name = name;
+            this.task = task;
+            this.period = period;
+            this.fixedRate = fixedRate;
+        }
+
+        ScheduledTask start(long delay) {
+            nextRun = System.nanoTime() + delay;
+            scheduleNext(delay);
+            return this;
+        }
+
+        private synchronized void scheduleNext(long delay) {
+            if (!result.isDone()) {
+                pending = timer.schedule(this::submit, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private synchronized void submit() {
+            if (!result.isDone()) {
+                pending = workers.submit(this::execute);
+            }
+        }
+
+        private void execute() {
+            Thread current = Thread.currentThread();
+            String original = current.getName();
+            current.setName(name);
+            try {
+                task.run();
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+                return;
+            } finally {
+                current.setName(original);
+            }
+
+            if (period == 0) {
+                result.complete(null);
+            } else if (fixedRate) {
+                nextRun += period;
+                scheduleNext(Math.max(0, nextRun - System.nanoTime()));
+            } else {
+                scheduleNext(period);
+            }
+        }
+
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            if (result.isDone() || !result.cancel(false)) {
+                return false;
+            }
+            if (pending != null) {
+                pending.cancel(mayInterruptIfRunning);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return result.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return result.isDone();
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            return result.get();
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return result.get(timeout, unit);
+        }
+    }
+
+}
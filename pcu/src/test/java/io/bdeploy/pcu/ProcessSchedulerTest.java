@@ -0,0 +1,89 @@
+package io.bdeploy.pcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class ProcessSchedulerTest {
+
+    private final ProcessScheduler scheduler = ProcessScheduler.getInstance();
+
+    @Test
+    void testOneShot() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        Future<?> task = scheduler.schedule("one-shot", runs::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+        assertNull(task.get(5, TimeUnit.SECONDS));
+        assertTrue(task.isDone());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testRepeatAndCancel() throws Exception {
+        CountDownLatch started = new CountDownLatch(5);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+
+        Future<?> task = scheduler.scheduleWithFixedDelay("repeat", () -> {
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            started.countDown();
+            running.decrementAndGet();
+        }, 0, 5, TimeUnit.MILLISECONDS);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(task.cancel(false));
+        assertTrue(task.isCancelled());
+        assertFalse(task.cancel(false));
+        assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    void testFixedRateDoesNotOverlap() throws Exception {
+        CountDownLatch started = new CountDownLatch(3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+
+        // each execution takes longer than the period.
+        Future<?> task = scheduler.scheduleAtFixedRate("rate", () -> {
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            started.countDown();
+            running.decrementAndGet();
+        }, 0, 1, TimeUnit.MILLISECONDS);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        task.cancel(true);
+        assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    void testFailureStopsRepetition() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        Future<?> task = scheduler.scheduleWithFixedDelay("fail", () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("failed");
+        }, 0, 1, TimeUnit.MILLISECONDS);
+
+        assertThrows(ExecutionException.class, () -> task.get(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, runs.get());
+    }
+
+}
@@ -201,6 +201,16 @@ public interface InstanceResource {
             @PathParam("minion") String minion, RemoteDirectoryEntry entry, @QueryParam("offset") long offset,
             @QueryParam("limit") long limit);
 
+    /**
+     * Streams the content of the given entry starting at the given offset, and any content appended to it afterwards.
+     */
+    @POST
+    @Path("/{instance}/follow/{minion}")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @RequiredPermission(permission = Permission.READ)
+    public Response followContent(@Scope @PathParam("instance") String instanceId, @PathParam("minion") String minion,
+            RemoteDirectoryEntry entry, @QueryParam("offset") long offset);
+
     @POST
     @Path("/{instance}/request/{minion}")
     @RequiredPermission(permission = Permission.READ)
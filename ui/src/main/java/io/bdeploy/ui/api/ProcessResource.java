@@ -15,6 +15,7 @@ import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 
 @Path("/processes")
@@ -48,7 +49,7 @@ public interface ProcessResource {
     @POST
     @Path("/verify/{appId}")
     @RequiredPermission(permission = Permission.WRITE)
-    public VerifyOperationResultDto verify(@PathParam("appId") String appId);
+    public VerifyOperationResultDto verify(@PathParam("appId") String appId, @QueryParam("deep") boolean deep);
 
     @POST
     @Path("/reinstall/{appId}")
@@ -10,6 +10,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.meta.MetaLog.Cursor;
+import io.bdeploy.bhive.meta.MetaLog.Page;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.op.ManifestListOperation;
 import io.bdeploy.bhive.util.ManifestComparator;
@@ -18,6 +20,7 @@ import io.bdeploy.common.util.StringHelper;
 import io.bdeploy.interfaces.UserInfo;
 import io.bdeploy.interfaces.configuration.pcu.ProcessState;
 import io.bdeploy.interfaces.manifest.InstanceManifest;
+import io.bdeploy.interfaces.manifest.history.InstanceManifestHistory;
 import io.bdeploy.interfaces.manifest.history.InstanceManifestHistory.Action;
 import io.bdeploy.interfaces.manifest.history.InstanceManifestHistoryRecord;
 import io.bdeploy.interfaces.manifest.history.runtime.MasterRuntimeHistoryDto;
@@ -41,6 +44,9 @@ public class InstanceHistoryManager {
 
     private static final Logger log = LoggerFactory.getLogger(InstanceHistoryManager.class);
 
+    /** The amount of history records of an instance version which are loaded at once */
+    private static final int HISTORY_PAGE_SIZE = 100;
+
     private final BHive hive;
     private final AuthService auth;
     private final SecurityContext context;
@@ -74,9 +80,10 @@ public class InstanceHistoryManager {
         }
 
         // Load and compute differences
+        Cursor cursor = filter.startCursor;
         for (int i = 0; i < subList.size(); i++) {
             // Skip inspecting the next entry if we have enough events
-            if (result.events.size() > filter.maxResults) {
+            if (result.events.size() >= filter.maxResults) {
                 break;
             }
 
@@ -84,15 +91,25 @@ public class InstanceHistoryManager {
             Manifest.Key nextKey = (i + 1) < (subList.size()) ? subList.get(i + 1) : null;
             result.next = nextKey != null ? nextKey.getTag() : null;
 
-            // Load history
-            InstanceManifest manifest = InstanceManifest.load(hive, instanceId, key.getTag());
-            List<HistoryEntryDto> events = loadHistory(manifest);
-            result.addAll(events, filter);
+            // Append all runtime events from this version, unless already returned along with the newer part of its history
+            if (cursor == null) {
+                for (HistoryEntryDto runtimeEvent : getRuntimeHistory(runtimeHistory, key.getTag())) {
+                    result.add(runtimeEvent, filter);
+                }
+            }
 
-            // Append all runtime events from this version
-            for (HistoryEntryDto runtimeEvent : getRuntimeHistory(runtimeHistory, key.getTag())) {
-                result.add(runtimeEvent, filter);
+            // Load history
+            if (filter.showCreateEvents || filter.showDeploymentEvents) {
+                InstanceManifest manifest = InstanceManifest.load(hive, instanceId, key.getTag());
+                Cursor remaining = loadHistory(manifest, cursor == null ? Cursor.NEWEST : cursor, result, filter);
+                if (remaining != null) {
+                    // continue with the older part of the history of this version next time.
+                    result.next = key.getTag();
+                    result.nextCursor = remaining;
+                    break;
+                }
             }
+            cursor = null;
         }
 
         // Check runtime history for errors (minion offline)
@@ -105,24 +122,36 @@ public class InstanceHistoryManager {
         return result;
     }
 
-    private List<HistoryEntryDto> loadHistory(InstanceManifest mf) {
-        List<HistoryEntryDto> entries = new ArrayList<>();
+    /**
+     * Adds the history of the given instance version to the result, newest first, until the result holds enough events.
+     *
+     * @return the cursor to continue reading the history from, <code>null</code> if it has been read completely.
+     */
+    private Cursor loadHistory(InstanceManifest mf, Cursor start, HistoryResultDto result, HistoryFilterDto filter) {
+        InstanceManifestHistory history = mf.getHistory(hive);
         String tag = mf.getManifest().getTag();
-        for (InstanceManifestHistoryRecord rec : mf.getHistory(hive).getFullHistory()) {
-            HistoryEntryType type = computeType(rec.action);
-            HistoryEntryDto entry = new HistoryEntryDto(rec.timestamp, tag);
-
-            UserInfo userInfo = computeUser(rec.user);
-            if (userInfo != null) {
-                entry.user = userInfo.name;
-                entry.email = userInfo.email;
+        for (Cursor cursor = start; cursor != null;) {
+            if (result.events.size() >= filter.maxResults) {
+                return cursor;
             }
 
-            entry.title = computeConfigTitle(rec.action, tag);
-            entry.type = type;
-            entries.add(entry);
+            Page<InstanceManifestHistoryRecord> page = history.getHistoryPage(cursor, HISTORY_PAGE_SIZE);
+            for (InstanceManifestHistoryRecord rec : page.records) {
+                HistoryEntryDto entry = new HistoryEntryDto(rec.timestamp, tag);
+
+                UserInfo userInfo = computeUser(rec.user);
+                if (userInfo != null) {
+                    entry.user = userInfo.name;
+                    entry.email = userInfo.email;
+                }
+
+                entry.title = computeConfigTitle(rec.action, tag);
+                entry.type = computeType(rec.action);
+                result.add(entry, filter);
+            }
+            cursor = page.next;
         }
-        return entries;
+        return null;
     }
 
     private MasterRuntimeHistoryDto loadRuntimeHistory(MasterProvider mp, String group, String instanceId) {
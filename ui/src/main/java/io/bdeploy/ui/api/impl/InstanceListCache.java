@@ -0,0 +1,230 @@
+package io.bdeploy.ui.api.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.jvnet.hk2.annotations.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bdeploy.bhive.BHive;
+import io.bdeploy.bhive.meta.MetaManifest;
+import io.bdeploy.bhive.model.Manifest;
+import io.bdeploy.bhive.model.Manifest.Key;
+import io.bdeploy.bhive.model.ObjectId;
+import io.bdeploy.bhive.op.ManifestListOperation;
+import io.bdeploy.bhive.remote.jersey.BHiveRegistry;
+import io.bdeploy.bhive.remote.jersey.BHiveRegistry.MultiManifestSpawnListener;
+import io.bdeploy.bhive.remote.jersey.JerseyRemoteBHive;
+import io.bdeploy.bhive.util.StorageHelper;
+import io.bdeploy.interfaces.manifest.SoftwareRepositoryManifest;
+import io.bdeploy.ui.dto.InstanceDto;
+import jakarta.inject.Inject;
+
+/**
+ * Keeps a materialized list of the latest version of each instance per instance group, so that listing instances does not need
+ * to load all instance manifests, their meta-data and all products on every request.
+ * <p>
+ * Each cached {@link InstanceDto} remembers a digest of all manifests (including meta manifests) belonging to its instance.
+ * When listing, the fingerprints are compared against the cached list of manifests in the hive, and only instances which changed
+ * are loaded again. Changes to anything else in the instance group (products, group configuration, ...) invalidate the whole
+ * group. This also covers removals and manifests which spawned but were not yet announced to listeners.
+ * <p>
+ * Products spawning in a software repository affect the "newer version available" information of all instance groups, which is
+ * not visible in the instance group's hive. Those are tracked through manifest spawn notifications.
+ * <p>
+ * The cached {@link InstanceDto}s are kept serialized, each call to {@link #list(String, BHive, Function)} returns new copies.
+ */
+@Service
+public class InstanceListCache implements MultiManifestSpawnListener {
+
+    private static final Logger log = LoggerFactory.getLogger(InstanceListCache.class);
+
+    private static final String ROOT_SUFFIX = "/root";
+
+    private final Map<String, GroupView> groups = new ConcurrentHashMap<>();
+    private final BHiveRegistry reg;
+
+    @Inject
+    public InstanceListCache(BHiveRegistry reg) {
+        reg.addManifestSpawnListener(this);
+        this.reg = reg;
+    }
+
+    @Override
+    public void spawn(String hiveName, Collection<Key> keys) {
+        if (JerseyRemoteBHive.DEFAULT_NAME.equals(hiveName) || groups.containsKey(hiveName)) {
+            // changes in instance groups themselves are detected when listing.
+            return;
+        }
+
+        prune();
+        BHive hive = reg.get(hiveName);
+        if (hive == null || new SoftwareRepositoryManifest(hive).getKey() == null) {
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Software Repository {} changed, invalidating instance lists", hiveName);
+        }
+        groups.values().forEach(GroupView::invalidate);
+    }
+
+    /**
+     * @param group the name of the instance group
+     * @param hive the {@link BHive} of the instance group
+     * @param loader creates {@link InstanceDto}s for the given latest instance manifest keys. Keys which do not denote an
+     *            instance must be omitted from the result, a <code>null</code> value is listed as is.
+     * @return the {@link InstanceDto} of the latest version of each instance, ordered by instance manifest key.
+     */
+    public List<InstanceDto> list(String group, BHive hive,
+            Function<Collection<Manifest.Key>, Map<Manifest.Key, InstanceDto>> loader) {
+        prune();
+        GroupView view = groups.compute(group, (k, v) -> v == null || v.hive != hive ? new GroupView(hive) : v);
+        return view.list(loader);
+    }
+
+    /**
+     * Drops the views of instance groups which have been removed (or replaced) in the registry.
+     */
+    private void prune() {
+        groups.entrySet().removeIf(e -> reg.get(e.getKey()) != e.getValue().hive);
+    }
+
+    private static final class Summary {
+
+        private final Manifest.Key key;
+        private final ObjectId fingerprint;
+        private final boolean listed;
+        private final byte[] dto;
+
+        private Summary(Manifest.Key key, ObjectId fingerprint, boolean listed, InstanceDto dto) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.listed = listed;
+            this.dto = dto == null ? null : StorageHelper.toRawBytes(dto);
+        }
+
+        private InstanceDto getDto() {
+            return dto == null ? null : StorageHelper.fromRawBytes(dto, InstanceDto.class);
+        }
+    }
+
+    private static final class GroupView {
+
+        private final BHive hive;
+
+        /** Summaries by instance ID */
+        private final Map<String, Summary> summaries = new HashMap<>();
+
+        /** Fingerprint of all manifests in the hive which do not belong to an instance */
+        private ObjectId fingerprint;
+        private volatile boolean invalid = true;
+
+        private GroupView(BHive hive) {
+            this.hive = hive;
+        }
+
+        private void invalidate() {
+            invalid = true;
+        }
+
+        private synchronized List<InstanceDto> list(Function<Collection<Manifest.Key>, Map<Manifest.Key, InstanceDto>> loader) {
+            Set<Manifest.Key> allKeys = new TreeSet<>(hive.execute(new ManifestListOperation()));
+
+            // find the latest version of each instance root manifest.
+            Map<String, Manifest.Key> latest = new HashMap<>();
+            for (Manifest.Key key : allKeys) {
+                String name = key.getName();
+                if (!name.endsWith(ROOT_SUFFIX) || MetaManifest.isMetaManifest(key)) {
+                    continue;
+                }
+                latest.merge(name.substring(0, name.length() - ROOT_SUFFIX.length()), key,
+                        (a, b) -> getNumericTag(a) >= getNumericTag(b) ? a : b);
+            }
+
+            // assign each manifest to its instance, based on the first segment of the (meta manifest's) name.
+            Map<String, StringBuilder> contents = new HashMap<>();
+            StringBuilder others = new StringBuilder();
+            for (Manifest.Key key : allKeys) {
+                String name = key.getName();
+                if (MetaManifest.isMetaManifest(key)) {
+                    name = name.substring(MetaManifest.META_PREFIX.length());
+                }
+                int slash = name.indexOf('/');
+                String id = slash > 0 ? name.substring(0, slash) : null;
+                if (id != null && latest.containsKey(id)) {
+                    contents.computeIfAbsent(id, k -> new StringBuilder()).append(key).append('\n');
+                } else {
+                    others.append(key).append('\n');
+                }
+            }
+
+            Map<String, ObjectId> fingerprints = new HashMap<>();
+            contents.forEach((id, content) -> fingerprints.put(id, digest(content)));
+            ObjectId global = digest(others);
+
+            if (invalid || !global.equals(fingerprint)) {
+                summaries.clear();
+                fingerprint = global;
+                invalid = false;
+            }
+            summaries.keySet().retainAll(latest.keySet());
+
+            Map<Manifest.Key, String> stale = new TreeMap<>();
+            for (Map.Entry<String, Manifest.Key> entry : latest.entrySet()) {
+                Summary summary = summaries.get(entry.getKey());
+                if (summary == null || !summary.key.equals(entry.getValue())
+                        || !summary.fingerprint.equals(fingerprints.get(entry.getKey()))) {
+                    stale.put(entry.getValue(), entry.getKey());
+                }
+            }
+
+            if (!stale.isEmpty()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Loading {} of {} instances", stale.size(), latest.size());
+                }
+                Map<Manifest.Key, InstanceDto> loaded = loader.apply(stale.keySet());
+                for (Map.Entry<Manifest.Key, String> entry : stale.entrySet()) {
+                    Manifest.Key key = entry.getKey();
+                    summaries.put(entry.getValue(), new Summary(key, fingerprints.get(entry.getValue()), loaded.containsKey(key),
+                            loaded.get(key)));
+                }
+            }
+
+            List<Summary> sorted = new ArrayList<>(summaries.values());
+            sorted.sort((a, b) -> a.key.compareTo(b.key));
+
+            List<InstanceDto> result = new ArrayList<>();
+            for (Summary summary : sorted) {
+                if (summary.listed) {
+                    result.add(summary.getDto());
+                }
+            }
+            return result;
+        }
+
+        private static ObjectId digest(StringBuilder content) {
+            byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+            return ObjectId.create(bytes, 0, bytes.length);
+        }
+
+        private static long getNumericTag(Manifest.Key key) {
+            try {
+                return Long.parseLong(key.getTag());
+            } catch (NumberFormatException e) {
+                return Long.MIN_VALUE;
+            }
+        }
+    }
+
+}
@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -106,6 +107,7 @@ import io.bdeploy.interfaces.variables.OsVariableResolver;
 import io.bdeploy.interfaces.variables.ParameterValueResolver;
 import io.bdeploy.jersey.JerseyClientFactory;
 import io.bdeploy.jersey.JerseyOnBehalfOfFilter;
+import io.bdeploy.jersey.JerseyStreamingHelper;
 import io.bdeploy.jersey.JerseyWriteLockService.WriteLock;
 import io.bdeploy.jersey.actions.ActionFactory;
 import io.bdeploy.jersey.actions.ActionService.ActionHandle;
@@ -195,6 +197,9 @@ public class InstanceResourceImpl implements InstanceResource {
     @Inject
     private ActionFactory af;
 
+    @Inject
+    private InstanceListCache ilc;
+
     public InstanceResourceImpl(String group, BHive hive) {
         this.group = group;
         this.hive = hive;
@@ -202,15 +207,23 @@ public class InstanceResourceImpl implements InstanceResource {
 
     @Override
     public List<InstanceDto> list() {
-        List<InstanceDto> result = new ArrayList<>();
+        return ilc.list(group, hive, this::getInstanceDtos);
+    }
 
+    private Map<Key, InstanceDto> getInstanceDtos(Collection<Key> candidates) {
+        Map<Key, InstanceDto> result = new HashMap<>();
         Map<String, Comparator<String>> comparators = new TreeMap<>();
 
-        SortedSet<Key> imKeys = InstanceManifest.scan(hive, true);
         SortedSet<Key> scan = ProductManifest.scan(hive);
 
-        for (Key imKey : imKeys) {
-            result.add(getInstanceDto(imKey, scan, comparators));
+        for (Key imKey : candidates) {
+            if (!Boolean.TRUE.equals(hive.execute(new ManifestExistsOperation().setManifest(imKey)))) {
+                continue; // might have been deleted meanwhile.
+            }
+            Manifest mf = hive.execute(new ManifestLoadOperation().setManifest(imKey).setNullOnError(true));
+            if (mf != null && mf.getLabels().containsKey(InstanceManifest.INSTANCE_LABEL)) {
+                result.put(imKey, getInstanceDto(imKey, scan, comparators));
+            }
         }
         return result;
     }
@@ -1020,6 +1033,18 @@ public class InstanceResourceImpl implements InstanceResource {
         return new StringEntryChunkDto(chunk);
     }
 
+    @Override
+    public Response followContent(String instanceId, String minion, RemoteDirectoryEntry entry, long offset) {
+        InstanceManifest im = readInstance(instanceId, entry.tag);
+        if (im == null) {
+            throw new WebApplicationException("Cannot load " + instanceId + ":" + entry.tag, Status.NOT_FOUND);
+        }
+
+        RemoteService svc = mp.getControllingMaster(hive, im.getManifest());
+        MasterRootResource root = ResourceProvider.getVersionedResource(svc, MasterRootResource.class, context);
+        return JerseyStreamingHelper.relayFlushing(root.getNamedMaster(group).followEntry(minion, entry, offset));
+    }
+
     @Override
     public String getContentStreamRequest(String instanceId, String minion, RemoteDirectoryEntry entry) {
         return resrs.createRequest(new EntryRequest(minion, instanceId, entry));
@@ -32,9 +32,11 @@ import io.bdeploy.bhive.BHiveTransactions.Transaction;
 import io.bdeploy.bhive.meta.MetaManifest;
 import io.bdeploy.bhive.model.Manifest;
 import io.bdeploy.bhive.model.Manifest.Key;
+import io.bdeploy.bhive.model.ManifestChanges;
 import io.bdeploy.bhive.model.ObjectId;
 import io.bdeploy.bhive.op.ManifestDeleteOperation;
 import io.bdeploy.bhive.op.ManifestListOperation;
+import io.bdeploy.bhive.op.ManifestMaxIdOperation;
 import io.bdeploy.bhive.op.ObjectLoadOperation;
 import io.bdeploy.bhive.op.remote.FetchOperation;
 import io.bdeploy.bhive.op.remote.PushOperation;
@@ -401,6 +403,100 @@ public class ManagedServersResourceImpl implements ManagedServersResource {
         }
     }
 
+    /**
+     * @return the changes in the managed server's instance group since the last synchronization, <code>null</code> if the server
+     *         does not support change journals.
+     */
+    private static ManifestChanges getManifestChanges(RemoteBHive rbh, ManagedMasterDto attached) {
+        try {
+            ManifestChanges result = rbh.getManifestChanges(attached.syncJournal, attached.syncCursor);
+            if (!result.complete || !result.more) {
+                return result;
+            }
+
+            // only the last change to each manifest is relevant.
+            Set<Manifest.Key> added = new LinkedHashSet<>(result.added);
+            Set<Manifest.Key> removed = new LinkedHashSet<>(result.removed);
+            while (result.more) {
+                ManifestChanges next = rbh.getManifestChanges(result.journal, result.cursor);
+                if (!next.complete) {
+                    return next; // journal has been replaced meanwhile.
+                }
+                added.removeAll(next.removed);
+                added.addAll(next.added);
+                removed.removeAll(next.added);
+                removed.addAll(next.removed);
+                result.cursor = next.cursor;
+                result.more = next.more;
+            }
+            result.added = new ArrayList<>(added);
+            result.removed = new ArrayList<>(removed);
+            return result;
+        } catch (UnsupportedOperationException e) {
+            log.debug("Server does not provide manifest changes: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @return the ID of the instance the given manifest might belong to, i.e. the first segment of the (meta) manifest's name.
+     */
+    private static String getInstanceId(Manifest.Key key) {
+        String name = key.getName();
+        if (MetaManifest.isMetaManifest(key)) {
+            name = name.substring(MetaManifest.META_PREFIX.length());
+        }
+        int slash = name.indexOf('/');
+        return slash > 0 ? name.substring(0, slash) : null;
+    }
+
+    /**
+     * @return whether the given manifest is the root manifest of an instance.
+     */
+    private static boolean isInstanceRoot(Manifest.Key key) {
+        String id = getInstanceId(key);
+        return id != null && !MetaManifest.isMetaManifest(key) && key.getName().equals(InstanceManifest.getRootName(id));
+    }
+
+    /**
+     * @return the IDs of all instances affected by the given changes, which are instances already known locally, as well as
+     *         instances whose root manifest has been added or removed on the managed server.
+     */
+    private static Set<String> getChangedInstances(BHive hive, ManifestChanges changes) {
+        Set<String> result = new TreeSet<>();
+        Set<String> checked = new TreeSet<>();
+
+        List<Manifest.Key> changed = new ArrayList<>(changes.added);
+        changed.addAll(changes.removed);
+        for (Manifest.Key key : changed) {
+            String id = getInstanceId(key);
+            if (id == null) {
+                continue;
+            }
+
+            if (isInstanceRoot(key)) {
+                result.add(id);
+            } else if (checked.add(id)
+                    && !hive.execute(new ManifestListOperation().setManifestName(InstanceManifest.getRootName(id))).isEmpty()) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the latest version of the instances with the given IDs which exist locally.
+     */
+    private static SortedSet<Manifest.Key> getLocalInstanceKeys(BHive hive, Collection<String> ids) {
+        SortedSet<Manifest.Key> result = new TreeSet<>();
+        for (String id : ids) {
+            String rootName = InstanceManifest.getRootName(id);
+            hive.execute(new ManifestMaxIdOperation().setManifestName(rootName))
+                    .ifPresent(tag -> result.add(new Manifest.Key(rootName, tag.toString())));
+        }
+        return result;
+    }
+
     private MinionSyncResultDto synchronizeTransacted(BHive hive, String groupName, String serverName) {
         RemoteService svc = getConfiguredRemote(groupName, serverName);
 
@@ -462,22 +558,50 @@ public class ManagedServersResourceImpl implements ManagedServersResource {
                 log.info("Cannot update overall instance status before sync: {}", e.toString());
             }
 
-            // 3b. Fetch all instance and meta manifests, no products.
-            CommonRootResource masterRoot = ResourceProvider.getVersionedResource(svc, CommonRootResource.class, context);
-            CommonInstanceResource master = masterRoot.getInstanceResource(groupName);
-            SortedMap<Key, InstanceConfiguration> instances = master.listInstanceConfigurations(true);
-            List<String> instanceIds = instances.values().stream().map(ic -> ic.id).toList();
+            // 3b. Fetch instance and meta manifests, no products. If the server keeps a change journal, only manifests of
+            // instances which changed since the last synchronization are fetched. Otherwise all instances are compared.
+            Set<Manifest.Key> instances = new TreeSet<>();
+            Set<String> changedIds = new TreeSet<>();
+            Set<String> instanceIds = new TreeSet<>();
+            Set<Manifest.Key> keysToFetch = new LinkedHashSet<>();
+            ManifestChanges changes;
 
             FetchOperation fetchOp = new FetchOperation().setRemote(svc).setHiveName(groupName);
             try (RemoteBHive rbh = RemoteBHive.forService(svc, groupName, new ActivityReporter.Null())) {
-                Set<Manifest.Key> keysToFetch = new LinkedHashSet<>();
-
-                // maybe we can scope this down a little in the future.
-                rbh.getManifestInventory(instanceIds.toArray(String[]::new)).forEach((k, v) -> keysToFetch.add(k));
-
-                // we're also interested in all the related meta manifests.
-                rbh.getManifestInventory(instanceIds.stream().map(s -> MetaManifest.META_PREFIX + s).toArray(String[]::new))
-                        .forEach((k, v) -> keysToFetch.add(k));
+                changes = getManifestChanges(rbh, attached);
+
+                if (changes != null && changes.complete) {
+                    changedIds.addAll(getChangedInstances(hive, changes));
+                    changes.added.stream().filter(k -> changedIds.contains(getInstanceId(k))).forEach(keysToFetch::add);
+
+                    // instances which lost root manifests might have been removed completely.
+                    instanceIds.addAll(changedIds);
+                    String[] removedRoots = changes.removed.stream().filter(ManagedServersResourceImpl::isInstanceRoot)
+                            .map(Manifest.Key::getName).distinct().toArray(String[]::new);
+                    if (removedRoots.length > 0) {
+                        Set<String> remaining = rbh.getManifestInventory(removedRoots).keySet().stream()
+                                .map(ManagedServersResourceImpl::getInstanceId).collect(Collectors.toSet());
+                        changes.removed.stream().filter(ManagedServersResourceImpl::isInstanceRoot)
+                                .map(ManagedServersResourceImpl::getInstanceId).filter(id -> !remaining.contains(id))
+                                .forEach(instanceIds::remove);
+                    }
+                } else {
+                    CommonRootResource masterRoot = ResourceProvider.getVersionedResource(svc, CommonRootResource.class, context);
+                    CommonInstanceResource master = masterRoot.getInstanceResource(groupName);
+                    SortedMap<Key, InstanceConfiguration> configs = master.listInstanceConfigurations(true);
+                    instances.addAll(configs.keySet());
+                    configs.values().forEach(ic -> instanceIds.add(ic.id));
+
+                    // an empty inventory request would return *all* manifests, including products.
+                    if (!instanceIds.isEmpty()) {
+                        rbh.getManifestInventory(instanceIds.toArray(String[]::new)).forEach((k, v) -> keysToFetch.add(k));
+
+                        // we're also interested in all the related meta manifests.
+                        rbh.getManifestInventory(
+                                instanceIds.stream().map(s -> MetaManifest.META_PREFIX + s).toArray(String[]::new))
+                                .forEach((k, v) -> keysToFetch.add(k));
+                    }
+                }
 
                 // set calculated keys to fetch operation.
                 fetchOp.addManifest(keysToFetch);
@@ -500,10 +624,19 @@ public class ManagedServersResourceImpl implements ManagedServersResource {
                 log.info("Cannot fetch systems from {}: {}", serverName, e.toString());
             }
 
-            hive.execute(fetchOp);
+            // without any manifests, the fetch would transfer *all* manifests, including products.
+            if (!keysToFetch.isEmpty() || !systems.isEmpty()) {
+                hive.execute(fetchOp);
+            }
+
+            boolean incremental = changes != null && changes.complete;
+            if (incremental) {
+                instances.addAll(getLocalInstanceKeys(hive, instanceIds));
+            }
 
             // 4. Remove local instances no longer available on the remote
-            SortedSet<Key> keysOnCentral = InstanceManifest.scan(hive, true);
+            SortedSet<Key> keysOnCentral = incremental ? getLocalInstanceKeys(hive, changedIds)
+                    : InstanceManifest.scan(hive, true);
             for (Key key : keysOnCentral) {
                 InstanceManifest im = InstanceManifest.of(hive, key);
                 if (instanceIds.contains(im.getConfiguration().id)) {
@@ -539,7 +672,7 @@ public class ManagedServersResourceImpl implements ManagedServersResource {
             }
 
             // 6. for all the fetched manifests, if they are instances, associate the server with it, and send out a change
-            for (Manifest.Key instance : instances.keySet()) {
+            for (Manifest.Key instance : instances) {
                 new ControllingMaster(hive, instance).associate(serverName);
 
                 try {
@@ -566,6 +699,12 @@ public class ManagedServersResourceImpl implements ManagedServersResource {
             }
 
             attached.lastSync = Instant.now();
+
+            // continue with the changes after the ones seen before synchronizing next time.
+            if (changes != null) {
+                attached.syncJournal = changes.journal;
+                attached.syncCursor = changes.cursor;
+            }
         }
 
         // 9. Fetch minion information and store in the managed masters
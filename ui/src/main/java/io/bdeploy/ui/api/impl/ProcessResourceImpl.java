@@ -131,9 +131,9 @@ public class ProcessResourceImpl implements ProcessResource {
     }
 
     @Override
-    public VerifyOperationResultDto verify(String appId) {
+    public VerifyOperationResultDto verify(String appId, boolean deep) {
         MasterNamedResource master = getMasterResource();
-        return master.verify(instance, appId);
+        return master.verify(instance, appId, deep);
     }
 
     @Override
@@ -66,8 +66,9 @@ public class UiResources {
 
         server.register(ProductValidationResourceImpl.class);
 
-        // force immediate initialization of the manifest spawn bridge so it can attach to the hive registry.
+        // force immediate initialization of manifest spawn listeners so they can attach to the hive registry.
         server.register(new JerseyEagerServiceInitializer<>(ManifestSpawnToChangeEventBridge.class));
+        server.register(new JerseyEagerServiceInitializer<>(InstanceListCache.class));
 
         server.register(new AbstractBinder() {
 
@@ -79,6 +80,7 @@ public class UiResources {
                 bind(ChangeEventManager.class).in(Singleton.class).to(ChangeEventManager.class);
                 bind(ProductUpdateService.class).in(Singleton.class).to(ProductUpdateService.class);
                 bind(ManifestSpawnToChangeEventBridge.class).in(Singleton.class).to(ManifestSpawnToChangeEventBridge.class);
+                bind(InstanceListCache.class).in(Singleton.class).to(InstanceListCache.class);
                 bind(RequestScopedParallelOperationsService.class).to(RequestScopedParallelOperationsService.class);
             }
         });
@@ -1,5 +1,6 @@
 package io.bdeploy.ui.dto;
 
+import io.bdeploy.bhive.meta.MetaLog.Cursor;
 import io.bdeploy.ui.api.impl.InstanceHistoryManager;
 
 /**
@@ -23,10 +24,10 @@ public class HistoryFilterDto {
     public boolean showDeploymentEvents;
 
     /**
-     * The amount of results to return. Note that this is only a hint as always all events from a given instance version are
-     * included in the result.
+     * The amount of results to return. Note that this is only a hint as the history of an instance version is read in pages, and
+     * all runtime events from a given instance version are included in the result.
      * <p>
-     * Thus when there are 3 instance versions A, B, C where A has 3 history entries, B has 100 history entries and C has 20. When
+     * Thus when there are 3 instance versions A, B, C where A has 3 runtime events, B has 100 runtime events and C has 20. When
      * the total result is set to 20 then a total of 103 results are returned.
      * </p>
      */
@@ -37,6 +38,11 @@ public class HistoryFilterDto {
      */
     public String startTag;
 
+    /**
+     * The position in the history of the {@link #startTag} version to continue from, see {@link HistoryResultDto#nextCursor}.
+     */
+    public Cursor startCursor;
+
     /**
      * The full-text filter to apply on the result.
      */
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import io.bdeploy.bhive.meta.MetaLog.Cursor;
 import io.bdeploy.common.util.StringHelper;
 import io.bdeploy.ui.api.impl.InstanceHistoryManager;
 import io.bdeploy.ui.dto.HistoryEntryDto.HistoryEntryType;
@@ -18,6 +19,12 @@ public class HistoryResultDto {
      */
     public String next;
 
+    /**
+     * The position in the history of the {@link #next} version to continue from, <code>null</code> to start with its newest
+     * events. Used along with {@link #next} as {@link HistoryFilterDto#startCursor} for a follow-up request.
+     */
+    public Cursor nextCursor;
+
     /**
      * The history events
      */
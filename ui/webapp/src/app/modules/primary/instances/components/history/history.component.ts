@@ -47,6 +47,7 @@ export class HistoryComponent implements OnInit, BdSearchable, OnDestroy {
         this.history.filter$.next({
           ...this.history.filter$.value,
           startTag: null,
+          startCursor: null,
           showCreateEvents: create,
           showDeploymentEvents: deploy,
           showRuntimeEvents: runtime,
@@ -84,6 +85,7 @@ export class HistoryComponent implements OnInit, BdSearchable, OnDestroy {
       ...this.history.filter$.value,
       filterText: search,
       startTag: null,
+      startCursor: null,
     });
   }
 
@@ -51,7 +51,7 @@ export class HistoryService {
 
   private reset() {
     this.history$.next(null);
-    this.filter$.next({ ...this.filter$.value, startTag: null }); // reset, start over
+    this.filter$.next({ ...this.filter$.value, startTag: null, startCursor: null }); // reset, start over
   }
 
   private update(filter: Partial<HistoryFilterDto>) {
@@ -66,6 +66,7 @@ export class HistoryService {
 
         // will continue loading next time.
         filter.startTag = result.next;
+        filter.startCursor = result.nextCursor;
 
         if (oldStart) {
           const arr = this.history$.value ? [...this.history$.value] : [];